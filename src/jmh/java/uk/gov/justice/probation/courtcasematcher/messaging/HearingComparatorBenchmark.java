@@ -0,0 +1,125 @@
+package uk.gov.justice.probation.courtcasematcher.messaging;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import uk.gov.justice.probation.courtcasematcher.model.domain.Address;
+import uk.gov.justice.probation.courtcasematcher.model.domain.DataSource;
+import uk.gov.justice.probation.courtcasematcher.model.domain.Defendant;
+import uk.gov.justice.probation.courtcasematcher.model.domain.Hearing;
+import uk.gov.justice.probation.courtcasematcher.model.domain.HearingDay;
+import uk.gov.justice.probation.courtcasematcher.model.domain.Name;
+import uk.gov.justice.probation.courtcasematcher.model.domain.Offence;
+import uk.gov.justice.probation.courtcasematcher.model.domain.PhoneNumber;
+import uk.gov.justice.probation.courtcasematcher.model.type.DefendantType;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Compares detecting changes to a Common Platform hearing with the comparator chain, field by field, with comparing
+ * {@link HearingHash hashes}. Each is run against an unchanged copy of the hearing and against one in which a single
+ * defendant's address has changed. The hashed comparisons include hashing both hearings.
+ * <p>
+ * ./gradlew jmh -Pjmh.includes=HearingComparatorBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class HearingComparatorBenchmark {
+
+    @Param({"1", "20", "100"})
+    private int defendants;
+
+    private Hearing existing;
+    private Hearing unchanged;
+    private Hearing oneAddressChanged;
+
+    @Setup
+    public void setUp() {
+        existing = hearing(defendants);
+        unchanged = hearing(defendants);
+        final var changedDefendants = new ArrayList<>(unchanged.getDefendants());
+        final var last = changedDefendants.size() - 1;
+        changedDefendants.set(last, changedDefendants.get(last).withAddress(Address.builder()
+                .line1("1 Another Street")
+                .postcode("S2 2AB")
+                .build()));
+        oneAddressChanged = unchanged.withDefendants(changedDefendants);
+    }
+
+    @Benchmark
+    public HearingChangeSet fieldByFieldUnchanged() {
+        return IncomingHearingComparator.compareFieldByField(unchanged, existing);
+    }
+
+    @Benchmark
+    public HearingChangeSet hashedUnchanged() {
+        return IncomingHearingComparator.compare(unchanged, existing);
+    }
+
+    @Benchmark
+    public HearingChangeSet fieldByFieldOneAddressChanged() {
+        return IncomingHearingComparator.compareFieldByField(oneAddressChanged, existing);
+    }
+
+    @Benchmark
+    public HearingChangeSet hashedOneAddressChanged() {
+        return IncomingHearingComparator.compare(oneAddressChanged, existing);
+    }
+
+    @Benchmark
+    public HearingHash hashOnly() {
+        return HearingHash.of(unchanged);
+    }
+
+    private static Hearing hearing(int defendantCount) {
+        return Hearing.builder()
+                .source(DataSource.COMMON_PLATFORM)
+                .caseId("D517D32D-3C80-41E8-846E-D274DC2B94A5")
+                .hearingId("ABCDD32D-3C80-41E8-846E-D274DC2B94A5")
+                .urn("01WW0123456")
+                .hearingDays(List.of(HearingDay.builder()
+                        .courtCode("B10JQ")
+                        .courtRoom("ROOM 1")
+                        .listNo("1")
+                        .sessionStartTime(LocalDateTime.of(2024, 3, 1, 9, 0))
+                        .build()))
+                .defendants(IntStream.range(0, defendantCount)
+                        .mapToObj(HearingComparatorBenchmark::defendant)
+                        .toList())
+                .build();
+    }
+
+    private static Defendant defendant(int i) {
+        return Defendant.builder()
+                .defendantId("0ab7c3e5-eb4c-4e3f-b9e6-%012d".formatted(i))
+                .type(DefendantType.PERSON)
+                .pnc("2004/0012345" + i)
+                .cro("12345/04" + i)
+                .sex("MALE")
+                .dateOfBirth(LocalDate.of(1980, 1, 1).plusDays(i))
+                .name(Name.builder().title("Mr").forename1("Arthur").surname("Morgan" + i).build())
+                .address(Address.builder().line1(i + " Street").line2("Sheffield").postcode("S1 1AB").build())
+                .phoneNumber(PhoneNumber.builder().mobile("0700000" + i).build())
+                .offences(IntStream.range(0, 3)
+                        .mapToObj(seq -> Offence.builder()
+                                .offenceTitle("Theft from a shop")
+                                .offenceSummary("On 01/01/2024 at Sheffield stole goods to the value of £" + seq)
+                                .act("Contrary to section 1(1) and 7 of the Theft Act 1968.")
+                                .sequenceNumber(seq)
+                                .listNo(1)
+                                .build())
+                        .toList())
+                .build();
+    }
+}
@@ -0,0 +1,104 @@
+package uk.gov.justice.probation.courtcasematcher.messaging;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import uk.gov.justice.probation.courtcasematcher.application.MessagingConfig;
+import uk.gov.justice.probation.courtcasematcher.model.domain.Hearing;
+import uk.gov.justice.probation.courtcasematcher.service.S3Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the two pass parse of an SNS notification (envelope, then the Message string) with the single pass
+ * streaming parse. Run with the gc profiler, which the jmh task enables, to compare gc.alloc.rate.norm (bytes allocated
+ * per message).
+ * <p>
+ * ./gradlew jmh -Pjmh.includes=HearingExtractorBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class HearingExtractorBenchmark {
+
+    @Param({"1", "50"})
+    int defendants;
+
+    private String payload;
+    private HearingExtractor twoPassExtractor;
+    private HearingExtractor streamingExtractor;
+
+    @Setup
+    public void setUp() throws IOException {
+        final var messagingConfig = new MessagingConfig();
+        final var objectMapper = messagingConfig.objectMapper();
+        payload = envelope(objectMapper, hearingWithDefendants(objectMapper, defendants));
+
+        twoPassExtractor = extractor(messagingConfig, objectMapper, false);
+        streamingExtractor = extractor(messagingConfig, objectMapper, true);
+    }
+
+    @Benchmark
+    public List<Hearing> twoPass() {
+        return twoPassExtractor.extractHearings(payload, "benchmark");
+    }
+
+    @Benchmark
+    public List<Hearing> streaming() {
+        return streamingExtractor.extractHearings(payload, "benchmark");
+    }
+
+    private static HearingExtractor extractor(MessagingConfig messagingConfig, ObjectMapper objectMapper, boolean streamingParse) {
+        final var validator = messagingConfig.validator();
+        return new HearingExtractor(
+                new MessageParser<>(objectMapper, validator),
+                new MessageParser<>(objectMapper, validator),
+                new MessageParser<>(objectMapper, validator),
+                new S3Service(),
+                new MessageDeduplicator(false, 0, 0, new SimpleMeterRegistry()),
+                new SnsEnvelopeParser(objectMapper, validator),
+                streamingParse);
+    }
+
+    private static String hearingWithDefendants(ObjectMapper objectMapper, int count) throws IOException {
+        final var hearing = (ObjectNode) objectMapper.readTree(Files.readString(Paths.get("src/test/resources/messages/common-platform/hearing.json")));
+        final var defendants = (ArrayNode) hearing.path("hearing").path("prosecutionCases").path(0).path("defendants");
+        final var template = defendants.get(0);
+        defendants.removeAll();
+        for (int i = 0; i < count; i++) {
+            final var defendant = template.deepCopy();
+            ((ObjectNode) defendant).put("id", "defendant-" + i);
+            defendants.add(defendant);
+        }
+        return objectMapper.writeValueAsString(hearing);
+    }
+
+    private static String envelope(ObjectMapper objectMapper, String message) throws IOException {
+        final var envelope = new LinkedHashMap<String, Object>();
+        envelope.put("Type", "Notification");
+        envelope.put("MessageId", "416d1cbe-e844-5d8e-a856-4720a702d28a");
+        envelope.put("TopicArn", "arn:aws:sns:eu-west-2:foo");
+        envelope.put("Message", message);
+        envelope.put("Timestamp", "2024-01-01T09:00:00.000Z");
+        envelope.put("MessageAttributes", Map.of(
+                "messageType", Map.of("Type", "String", "Value", "COMMON_PLATFORM_HEARING"),
+                "eventType", Map.of("Type", "String", "Value", "commonplatform.case.received"),
+                "hearingEventType", Map.of("Type", "String", "Value", "ConfirmedOrUpdated")));
+        return objectMapper.writeValueAsString(envelope);
+    }
+}
@@ -0,0 +1,47 @@
+package uk.gov.justice.probation.courtcasematcher.messaging;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import uk.gov.justice.probation.courtcasematcher.application.MessagingConfig;
+import uk.gov.justice.probation.courtcasematcher.messaging.model.S3Message;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares reading the bucket and key from a large message pointer by binding it to a list, re-serialising the
+ * pointer object and binding that to {@link S3Message}, with the single token scan of {@link S3PointerDecoder}.
+ * <p>
+ * ./gradlew jmh -Pjmh.includes=S3PointerDecoderBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class S3PointerDecoderBenchmark {
+
+    private static final String POINTER = """
+            [ "software.amazon.payloadoffloading.PayloadS3Pointer", {
+              "s3BucketName" : "cp-large-s3-bucket",
+              "s3Key" : "ba8d919b-a9d8-433b-b4b4-c196f67c773e"
+            } ]""";
+
+    private final ObjectMapper objectMapper = new MessagingConfig().objectMapper();
+
+    @Benchmark
+    public S3Message roundTrip() throws JsonProcessingException {
+        final var pointer = objectMapper.readValue(POINTER, ArrayList.class);
+        return objectMapper.readValue(objectMapper.writeValueAsString(pointer.get(1)), S3Message.class);
+    }
+
+    @Benchmark
+    public S3Message tokenScan() throws IOException {
+        return S3PointerDecoder.decode(POINTER);
+    }
+}
@@ -0,0 +1,107 @@
+package uk.gov.justice.probation.courtcasematcher.model.mapper;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import uk.gov.justice.probation.courtcasematcher.model.domain.Address;
+import uk.gov.justice.probation.courtcasematcher.model.domain.DataSource;
+import uk.gov.justice.probation.courtcasematcher.model.domain.Defendant;
+import uk.gov.justice.probation.courtcasematcher.model.domain.Hearing;
+import uk.gov.justice.probation.courtcasematcher.model.domain.HearingDay;
+import uk.gov.justice.probation.courtcasematcher.model.domain.Name;
+import uk.gov.justice.probation.courtcasematcher.model.domain.Offence;
+import uk.gov.justice.probation.courtcasematcher.model.type.DefendantType;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Merges a received Common Platform hearing with the existing one, as for every changed hearing. The received
+ * defendants are in the reverse order of the existing ones, and each has ten offences, so 50 defendants carry 500
+ * offences.
+ * <p>
+ * ./gradlew jmh -Pjmh.includes=HearingMapperBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class HearingMapperBenchmark {
+
+    private static final int OFFENCES_PER_DEFENDANT = 10;
+
+    @Param({"1", "50", "200"})
+    private int defendants;
+
+    private Hearing received;
+    private Hearing existing;
+
+    @Setup
+    public void setUp() {
+        final var existingDefendants = IntStream.range(0, defendants)
+                .mapToObj(HearingMapperBenchmark::defendant)
+                .map(defendant -> defendant
+                        .withCrn("X" + defendant.getDefendantId().substring(0, 6))
+                        .withProbationStatus("CURRENT")
+                        .withPersonId(defendant.getDefendantId()))
+                .toList();
+        final var receivedDefendants = new ArrayList<>(IntStream.range(0, defendants)
+                .mapToObj(HearingMapperBenchmark::defendant)
+                .toList());
+        Collections.reverse(receivedDefendants);
+
+        existing = hearing(existingDefendants);
+        received = hearing(receivedDefendants).withHearingEventType("Resulted");
+    }
+
+    @Benchmark
+    public Hearing merge() {
+        return HearingMapper.merge(received, existing);
+    }
+
+    private static Hearing hearing(List<Defendant> defendants) {
+        return Hearing.builder()
+                .source(DataSource.COMMON_PLATFORM)
+                .caseId("D517D32D-3C80-41E8-846E-D274DC2B94A5")
+                .hearingId("ABCDD32D-3C80-41E8-846E-D274DC2B94A5")
+                .caseNo("D517D32D-3C80-41E8-846E-D274DC2B94A5")
+                .urn("01WW0123456")
+                .hearingDays(List.of(HearingDay.builder()
+                        .courtCode("B10JQ")
+                        .courtRoom("ROOM 1")
+                        .listNo("1")
+                        .sessionStartTime(LocalDateTime.of(2024, 3, 1, 9, 0))
+                        .build()))
+                .defendants(defendants)
+                .build();
+    }
+
+    private static Defendant defendant(int i) {
+        return Defendant.builder()
+                .defendantId("%08d-eb4c-4e3f-b9e6-b9e78d3ea199".formatted(i))
+                .type(DefendantType.PERSON)
+                .sex("MALE")
+                .dateOfBirth(LocalDate.of(1980, 1, 1).plusDays(i))
+                .name(Name.builder().title("Mr").forename1("Arthur").surname("Morgan" + i).build())
+                .address(Address.builder().line1(i + " Street").line2("Sheffield").postcode("S1 1AB").build())
+                .offences(IntStream.range(0, OFFENCES_PER_DEFENDANT)
+                        .mapToObj(seq -> Offence.builder()
+                                .offenceTitle("Theft from a shop")
+                                .offenceSummary("On 01/01/2024 at Sheffield stole goods to the value of £" + seq)
+                                .act("Contrary to section 1(1) and 7 of the Theft Act 1968.")
+                                .sequenceNumber(seq)
+                                .listNo(1)
+                                .build())
+                        .toList())
+                .build();
+    }
+}
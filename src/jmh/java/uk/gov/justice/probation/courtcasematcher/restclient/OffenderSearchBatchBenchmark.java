@@ -0,0 +1,99 @@
+package uk.gov.justice.probation.courtcasematcher.restclient;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.okJson;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+
+/**
+ * Compares searching offender search for each of a hearing's CRNs, four at a time, with searching for them all in one
+ * request, against WireMock answering every request after 5ms. The roundTrips counter reports the requests made per
+ * operation.
+ * <p>
+ * ./gradlew jmh -Pjmh.includes=OffenderSearchBatchBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class OffenderSearchBatchBenchmark {
+
+    private static final int CONCURRENT_SEARCHES = 4;
+
+    @Param({"2", "10", "40"})
+    private int crns;
+
+    private final AtomicLong requests = new AtomicLong();
+    private WireMockServer server;
+    private OffenderSearchRestClient client;
+    private List<String> crnList;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class RoundTrips {
+        public long roundTrips;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        server = new WireMockServer(options().dynamicPort().disableRequestJournal());
+        server.start();
+        server.addMockServiceRequestListener((request, response) -> requests.incrementAndGet());
+        server.stubFor(post("/search").willReturn(okJson("[]").withFixedDelay(5)));
+        server.stubFor(post("/crns").willReturn(okJson("[]").withFixedDelay(5)));
+
+        client = new OffenderSearchRestClient(WebClient.create(server.baseUrl()),
+                new LookupCache<>("benchmark", false, Duration.ZERO, Duration.ZERO, 1.0d, 1, new SimpleMeterRegistry()));
+        client.setPostSearchUrl("/search");
+        client.setPostCrnsUrl("/crns");
+        client.setMaxCrnsPerRequest(50);
+        client.setMaxConcurrentSearches(CONCURRENT_SEARCHES);
+        client.setDisableAuthentication(true);
+        client.setMaxRetries(0);
+        client.setMinBackOffSeconds(1);
+
+        crnList = IntStream.range(0, crns).mapToObj("X%06d"::formatted).toList();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Benchmark
+    public void searchEach(RoundTrips roundTrips) {
+        final var before = requests.get();
+        Flux.fromIterable(crnList)
+                .flatMap(crn -> client.search(crn), CONCURRENT_SEARCHES)
+                .then()
+                .block();
+        roundTrips.roundTrips += requests.get() - before;
+    }
+
+    @Benchmark
+    public void searchCrns(RoundTrips roundTrips) {
+        final var before = requests.get();
+        client.search(crnList).block();
+        roundTrips.roundTrips += requests.get() - before;
+    }
+}
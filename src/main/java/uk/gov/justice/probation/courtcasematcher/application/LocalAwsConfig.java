@@ -6,7 +6,9 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
 import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
 import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
 import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
 import software.amazon.awssdk.services.s3.S3Client;
 
 import java.net.URI;
@@ -21,6 +23,9 @@ public class LocalAwsConfig {
     @Value("${aws.endpoint-url}")
     private String endpointUrl;
 
+    @Value("${hearing-processing.large-hearing-download.max-connections:50}")
+    private int maxConnections;
+
     @Bean
     public S3Client amazonS3Client() {
         return S3Client.builder()
@@ -30,4 +35,15 @@ public class LocalAwsConfig {
             .region(Region.of(regionName))
             .build();
     }
+
+    @Bean
+    public S3AsyncClient amazonS3AsyncClient() {
+        return S3AsyncClient.builder()
+            .httpClientBuilder(NettyNioAsyncHttpClient.builder().maxConcurrency(maxConnections))
+            .endpointOverride(URI.create(endpointUrl))
+            .forcePathStyle(true)
+            .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create("any", "any")))
+            .region(Region.of(regionName))
+            .build();
+    }
 }
@@ -1,5 +1,7 @@
 package uk.gov.justice.probation.courtcasematcher.application;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.util.JsonRecyclerPools;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
@@ -22,11 +24,17 @@ public class MessagingConfig {
         objectMapper.registerModule(new JavaTimeModule());
     }
 
+    // Caps the parser buffers kept for reuse. Unlike the default thread local pool it does not grow with the number of
+    // (virtual) threads parsing messages
+    private static final int PARSER_BUFFER_POOL_SIZE = 64;
+
     // Without this, Spring uses the XmlMapper bean as the ObjectMapper for the whole app and we get actuator response as XML
     @Bean
     @Primary
     public ObjectMapper objectMapper() {
-        var objectMapper = new ObjectMapper();
+        var objectMapper = new ObjectMapper(JsonFactory.builder()
+                .recyclerPool(JsonRecyclerPools.newBoundedPool(PARSER_BUFFER_POOL_SIZE))
+                .build());
         configureMapper(objectMapper);
         return objectMapper;
     }
@@ -4,7 +4,9 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
 import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
 import software.amazon.awssdk.services.s3.S3Client;
 
 @Configuration
@@ -14,10 +16,21 @@ public class S3Config {
     @Value("${aws.region-name}")
     private String regionName;
 
+    @Value("${hearing-processing.large-hearing-download.max-connections:50}")
+    private int maxConnections;
+
     @Bean
     public S3Client amazonS3Client() {
         return S3Client.builder()
             .region(Region.of(regionName))
             .build();
     }
+
+    @Bean
+    public S3AsyncClient amazonS3AsyncClient() {
+        return S3AsyncClient.builder()
+            .httpClientBuilder(NettyNioAsyncHttpClient.builder().maxConcurrency(maxConnections))
+            .region(Region.of(regionName))
+            .build();
+    }
 }
@@ -0,0 +1,72 @@
+package uk.gov.justice.probation.courtcasematcher.application;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * Reports virtual threads which stay pinned to their carrier, e.g. blocking inside a synchronized block on a
+ * WebClient .block() path, for longer than the configured threshold.
+ */
+@Component
+@Slf4j
+@ConditionalOnProperty(name = "hearing-processing.mode", havingValue = "VIRTUAL_THREADS")
+public class VirtualThreadPinningMonitor {
+
+    static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+    static final String PINNED_METRIC = "hearing.processing.virtual.pinned";
+    private static final int MAX_LOGGED_FRAMES = 8;
+
+    private final Duration threshold;
+    private final Counter pinnedCounter;
+    private RecordingStream recordingStream;
+
+    public VirtualThreadPinningMonitor(@Value("${hearing-processing.virtual-threads.pinned-threshold-ms:20}") long thresholdMs,
+                                       MeterRegistry meterRegistry) {
+        this.threshold = Duration.ofMillis(thresholdMs);
+        this.pinnedCounter = Counter.builder(PINNED_METRIC)
+                .description("Virtual threads pinned to a carrier thread for longer than the threshold")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        recordingStream = new RecordingStream();
+        recordingStream.enable(PINNED_EVENT).withThreshold(threshold).withStackTrace();
+        recordingStream.onEvent(PINNED_EVENT, this::onPinned);
+        recordingStream.startAsync();
+        log.info("Monitoring virtual thread pinning over {}ms", threshold.toMillis());
+    }
+
+    void onPinned(RecordedEvent event) {
+        pinnedCounter.increment();
+        final var frames = Optional.ofNullable(event.getStackTrace())
+                .map(stackTrace -> stackTrace.getFrames().stream()
+                        .limit(MAX_LOGGED_FRAMES)
+                        .map(VirtualThreadPinningMonitor::describe)
+                        .collect(Collectors.joining("\n\tat ")))
+                .orElse("[no stack trace]");
+        log.warn("Virtual thread pinned for {}ms\n\tat {}", event.getDuration().toMillis(), frames);
+    }
+
+    private static String describe(RecordedFrame frame) {
+        return String.format("%s.%s:%d", frame.getMethod().getType().getName(), frame.getMethod().getName(), frame.getLineNumber());
+    }
+
+    @PreDestroy
+    public void stop() {
+        Optional.ofNullable(recordingStream).ifPresent(RecordingStream::close);
+    }
+}
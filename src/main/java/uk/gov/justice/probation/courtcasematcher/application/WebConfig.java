@@ -11,9 +11,13 @@ import org.springframework.http.MediaType;
 import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.security.oauth2.client.OAuth2AuthorizedClientManager;
 import org.springframework.security.oauth2.client.web.reactive.function.client.ServletOAuth2AuthorizedClientExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.netty.http.client.HttpClient;
+import uk.gov.justice.probation.courtcasematcher.messaging.AdaptiveConcurrencyLimiter;
+import uk.gov.justice.probation.courtcasematcher.restclient.DownstreamCircuitBreakers;
 
+import java.time.Duration;
 import java.util.concurrent.TimeUnit;
 
 @Configuration
@@ -41,24 +45,32 @@ public class WebConfig {
     private int writeTimeoutMs;
 
     @Bean
-    public WebClient courtCaseServiceWebClient(OAuth2AuthorizedClientManager authorizedClientManager) {
+    public WebClient courtCaseServiceWebClient(OAuth2AuthorizedClientManager authorizedClientManager,
+                                               AdaptiveConcurrencyLimiter concurrencyLimiter,
+                                               DownstreamCircuitBreakers circuitBreakers) {
 
         ServletOAuth2AuthorizedClientExchangeFilterFunction oauth2Client =
             new ServletOAuth2AuthorizedClientExchangeFilterFunction(authorizedClientManager);
         return defaultWebClientBuilder()
             .baseUrl(this.courtCaseServiceBaseUrl)
             .filter(oauth2Client)
+            .filter(circuitBreakers.filter("court-case-service"))
+            .filter(downstreamSampleFilter(concurrencyLimiter, "court-case-service"))
             .build();
     }
 
     @Bean
-    public WebClient offenderSearchWebClient(OAuth2AuthorizedClientManager authorizedClientManager)
+    public WebClient offenderSearchWebClient(OAuth2AuthorizedClientManager authorizedClientManager,
+                                             AdaptiveConcurrencyLimiter concurrencyLimiter,
+                                             DownstreamCircuitBreakers circuitBreakers)
     {
         ServletOAuth2AuthorizedClientExchangeFilterFunction oauth2Client =
                 new ServletOAuth2AuthorizedClientExchangeFilterFunction(authorizedClientManager);
         return defaultWebClientBuilder()
                 .baseUrl(this.offenderSearchBaseUrl)
                 .filter(oauth2Client)
+                .filter(circuitBreakers.filter("offender-search"))
+                .filter(downstreamSampleFilter(concurrencyLimiter, "offender-search"))
                 .build();
     }
 
@@ -74,7 +86,9 @@ public class WebConfig {
     }
 
     @Bean
-    public WebClient personRecordServiceWebClient(OAuth2AuthorizedClientManager authorizedClientManager)
+    public WebClient personRecordServiceWebClient(OAuth2AuthorizedClientManager authorizedClientManager,
+                                                  AdaptiveConcurrencyLimiter concurrencyLimiter,
+                                                  DownstreamCircuitBreakers circuitBreakers)
     {
         ServletOAuth2AuthorizedClientExchangeFilterFunction oauth2Client =
                 new ServletOAuth2AuthorizedClientExchangeFilterFunction(authorizedClientManager);
@@ -82,9 +96,21 @@ public class WebConfig {
                 .baseUrl(this.personRecordServiceBaseUrl)
                 .clientConnector(new ReactorClientHttpConnector(HttpClient.create().followRedirect(true)))
                 .filter(oauth2Client)
+                .filter(circuitBreakers.filter("person-record-service"))
+                .filter(downstreamSampleFilter(concurrencyLimiter, "person-record-service"))
                 .build();
     }
 
+    private static ExchangeFilterFunction downstreamSampleFilter(AdaptiveConcurrencyLimiter concurrencyLimiter, String downstream) {
+        return (request, next) -> {
+            final var start = System.nanoTime();
+            return next.exchange(request)
+                .doOnNext(response -> concurrencyLimiter.onDownstreamResponse(downstream,
+                    Duration.ofNanos(System.nanoTime() - start), response.statusCode().value()))
+                .doOnError(e -> concurrencyLimiter.onDownstreamError(downstream, Duration.ofNanos(System.nanoTime() - start)));
+        };
+    }
+
     private WebClient.Builder defaultWebClientBuilder() {
         HttpClient httpClient = HttpClient.create()
             .tcpConfiguration(client ->
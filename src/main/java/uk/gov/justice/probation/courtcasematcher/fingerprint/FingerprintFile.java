@@ -0,0 +1,98 @@
+package uk.gov.justice.probation.courtcasematcher.fingerprint;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+
+/**
+ * File to which a fingerprint store appends each fingerprint it records, as a key and hex fingerprint separated by a
+ * tab, so that the store survives a restart. Not thread safe, so callers hold the lock of their store.
+ */
+@Slf4j
+public class FingerprintFile {
+
+    private final Path file;
+    private final String name;
+    private BufferedWriter writer;
+
+    /**
+     * @param name what the fingerprints are of, as used in the log, e.g. "hearing"
+     */
+    public FingerprintFile(Path file, String name) {
+        this.file = file;
+        this.name = name;
+    }
+
+    /**
+     * Replays the file into fingerprints, then rewrites it with only the entries which survived, in the iteration order
+     * of fingerprints, so the file does not grow unbounded.
+     */
+    public void load(Map<String, Long> fingerprints) {
+        try {
+            if (Files.exists(file)) {
+                try (var lines = Files.lines(file, StandardCharsets.UTF_8)) {
+                    lines.forEach(line -> loadLine(line, fingerprints));
+                }
+            }
+            final var compacted = Files.createTempFile(file.toAbsolutePath().getParent(), name.replace(' ', '-') + "-fingerprints", ".tmp");
+            try (var compactedWriter = Files.newBufferedWriter(compacted, StandardCharsets.UTF_8)) {
+                for (var entry : fingerprints.entrySet()) {
+                    compactedWriter.write(entry.getKey() + "\t" + Long.toHexString(entry.getValue()));
+                    compactedWriter.newLine();
+                }
+            }
+            Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+            log.info("Loaded {} {} fingerprints from {}", fingerprints.size(), name, file);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to load " + name + " fingerprints from " + file, e);
+        }
+    }
+
+    public void append(String key, long fingerprint) {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.write(key + "\t" + Long.toHexString(fingerprint));
+            writer.newLine();
+            writer.flush();
+        } catch (IOException e) {
+            // Losing a fingerprint only costs a repeated call to court-case-service after a restart, so carry on without the file
+            log.warn("Failed to write {} fingerprint to {}", name, file, e);
+        }
+    }
+
+    public void close() {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                log.warn("Failed to close {} fingerprint file {}", name, file, e);
+            }
+            writer = null;
+        }
+    }
+
+    private void loadLine(String line, Map<String, Long> fingerprints) {
+        final var fields = line.split("\t");
+        try {
+            if (fields.length == 2) {
+                fingerprints.put(fields[0], Long.parseUnsignedLong(fields[1], 16));
+                return;
+            }
+        } catch (NumberFormatException e) {
+            // fall through to skip the line
+        }
+        // Most likely a line left half written when the pod stopped
+        log.warn("Skipping malformed {} fingerprint line", name);
+    }
+}
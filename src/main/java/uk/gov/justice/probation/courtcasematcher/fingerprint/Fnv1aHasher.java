@@ -0,0 +1,94 @@
+package uk.gov.justice.probation.courtcasematcher.fingerprint;
+
+import java.nio.CharBuffer;
+
+/**
+ * Incremental 64-bit FNV-1a hash over the UTF-8 bytes of the values put into it. Cheap enough to run over every incoming
+ * message, and not intended to resist deliberately crafted collisions.
+ * <p>
+ * Two distinct inputs hash to the same value with a probability of about 2^-64, or 5 in 10^20, for each pair compared.
+ */
+public class Fnv1aHasher {
+
+    // Stands in for the hash of an absent value, so that it differs from that of a value with all its fields null
+    public static final long ABSENT = 0L;
+
+    private static final long OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long PRIME = 0x100000001b3L;
+
+    // Separates values so that ("ab", "c") and ("a", "bc") hash differently
+    private static final int SEPARATOR = 0x1f;
+    private static final int NULL = 0x00;
+    // Written for an unpaired surrogate, as String.getBytes(UTF_8) does
+    private static final int REPLACEMENT = '?';
+
+    private long hash = OFFSET_BASIS;
+
+    public static long hash(String value) {
+        return new Fnv1aHasher().put(value).value();
+    }
+
+    /**
+     * Same result as {@link #hash(String)} for the equivalent string, without having to create it.
+     */
+    public static long hash(char[] chars, int offset, int length) {
+        return new Fnv1aHasher().putText(CharBuffer.wrap(chars, offset, length)).putByte(SEPARATOR).value();
+    }
+
+    public Fnv1aHasher put(Object value) {
+        if (value == null) {
+            return putByte(NULL).putByte(SEPARATOR);
+        }
+        return putText(value.toString()).putByte(SEPARATOR);
+    }
+
+    /**
+     * Mixes in the UTF-8 bytes of the text alone, without a separator, so that a hasher with nothing else put into it
+     * gives the standard FNV-1a 64 hash of the text.
+     */
+    public Fnv1aHasher putText(CharSequence text) {
+        final var length = text.length();
+        for (int i = 0; i < length; i++) {
+            final var c = text.charAt(i);
+            if (c < 0x80) {
+                putByte(c);
+            } else if (c < 0x800) {
+                putByte(0xc0 | c >>> 6);
+                putByte(0x80 | c & 0x3f);
+            } else if (!Character.isSurrogate(c)) {
+                putByte(0xe0 | c >>> 12);
+                putByte(0x80 | c >>> 6 & 0x3f);
+                putByte(0x80 | c & 0x3f);
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+                final var codePoint = Character.toCodePoint(c, text.charAt(++i));
+                putByte(0xf0 | codePoint >>> 18);
+                putByte(0x80 | codePoint >>> 12 & 0x3f);
+                putByte(0x80 | codePoint >>> 6 & 0x3f);
+                putByte(0x80 | codePoint & 0x3f);
+            } else {
+                putByte(REPLACEMENT);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Mixes in a hash computed by another hasher, as its eight bytes from the most significant, so that a parent can be
+     * hashed from its children without revisiting their fields.
+     */
+    public Fnv1aHasher putHash(long value) {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            putByte((int) (value >>> shift));
+        }
+        return putByte(SEPARATOR);
+    }
+
+    public long value() {
+        return hash;
+    }
+
+    private Fnv1aHasher putByte(int b) {
+        hash = (hash ^ (b & 0xff)) * PRIME;
+        return this;
+    }
+}
@@ -0,0 +1,166 @@
+package uk.gov.justice.probation.courtcasematcher.fingerprint;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import uk.gov.justice.probation.courtcasematcher.restclient.model.courtcaseservice.CCSGroupedOffenderMatchesRequest;
+import uk.gov.justice.probation.courtcasematcher.restclient.model.courtcaseservice.CCSMatchIdentifiers;
+import uk.gov.justice.probation.courtcasematcher.restclient.model.courtcaseservice.CCSOffenderAlias;
+import uk.gov.justice.probation.courtcasematcher.restclient.model.courtcaseservice.CCSOffenderMatch;
+
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Remembers the {@link #fingerprint(CCSGroupedOffenderMatchesRequest) fingerprint} of the offender matches this pod last
+ * posted to court-case-service for each defendant, so that a POST of the same matches, as when an unchanged defendant is
+ * saved again with its hearing, can be skipped. The least recently used entries are dropped once max-entries is
+ * reached.
+ * <p>
+ * When a file is configured each fingerprint is also appended to it, and the file is replayed (and compacted) on
+ * startup so the store survives a restart.
+ */
+@Component
+public class OffenderMatchFingerprintStore {
+
+    static final String SKIPPED_METRIC = "offender.matches.post.skipped";
+    static final String SIZE_METRIC = "offender.matches.fingerprint.size";
+
+    private final boolean enabled;
+    private final Map<String, Long> fingerprints;
+    private final FingerprintFile file;
+
+    private final Counter skipped;
+
+    public OffenderMatchFingerprintStore(@Value("${hearing-processing.offender-match-fingerprints.enabled:false}") boolean enabled,
+                                         @Value("${hearing-processing.offender-match-fingerprints.max-entries:100000}") int maxEntries,
+                                         @Value("${hearing-processing.offender-match-fingerprints.file:}") String file,
+                                         MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.fingerprints = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        this.file = enabled && !file.isBlank() ? new FingerprintFile(Path.of(file), "offender match") : null;
+
+        skipped = Counter.builder(SKIPPED_METRIC)
+                .description("POSTs of offender matches skipped as the defendant's matches were the same as last posted")
+                .register(meterRegistry);
+        Gauge.builder(SIZE_METRIC, this, OffenderMatchFingerprintStore::size)
+                .description("Offender match fingerprints held by this pod")
+                .register(meterRegistry);
+
+        if (this.file != null) {
+            this.file.load(fingerprints);
+        }
+    }
+
+    /**
+     * Hashes the matches as they are posted, in order, so that matches listed in a different order are posted again.
+     */
+    public static long fingerprint(CCSGroupedOffenderMatchesRequest request) {
+        final var hasher = new Fnv1aHasher();
+        final var matches = request.getMatches();
+        if (matches == null) {
+            return hasher.put(null).value();
+        }
+        hasher.put(matches.size());
+        matches.forEach(match -> hasher.putHash(hashMatch(match)));
+        return hasher.value();
+    }
+
+    /**
+     * @return true, counting the skipped POST, if these are the matches last posted for the defendant
+     */
+    public boolean isUnchanged(String defendantId, long fingerprint) {
+        if (!enabled || defendantId == null) {
+            return false;
+        }
+        final Long stored;
+        synchronized (fingerprints) {
+            stored = fingerprints.get(defendantId);
+        }
+        final var unchanged = stored != null && stored == fingerprint;
+        if (unchanged) {
+            skipped.increment();
+        }
+        return unchanged;
+    }
+
+    /**
+     * Called once the matches have been posted.
+     */
+    public void record(String defendantId, long fingerprint) {
+        if (!enabled || defendantId == null) {
+            return;
+        }
+        synchronized (fingerprints) {
+            fingerprints.put(defendantId, fingerprint);
+            if (file != null) {
+                file.append(defendantId, fingerprint);
+            }
+        }
+    }
+
+    int size() {
+        synchronized (fingerprints) {
+            return fingerprints.size();
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        synchronized (fingerprints) {
+            if (file != null) {
+                file.close();
+            }
+        }
+    }
+
+    private static long hashMatch(CCSOffenderMatch match) {
+        if (match == null) {
+            return Fnv1aHasher.ABSENT;
+        }
+        return new Fnv1aHasher()
+                .putHash(hashMatchIdentifiers(match.getMatchIdentifiers()))
+                .put(match.getMatchType())
+                .put(match.getConfirmed())
+                .put(match.getRejected())
+                .put(match.getMatchProbability())
+                .value();
+    }
+
+    private static long hashMatchIdentifiers(CCSMatchIdentifiers identifiers) {
+        if (identifiers == null) {
+            return Fnv1aHasher.ABSENT;
+        }
+        final var hasher = new Fnv1aHasher()
+                .put(identifiers.getCrn())
+                .put(identifiers.getPnc())
+                .put(identifiers.getCro());
+        final List<CCSOffenderAlias> aliases = identifiers.getAliases();
+        if (aliases == null) {
+            return hasher.put(null).value();
+        }
+        hasher.put(aliases.size());
+        aliases.forEach(alias -> {
+            if (alias == null) {
+                hasher.putHash(Fnv1aHasher.ABSENT);
+                return;
+            }
+            hasher.put(alias.getFirstName())
+                    .put(alias.getMiddleNames())
+                    .put(alias.getSurname())
+                    .put(alias.getDateOfBirth())
+                    .put(alias.getGender());
+        });
+        return hasher.value();
+    }
+}
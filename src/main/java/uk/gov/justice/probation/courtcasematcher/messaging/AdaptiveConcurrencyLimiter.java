@@ -0,0 +1,279 @@
+package uk.gov.justice.probation.courtcasematcher.messaging;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * AIMD limit on the number of hearings processed concurrently. Every downstream response (court-case-service,
+ * offender search, person record service) is recorded as a sample; once a window of samples is full the limit grows by
+ * one if the window was healthy, or is cut multiplicatively if its p99 latency or its rate of 5xx / 429 responses
+ * breaches the configured thresholds. Processing threads over the limit wait for a permit rather than adding load to a
+ * downstream which is already struggling, and reactive processing over the limit is queued until a permit is released.
+ * <p>
+ * When enabled the listener's maxConcurrentMessages is raised to max-limit, as the limit could not otherwise grow past
+ * the number of messages the listener hands over at once.
+ */
+@Component
+@Slf4j
+public class AdaptiveConcurrencyLimiter {
+
+    static final String LIMIT_METRIC = "hearing.processing.concurrency.limit";
+    static final String IN_FLIGHT_METRIC = "hearing.processing.concurrency.inflight";
+    static final String LIMIT_CHANGE_METRIC = "hearing.processing.concurrency.limit.changes";
+
+    enum LimitChangeReason {
+        HEALTHY,
+        LATENCY,
+        ERRORS
+    }
+
+    private final boolean enabled;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final long latencyThresholdMs;
+    private final double maxErrorRate;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition permitAvailable = lock.newCondition();
+    private final Deque<Waiter> waiters = new ArrayDeque<>();
+    private final long[] windowLatenciesMs;
+    private final Map<LimitChangeReason, Counter> limitChanges = new EnumMap<>(LimitChangeReason.class);
+
+    private int limit;
+    private int inFlight;
+    private int windowSamples;
+    private int windowErrors;
+
+    public AdaptiveConcurrencyLimiter(@Value("${hearing-processing.adaptive-limit.enabled:false}") boolean enabled,
+                                      @Value("${hearing-processing.adaptive-limit.initial-limit:4}") int initialLimit,
+                                      @Value("${hearing-processing.adaptive-limit.min-limit:1}") int minLimit,
+                                      @Value("${hearing-processing.adaptive-limit.max-limit:50}") int maxLimit,
+                                      @Value("${hearing-processing.adaptive-limit.sample-window:50}") int sampleWindow,
+                                      @Value("${hearing-processing.adaptive-limit.backoff-ratio:0.7}") double backoffRatio,
+                                      @Value("${hearing-processing.adaptive-limit.latency-threshold-ms:2000}") long latencyThresholdMs,
+                                      @Value("${hearing-processing.adaptive-limit.max-error-rate:0.05}") double maxErrorRate,
+                                      MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.latencyThresholdMs = latencyThresholdMs;
+        this.maxErrorRate = maxErrorRate;
+        this.windowLatenciesMs = new long[sampleWindow];
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+
+        Gauge.builder(LIMIT_METRIC, this, AdaptiveConcurrencyLimiter::getLimit)
+                .description("Current adaptive limit on hearings processed concurrently")
+                .register(meterRegistry);
+        Gauge.builder(IN_FLIGHT_METRIC, this, AdaptiveConcurrencyLimiter::getInFlight)
+                .description("Hearings currently holding an adaptive concurrency permit")
+                .register(meterRegistry);
+        for (LimitChangeReason reason : LimitChangeReason.values()) {
+            limitChanges.put(reason, Counter.builder(LIMIT_CHANGE_METRIC)
+                    .description("Changes to the adaptive concurrency limit by reason")
+                    .tag("reason", reason.name().toLowerCase())
+                    .register(meterRegistry));
+        }
+    }
+
+    public void acquire() {
+        if (!enabled) {
+            return;
+        }
+        lock.lock();
+        try {
+            while (inFlight >= limit) {
+                permitAvailable.awaitUninterruptibly();
+            }
+            inFlight++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void release() {
+        if (!enabled) {
+            return;
+        }
+        final List<Waiter> granted;
+        lock.lock();
+        try {
+            inFlight--;
+            permitAvailable.signal();
+            granted = grantWaiters();
+        } finally {
+            lock.unlock();
+        }
+        granted.forEach(Waiter::grant);
+    }
+
+    /**
+     * Non-blocking counterpart of {@link #acquire()} for the reactive paths. The work is subscribed to once a permit is
+     * held, and the permit is released when it terminates or is cancelled.
+     */
+    public <T> Mono<T> limit(Mono<T> work) {
+        if (!enabled) {
+            return work;
+        }
+        return Mono.usingWhen(acquireAsync(), permit -> work, permit -> Mono.fromRunnable(permit::release));
+    }
+
+    public void onDownstreamResponse(String downstream, Duration latency, int statusCode) {
+        recordSample(downstream, latency, statusCode >= 500 || statusCode == 429);
+    }
+
+    public void onDownstreamError(String downstream, Duration latency) {
+        recordSample(downstream, latency, true);
+    }
+
+    public int getLimit() {
+        lock.lock();
+        try {
+            return limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Mono<Permit> acquireAsync() {
+        return Mono.create(sink -> {
+            final var waiter = new Waiter(sink);
+            lock.lock();
+            try {
+                sink.onCancel(() -> cancel(waiter));
+                if (waiters.isEmpty() && inFlight < limit) {
+                    inFlight++;
+                } else {
+                    waiters.add(waiter);
+                    return;
+                }
+            } finally {
+                lock.unlock();
+            }
+            waiter.grant();
+        });
+    }
+
+    // A waiter cancelled after being granted its permit gives it back
+    private void cancel(Waiter waiter) {
+        lock.lock();
+        try {
+            if (waiters.remove(waiter)) {
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        waiter.permit.release();
+    }
+
+    // Called with the lock held, the waiters are completed once it is released
+    private List<Waiter> grantWaiters() {
+        final List<Waiter> granted = new ArrayList<>();
+        while (inFlight < limit && !waiters.isEmpty()) {
+            inFlight++;
+            granted.add(waiters.poll());
+        }
+        return granted;
+    }
+
+    private void recordSample(String downstream, Duration latency, boolean failed) {
+        if (!enabled) {
+            return;
+        }
+        final List<Waiter> granted;
+        lock.lock();
+        try {
+            windowLatenciesMs[windowSamples++] = latency.toMillis();
+            if (failed) {
+                windowErrors++;
+            }
+            if (windowSamples == windowLatenciesMs.length) {
+                adjustLimit(downstream);
+                windowSamples = 0;
+                windowErrors = 0;
+            }
+            granted = grantWaiters();
+        } finally {
+            lock.unlock();
+        }
+        granted.forEach(Waiter::grant);
+    }
+
+    private void adjustLimit(String downstream) {
+        Arrays.sort(windowLatenciesMs);
+        final var p99 = windowLatenciesMs[(int) Math.ceil(0.99d * windowSamples) - 1];
+        final var errorRate = (double) windowErrors / windowSamples;
+
+        if (errorRate > maxErrorRate) {
+            changeLimit(Math.max(minLimit, (int) (limit * backoffRatio)), LimitChangeReason.ERRORS,
+                    String.format("error rate %.2f, last sample from %s", errorRate, downstream));
+        } else if (p99 > latencyThresholdMs) {
+            changeLimit(Math.max(minLimit, (int) (limit * backoffRatio)), LimitChangeReason.LATENCY,
+                    String.format("p99 latency %dms, last sample from %s", p99, downstream));
+        } else if (limit < maxLimit) {
+            changeLimit(limit + 1, LimitChangeReason.HEALTHY, String.format("p99 latency %dms", p99));
+        }
+    }
+
+    private void changeLimit(int newLimit, LimitChangeReason reason, String detail) {
+        if (newLimit == limit) {
+            return;
+        }
+        log.info("Adaptive concurrency limit changed from {} to {} ({}: {})", limit, newLimit, reason, detail);
+        limit = newLimit;
+        limitChanges.get(reason).increment();
+        permitAvailable.signalAll();
+    }
+
+    private final class Permit {
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private void release() {
+            if (released.compareAndSet(false, true)) {
+                AdaptiveConcurrencyLimiter.this.release();
+            }
+        }
+    }
+
+    private final class Waiter {
+        private final MonoSink<Permit> sink;
+        private final Permit permit = new Permit();
+
+        private Waiter(MonoSink<Permit> sink) {
+            this.sink = sink;
+        }
+
+        private void grant() {
+            sink.success(permit);
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package uk.gov.justice.probation.courtcasematcher.messaging;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Admits received messages to processing in one of two lanes, sized by {@link HearingExtractor#sizeOf(String)} before
+ * they are extracted so that a large hearing is not downloaded until there is room for it. Pointers to large hearings
+ * in S3, and messages with a large payload, go to the heavy lane, which has its own limits on concurrency and payload
+ * bytes so that a few multi-megabyte hearings cannot hold every listener slot while small LIBRA hearings queue behind
+ * them. The payload bytes held by both lanes together are also capped for the pod.
+ * <p>
+ * A message which cannot be admitted within max-wait is rejected. The listener makes it visible again after
+ * rejected-visibility-seconds and leaves it unacknowledged, freeing the listener slot for another message. SQS still
+ * counts the receive towards the queue's maxReceiveCount, so max-wait-ms and rejected-visibility-seconds should leave
+ * a rejected message enough attempts to be admitted.
+ */
+@Component
+@Slf4j
+public class HearingAdmissionController {
+
+    static final String ADMITTED_METRIC = "hearing.admission.admitted";
+    static final String REJECTED_METRIC = "hearing.admission.rejected";
+    static final String IN_FLIGHT_METRIC = "hearing.admission.inflight";
+    static final String IN_FLIGHT_BYTES_METRIC = "hearing.admission.inflight.bytes";
+
+    enum Lane {
+        LIGHT,
+        HEAVY
+    }
+
+    private final boolean enabled;
+    private final long heavyBytes;
+    private final int heavyLaneConcurrency;
+    private final long heavyLaneMaxBytes;
+    private final long maxInFlightBytes;
+    private final Duration maxWait;
+    private final int rejectedVisibilitySeconds;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+    private final Map<Lane, Integer> inFlight = new EnumMap<>(Lane.class);
+    private final Map<Lane, Long> inFlightBytes = new EnumMap<>(Lane.class);
+
+    private final Map<Lane, Counter> admitted = new EnumMap<>(Lane.class);
+    private final Map<Lane, Counter> rejected = new EnumMap<>(Lane.class);
+
+    public HearingAdmissionController(@Value("${hearing-processing.admission.enabled:false}") boolean enabled,
+                                      @Value("${hearing-processing.admission.heavy-bytes:1048576}") long heavyBytes,
+                                      @Value("${hearing-processing.admission.heavy-lane.concurrency:1}") int heavyLaneConcurrency,
+                                      @Value("${hearing-processing.admission.heavy-lane.max-bytes:67108864}") long heavyLaneMaxBytes,
+                                      @Value("${hearing-processing.admission.max-inflight-bytes:134217728}") long maxInFlightBytes,
+                                      @Value("${hearing-processing.admission.max-wait-ms:1000}") long maxWaitMs,
+                                      @Value("${hearing-processing.admission.rejected-visibility-seconds:30}") int rejectedVisibilitySeconds,
+                                      MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.heavyBytes = heavyBytes;
+        this.heavyLaneConcurrency = heavyLaneConcurrency;
+        this.heavyLaneMaxBytes = heavyLaneMaxBytes;
+        this.maxInFlightBytes = maxInFlightBytes;
+        this.maxWait = Duration.ofMillis(maxWaitMs);
+        this.rejectedVisibilitySeconds = rejectedVisibilitySeconds;
+
+        for (Lane lane : Lane.values()) {
+            final var laneTag = lane.name().toLowerCase();
+            inFlight.put(lane, 0);
+            inFlightBytes.put(lane, 0L);
+            admitted.put(lane, Counter.builder(ADMITTED_METRIC)
+                    .description("Messages admitted to processing")
+                    .tag("lane", laneTag)
+                    .register(meterRegistry));
+            rejected.put(lane, Counter.builder(REJECTED_METRIC)
+                    .description("Messages left on the queue as their lane or the pod byte budget was full")
+                    .tag("lane", laneTag)
+                    .register(meterRegistry));
+            Gauge.builder(IN_FLIGHT_METRIC, this, controller -> controller.getInFlight(lane))
+                    .description("Messages admitted and still processing")
+                    .tag("lane", laneTag)
+                    .register(meterRegistry);
+            Gauge.builder(IN_FLIGHT_BYTES_METRIC, this, controller -> controller.getInFlightBytes(lane))
+                    .description("Payload bytes of the messages admitted and still processing")
+                    .tag("lane", laneTag)
+                    .baseUnit("bytes")
+                    .register(meterRegistry);
+        }
+    }
+
+    /**
+     * Waits up to max-wait for room in the message's lane, then holds that room until the returned admission is
+     * released.
+     *
+     * @throws AdmissionRejectedException if there was no room within max-wait
+     */
+    Admission admit(MessageSize message) {
+        final var lane = enabled ? laneOf(message) : Lane.LIGHT;
+        return admitAll(List.of(message)).getFirst()
+                .orElseThrow(() -> new AdmissionRejectedException("No room in the %s lane for a message of %d bytes"
+                        .formatted(lane, message.payloadBytes())));
+    }
+
+    /**
+     * Admits the messages of a batch together, so that none of them waits on room held by another of the same batch.
+     * Waits up to max-wait for room for the whole batch which, like a single message bigger than a budget, is admitted
+     * once nothing else holds a budget it exceeds. If there is still no room the messages are admitted in order while
+     * they fit, and the rest rejected without waiting any longer.
+     *
+     * @return the admission of each message, in order, or empty for a message which was rejected
+     * @throws AdmissionRejectedException if interrupted while waiting, rejecting the whole batch
+     */
+    List<Optional<Admission>> admitAll(List<MessageSize> messages) {
+        if (!enabled) {
+            return messages.stream().map(message -> Optional.of(Admission.NONE)).toList();
+        }
+        final List<Optional<Admission>> admissions = new ArrayList<>();
+        lock.lock();
+        try {
+            var remainingNanos = maxWait.toNanos();
+            while (!hasRoom(messages) && remainingNanos > 0) {
+                remainingNanos = released.awaitNanos(remainingNanos);
+            }
+            final var batchFits = hasRoom(messages);
+            for (MessageSize message : messages) {
+                final var lane = laneOf(message);
+                final var bytes = message.payloadBytes();
+                if (batchFits || hasRoom(List.of(message))) {
+                    inFlight.merge(lane, 1, Integer::sum);
+                    inFlightBytes.merge(lane, bytes, Long::sum);
+                    admitted.get(lane).increment();
+                    admissions.add(Optional.of(new Admission(this, lane, bytes)));
+                } else {
+                    rejected.get(lane).increment();
+                    admissions.add(Optional.empty());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AdmissionRejectedException("Interrupted waiting for room for " + messages.size() + " messages");
+        } finally {
+            lock.unlock();
+        }
+        return admissions;
+    }
+
+    Lane laneOf(MessageSize message) {
+        return message.fromS3() || message.payloadBytes() >= heavyBytes ? Lane.HEAVY : Lane.LIGHT;
+    }
+
+    int getRejectedVisibilitySeconds() {
+        return rejectedVisibilitySeconds;
+    }
+
+    int getInFlight(Lane lane) {
+        lock.lock();
+        try {
+            return inFlight.get(lane);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long getInFlightBytes(Lane lane) {
+        lock.lock();
+        try {
+            return inFlightBytes.get(lane);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release(Lane lane, long bytes) {
+        lock.lock();
+        try {
+            inFlight.merge(lane, -1, Integer::sum);
+            inFlightBytes.merge(lane, -bytes, Long::sum);
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // A message, or batch, bigger than a whole budget is still admitted once nothing else holds that budget, or it would
+    // never run
+    private boolean hasRoom(List<MessageSize> messages) {
+        long bytes = 0;
+        int heavyMessages = 0;
+        long heavyBytes = 0;
+        for (MessageSize message : messages) {
+            bytes += message.payloadBytes();
+            if (laneOf(message) == Lane.HEAVY) {
+                heavyMessages++;
+                heavyBytes += message.payloadBytes();
+            }
+        }
+        final var podBytes = inFlightBytes.get(Lane.LIGHT) + inFlightBytes.get(Lane.HEAVY);
+        if (podBytes > 0 && podBytes + bytes > maxInFlightBytes) {
+            return false;
+        }
+        if (heavyMessages == 0) {
+            return true;
+        }
+        final var heavyLaneMessages = inFlight.get(Lane.HEAVY);
+        final var heavyLaneBytes = inFlightBytes.get(Lane.HEAVY);
+        return (heavyLaneMessages == 0 || heavyLaneMessages + heavyMessages <= heavyLaneConcurrency)
+                && (heavyLaneBytes == 0 || heavyLaneBytes + heavyBytes <= heavyLaneMaxBytes);
+    }
+
+    static final class Admission {
+        static final Admission NONE = new Admission(null, Lane.LIGHT, 0);
+
+        private final HearingAdmissionController controller;
+        private final Lane lane;
+        private final long bytes;
+        private boolean released;
+
+        private Admission(HearingAdmissionController controller, Lane lane, long bytes) {
+            this.controller = controller;
+            this.lane = lane;
+            this.bytes = bytes;
+        }
+
+        Lane lane() {
+            return lane;
+        }
+
+        synchronized void release() {
+            if (controller != null && !released) {
+                released = true;
+                controller.release(lane, bytes);
+            }
+        }
+    }
+
+    static class AdmissionRejectedException extends RuntimeException {
+        AdmissionRejectedException(String message) {
+            super(message);
+        }
+    }
+}
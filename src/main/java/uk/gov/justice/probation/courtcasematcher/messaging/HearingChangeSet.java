@@ -0,0 +1,36 @@
+package uk.gov.justice.probation.courtcasematcher.messaging;
+
+import uk.gov.justice.probation.courtcasematcher.model.domain.Defendant;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * What {@link IncomingHearingComparator#compare(uk.gov.justice.probation.courtcasematcher.model.domain.Hearing, uk.gov.justice.probation.courtcasematcher.model.domain.Hearing)}
+ * found to differ between a received hearing and the existing version of it.
+ *
+ * @param added    received defendants with no existing counterpart
+ * @param removed  existing defendants with no received counterpart
+ * @param modified defendants present in both, with the sections which differ
+ */
+public record HearingChangeSet(boolean urnChanged,
+                               boolean hearingDaysChanged,
+                               List<Defendant> added,
+                               List<Defendant> removed,
+                               List<DefendantChange> modified) {
+
+    public enum DefendantSection {
+        DETAILS,
+        NAME,
+        ADDRESS,
+        PHONE_NUMBER,
+        OFFENCES
+    }
+
+    public record DefendantChange(Defendant received, Defendant existing, Set<DefendantSection> sections) {
+    }
+
+    public boolean hasChanges() {
+        return urnChanged || hearingDaysChanged || !added.isEmpty() || !removed.isEmpty() || !modified.isEmpty();
+    }
+}
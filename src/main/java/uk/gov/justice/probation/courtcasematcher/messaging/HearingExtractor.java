@@ -1,13 +1,13 @@
 package uk.gov.justice.probation.courtcasematcher.messaging;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
 import lombok.NoArgsConstructor;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import uk.gov.justice.probation.courtcasematcher.messaging.model.S3Message;
 import uk.gov.justice.probation.courtcasematcher.messaging.model.commonplatform.CPHearingEvent;
@@ -18,7 +18,8 @@ import uk.gov.justice.probation.courtcasematcher.model.domain.Hearing;
 import jakarta.validation.ConstraintViolationException;
 import uk.gov.justice.probation.courtcasematcher.service.S3Service;
 
-import java.util.ArrayList;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
 
 @Component
@@ -26,6 +27,8 @@ import java.util.List;
 @AllArgsConstructor
 @Slf4j
 public class HearingExtractor {
+    private static final String LARGE_CASE_EVENT_TYPE = "commonplatform.large.case.received";
+
     @NonNull
     @Autowired
     final MessageParser<SnsMessageContainer> snsMessageWrapperJsonParser;
@@ -40,17 +43,32 @@ public class HearingExtractor {
 
     @NonNull
     @Autowired
-    ObjectMapper objectMapper;
+    final S3Service s3Service;
 
     @NonNull
     @Autowired
-    final S3Service s3Service;
+    final MessageDeduplicator messageDeduplicator;
+
+    @NonNull
+    @Autowired
+    final SnsEnvelopeParser snsEnvelopeParser;
+
+    @Value("${hearing-processing.streaming-parse.enabled:false}")
+    final boolean streamingParse;
 
     List<Hearing> extractHearings(String payload, String messageId) {
+        if (streamingParse) {
+            return extractHearingsStreaming(payload, messageId);
+        }
         try {
             SnsMessageContainer snsMessageContainer = snsMessageWrapperJsonParser.parseMessage(payload, SnsMessageContainer.class);
             log.debug("Extracted message ID {} from SNS message of type {}. Incoming message ID was {} ", snsMessageContainer.getMessageId(), snsMessageContainer.getMessageType(), messageId);
 
+            if (messageDeduplicator.isReplay(snsMessageContainer, messageId)) {
+                log.info("Dropping replay of already processed SNS message ID {}. Incoming message ID was {}", snsMessageContainer.getMessageId(), messageId);
+                return List.of();
+            }
+
             return switch (snsMessageContainer.getMessageType()) {
                 case LIBRA_COURT_CASE ->
                         List.of(libraParser.parseMessage(snsMessageContainer.getMessage(), LibraHearing.class).asDomain());
@@ -60,42 +78,136 @@ public class HearingExtractor {
             };
 
         } catch (ConstraintViolationException e) {
-            log.error("Message validation failed. Error: {} ", e.getMessage(), e);
-            e.getConstraintViolations()
-                    .forEach(cv -> log.error("Validation failed : {} at {} ", cv.getMessage(), cv.getPropertyPath().toString()));
-            throw new RuntimeException(e.getMessage(), e);
+            throw validationFailure(e);
+        } catch (JsonProcessingException e) {
+            throw processingFailure(e);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Starts downloading the hearing behind a large message pointer so that it is ready, or on its way, by the time the
+     * message is extracted. Anything which is not a readable pointer is left for {@link #extractHearings} to report.
+     */
+    void prefetchLargeHearing(String payload) {
+        // The pointer messages are small, the check on the payload is only there to avoid parsing every other message twice
+        if (!s3Service.isPrefetchEnabled() || !payload.contains(LARGE_CASE_EVENT_TYPE)) {
+            return;
+        }
+        try {
+            final var envelope = snsEnvelopeParser.parse(payload);
+            if (LARGE_CASE_EVENT_TYPE.equals(envelope.getEventType())) {
+                final var pointer = readPointer(envelope);
+                s3Service.prefetchObject(pointer.getS3BucketName(), pointer.getS3Key());
+            }
+        } catch (IOException | RuntimeException e) {
+            log.debug("Not prefetching large hearing, message could not be read as a pointer", e);
+        }
+    }
+
+    /**
+     * Sizes the message's hearing payload without extracting it, so that the message can be admitted before a large
+     * hearing is downloaded. A pointer is sized from the ExtendedPayloadSize attribute which the extended client
+     * publishes alongside it, or failing that from the S3 object's metadata. Anything which is not a readable pointer is
+     * sized as the message itself, and left for {@link #extractHearings} to report.
+     */
+    MessageSize sizeOf(String payload) {
+        if (!payload.contains(LARGE_CASE_EVENT_TYPE)) {
+            return MessageSize.inline(payload);
+        }
+        try {
+            final var envelope = snsEnvelopeParser.parse(payload);
+            if (!LARGE_CASE_EVENT_TYPE.equals(envelope.getEventType())) {
+                return MessageSize.inline(payload);
+            }
+            final var extendedPayloadSize = envelope.getExtendedPayloadSize();
+            if (extendedPayloadSize != null) {
+                return MessageSize.fromS3(extendedPayloadSize);
+            }
+            final var pointer = readPointer(envelope);
+            return MessageSize.fromS3(s3Service.getObjectSize(pointer.getS3BucketName(), pointer.getS3Key()));
+        } catch (IOException | RuntimeException e) {
+            log.debug("Sizing message as inline, it could not be read as a pointer", e);
+            return MessageSize.inline(payload);
+        }
+    }
+
+    private List<Hearing> extractHearingsStreaming(String payload, String messageId) {
+        try {
+            final var envelope = snsEnvelopeParser.parse(payload);
+            log.debug("Extracted message ID {} from SNS message of type {}. Incoming message ID was {} ", envelope.messageId(), envelope.getMessageType(), messageId);
+
+            if (messageDeduplicator.isReplay(envelope.messageId(), envelope.messageHash(), messageId)) {
+                log.info("Dropping replay of already processed SNS message ID {}. Incoming message ID was {}", envelope.messageId(), messageId);
+                return List.of();
+            }
+
+            return switch (envelope.getMessageType()) {
+                case LIBRA_COURT_CASE ->
+                        List.of(snsEnvelopeParser.readMessage(envelope, LibraHearing.class).asDomain());
+                case COMMON_PLATFORM_HEARING -> {
+                    final var cpHearingEvent = LARGE_CASE_EVENT_TYPE.equals(envelope.getEventType())
+                            ? readHearingEventFromS3(readPointer(envelope))
+                            : snsEnvelopeParser.readMessage(envelope, CPHearingEvent.class);
+                    yield setHearingAttributes(cpHearingEvent.asDomain(), cpHearingEvent, envelope.getHearingEventType());
+                }
+                default ->
+                        throw new IllegalStateException("Unprocessable message type: " + envelope.getMessageType());
+            };
+
+        } catch (ConstraintViolationException e) {
+            throw validationFailure(e);
         } catch (JsonProcessingException e) {
-            log.error("Message processing failed. Error: {} ", e.getMessage(), e);
-            throw new RuntimeException(e.getMessage(), e);
+            throw processingFailure(e);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
     }
 
-    private List<Hearing> parseCPMessage(SnsMessageContainer snsMessageContainer) throws JsonProcessingException {
-        final var cpHearingEvent = commonPlatformParser.parseMessage(getSNSMessage(snsMessageContainer), CPHearingEvent.class);
+    private static RuntimeException validationFailure(ConstraintViolationException e) {
+        log.error("Message validation failed. Error: {} ", e.getMessage(), e);
+        e.getConstraintViolations()
+                .forEach(cv -> log.error("Validation failed : {} at {} ", cv.getMessage(), cv.getPropertyPath().toString()));
+        return new RuntimeException(e.getMessage(), e);
+    }
+
+    private static RuntimeException processingFailure(JsonProcessingException e) {
+        log.error("Message processing failed. Error: {} ", e.getMessage(), e);
+        return new RuntimeException(e.getMessage(), e);
+    }
+
+    private List<Hearing> parseCPMessage(SnsMessageContainer snsMessageContainer) throws IOException {
+        final var cpHearingEvent = getCPHearingEvent(snsMessageContainer);
         final var hearing = cpHearingEvent.asDomain();
-        return setHearingAttributes(hearing, cpHearingEvent, snsMessageContainer);
+        return setHearingAttributes(hearing, cpHearingEvent, snsMessageContainer.getHearingEventType());
     }
 
-    private String getSNSMessage(SnsMessageContainer snsMessageContainer) throws JsonProcessingException {
+    private CPHearingEvent getCPHearingEvent(SnsMessageContainer snsMessageContainer) throws IOException {
         String eventType = snsMessageContainer.getMessageAttributes().getEventType().getValue();
-        if (eventType.equals("commonplatform.large.case.received")) {
-            return getPayloadFromS3(snsMessageContainer);
+        if (eventType.equals(LARGE_CASE_EVENT_TYPE)) {
+            return readHearingEventFromS3(S3PointerDecoder.decode(snsMessageContainer.getMessage()));
         }
-        return snsMessageContainer.getMessage();
+        return commonPlatformParser.parseMessage(snsMessageContainer.getMessage(), CPHearingEvent.class);
     }
 
-    private String getPayloadFromS3(SnsMessageContainer snsMessageContainer) throws JsonProcessingException {
-        var snsMessage =  objectMapper.readValue(snsMessageContainer.getMessage(), ArrayList.class);
-        String s3MessageBody = objectMapper.writeValueAsString(snsMessage.get(1));
-        S3Message s3Message =  objectMapper.readValue(s3MessageBody, S3Message.class);
+    private static S3Message readPointer(SnsEnvelopeParser.SnsEnvelope envelope) throws IOException {
+        try (var parser = envelope.message().asParser()) {
+            return S3PointerDecoder.decode(parser);
+        }
+    }
 
-        return s3Service.getObject(s3Message.getS3Key());
+    private CPHearingEvent readHearingEventFromS3(S3Message s3Message) throws IOException {
+        // Parsed as it downloads rather than buffering the whole object, as these are the largest hearings we receive
+        try (var s3Object = s3Service.getObjectStream(s3Message.getS3BucketName(), s3Message.getS3Key())) {
+            return commonPlatformParser.parseMessage(s3Object, CPHearingEvent.class);
+        }
     }
 
-    private List<Hearing> setHearingAttributes(List<Hearing> hearings, CPHearingEvent cpHearingEvent, SnsMessageContainer snsMessageContainer) {
+    private List<Hearing> setHearingAttributes(List<Hearing> hearings, CPHearingEvent cpHearingEvent, HearingEventType hearingEventType) {
        return hearings
             .stream()
-            .map(hearing -> hearing.withHearingId(cpHearingEvent.getHearing().getId()).withHearingEventType(snsMessageContainer.getHearingEventType().getValue()))
+            .map(hearing -> hearing.withHearingId(cpHearingEvent.getHearing().getId()).withHearingEventType(hearingEventType.getValue()))
             .toList();
     }
 
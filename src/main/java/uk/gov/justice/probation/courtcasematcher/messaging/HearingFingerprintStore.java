@@ -0,0 +1,126 @@
+package uk.gov.justice.probation.courtcasematcher.messaging;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import uk.gov.justice.probation.courtcasematcher.fingerprint.FingerprintFile;
+import uk.gov.justice.probation.courtcasematcher.model.domain.Hearing;
+
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import static uk.gov.justice.probation.courtcasematcher.messaging.IncomingHearingComparator.fingerprint;
+
+/**
+ * Remembers the {@link IncomingHearingComparator#fingerprint(Hearing) fingerprint} of the last version of each hearing
+ * which this pod saved, or confirmed was unchanged, in court-case-service. An incoming hearing with the same fingerprint
+ * can be classed as unchanged without fetching the existing hearing. The least recently used entries are dropped once
+ * max-entries is reached.
+ * <p>
+ * Classing a hearing as unchanged skips its save, so a change is lost if its fingerprint happens to equal the stored
+ * one. For different hearings that has a probability of about 2^-64 each time, which we accept in return for not
+ * fetching the existing hearing. Disable the store where no such risk can be accepted.
+ * <p>
+ * When a file is configured each fingerprint is also appended to it, and the file is replayed (and compacted) on
+ * startup so the store survives a restart.
+ */
+@Component
+public class HearingFingerprintStore {
+
+    static final String HIT_METRIC = "hearing.fingerprint.hits";
+    static final String MISS_METRIC = "hearing.fingerprint.misses";
+    static final String SIZE_METRIC = "hearing.fingerprint.size";
+
+    private final boolean enabled;
+    private final Map<String, Long> fingerprints;
+    private final FingerprintFile file;
+
+    private final Counter hits;
+    private final Counter misses;
+
+    public HearingFingerprintStore(@Value("${hearing-processing.fingerprints.enabled:false}") boolean enabled,
+                                   @Value("${hearing-processing.fingerprints.max-entries:50000}") int maxEntries,
+                                   @Value("${hearing-processing.fingerprints.file:}") String file,
+                                   MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.fingerprints = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        this.file = enabled && !file.isBlank() ? new FingerprintFile(Path.of(file), "hearing") : null;
+
+        hits = Counter.builder(HIT_METRIC)
+                .description("Incoming hearings classed as unchanged from their fingerprint, without fetching the existing hearing")
+                .register(meterRegistry);
+        misses = Counter.builder(MISS_METRIC)
+                .description("Incoming hearings with no matching fingerprint")
+                .register(meterRegistry);
+        Gauge.builder(SIZE_METRIC, this, HearingFingerprintStore::size)
+                .description("Hearing fingerprints held by this pod")
+                .register(meterRegistry);
+
+        if (this.file != null) {
+            this.file.load(fingerprints);
+        }
+    }
+
+    public boolean isUnchanged(Hearing hearing) {
+        if (!enabled) {
+            return false;
+        }
+        final var unchanged = keyOf(hearing)
+                .map(key -> {
+                    synchronized (fingerprints) {
+                        return fingerprints.get(key);
+                    }
+                })
+                .filter(stored -> stored == fingerprint(hearing))
+                .isPresent();
+        (unchanged ? hits : misses).increment();
+        return unchanged;
+    }
+
+    public void record(Hearing hearing) {
+        if (!enabled) {
+            return;
+        }
+        keyOf(hearing).ifPresent(key -> {
+            final var fingerprint = fingerprint(hearing);
+            synchronized (fingerprints) {
+                fingerprints.put(key, fingerprint);
+                if (file != null) {
+                    file.append(key, fingerprint);
+                }
+            }
+        });
+    }
+
+    int size() {
+        synchronized (fingerprints) {
+            return fingerprints.size();
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        synchronized (fingerprints) {
+            if (file != null) {
+                file.close();
+            }
+        }
+    }
+
+    private static Optional<String> keyOf(Hearing hearing) {
+        if (hearing.getHearingId() == null || hearing.getCaseId() == null) {
+            return Optional.empty();
+        }
+        return Optional.of(hearing.getHearingId() + ":" + hearing.getCaseId());
+    }
+}
@@ -0,0 +1,133 @@
+package uk.gov.justice.probation.courtcasematcher.messaging;
+
+import uk.gov.justice.probation.courtcasematcher.fingerprint.Fnv1aHasher;
+import uk.gov.justice.probation.courtcasematcher.model.domain.Address;
+import uk.gov.justice.probation.courtcasematcher.model.domain.Defendant;
+import uk.gov.justice.probation.courtcasematcher.model.domain.Hearing;
+import uk.gov.justice.probation.courtcasematcher.model.domain.HearingDay;
+import uk.gov.justice.probation.courtcasematcher.model.domain.Name;
+import uk.gov.justice.probation.courtcasematcher.model.domain.Offence;
+import uk.gov.justice.probation.courtcasematcher.model.domain.PhoneNumber;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.ToLongFunction;
+
+/**
+ * FNV-1a hashes of a hearing and of each part of it that {@link IncomingHearingComparator} compares, built bottom up in
+ * a single pass so that each part is hashed once and a parent is hashed from its children's hashes. Two hearings with
+ * the same {@link #value()} would not be considered changed, and where the values differ the defendant and section
+ * hashes show which parts to look at.
+ * <p>
+ * Values are hashed by their string form. An absent part hashes to {@link #ABSENT}, which keeps a null name apart from
+ * a name whose fields are all null, as the comparators do. Must be kept in step with the comparators.
+ *
+ * @param defendants one per defendant of the hearing, in the same order
+ */
+public record HearingHash(long value, long urn, long hearingDays, List<DefendantHash> defendants) {
+
+    public static final long ABSENT = Fnv1aHasher.ABSENT;
+
+    /**
+     * @param value hash of the sections below, which does not include the defendantId
+     */
+    public record DefendantHash(long value, long details, long name, long address, long phoneNumber, long offences) {
+        static final DefendantHash NONE = new DefendantHash(ABSENT, ABSENT, ABSENT, ABSENT, ABSENT, ABSENT);
+    }
+
+    public static HearingHash of(Hearing hearing) {
+        final var urn = new Fnv1aHasher().put(hearing.getUrn()).value();
+        final var hearingDays = hashList(hearing.getHearingDays(), HearingHash::hashHearingDay);
+
+        final List<DefendantHash> defendants = new ArrayList<>();
+        final var hasher = new Fnv1aHasher().putHash(urn).putHash(hearingDays);
+        if (hearing.getDefendants() == null) {
+            hasher.put(null);
+        } else {
+            hasher.put(hearing.getDefendants().size());
+            hearing.getDefendants().forEach(defendant -> {
+                final var defendantHash = hashDefendant(defendant);
+                defendants.add(defendantHash);
+                hasher.putHash(defendantHash.value());
+            });
+        }
+        return new HearingHash(hasher.value(), urn, hearingDays, defendants);
+    }
+
+    static DefendantHash hashDefendant(Defendant defendant) {
+        if (defendant == null) {
+            return DefendantHash.NONE;
+        }
+        final var details = new Fnv1aHasher()
+                .put(defendant.getPnc())
+                .put(defendant.getCro())
+                .put(defendant.getSex())
+                .put(defendant.getType())
+                .put(defendant.getDateOfBirth())
+                .value();
+        final var name = hashName(defendant.getName());
+        final var address = hashAddress(defendant.getAddress());
+        final var phoneNumber = hashPhoneNumber(defendant.getPhoneNumber());
+        final var offences = hashList(defendant.getOffences(), HearingHash::hashOffence);
+        final var value = new Fnv1aHasher()
+                .putHash(details)
+                .putHash(name)
+                .putHash(address)
+                .putHash(phoneNumber)
+                .putHash(offences)
+                .value();
+        return new DefendantHash(value, details, name, address, phoneNumber, offences);
+    }
+
+    private static long hashHearingDay(HearingDay hearingDay) {
+        return new Fnv1aHasher()
+                .put(hearingDay.getCourtCode())
+                .put(hearingDay.getCourtRoom())
+                .put(hearingDay.getListNo())
+                .put(hearingDay.getSessionStartTime())
+                .value();
+    }
+
+    private static long hashName(Name name) {
+        return name == null ? ABSENT : new Fnv1aHasher().put(name.getFullName()).value();
+    }
+
+    private static long hashAddress(Address address) {
+        return address == null ? ABSENT : new Fnv1aHasher()
+                .put(address.getLine1())
+                .put(address.getLine2())
+                .put(address.getLine3())
+                .put(address.getLine4())
+                .put(address.getLine5())
+                .put(address.getPostcode())
+                .value();
+    }
+
+    private static long hashPhoneNumber(PhoneNumber phoneNumber) {
+        return phoneNumber == null ? ABSENT : new Fnv1aHasher()
+                .put(phoneNumber.getHome())
+                .put(phoneNumber.getMobile())
+                .put(phoneNumber.getWork())
+                .value();
+    }
+
+    private static long hashOffence(Offence offence) {
+        return new Fnv1aHasher()
+                .put(offence.getOffenceTitle())
+                .put(offence.getOffenceSummary())
+                .put(offence.getAct())
+                .put(offence.getSequenceNumber())
+                .put(offence.getListNo())
+                .value();
+    }
+
+    // Order matters, as it does to the comparators. A null list and an empty list hash differently.
+    private static <T> long hashList(List<T> list, ToLongFunction<T> hashElement) {
+        if (list == null) {
+            return ABSENT;
+        }
+        final var hasher = new Fnv1aHasher().put(list.size());
+        list.forEach(element -> hasher.putHash(element == null ? ABSENT : hashElement.applyAsLong(element)));
+        return hasher.value();
+    }
+}
@@ -13,11 +13,14 @@ import uk.gov.justice.probation.courtcasematcher.application.FeatureFlags;
 import uk.gov.justice.probation.courtcasematcher.model.domain.DataSource;
 import uk.gov.justice.probation.courtcasematcher.model.domain.Defendant;
 import uk.gov.justice.probation.courtcasematcher.model.domain.Hearing;
+import uk.gov.justice.probation.courtcasematcher.model.domain.HearingDelta;
 import uk.gov.justice.probation.courtcasematcher.model.mapper.HearingMapper;
 import uk.gov.justice.probation.courtcasematcher.service.CourtCaseService;
 import uk.gov.justice.probation.courtcasematcher.service.CprService;
+import uk.gov.justice.probation.courtcasematcher.service.HearingWriteCoalescer;
 import uk.gov.justice.probation.courtcasematcher.service.TelemetryService;
 
+import java.util.Optional;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
@@ -42,7 +45,17 @@ public class HearingProcessor {
 
     private final FeatureFlags featureFlags;
 
+    @NonNull
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+
+    @NonNull
+    private final HearingFingerprintStore hearingFingerprintStore;
+
+    @NonNull
+    private final HearingWriteCoalescer hearingWriteCoalescer;
+
     public void process(Hearing receivedHearing, String messageId) {
+        concurrencyLimiter.acquire();
         try {
             // New LIBRA cases will have no case or defendant ID, and we need to assign
             if (receivedHearing.getSource() == DataSource.LIBRA && receivedHearing.getCaseId() == null) {
@@ -53,45 +66,137 @@ public class HearingProcessor {
             log.error("Message processing failed.", ex);
             telemetryService.trackProcessingFailureEvent(receivedHearing);
             throw new RuntimeException(ex.getMessage(), ex);
+        } finally {
+            concurrencyLimiter.release();
         }
     }
 
+    public Mono<Void> processAsync(Hearing receivedHearing, String messageId) {
+        return processAsync(receivedHearing, messageId, false);
+    }
+
+    /**
+     * @param serialised true when no other update to the hearing can run until this one completes, as on a partition
+     *                   of the {@link KeyedHearingExecutor}, so that the hearing read before saving is still current and
+     *                   only what differs from it need be sent
+     */
+    public Mono<Void> processAsync(Hearing receivedHearing, String messageId, boolean serialised) {
+        return concurrencyLimiter.limit(Mono.defer(() -> {
+                    // New LIBRA cases will have no case or defendant ID, and we need to assign
+                    final var hearing = receivedHearing.getSource() == DataSource.LIBRA && receivedHearing.getCaseId() == null
+                            ? assignUuids(receivedHearing)
+                            : receivedHearing;
+                    return matchAndSaveHearingAsync(hearing, messageId, serialised);
+                }))
+                .doOnError(ex -> {
+                    log.error("Message processing failed.", ex);
+                    telemetryService.trackProcessingFailureEvent(receivedHearing);
+                });
+    }
+
     private void matchAndSaveHearing(Hearing receivedHearing, String messageId) {
+        if (hearingFingerprintStore.isUnchanged(receivedHearing)) {
+            telemetryService.trackHearingUnChangedEvent(receivedHearing);
+            return;
+        }
+        final var sequence = hearingWriteCoalescer.nextSequence();
         courtCaseService.findHearing(receivedHearing)
                 .blockOptional()
                 .ifPresentOrElse(
                         existingHearing -> {
                             if (hasCourtHearingChanged(receivedHearing, existingHearing)) {
                                 telemetryService.trackHearingChangedEvent(receivedHearing);
-                                mergeAndUpdateExistingHearing(receivedHearing, existingHearing);
+                                mergeAndUpdateExistingHearing(receivedHearing, existingHearing, sequence);
                             } else {
                                 telemetryService.trackHearingUnChangedEvent(receivedHearing);
+                                hearingFingerprintStore.record(receivedHearing);
                             }
                         },
                         () -> {
                             telemetryService.trackNewHearingEvent(receivedHearing, messageId);
-                            applyMatchesAndSave(receivedHearing);
+                            // Not recorded when the save was superseded by a later message's
+                            if (applyMatchesAndSave(receivedHearing, sequence)) {
+                                hearingFingerprintStore.record(receivedHearing);
+                            }
                         }
                 );
     }
 
-    private void mergeAndUpdateExistingHearing(Hearing receivedHearing, Hearing existingHearing) {
+    private Mono<Void> matchAndSaveHearingAsync(Hearing receivedHearing, String messageId, boolean serialised) {
+        if (hearingFingerprintStore.isUnchanged(receivedHearing)) {
+            telemetryService.trackHearingUnChangedEvent(receivedHearing);
+            return Mono.empty();
+        }
+        final var sequence = hearingWriteCoalescer.nextSequence();
+        return courtCaseService.findHearing(receivedHearing)
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty())
+                .flatMap(optionalExistingHearing -> optionalExistingHearing
+                        .map(existingHearing -> {
+                            if (hasCourtHearingChanged(receivedHearing, existingHearing)) {
+                                telemetryService.trackHearingChangedEvent(receivedHearing);
+                                return updateAndSaveAsync(HearingMapper.merge(receivedHearing, existingHearing), existingHearing, sequence, serialised);
+                            }
+                            telemetryService.trackHearingUnChangedEvent(receivedHearing);
+                            return Mono.just(true);
+                        })
+                        .orElseGet(() -> {
+                            telemetryService.trackNewHearingEvent(receivedHearing, messageId);
+                            return applyMatchesAndSaveAsync(receivedHearing, sequence);
+                        })
+                )
+                // Only reached once the hearing has been saved, or found to be unchanged, and not when the save was
+                // superseded by a later message's
+                .filter(Boolean::booleanValue)
+                .doOnNext(ignored -> hearingFingerprintStore.record(receivedHearing))
+                .then();
+    }
+
+    private void mergeAndUpdateExistingHearing(Hearing receivedHearing, Hearing existingHearing, long sequence) {
         var courtCaseMerged = HearingMapper.merge(receivedHearing, existingHearing);
-        updateAndSave(courtCaseMerged);
+        updateAndSave(courtCaseMerged, receivedHearing, sequence);
     }
 
-    private void applyMatchesAndSave(final Hearing hearing) {
+    private boolean applyMatchesAndSave(final Hearing hearing, long sequence) {
         cprService.updateDefendants(hearing.getDefendants());
-        courtCaseService.saveHearing(hearing);
+        return hearingWriteCoalescer.write(KeyedHearingExecutor.caseKeyOf(hearing), sequence,
+                heldBehind -> Mono.fromRunnable(() -> courtCaseService.saveHearing(hearing))).block();
     }
 
-    private void updateAndSave(final Hearing hearing) {
+    private void updateAndSave(final Hearing hearing, final Hearing receivedHearing, long sequence) {
         log.info("Upsert caseId {}", hearing.getCaseId());
         cprService.updateDefendants(hearing.getDefendants());
 
-        courtCaseService.updateProbationStatusDetail(hearing)
+        // Saved before returning, so that the message is only acknowledged once the hearing is saved
+        final var updatedHearing = courtCaseService.updateProbationStatusDetail(hearing)
                 .onErrorResume(t -> Mono.just(hearing))
-                .subscribe(courtCaseService::saveHearing);
+                .block();
+        // Saved in full, as another update to the hearing may have been saved since it was read
+        final boolean saved = hearingWriteCoalescer.write(KeyedHearingExecutor.caseKeyOf(hearing), sequence,
+                heldBehind -> Mono.fromRunnable(() -> courtCaseService.saveHearing(updatedHearing))).block();
+        // Not recorded when the save was superseded by a later message's
+        if (saved) {
+            hearingFingerprintStore.record(receivedHearing);
+        }
+    }
+
+    private Mono<Boolean> applyMatchesAndSaveAsync(final Hearing hearing, long sequence) {
+        return cprService.updateDefendantsAsync(hearing.getDefendants())
+                .then(Mono.defer(() -> hearingWriteCoalescer.write(KeyedHearingExecutor.caseKeyOf(hearing), sequence,
+                        heldBehind -> courtCaseService.saveHearingAsync(hearing))));
+    }
+
+    private Mono<Boolean> updateAndSaveAsync(final Hearing hearing, final Hearing existingHearing, long sequence, boolean serialised) {
+        log.info("Upsert caseId {}", hearing.getCaseId());
+        return cprService.updateDefendantsAsync(hearing.getDefendants())
+                .then(Mono.defer(() -> courtCaseService.updateProbationStatusDetail(hearing)
+                        .onErrorResume(t -> Mono.just(hearing))))
+                // Only what changed is sent when the existing hearing is known to be current, which it is not for a save
+                // held behind another of the same case or when other updates to the hearing may run meanwhile
+                .flatMap(updatedHearing -> hearingWriteCoalescer.write(KeyedHearingExecutor.caseKeyOf(hearing), sequence,
+                        heldBehind -> serialised && !heldBehind
+                                ? courtCaseService.saveHearingAsync(HearingDelta.between(updatedHearing, existingHearing))
+                                : courtCaseService.saveHearingAsync(updatedHearing)));
     }
 
     Hearing assignUuids(Hearing hearing) {
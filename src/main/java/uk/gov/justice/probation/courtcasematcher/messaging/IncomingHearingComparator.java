@@ -1,6 +1,9 @@
 package uk.gov.justice.probation.courtcasematcher.messaging;
 
+import uk.gov.justice.probation.courtcasematcher.messaging.HearingChangeSet.DefendantSection;
+import uk.gov.justice.probation.courtcasematcher.messaging.HearingHash.DefendantHash;
 import uk.gov.justice.probation.courtcasematcher.model.domain.Address;
+import uk.gov.justice.probation.courtcasematcher.model.domain.DataSource;
 import uk.gov.justice.probation.courtcasematcher.model.domain.Hearing;
 import uk.gov.justice.probation.courtcasematcher.model.domain.Defendant;
 import uk.gov.justice.probation.courtcasematcher.model.domain.HearingDay;
@@ -8,9 +11,15 @@ import uk.gov.justice.probation.courtcasematcher.model.domain.Name;
 import uk.gov.justice.probation.courtcasematcher.model.domain.Offence;
 import uk.gov.justice.probation.courtcasematcher.model.domain.PhoneNumber;
 
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import static java.util.Comparator.comparing;
 import static java.util.Comparator.naturalOrder;
@@ -53,53 +62,176 @@ public class IncomingHearingComparator {
 
 
     public static boolean hasCourtHearingChanged(Hearing hearing, Hearing hearingToCompare) {
+        return compare(hearing, hearingToCompare).hasChanges();
+    }
 
-        if (hasHearingDaysChanged(hearing.getHearingDays(), hearingToCompare.getHearingDays()) ||
-                hasDefendantsChanged(hearing.getDefendants(), hearingToCompare.getDefendants()) ||
-                hasDefendantOffencesChanged(hearing.getDefendants(), hearingToCompare.getDefendants())) {
-            return true;
+    /**
+     * Each received defendant is paired with its existing counterpart, by defendantId, or by position for LIBRA hearings
+     * (and any hearing where a defendant has no id). Their {@link HearingHash hashes} are compared from the hearing down,
+     * so that only the defendants and sections whose hashes differ are reported, and nothing is compared field by field.
+     */
+    public static HearingChangeSet compare(Hearing receivedHearing, Hearing existingHearing) {
+        return compare(receivedHearing, HearingHash.of(receivedHearing), existingHearing, HearingHash.of(existingHearing));
+    }
+
+    public static HearingChangeSet compare(Hearing receivedHearing, HearingHash receivedHash,
+                                           Hearing existingHearing, HearingHash existingHash) {
+        final var received = Optional.ofNullable(receivedHearing.getDefendants()).orElse(List.of());
+        final var existing = Optional.ofNullable(existingHearing.getDefendants()).orElse(List.of());
+        final var keyed = isKeyedByDefendantId(receivedHearing, received, existing);
+        if (receivedHash.value() == existingHash.value() && (!keyed || haveSameDefendantIds(received, existing))) {
+            return new HearingChangeSet(false, false, List.of(), List.of(), List.of());
         }
 
-        return hasHearingChanged(hearing, hearingToCompare);
+        final List<Defendant> added = new ArrayList<>();
+        final List<HearingChangeSet.DefendantChange> modified = new ArrayList<>();
+        final List<Defendant> removed = new ArrayList<>();
+        if (keyed) {
+            final Map<String, Integer> unmatched = new LinkedHashMap<>();
+            IntStream.range(0, existing.size()).forEach(i -> unmatched.put(existing.get(i).getDefendantId(), i));
+            IntStream.range(0, received.size()).forEach(i -> {
+                final var j = unmatched.remove(received.get(i).getDefendantId());
+                compareDefendant(received.get(i), receivedHash.defendants().get(i),
+                        j == null ? null : existing.get(j), j == null ? null : existingHash.defendants().get(j),
+                        added, modified);
+            });
+            unmatched.values().forEach(j -> removed.add(existing.get(j)));
+        } else {
+            IntStream.range(0, received.size()).forEach(i -> {
+                final var hasCounterpart = i < existing.size();
+                compareDefendant(received.get(i), receivedHash.defendants().get(i),
+                        hasCounterpart ? existing.get(i) : null, hasCounterpart ? existingHash.defendants().get(i) : null,
+                        added, modified);
+            });
+            removed.addAll(existing.subList(Math.min(received.size(), existing.size()), existing.size()));
+        }
+
+        return new HearingChangeSet(
+                receivedHash.urn() != existingHash.urn(),
+                receivedHash.hearingDays() != existingHash.hearingDays(),
+                added,
+                removed,
+                modified);
     }
 
-    private static boolean hasHearingChanged(Hearing hearing, Hearing hearingToCompare) {
-        return hearingComparator.compare(hearing, hearingToCompare) != 0;
+    /**
+     * Compares the hearings with the comparators above, field by field. This is the definition of a change which
+     * {@link HearingHash} must agree with, kept to check it against and as the baseline for benchmarks.
+     */
+    static HearingChangeSet compareFieldByField(Hearing receivedHearing, Hearing existingHearing) {
+        final var received = Optional.ofNullable(receivedHearing.getDefendants()).orElse(List.of());
+        final var existing = Optional.ofNullable(existingHearing.getDefendants()).orElse(List.of());
+
+        final List<Defendant> added = new ArrayList<>();
+        final List<HearingChangeSet.DefendantChange> modified = new ArrayList<>();
+        final List<Defendant> removed;
+        if (isKeyedByDefendantId(receivedHearing, received, existing)) {
+            final Map<String, Defendant> unmatched = new LinkedHashMap<>();
+            existing.forEach(defendant -> unmatched.put(defendant.getDefendantId(), defendant));
+            received.forEach(defendant -> compareDefendant(defendant, unmatched.remove(defendant.getDefendantId()), added, modified));
+            removed = new ArrayList<>(unmatched.values());
+        } else {
+            IntStream.range(0, received.size())
+                    .forEach(i -> compareDefendant(received.get(i), i < existing.size() ? existing.get(i) : null, added, modified));
+            removed = new ArrayList<>(existing.subList(Math.min(received.size(), existing.size()), existing.size()));
+        }
+
+        return new HearingChangeSet(
+                hasHearingChanged(receivedHearing, existingHearing),
+                hasHearingDaysChanged(receivedHearing.getHearingDays(), existingHearing.getHearingDays()),
+                added,
+                removed,
+                modified);
     }
 
-    private static boolean hasDefendantsChanged(List<Defendant> defendants, List<Defendant> defendantsToCompare) {
-        return areNotEqualIgnoringOrder(defendants, defendantsToCompare, defendantComparator) ||
-                hasDefendantNameChanged(defendants, defendantsToCompare) ||
-                hasDefendantAddressChanged(defendants, defendantsToCompare) ||
-                hasDefendantPhoneNumberChanged(defendants, defendantsToCompare);
+    /**
+     * Hash of the fields compared by {@link #hasCourtHearingChanged(Hearing, Hearing)}, so that two hearings with the
+     * same fingerprint would not be considered changed. The converse is not guaranteed: a changed hearing whose 64-bit
+     * fingerprint collides with the old one's, with a probability of about 2^-64 per comparison, is taken as unchanged
+     * and its save skipped. At a million updates a day that is expected about once in 5 x 10^10 years.
+     */
+    public static long fingerprint(Hearing hearing) {
+        return HearingHash.of(hearing).value();
     }
 
-    private static boolean hasHearingDaysChanged(List<HearingDay> hearingDays, List<HearingDay> hearingDaysToCompare) {
-        return areNotEqualIgnoringOrder(hearingDays, hearingDaysToCompare, hearingDayComparator);
+    private static boolean hasHearingChanged(Hearing hearing, Hearing hearingToCompare) {
+        return hearingComparator.compare(hearing, hearingToCompare) != 0;
+    }
+
+    private static boolean isKeyedByDefendantId(Hearing receivedHearing, List<Defendant> received, List<Defendant> existing) {
+        return receivedHearing.getSource() != DataSource.LIBRA
+                && Stream.concat(received.stream(), existing.stream()).allMatch(defendant -> defendant != null && defendant.getDefendantId() != null);
     }
 
-    private static boolean hasDefendantOffencesChanged(List<Defendant> defendants, List<Defendant> defendantsToCompare) {
-        return defendants.stream()
-                .anyMatch(defendantReceived -> defendantsToCompare.stream()
-                        .anyMatch(existingDefendant -> areNotEqualIgnoringOrder(defendantReceived.getOffences(), existingDefendant.getOffences(), offenceComparator)));
+    private static boolean haveSameDefendantIds(List<Defendant> received, List<Defendant> existing) {
+        return received.size() == existing.size()
+                && IntStream.range(0, received.size())
+                    .allMatch(i -> received.get(i).getDefendantId().equals(existing.get(i).getDefendantId()));
     }
 
-    private static boolean hasDefendantAddressChanged(List<Defendant> defendants, List<Defendant> defendantsToCompare) {
-        return defendants.stream()
-                .anyMatch(defendantReceived -> defendantsToCompare.stream()
-                        .anyMatch(existingDefendant -> addressComparator.compare(defendantReceived.getAddress(), existingDefendant.getAddress()) != 0));
+    private static void compareDefendant(Defendant received, DefendantHash receivedHash, Defendant existing, DefendantHash existingHash,
+                                         List<Defendant> added, List<HearingChangeSet.DefendantChange> modified) {
+        if (existing == null) {
+            added.add(received);
+            return;
+        }
+        if (received != null && receivedHash.value() == existingHash.value()) {
+            return;
+        }
+        final var sections = EnumSet.noneOf(DefendantSection.class);
+        if (received == null || receivedHash.details() != existingHash.details()) {
+            sections.add(DefendantSection.DETAILS);
+        }
+        if (received != null) {
+            if (receivedHash.name() != existingHash.name()) {
+                sections.add(DefendantSection.NAME);
+            }
+            if (receivedHash.address() != existingHash.address()) {
+                sections.add(DefendantSection.ADDRESS);
+            }
+            if (receivedHash.phoneNumber() != existingHash.phoneNumber()) {
+                sections.add(DefendantSection.PHONE_NUMBER);
+            }
+            if (receivedHash.offences() != existingHash.offences()) {
+                sections.add(DefendantSection.OFFENCES);
+            }
+        }
+        if (!sections.isEmpty()) {
+            modified.add(new HearingChangeSet.DefendantChange(received, existing, sections));
+        }
     }
 
-    private static boolean hasDefendantNameChanged(List<Defendant> defendants, List<Defendant> defendantsToCompare) {
-        return defendants.stream()
-                .anyMatch(defendantReceived -> defendantsToCompare.stream()
-                        .anyMatch(existingDefendant -> defendantNameComparator.compare(defendantReceived.getName(), existingDefendant.getName()) != 0));
+    private static void compareDefendant(Defendant received, Defendant existing,
+                                         List<Defendant> added, List<HearingChangeSet.DefendantChange> modified) {
+        if (existing == null) {
+            added.add(received);
+            return;
+        }
+        final var sections = EnumSet.noneOf(DefendantSection.class);
+        if (defendantComparator.compare(received, existing) != 0) {
+            sections.add(DefendantSection.DETAILS);
+        }
+        if (received != null) {
+            if (defendantNameComparator.compare(received.getName(), existing.getName()) != 0) {
+                sections.add(DefendantSection.NAME);
+            }
+            if (addressComparator.compare(received.getAddress(), existing.getAddress()) != 0) {
+                sections.add(DefendantSection.ADDRESS);
+            }
+            if (defendantPhoneNumberComparator.compare(received.getPhoneNumber(), existing.getPhoneNumber()) != 0) {
+                sections.add(DefendantSection.PHONE_NUMBER);
+            }
+            if (areNotEqualIgnoringOrder(received.getOffences(), existing.getOffences(), offenceComparator)) {
+                sections.add(DefendantSection.OFFENCES);
+            }
+        }
+        if (!sections.isEmpty()) {
+            modified.add(new HearingChangeSet.DefendantChange(received, existing, sections));
+        }
     }
 
-    private static boolean hasDefendantPhoneNumberChanged(List<Defendant> defendants, List<Defendant> defendantsToCompare) {
-        return defendants.stream()
-                .anyMatch(defendantReceived -> defendantsToCompare.stream()
-                        .anyMatch(existingDefendant -> defendantPhoneNumberComparator.compare(defendantReceived.getPhoneNumber(), existingDefendant.getPhoneNumber()) != 0));
+    private static boolean hasHearingDaysChanged(List<HearingDay> hearingDays, List<HearingDay> hearingDaysToCompare) {
+        return areNotEqualIgnoringOrder(hearingDays, hearingDaysToCompare, hearingDayComparator);
     }
 
     private static <T> boolean areNotEqualIgnoringOrder(List<T> list1, List<T> list2, Comparator<? super T> comparator) {
@@ -0,0 +1,226 @@
+package uk.gov.justice.probation.courtcasematcher.messaging;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+import uk.gov.justice.probation.courtcasematcher.model.domain.Hearing;
+import uk.gov.justice.probation.courtcasematcher.model.domain.HearingDay;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+import static java.util.Objects.requireNonNullElse;
+
+/**
+ * Runs hearings on a fixed set of serial partitions chosen by hearing key. Work for the same hearing is run strictly in
+ * the order its messages were received while unrelated hearings are processed in parallel across partitions.
+ * <p>
+ * A message takes its place in that order with {@link #receive()} before it is extracted, and its hearings reach their
+ * partitions only once every message received before it has been dispatched or abandoned, so a message which is
+ * quicker to extract cannot overtake an earlier one. Each partition subscribes to one hearing's work at a time and
+ * starts the next when it completes, without holding a thread while it waits.
+ */
+@Component
+@Slf4j
+public class KeyedHearingExecutor {
+
+    static final String PARTITION_DEPTH_METRIC = "hearing.processing.partition.depth";
+    static final String PARTITION_SKEW_METRIC = "hearing.processing.partition.skew";
+
+    private final List<Partition> partitions;
+
+    // Receipts not yet dispatched to the partitions, in order of receipt
+    private final Deque<Receipt> receipts = new ArrayDeque<>();
+
+    public KeyedHearingExecutor(@Value("${hearing-processing.partitioned.partitions:0}") int partitionCount,
+                                MeterRegistry meterRegistry) {
+        final var count = partitionCount > 0 ? partitionCount : Runtime.getRuntime().availableProcessors();
+        this.partitions = IntStream.range(0, count)
+                .mapToObj(i -> new Partition())
+                .toList();
+
+        IntStream.range(0, count).forEach(i ->
+                Gauge.builder(PARTITION_DEPTH_METRIC, partitions.get(i), Partition::depth)
+                        .description("Hearings queued or running on a processing partition")
+                        .tag("partition", String.valueOf(i))
+                        .register(meterRegistry));
+        Gauge.builder(PARTITION_SKEW_METRIC, this, KeyedHearingExecutor::skew)
+                .description("Depth of the busiest partition relative to the mean partition depth. 1.0 is evenly balanced")
+                .register(meterRegistry);
+    }
+
+    /**
+     * The key under which updates to the same hearing are ordered. New LIBRA hearings have no IDs until they are
+     * assigned, so fall back to court code and case number.
+     */
+    public static String keyOf(Hearing hearing) {
+        if (hearing.getHearingId() != null) {
+            return hearing.getHearingId();
+        }
+        if (hearing.getCaseId() != null) {
+            return hearing.getCaseId();
+        }
+        final var courtCode = Optional.ofNullable(hearing.getHearingDays())
+                .flatMap(hearingDays -> hearingDays.stream().findFirst())
+                .map(HearingDay::getCourtCode)
+                .orElse(null);
+        return String.format("%s:%s", courtCode, hearing.getCaseNo());
+    }
+
+    /**
+     * The key of one case of a hearing, under which later versions of it supersede earlier ones. A Common Platform
+     * hearing is extracted as one {@link Hearing} per prosecution case, all with the same hearing ID, so the key of the
+     * hearing alone would let one case supersede another.
+     */
+    public static String caseKeyOf(Hearing hearing) {
+        if (hearing.getHearingId() != null && hearing.getCaseId() != null) {
+            return hearing.getHearingId() + ":" + hearing.getCaseId();
+        }
+        return keyOf(hearing);
+    }
+
+    /**
+     * Takes the next place in the order of receipt. Called on receipt of a message, before it is extracted, and the
+     * receipt must then be either dispatched or abandoned, as messages received after it wait until it is.
+     */
+    public Receipt receive() {
+        final var receipt = new Receipt();
+        synchronized (receipts) {
+            receipts.add(receipt);
+        }
+        return receipt;
+    }
+
+    CompletableFuture<Void> submit(String key, Supplier<Mono<Void>> work) {
+        final var task = new Task(key, work);
+        receive().ready(List.of(task));
+        return task.result;
+    }
+
+    int partitionFor(String key) {
+        return Math.floorMod(requireNonNullElse(key, "").hashCode(), partitions.size());
+    }
+
+    double skew() {
+        final var depths = partitions.stream().mapToInt(Partition::depth).toArray();
+        final var total = IntStream.of(depths).sum();
+        if (total == 0) {
+            return 1.0d;
+        }
+        final var mean = (double) total / depths.length;
+        return IntStream.of(depths).max().orElse(0) / mean;
+    }
+
+    // Emits to the partitions only under the lock, in order of receipt, which also keeps each partition's emits serial
+    private void dispatchReady() {
+        synchronized (receipts) {
+            while (!receipts.isEmpty() && receipts.peek().tasks != null) {
+                receipts.poll().tasks.forEach(task -> partitions.get(partitionFor(task.key)).submit(task));
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        log.info("Shutting down {} hearing processing partitions", partitions.size());
+        partitions.forEach(Partition::shutdown);
+    }
+
+    public final class Receipt {
+        // Guarded by receipts. Null until the message is dispatched or abandoned
+        private List<Task> tasks;
+
+        private Receipt() {
+        }
+
+        /**
+         * @return completes once every hearing has been processed, or exceptionally if any failed
+         */
+        public CompletableFuture<Void> dispatch(List<Hearing> hearings, Function<Hearing, Mono<Void>> processing) {
+            final var hearingTasks = hearings.stream()
+                    .map(hearing -> new Task(keyOf(hearing), () -> processing.apply(hearing)))
+                    .toList();
+            ready(hearingTasks);
+            return CompletableFuture.allOf(hearingTasks.stream()
+                    .map(task -> task.result)
+                    .toArray(CompletableFuture[]::new));
+        }
+
+        /**
+         * Gives up the place of a message which will not be dispatched, as it was rejected or could not be extracted
+         */
+        public void abandon() {
+            ready(List.of());
+        }
+
+        private void ready(List<Task> readyTasks) {
+            synchronized (receipts) {
+                if (tasks != null) {
+                    return;
+                }
+                tasks = readyTasks;
+            }
+            dispatchReady();
+        }
+    }
+
+    private static final class Task {
+        private final String key;
+        private final Supplier<Mono<Void>> work;
+        private final CompletableFuture<Void> result = new CompletableFuture<>();
+
+        private Task(String key, Supplier<Mono<Void>> work) {
+            this.key = key;
+            this.work = work;
+        }
+
+        // Subscribed on boundedElastic so that the work is never started on the thread dispatching it. A failure
+        // completes only this task's result, and the partition carries on with the next
+        private Mono<Void> run() {
+            return Mono.defer(work)
+                    .subscribeOn(Schedulers.boundedElastic())
+                    .doOnSuccess(ignored -> result.complete(null))
+                    .doOnError(result::completeExceptionally)
+                    .onErrorResume(e -> Mono.empty());
+        }
+    }
+
+    private static final class Partition {
+        private final Sinks.Many<Task> tasks = Sinks.many().unicast().onBackpressureBuffer();
+        private final AtomicInteger depth = new AtomicInteger();
+        private final Disposable worker;
+
+        private Partition() {
+            worker = tasks.asFlux()
+                    .concatMap(task -> task.run().doFinally(signal -> depth.decrementAndGet()), 1)
+                    .subscribe();
+        }
+
+        private void submit(Task task) {
+            depth.incrementAndGet();
+            tasks.emitNext(task, Sinks.EmitFailureHandler.FAIL_FAST);
+        }
+
+        private int depth() {
+            return depth.get();
+        }
+
+        private void shutdown() {
+            worker.dispose();
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package uk.gov.justice.probation.courtcasematcher.messaging;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import uk.gov.justice.probation.courtcasematcher.fingerprint.Fnv1aHasher;
+import uk.gov.justice.probation.courtcasematcher.model.SnsMessageContainer;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Drops exact replays of an SNS notification (SQS redeliveries and upstream re-publishes) before any parsing of the
+ * inner message or call to a downstream service. A notification is identified by its SNS MessageId and a hash of its
+ * Message body, and is only remembered once the SQS message which carried it has been processed successfully, so a
+ * message which failed is still retried on redelivery. Remembered notifications expire after the TTL and the oldest are
+ * evicted once max-entries is reached, each entry costing roughly 200 bytes.
+ */
+@Component
+@Slf4j
+public class MessageDeduplicator {
+
+    static final String HIT_METRIC = "hearing.message.dedup.hits";
+    static final String MISS_METRIC = "hearing.message.dedup.misses";
+    static final String EVICTION_METRIC = "hearing.message.dedup.evictions";
+    static final String SIZE_METRIC = "hearing.message.dedup.size";
+
+    private final boolean enabled;
+    private final Duration ttl;
+    private final int maxEntries;
+    private final Clock clock;
+
+    // Insertion order is expiry order as every entry has the same TTL
+    private final LinkedHashMap<String, Instant> processed = new LinkedHashMap<>();
+    private final Map<String, String> inFlight = new ConcurrentHashMap<>();
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter expiredEvictions;
+    private final Counter capacityEvictions;
+
+    @Autowired
+    public MessageDeduplicator(@Value("${hearing-processing.dedup.enabled:false}") boolean enabled,
+                               @Value("${hearing-processing.dedup.ttl-seconds:600}") long ttlSeconds,
+                               @Value("${hearing-processing.dedup.max-entries:100000}") int maxEntries,
+                               MeterRegistry meterRegistry) {
+        this(enabled, Duration.ofSeconds(ttlSeconds), maxEntries, meterRegistry, Clock.systemUTC());
+    }
+
+    MessageDeduplicator(boolean enabled, Duration ttl, int maxEntries, MeterRegistry meterRegistry, Clock clock) {
+        this.enabled = enabled;
+        this.ttl = ttl;
+        this.maxEntries = maxEntries;
+        this.clock = clock;
+
+        hits = Counter.builder(HIT_METRIC)
+                .description("SNS notifications dropped as replays of one already processed")
+                .register(meterRegistry);
+        misses = Counter.builder(MISS_METRIC)
+                .description("SNS notifications not seen before")
+                .register(meterRegistry);
+        expiredEvictions = Counter.builder(EVICTION_METRIC)
+                .description("Processed SNS notifications forgotten by the dedup cache")
+                .tag("cause", "expired")
+                .register(meterRegistry);
+        capacityEvictions = Counter.builder(EVICTION_METRIC)
+                .description("Processed SNS notifications forgotten by the dedup cache")
+                .tag("cause", "capacity")
+                .register(meterRegistry);
+        Gauge.builder(SIZE_METRIC, this, MessageDeduplicator::size)
+                .description("Processed SNS notifications remembered by the dedup cache")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @param snsMessageContainer the parsed SNS envelope
+     * @param messageId the id of the SQS message carrying the envelope, later passed to {@link #complete(String)} or
+     *                  {@link #abandon(String)}
+     * @return true if an identical notification has already been processed and this one should be dropped
+     */
+    public boolean isReplay(SnsMessageContainer snsMessageContainer, String messageId) {
+        return isReplay(snsMessageContainer.getMessageId(), Fnv1aHasher.hash(snsMessageContainer.getMessage()), messageId);
+    }
+
+    /**
+     * As {@link #isReplay(SnsMessageContainer, String)}, for an envelope read without materialising its Message.
+     *
+     * @param messageHash {@link Fnv1aHasher} hash of the Message body
+     */
+    public boolean isReplay(String snsMessageId, long messageHash, String messageId) {
+        if (!enabled) {
+            return false;
+        }
+        final var key = snsMessageId + ":" + Long.toHexString(messageHash);
+        synchronized (processed) {
+            evictExpired();
+            if (processed.containsKey(key)) {
+                hits.increment();
+                return true;
+            }
+        }
+        misses.increment();
+        inFlight.put(messageId, key);
+        return false;
+    }
+
+    public void complete(String messageId) {
+        final var key = inFlight.remove(messageId);
+        if (key == null) {
+            return;
+        }
+        synchronized (processed) {
+            processed.remove(key);
+            processed.put(key, clock.instant().plus(ttl));
+            while (processed.size() > maxEntries) {
+                final var eldest = processed.keySet().iterator();
+                eldest.next();
+                eldest.remove();
+                capacityEvictions.increment();
+            }
+        }
+    }
+
+    public void abandon(String messageId) {
+        inFlight.remove(messageId);
+    }
+
+    int size() {
+        synchronized (processed) {
+            return processed.size();
+        }
+    }
+
+    private void evictExpired() {
+        final var now = clock.instant();
+        final var entries = processed.values().iterator();
+        while (entries.hasNext() && !entries.next().isAfter(now)) {
+            entries.remove();
+            expiredEvictions.increment();
+        }
+    }
+}
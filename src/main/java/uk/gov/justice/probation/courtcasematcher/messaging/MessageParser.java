@@ -9,6 +9,8 @@ import org.springframework.stereotype.Service;
 import jakarta.validation.ConstraintViolation;
 import jakarta.validation.ConstraintViolationException;
 import jakarta.validation.Validator;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Set;
 
 @Service
@@ -30,6 +32,13 @@ public class MessageParser<T> {
         return message;
     }
 
+    public T parseMessage (final InputStream messageStream, final Class<T> type) throws IOException {
+        JavaType javaType = mapper.getTypeFactory().constructType(type);
+        T message = mapper.readValue(messageStream, javaType);
+        validate(message);
+        return message;
+    }
+
     private void validate(T messageType) {
         Set<ConstraintViolation<Object>> errors = validator.validate(messageType);
         if (!errors.isEmpty()) {
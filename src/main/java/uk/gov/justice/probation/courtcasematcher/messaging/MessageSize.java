@@ -0,0 +1,19 @@
+package uk.gov.justice.probation.courtcasematcher.messaging;
+
+/**
+ * Where the hearing payload of an SQS message is, and roughly how large it is, known before the message is extracted
+ *
+ * @param fromS3 true when the message is a pointer to a large hearing stored in S3
+ * @param payloadBytes size of the hearing payload, the S3 object for a pointer or the SQS message otherwise. Inline
+ *                     payloads are counted in chars, which for JSON is close enough to bytes.
+ */
+record MessageSize(boolean fromS3, long payloadBytes) {
+
+    static MessageSize inline(String payload) {
+        return new MessageSize(false, payload.length());
+    }
+
+    static MessageSize fromS3(long objectBytes) {
+        return new MessageSize(true, objectBytes);
+    }
+}
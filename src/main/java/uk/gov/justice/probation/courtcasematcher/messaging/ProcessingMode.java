@@ -0,0 +1,15 @@
+package uk.gov.justice.probation.courtcasematcher.messaging;
+
+/**
+ * How a received SQS message is taken through extraction, matching and saving.
+ * BLOCKING processes on the listener thread, REACTIVE returns a single non-blocking chain to the listener
+ * container, which acknowledges the message when the chain completes. VIRTUAL_THREADS runs the blocking path on a
+ * virtual thread per message, also acknowledging on completion. PARTITIONED runs each hearing on a partition chosen
+ * by hearing key, so updates to the same hearing stay ordered while unrelated hearings run in parallel.
+ */
+public enum ProcessingMode {
+    BLOCKING,
+    REACTIVE,
+    VIRTUAL_THREADS,
+    PARTITIONED
+}
@@ -0,0 +1,61 @@
+package uk.gov.justice.probation.courtcasematcher.messaging;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import uk.gov.justice.probation.courtcasematcher.messaging.model.S3Message;
+
+import java.io.IOException;
+
+/**
+ * Reads the bucket and key out of the pointer which the SNS extended client library publishes in place of a large
+ * message, in a single pass over the tokens, e.g.
+ * <pre>
+ * ["software.amazon.payloadoffloading.PayloadS3Pointer", {"s3BucketName": "bucket", "s3Key": "key"}]
+ * </pre>
+ */
+final class S3PointerDecoder {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private S3PointerDecoder() {
+    }
+
+    static S3Message decode(String pointer) throws IOException {
+        try (var parser = JSON_FACTORY.createParser(pointer)) {
+            return decode(parser);
+        }
+    }
+
+    /**
+     * @param parser positioned before the start of the pointer
+     */
+    static S3Message decode(JsonParser parser) throws IOException {
+        expect(parser, JsonToken.START_ARRAY);
+        expect(parser, JsonToken.VALUE_STRING);
+        expect(parser, JsonToken.START_OBJECT);
+
+        String bucketName = null;
+        String key = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final var fieldName = parser.currentName();
+            parser.nextToken();
+            switch (fieldName) {
+                case "s3BucketName" -> bucketName = parser.getValueAsString();
+                case "s3Key" -> key = parser.getValueAsString();
+                default -> parser.skipChildren();
+            }
+        }
+        if (key == null || key.isBlank()) {
+            throw new JsonParseException(parser, "S3 pointer has no s3Key");
+        }
+        return new S3Message(bucketName, key);
+    }
+
+    private static void expect(JsonParser parser, JsonToken expected) throws IOException {
+        if (parser.nextToken() != expected) {
+            throw new JsonParseException(parser, "Expected " + expected + " in S3 pointer but was " + parser.currentToken());
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package uk.gov.justice.probation.courtcasematcher.messaging;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.ConstraintViolationException;
+import jakarta.validation.Validator;
+import org.springframework.stereotype.Component;
+import uk.gov.justice.probation.courtcasematcher.fingerprint.Fnv1aHasher;
+import uk.gov.justice.probation.courtcasematcher.messaging.model.MessageType;
+import uk.gov.justice.probation.courtcasematcher.model.MessageAttribute;
+import uk.gov.justice.probation.courtcasematcher.model.MessageAttributes;
+
+import java.io.IOException;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Single pass alternative to parsing the SNS envelope into a {@link uk.gov.justice.probation.courtcasematcher.model.SnsMessageContainer}
+ * and then parsing its Message string a second time. The escaped Message is tokenised straight out of the envelope
+ * parser's buffer into a {@link TokenBuffer}, so the inner JSON is never copied into an intermediate String. The
+ * tokens are held until the MessageAttributes (which SNS writes after the Message) say what type to bind them to.
+ */
+@Component
+public class SnsEnvelopeParser {
+
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+
+    public SnsEnvelopeParser(ObjectMapper objectMapper, Validator validator) {
+        this.objectMapper = objectMapper;
+        this.validator = validator;
+    }
+
+    public SnsEnvelope parse(String payload) throws IOException {
+        try (var parser = objectMapper.getFactory().createParser(payload)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw JsonMappingException.from(parser, "Expected SNS envelope to be a JSON object");
+            }
+            String messageId = null;
+            MessageAttributes messageAttributes = null;
+            TokenBuffer message = null;
+            long messageHash = 0;
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final var fieldName = parser.currentName();
+                parser.nextToken();
+                switch (fieldName) {
+                    case "MessageId" -> messageId = parser.getValueAsString();
+                    case "MessageAttributes" -> messageAttributes = objectMapper.readValue(parser, MessageAttributes.class);
+                    case "Message" -> {
+                        if (parser.currentToken() != JsonToken.VALUE_STRING || parser.getTextLength() == 0) {
+                            throw JsonMappingException.from(parser, "SNS envelope Message must not be blank");
+                        }
+                        messageHash = Fnv1aHasher.hash(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+                        message = bufferMessage(parser);
+                    }
+                    default -> parser.skipChildren();
+                }
+            }
+            if (message == null) {
+                throw JsonMappingException.from(parser, "SNS envelope has no Message");
+            }
+            return new SnsEnvelope(messageId, messageAttributes, messageHash, message);
+        }
+    }
+
+    /**
+     * Binds and validates the Message of the envelope. May be called more than once for the same envelope.
+     */
+    public <T> T readMessage(SnsEnvelope envelope, Class<T> type) throws IOException {
+        try (var parser = envelope.message().asParser(objectMapper)) {
+            final T message = objectMapper.readValue(parser, type);
+            final Set<ConstraintViolation<Object>> errors = validator.validate(message);
+            if (!errors.isEmpty()) {
+                throw new ConstraintViolationException(errors);
+            }
+            return message;
+        }
+    }
+
+    private TokenBuffer bufferMessage(JsonParser envelopeParser) throws IOException {
+        // The text characters are only valid until the envelope parser moves on, so the Message is consumed in full here
+        try (var messageParser = objectMapper.getFactory().createParser(envelopeParser.getTextCharacters(),
+                envelopeParser.getTextOffset(), envelopeParser.getTextLength())) {
+            messageParser.nextToken();
+            return TokenBuffer.asCopyOfValue(messageParser);
+        }
+    }
+
+    public record SnsEnvelope(String messageId, MessageAttributes messageAttributes, long messageHash, TokenBuffer message) {
+
+        public MessageType getMessageType() {
+            return Optional.ofNullable(messageAttributes)
+                    .map(MessageAttributes::getMessageType)
+                    .orElse(MessageType.NONE);
+        }
+
+        public HearingEventType getHearingEventType() {
+            return Optional.ofNullable(messageAttributes)
+                    .map(MessageAttributes::getHearingEventType)
+                    .orElse(null);
+        }
+
+        public String getEventType() {
+            return Optional.ofNullable(messageAttributes)
+                    .map(MessageAttributes::getEventType)
+                    .map(MessageAttribute::getValue)
+                    .orElse(null);
+        }
+
+        /**
+         * @return the size of the S3 object a large message pointer refers to, when the publisher declared it
+         */
+        public Long getExtendedPayloadSize() {
+            return Optional.ofNullable(messageAttributes)
+                    .map(MessageAttributes::getExtendedPayloadSize)
+                    .map(MessageAttribute::getValue)
+                    .map(Long::valueOf)
+                    .orElse(null);
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package uk.gov.justice.probation.courtcasematcher.messaging;
+
+import io.awspring.cloud.sqs.annotation.SqsListener;
+import io.awspring.cloud.sqs.listener.SqsHeaders;
+import io.awspring.cloud.sqs.listener.Visibility;
+import io.awspring.cloud.sqs.listener.acknowledgement.BatchAcknowledgement;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.messaging.Message;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import uk.gov.justice.probation.courtcasematcher.messaging.HearingAdmissionController.Admission;
+import uk.gov.justice.probation.courtcasematcher.messaging.HearingAdmissionController.AdmissionRejectedException;
+import uk.gov.justice.probation.courtcasematcher.model.domain.Hearing;
+import uk.gov.justice.probation.courtcasematcher.restclient.exception.DownstreamUnavailableException;
+import uk.gov.justice.probation.courtcasematcher.service.BatchLookupCache;
+import uk.gov.justice.probation.courtcasematcher.service.TelemetryService;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Batch alternative to {@link SqsMessageReceiver}. All messages from a poll are parsed together, each case of a hearing
+ * appearing in several messages is processed once using its latest version, and CPR and offender search lookups are
+ * shared across the batch. Each message is acknowledged individually once every hearing it carried has been saved, so one bad
+ * payload is redelivered (and eventually dead-lettered) on its own.
+ * <p>
+ * Like {@link SqsMessageReceiver}, each message is admitted by the {@link HearingAdmissionController} before anything
+ * is downloaded for it, and its hearings are processed within the {@link AdaptiveConcurrencyLimiter}. The messages of a
+ * batch are admitted together, so that one cannot wait on room held by another, and their admissions are held until the
+ * whole batch completes. A message which is not admitted is made visible again for a later batch.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "hearing-processing.batch.enabled", havingValue = "true")
+public class SqsBatchMessageReceiver {
+
+    private final HearingProcessor hearingProcessor;
+
+    private final TelemetryService telemetryService;
+
+    private final HearingExtractor hearingExtractor;
+
+    private final MessageDeduplicator messageDeduplicator;
+
+    private final HearingAdmissionController admissionController;
+
+    private final int concurrency;
+
+    public SqsBatchMessageReceiver(HearingProcessor hearingProcessor,
+                                   TelemetryService telemetryService,
+                                   HearingExtractor hearingExtractor,
+                                   MessageDeduplicator messageDeduplicator,
+                                   HearingAdmissionController admissionController,
+                                   @Value("${hearing-processing.batch.concurrency:4}") int concurrency) {
+        this.hearingProcessor = hearingProcessor;
+        this.telemetryService = telemetryService;
+        this.hearingExtractor = hearingExtractor;
+        this.messageDeduplicator = messageDeduplicator;
+        this.admissionController = admissionController;
+        this.concurrency = concurrency;
+    }
+
+    @SqsListener(
+        value = "courtcasesqueue",
+        factory = "hmppsQueueContainerFactoryProxy",
+        maxConcurrentMessages = "${hmpps.sqs.queues.courtcasesqueue.maxConcurrentMessages:3}",
+        maxMessagesPerPoll = "${hearing-processing.batch.max-messages-per-poll:10}",
+        acknowledgementMode = "MANUAL"
+    )
+    public CompletableFuture<Void> receive(List<Message<String>> messages, BatchAcknowledgement<String> acknowledgement) {
+        log.info("Received batch of {} messages from SQS queue", messages.size());
+
+        final List<Admission> admissions = new ArrayList<>();
+        final var admittedMessages = admit(messages, admissions);
+        // Downloads of large hearings run while the messages ahead of them are extracted
+        admittedMessages.forEach(message -> hearingExtractor.prefetchLargeHearing(message.getPayload()));
+        final var batch = new HearingBatch();
+        admittedMessages.forEach(batch::add);
+
+        return Flux.fromIterable(batch.latestHearings())
+                .flatMap(pending -> hearingProcessor.processAsync(pending.hearing(), pending.messageId())
+                        .thenReturn(pending.key())
+                        // Failure is logged and tracked by the processor, the message is left unacknowledged
+                        .onErrorResume(e -> {
+                            DownstreamUnavailableException.causeOf(e).ifPresent(unavailable -> batch.unavailable(pending.key(), unavailable));
+                            return Mono.empty();
+                        }), concurrency)
+                .collect(Collectors.toSet())
+                .map(batch::completedMessages)
+                .doOnNext(batch::recordDedupOutcomes)
+                .doOnNext(batch::returnUnavailableMessages)
+                .filter(completed -> !completed.isEmpty())
+                .flatMap(completed -> Mono.fromFuture(acknowledgement.acknowledgeAsync(completed)))
+                .contextWrite(BatchLookupCache.context(new BatchLookupCache()))
+                .doFinally(signal -> admissions.forEach(Admission::release))
+                .toFuture();
+    }
+
+    private List<Message<String>> admit(List<Message<String>> messages, List<Admission> admissions) {
+        final List<Optional<Admission>> batchAdmissions;
+        try {
+            batchAdmissions = admissionController.admitAll(messages.stream()
+                    .map(message -> hearingExtractor.sizeOf(message.getPayload()))
+                    .toList());
+        } catch (AdmissionRejectedException e) {
+            messages.forEach(message -> returnToQueue(message, e.getMessage(), admissionController.getRejectedVisibilitySeconds()));
+            return List.of();
+        }
+        final List<Message<String>> admittedMessages = new ArrayList<>();
+        for (int i = 0; i < messages.size(); i++) {
+            final var message = messages.get(i);
+            batchAdmissions.get(i).ifPresentOrElse(admission -> {
+                admissions.add(admission);
+                admittedMessages.add(message);
+            }, () -> returnToQueue(message, "no room in its lane", admissionController.getRejectedVisibilitySeconds()));
+        }
+        return admittedMessages;
+    }
+
+    private static void returnToQueue(Message<String> message, String reason, int visibilitySeconds) {
+        log.info("Returning message {} in batch to the queue for {}s: {}", message.getHeaders().getId(), visibilitySeconds, reason);
+        final var visibility = message.getHeaders().get(SqsHeaders.SQS_VISIBILITY_TIMEOUT_HEADER, Visibility.class);
+        if (visibility != null) {
+            visibility.changeToAsync(visibilitySeconds);
+        }
+    }
+
+    private record PendingHearing(String key, Hearing hearing, String messageId) {
+    }
+
+    private record ReceivedMessage(Message<String> message, Set<String> hearingKeys) {
+    }
+
+    private class HearingBatch {
+        private final Map<String, PendingHearing> latestByKey = new LinkedHashMap<>();
+        private final List<ReceivedMessage> receivedMessages = new ArrayList<>();
+        // Hearings which failed as a downstream refused the call, with how long until it may accept calls again
+        private final Map<String, DownstreamUnavailableException> unavailableByKey = new ConcurrentHashMap<>();
+
+        void add(Message<String> message) {
+            final var messageId = String.valueOf(message.getHeaders().getId());
+            telemetryService.trackHearingMessageReceivedEvent(messageId);
+            try {
+                final var hearings = hearingExtractor.extractHearings(message.getPayload(), messageId)
+                        .stream()
+                        .filter(Hearing::isValidHearingForProcessing)
+                        .toList();
+                // Later messages in the batch carry a later version of the hearing's case, which supersedes the earlier one
+                hearings.forEach(hearing -> {
+                    final var key = KeyedHearingExecutor.caseKeyOf(hearing);
+                    latestByKey.remove(key);
+                    latestByKey.put(key, new PendingHearing(key, hearing, messageId));
+                });
+                receivedMessages.add(new ReceivedMessage(message, hearings.stream()
+                        .map(KeyedHearingExecutor::caseKeyOf)
+                        .collect(Collectors.toSet())));
+            } catch (RuntimeException e) {
+                log.error("Failed to extract hearings from message {} in batch, it will not be acknowledged", messageId, e);
+                messageDeduplicator.abandon(messageId);
+            }
+        }
+
+        List<PendingHearing> latestHearings() {
+            return List.copyOf(latestByKey.values());
+        }
+
+        List<Message<String>> completedMessages(Set<String> processedKeys) {
+            return receivedMessages.stream()
+                    .filter(receivedMessage -> processedKeys.containsAll(receivedMessage.hearingKeys()))
+                    .map(ReceivedMessage::message)
+                    .toList();
+        }
+
+        void unavailable(String key, DownstreamUnavailableException e) {
+            unavailableByKey.put(key, e);
+        }
+
+        // Made visible again once every downstream they were refused by may accept calls, rather than after the
+        // queue's visibility timeout
+        void returnUnavailableMessages(List<Message<String>> completedMessages) {
+            receivedMessages.stream()
+                    .filter(receivedMessage -> !completedMessages.contains(receivedMessage.message()))
+                    .forEach(receivedMessage -> receivedMessage.hearingKeys().stream()
+                            .map(unavailableByKey::get)
+                            .filter(Objects::nonNull)
+                            .max(Comparator.comparingInt(DownstreamUnavailableException::getRetryAfterSeconds))
+                            .ifPresent(unavailable -> returnToQueue(receivedMessage.message(), unavailable.getMessage(),
+                                    unavailable.getRetryAfterSeconds())));
+        }
+
+        // Only completed messages are remembered by the deduplicator, the rest are retried in full on redelivery
+        void recordDedupOutcomes(List<Message<String>> completedMessages) {
+            receivedMessages.stream()
+                    .map(ReceivedMessage::message)
+                    .forEach(message -> {
+                        final var messageId = String.valueOf(message.getHeaders().getId());
+                        if (completedMessages.contains(message)) {
+                            messageDeduplicator.complete(messageId);
+                        } else {
+                            messageDeduplicator.abandon(messageId);
+                        }
+                    });
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package uk.gov.justice.probation.courtcasematcher.messaging;
 
 import io.awspring.cloud.sqs.annotation.SqsListener;
+import io.awspring.cloud.sqs.listener.Visibility;
+import io.awspring.cloud.sqs.listener.acknowledgement.Acknowledgement;
 import jakarta.validation.constraints.NotEmpty;
 import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
@@ -8,12 +10,26 @@ import lombok.NoArgsConstructor;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import uk.gov.justice.probation.courtcasematcher.messaging.HearingAdmissionController.Admission;
+import uk.gov.justice.probation.courtcasematcher.messaging.HearingAdmissionController.AdmissionRejectedException;
+import uk.gov.justice.probation.courtcasematcher.model.domain.Hearing;
+import uk.gov.justice.probation.courtcasematcher.restclient.exception.DownstreamUnavailableException;
 import uk.gov.justice.probation.courtcasematcher.service.TelemetryService;
 
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
 @Slf4j
 @Component
+@ConditionalOnProperty(name = "hearing-processing.batch.enabled", havingValue = "false", matchIfMissing = true)
 @AllArgsConstructor
 @NoArgsConstructor(access = AccessLevel.PRIVATE, force = true)
 public class SqsMessageReceiver {
@@ -28,25 +44,148 @@ public class SqsMessageReceiver {
     @NonNull
     private final HearingExtractor hearingExtractor;
 
+    @Autowired
+    private final VirtualThreadHearingExecutor virtualThreadHearingExecutor;
+
+    @Autowired
+    private final KeyedHearingExecutor keyedHearingExecutor;
+
+    @Autowired
+    private final MessageDeduplicator messageDeduplicator;
+
+    @Autowired
+    private final HearingAdmissionController admissionController;
+
+    @Value("${hearing-processing.mode:BLOCKING}")
+    private final ProcessingMode processingMode;
+
     @SqsListener(
         value = "courtcasesqueue",
         factory = "hmppsQueueContainerFactoryProxy",
-        maxConcurrentMessages = "${hmpps.sqs.queues.courtcasesqueue.maxConcurrentMessages:3}",
-        maxMessagesPerPoll = "${hmpps.sqs.queues.courtcasesqueue.maxMessagesPerPoll:3}"
+        // Raised to the adaptive limiter's max-limit when it is enabled, so that the limiter rather than the listener caps concurrency
+        maxConcurrentMessages = "#{${hearing-processing.adaptive-limit.enabled:false} ? ${hearing-processing.adaptive-limit.max-limit:50} : ${hmpps.sqs.queues.courtcasesqueue.maxConcurrentMessages:3}}",
+        maxMessagesPerPoll = "${hmpps.sqs.queues.courtcasesqueue.maxMessagesPerPoll:3}",
+        acknowledgementMode = "MANUAL"
     )
-    public void receive(
+    public CompletableFuture<Void> receive(
             @NotEmpty String message,
-            @Header(value = "id") String messageId){
+            @Header(value = "id") String messageId,
+            Acknowledgement acknowledgement,
+            Visibility visibility){
         log.info("Received JSON message from SQS queue with messageId: {}. ", messageId);
 
         telemetryService.trackHearingMessageReceivedEvent(messageId);
-        final var hearings = hearingExtractor.extractHearings(message, messageId);
 
-        hearings.forEach(hearing -> {
-            if (hearing.isValidHearingForProcessing()) {
-                hearingProcessor.process(hearing, messageId);
+        final CompletableFuture<Void> result;
+        try {
+            result = dispatch(message, messageId, visibility);
+        } catch (AdmissionRejectedException e) {
+            return rejected(messageId, e);
+        } catch (RuntimeException e) {
+            messageDeduplicator.abandon(messageId);
+            final var unavailable = DownstreamUnavailableException.causeOf(e);
+            if (unavailable.isPresent()) {
+                return unavailable(messageId, visibility, unavailable.get());
+            }
+            throw e;
+        }
+        // Only a successfully processed message is remembered, so a failed one is still retried on redelivery
+        return result
+                .whenComplete((ignored, e) -> {
+                    if (e == null) {
+                        messageDeduplicator.complete(messageId);
+                    } else {
+                        messageDeduplicator.abandon(messageId);
+                    }
+                })
+                .thenCompose(ignored -> acknowledgement.acknowledgeAsync())
+                .exceptionallyCompose(e -> {
+                    if (e.getCause() instanceof AdmissionRejectedException rejection) {
+                        return rejected(messageId, rejection);
+                    }
+                    return DownstreamUnavailableException.causeOf(e)
+                            .map(unavailable -> unavailable(messageId, visibility, unavailable))
+                            .orElseGet(() -> CompletableFuture.failedFuture(e));
+                });
+    }
+
+    private CompletableFuture<Void> dispatch(String message, String messageId, Visibility visibility) {
+        return switch (processingMode) {
+            // The message is acknowledged only once the returned future completes. Admission and extraction may block,
+            // so they run on boundedElastic rather than holding up the listener thread
+            case REACTIVE -> Mono.fromCallable(() -> admit(message, visibility))
+                    .flatMap(admission -> Mono.fromCallable(() -> extractValidHearings(message, messageId))
+                            .flatMapMany(Flux::fromIterable)
+                            .concatMap(hearing -> hearingProcessor.processAsync(hearing, messageId))
+                            .then()
+                            .doFinally(signal -> admission.release()))
+                    .subscribeOn(Schedulers.boundedElastic())
+                    .toFuture();
+            case VIRTUAL_THREADS -> virtualThreadHearingExecutor.submit(() -> admitted(message, messageId, visibility, hearings -> process(hearings, messageId)));
+            // The message takes its place in the order on receipt, before it is extracted. processAsync only completes
+            // once the hearing is saved, so the next update for the same key cannot overtake it
+            case PARTITIONED -> {
+                final var receipt = keyedHearingExecutor.receive();
+                try {
+                    yield admitted(message, messageId, visibility, hearings ->
+                            receipt.dispatch(hearings, hearing -> hearingProcessor.processAsync(hearing, messageId, true)));
+                } catch (RuntimeException e) {
+                    receipt.abandon();
+                    throw e;
+                }
             }
-        });
+            case BLOCKING -> admitted(message, messageId, visibility, hearings -> process(hearings, messageId));
+        };
+    }
+
+    // A rejected message has already been made visible again, so it is neither acknowledged nor failed
+    private CompletableFuture<Void> rejected(String messageId, AdmissionRejectedException e) {
+        log.info("Returning message {} to the queue: {}", messageId, e.getMessage());
+        messageDeduplicator.abandon(messageId);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    // Made visible again once the downstream may accept calls, rather than after the queue's visibility timeout
+    private CompletableFuture<Void> unavailable(String messageId, Visibility visibility, DownstreamUnavailableException e) {
+        log.info("Returning message {} to the queue for {}s: {}", messageId, e.getRetryAfterSeconds(), e.getMessage());
+        messageDeduplicator.abandon(messageId);
+        visibility.changeToAsync(e.getRetryAfterSeconds());
+        return CompletableFuture.completedFuture(null);
+    }
+
+    private CompletableFuture<Void> process(List<Hearing> hearings, String messageId) {
+        hearings.forEach(hearing -> hearingProcessor.process(hearing, messageId));
+        return CompletableFuture.completedFuture(null);
+    }
+
+    // The admission is held, counting against its lane, from before the message is extracted until processing of its
+    // hearings completes
+    private CompletableFuture<Void> admitted(String message, String messageId, Visibility visibility,
+                                             Function<List<Hearing>, CompletableFuture<Void>> processing) {
+        final var admission = admit(message, visibility);
+        final CompletableFuture<Void> processed;
+        try {
+            processed = processing.apply(extractValidHearings(message, messageId));
+        } catch (RuntimeException e) {
+            admission.release();
+            throw e;
+        }
+        return processed.whenComplete((ignored, e) -> admission.release());
+    }
+
+    private List<Hearing> extractValidHearings(String message, String messageId) {
+        return hearingExtractor.extractHearings(message, messageId)
+                .stream()
+                .filter(Hearing::isValidHearingForProcessing)
+                .toList();
+    }
 
+    private Admission admit(String message, Visibility visibility) {
+        try {
+            return admissionController.admit(hearingExtractor.sizeOf(message));
+        } catch (AdmissionRejectedException e) {
+            visibility.changeToAsync(admissionController.getRejectedVisibilitySeconds());
+            throw e;
+        }
     }
 }
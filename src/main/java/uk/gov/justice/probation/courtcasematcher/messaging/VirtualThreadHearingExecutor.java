@@ -0,0 +1,61 @@
+package uk.gov.justice.probation.courtcasematcher.messaging;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Runs blocking message processing on virtual threads. A per-pod ceiling on concurrently executing tasks stops a burst
+ * of messages from turning into an unbounded burst of calls to court-case-service and the other downstreams. Tasks over
+ * the ceiling park their (cheap) virtual thread until a permit is free.
+ */
+@Component
+@Slf4j
+public class VirtualThreadHearingExecutor {
+
+    static final String IN_FLIGHT_METRIC = "hearing.processing.virtual.inflight";
+    static final String WAITING_METRIC = "hearing.processing.virtual.waiting";
+
+    private final ExecutorService executor;
+    private final Semaphore permits;
+    private final int maxConcurrency;
+
+    public VirtualThreadHearingExecutor(@Value("${hearing-processing.virtual-threads.max-concurrency:200}") int maxConcurrency,
+                                        MeterRegistry meterRegistry) {
+        this.maxConcurrency = maxConcurrency;
+        this.permits = new Semaphore(maxConcurrency, true);
+        this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("hearing-processor-", 0).factory());
+
+        Gauge.builder(IN_FLIGHT_METRIC, permits, semaphore -> this.maxConcurrency - semaphore.availablePermits())
+                .description("Hearing messages currently being processed on virtual threads")
+                .register(meterRegistry);
+        Gauge.builder(WAITING_METRIC, permits, Semaphore::getQueueLength)
+                .description("Hearing messages waiting for the virtual thread concurrency ceiling")
+                .register(meterRegistry);
+    }
+
+    public CompletableFuture<Void> submit(Runnable task) {
+        return CompletableFuture.runAsync(() -> {
+            permits.acquireUninterruptibly();
+            try {
+                task.run();
+            } finally {
+                permits.release();
+            }
+        }, executor);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        log.info("Shutting down virtual thread hearing executor");
+        executor.shutdown();
+    }
+}
@@ -20,4 +20,12 @@ public class MessageAttributes {
 
     @JsonProperty("hearingEventType")
     private final HearingEventType hearingEventType;
+
+    // Set by the SNS extended client on a large message pointer, to the size of the payload it stored in S3
+    @JsonProperty("ExtendedPayloadSize")
+    private final MessageAttribute extendedPayloadSize;
+
+    public MessageAttributes(MessageAttribute eventType, MessageType messageType, HearingEventType hearingEventType) {
+        this(eventType, messageType, hearingEventType, null);
+    }
 }
@@ -17,7 +17,7 @@ import java.util.Optional;
 import static org.springframework.util.StringUtils.hasText;
 
 @Data
-@Builder
+@Builder(toBuilder = true)
 @With
 @AllArgsConstructor
 @NoArgsConstructor(access = AccessLevel.PRIVATE, force = true)
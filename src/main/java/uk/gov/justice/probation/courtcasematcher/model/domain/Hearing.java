@@ -15,7 +15,7 @@ import java.util.List;
 import java.util.Optional;
 
 @Data
-@Builder
+@Builder(toBuilder = true)
 @With
 @AllArgsConstructor
 @NoArgsConstructor(access = AccessLevel.PRIVATE, force = true)
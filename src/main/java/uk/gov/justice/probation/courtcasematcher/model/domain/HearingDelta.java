@@ -0,0 +1,91 @@
+package uk.gov.justice.probation.courtcasematcher.model.domain;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Value;
+import lombok.With;
+import uk.gov.justice.probation.courtcasematcher.restclient.model.courtcaseservice.CCSDefendant;
+import uk.gov.justice.probation.courtcasematcher.restclient.model.courtcaseservice.CCSHearingDay;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * The hearing to be saved, with what differs from the version court-case-service already holds. A partial delta can be
+ * sent as a PATCH carrying only the changed defendants; a delta which is not partial must be saved in full.
+ * <p>
+ * A PATCH leaves whatever it does not carry as it is, so a delta is only safe to send while the version it was taken
+ * against is still current. Otherwise a change saved meanwhile which this delta does not touch survives, or one it
+ * reverts is not sent.
+ */
+@Value
+@With
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class HearingDelta {
+    Hearing hearing;
+    boolean partial;
+    boolean hearingDaysChanged;
+    List<Defendant> changedDefendants;
+    List<String> removedDefendantIds;
+
+    public static HearingDelta full(Hearing hearing) {
+        return new HearingDelta(hearing, false, true, hearing.getDefendants(), Collections.emptyList());
+    }
+
+    /**
+     * Defendants are paired by defendantId, which merging with the existing hearing has already aligned. When a
+     * defendant has no id the pairing is not safe, and the delta is full.
+     * <p>
+     * Defendants and hearing days are compared as they would be sent to court-case-service, so that fields it does not
+     * hold, such as the offender matches found while matching, do not make an otherwise unchanged defendant count as
+     * changed.
+     */
+    public static HearingDelta between(Hearing hearing, Hearing existingHearing) {
+        final var defendants = Optional.ofNullable(hearing.getDefendants()).orElse(List.of());
+        final var existingDefendants = Optional.ofNullable(existingHearing.getDefendants()).orElse(List.of());
+        if (Stream.concat(defendants.stream(), existingDefendants.stream())
+                .anyMatch(defendant -> defendant == null || defendant.getDefendantId() == null)) {
+            return full(hearing);
+        }
+
+        final Map<String, Defendant> unmatched = new LinkedHashMap<>();
+        existingDefendants.forEach(defendant -> unmatched.put(defendant.getDefendantId(), defendant));
+        final List<Defendant> changed = new ArrayList<>();
+        defendants.forEach(defendant -> {
+            final var existingDefendant = unmatched.remove(defendant.getDefendantId());
+            if (existingDefendant == null || !CCSDefendant.of(defendant).equals(CCSDefendant.of(existingDefendant))) {
+                changed.add(defendant);
+            }
+        });
+
+        return new HearingDelta(hearing,
+                true,
+                !Objects.equals(asSaved(hearing.getHearingDays()), asSaved(existingHearing.getHearingDays())),
+                changed,
+                new ArrayList<>(unmatched.keySet()));
+    }
+
+    private static List<CCSHearingDay> asSaved(List<HearingDay> hearingDays) {
+        return hearingDays == null ? null : hearingDays.stream()
+                .map(CCSHearingDay::of)
+                .toList();
+    }
+
+    /**
+     * Share of the hearing's defendants which would be sent in a PATCH, counting removals. 1 for a full delta.
+     */
+    public double changedFraction() {
+        if (!partial) {
+            return 1.0d;
+        }
+        final var defendantCount = Optional.ofNullable(hearing.getDefendants()).map(List::size).orElse(0)
+                + removedDefendantIds.size();
+        return defendantCount == 0 ? 0.0d : (double) (changedDefendants.size() + removedDefendantIds.size()) / defendantCount;
+    }
+}
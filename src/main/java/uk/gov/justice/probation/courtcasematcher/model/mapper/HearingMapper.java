@@ -25,10 +25,13 @@ import uk.gov.justice.probation.courtcasematcher.restclient.model.offendersearch
 import uk.gov.justice.probation.courtcasematcher.restclient.model.offendersearch.MatchResponse;
 import uk.gov.justice.probation.courtcasematcher.restclient.model.offendersearch.OSOffender;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Objects;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -95,65 +98,75 @@ public class HearingMapper {
     }
 
     public static Hearing merge(Hearing incomingCase, Hearing existingHearing) {
-        return existingHearing
-                .withHearingDays(incomingCase.getHearingDays())
-                .withUrn(incomingCase.getUrn())
+        return existingHearing.toBuilder()
+                .hearingDays(incomingCase.getHearingDays())
+                .urn(incomingCase.getUrn())
 
-                // PK fields
-                .withCaseNo(existingHearing.getCaseNo())
-                .withCaseId(Optional.ofNullable(existingHearing.getCaseId()).orElse(incomingCase.getCaseId()))
-                .withHearingId(Optional.ofNullable(existingHearing.getHearingId()).orElse(incomingCase.getHearingId()))
-                .withHearingEventType(incomingCase.getHearingEventType())
+                // PK fields, caseNo is kept from existing
+                .caseId(Optional.ofNullable(existingHearing.getCaseId()).orElse(incomingCase.getCaseId()))
+                .hearingId(Optional.ofNullable(existingHearing.getHearingId()).orElse(incomingCase.getHearingId()))
+                .hearingEventType(incomingCase.getHearingEventType())
 
                 // Fields to be updated from incoming
-                .withDefendants(mergeDefendants(incomingCase.getDefendants(), existingHearing.getDefendants(), incomingCase.getSource()))
-                .withCaseMarkers(incomingCase.getCaseMarkers());
+                .defendants(mergeDefendants(incomingCase.getDefendants(), existingHearing.getDefendants(), incomingCase.getSource()))
+                .caseMarkers(incomingCase.getCaseMarkers())
+                .build();
 
     }
 
     private static List<Defendant> mergeDefendants(List<Defendant> incoming, List<Defendant> existingDefendants, DataSource source) {
-        return incoming.stream()
-                .map(defendant -> merge(defendant, findExistingDefendant(defendant, existingDefendants, source)))
-                .collect(Collectors.toList());
+        final Function<Defendant, Defendant> findExisting = existingDefendantFinder(existingDefendants, source);
+        final List<Defendant> merged = new ArrayList<>(incoming.size());
+        for (Defendant defendant : incoming) {
+            merged.add(merge(defendant, findExisting.apply(defendant)));
+        }
+        return merged;
     }
 
-    private static Defendant merge(Defendant incoming, Optional<Defendant> optionalExisting) {
-        return optionalExisting
-                .map(existing -> incoming
-                        // Fields to be retained from existing court case
-                        .withDefendantId(existing.getDefendantId())
-                        .withBreach(existing.getBreach())
-                        .withPreviouslyKnownTerminationDate(existing.getPreviouslyKnownTerminationDate())
-                        .withCrn(existing.getCrn())
-                        .withProbationStatus(existing.getProbationStatus())
-                        .withSuspendedSentenceOrder(existing.getSuspendedSentenceOrder())
-                        .withPnc(existing.getPnc())
-                        .withPreSentenceActivity(existing.getPreSentenceActivity())
-                        .withConfirmedOffender(existing.getConfirmedOffender())
-                        .withPersonId(existing.getPersonId())
-                        .withCId(existing.getCId() != null ?  existing.getCId() : incoming.getCId())
-                )
-                .orElse(incoming);
+    // Copies incoming once, overlaying the fields retained from the existing defendant
+    private static Defendant merge(Defendant incoming, Defendant existing) {
+        if (existing == null) {
+            return incoming;
+        }
+        return incoming.toBuilder()
+                // Fields to be retained from existing court case
+                .defendantId(existing.getDefendantId())
+                .breach(existing.getBreach())
+                .previouslyKnownTerminationDate(existing.getPreviouslyKnownTerminationDate())
+                .crn(existing.getCrn())
+                .probationStatus(existing.getProbationStatus())
+                .suspendedSentenceOrder(existing.getSuspendedSentenceOrder())
+                .pnc(existing.getPnc())
+                .preSentenceActivity(existing.getPreSentenceActivity())
+                .confirmedOffender(existing.getConfirmedOffender())
+                .personId(existing.getPersonId())
+                .cId(existing.getCId() != null ? existing.getCId() : incoming.getCId())
+                .build();
     }
 
-    private static Optional<Defendant> findExistingDefendant(Defendant defendant, List<Defendant> existingDefendants, DataSource source) {
+    /**
+     * LIBRA hearings have a single defendant, merged with the first existing one. Otherwise defendants are looked up by
+     * defendantId in an index built once per hearing, the first existing defendant winning where ids repeat.
+     */
+    private static Function<Defendant, Defendant> existingDefendantFinder(List<Defendant> existingDefendants, DataSource source) {
         if (source == DataSource.LIBRA) {
-            return Optional.ofNullable(existingDefendants)
-                    .map(defendants -> defendants.get(0));
+            final var first = existingDefendants == null || existingDefendants.isEmpty() ? null : existingDefendants.get(0);
+            return defendant -> first;
         }
 
-        return existingDefendants.stream()
-                .filter(existingDefendant -> Objects.equals(existingDefendant.getDefendantId(), defendant.getDefendantId()))
-                .findFirst();
+        final Map<String, Defendant> byDefendantId = new HashMap<>(existingDefendants.size() * 2);
+        existingDefendants.forEach(existing -> byDefendantId.putIfAbsent(existing.getDefendantId(), existing));
+        return defendant -> byDefendantId.get(defendant.getDefendantId());
     }
 
     public static Defendant merge(ProbationStatusDetail probationStatusDetail, Defendant existingDefendant) {
-        return existingDefendant
-                        .withBreach(probationStatusDetail.getInBreach())
-                        .withPreSentenceActivity(probationStatusDetail.isPreSentenceActivity())
-                        .withPreviouslyKnownTerminationDate(probationStatusDetail.getPreviouslyKnownTerminationDate())
-                        .withProbationStatus(probationStatusDetail.getStatus())
-                        .withAwaitingPsr(probationStatusDetail.isAwaitingPsr());
+        return existingDefendant.toBuilder()
+                        .breach(probationStatusDetail.getInBreach())
+                        .preSentenceActivity(probationStatusDetail.isPreSentenceActivity())
+                        .previouslyKnownTerminationDate(probationStatusDetail.getPreviouslyKnownTerminationDate())
+                        .probationStatus(probationStatusDetail.getStatus())
+                        .awaitingPsr(probationStatusDetail.isAwaitingPsr())
+                        .build();
     }
 
     public static Defendant updateDefendantWithMatches(Defendant defendant, MatchResponse matchResponse) {
@@ -4,6 +4,7 @@ import lombok.AllArgsConstructor;
 import lombok.NoArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
@@ -13,16 +14,23 @@ import org.springframework.web.reactive.function.client.ClientResponse;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import uk.gov.justice.probation.courtcasematcher.fingerprint.OffenderMatchFingerprintStore;
 import uk.gov.justice.probation.courtcasematcher.model.domain.Defendant;
 import uk.gov.justice.probation.courtcasematcher.model.domain.GroupedOffenderMatches;
 import uk.gov.justice.probation.courtcasematcher.model.domain.Hearing;
+import uk.gov.justice.probation.courtcasematcher.model.domain.HearingDelta;
 import uk.gov.justice.probation.courtcasematcher.restclient.exception.HearingNotFoundException;
 import uk.gov.justice.probation.courtcasematcher.restclient.model.courtcaseservice.CCSExtendedHearing;
 import uk.gov.justice.probation.courtcasematcher.restclient.model.courtcaseservice.CCSGroupedOffenderMatchesRequest;
+import uk.gov.justice.probation.courtcasematcher.restclient.model.courtcaseservice.CCSHearingPatch;
 
 import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static uk.gov.justice.probation.courtcasematcher.restclient.OffenderSearchRestClient.EXCEPTION_RETRY_FILTER;
 
 @Component("court-case-rest-client")
 @AllArgsConstructor
@@ -40,6 +48,21 @@ public class CourtCaseServiceClient {
     @Autowired
     private CourtCaseServiceRestHelper restHelper;
 
+    @Value("${hearing-processing.partial-update.enabled:false}")
+    private boolean partialUpdateEnabled;
+
+    @Value("${hearing-processing.partial-update.max-changed-fraction:0.5}")
+    private double maxChangedFraction;
+
+    @Value("${hearing-processing.partial-update.unsupported-backoff-ms:600000}")
+    private long unsupportedBackoffMs;
+
+    @Autowired
+    private OffenderMatchFingerprintStore offenderMatchFingerprintStore;
+
+    // PATCH is not tried until then, after court-case-service last answered it with 405 or 501
+    private final AtomicReference<Instant> patchUnsupportedUntil = new AtomicReference<>(Instant.MIN);
+
     private static final String courtCaseByHearingIdTemplate = "/hearing/%s";
 
     public Mono<Hearing> getHearing(String hearingId) {
@@ -90,6 +113,51 @@ public class CourtCaseServiceClient {
                 .then();
     }
 
+    /**
+     * Sends only the changed parts of the hearing as a PATCH, falling back to a full PUT when partial updates are
+     * disabled, the delta is full or covers more than max-changed-fraction of the defendants, or court-case-service
+     * does not support the PATCH. Once it has answered 405 or 501, PATCH is not tried again for unsupported-backoff-ms,
+     * after which the next partial delta probes whether it has since been deployed.
+     * <p>
+     * Unlike a PUT, a PATCH is not last writer wins, so the delta must be against a hearing read while no other update
+     * to it could be saved.
+     */
+    public Mono<Void> patchHearing(HearingDelta delta) {
+        if (!partialUpdateEnabled || !delta.isPartial() || Instant.now().isBefore(patchUnsupportedUntil.get())
+                || delta.changedFraction() > maxChangedFraction) {
+            return putHearing(delta.getHearing());
+        }
+        final var patch = CCSHearingPatch.of(delta);
+        final var hearingId = patch.getHearingId();
+        final var path = String.format(courtCaseByHearingIdTemplate, hearingId);
+        return restHelper.patchObject(path, patch, CCSHearingPatch.class)
+                .retrieve()
+                .toBodilessEntity()
+                .doOnSuccess(response -> log.debug("PATCH succeeded for the hearing at {} with {} defendants", path, patch.getDefendants().size()))
+                .retryWhen(restHelper.buildRetrySpec(
+                        String.format("Initial PATCH retry failed for hearingId %s", hearingId),
+                        (attemptNo, maxAttempts) -> String.format("PATCH retry failed for hearingId %s at attempt %s of %s", hearingId, attemptNo, maxAttempts))
+                        .filter(throwable -> !isPatchNotApplied(throwable) && EXCEPTION_RETRY_FILTER.test(throwable))
+                )
+                .then()
+                .onErrorResume(CourtCaseServiceClient::isPatchNotApplied, e -> {
+                    final var status = ((WebClientResponseException) e).getStatusCode();
+                    if (!HttpStatus.NOT_FOUND.equals(status)) {
+                        log.warn("PATCH of hearings not supported by court case service ({}), saving in full for the next {}ms", status, unsupportedBackoffMs);
+                        patchUnsupportedUntil.set(Instant.now().plusMillis(unsupportedBackoffMs));
+                    }
+                    return putHearing(delta.getHearing());
+                });
+    }
+
+    // 404 when court-case-service does not hold the hearing, which a PUT will create
+    private static boolean isPatchNotApplied(Throwable throwable) {
+        return throwable instanceof WebClientResponseException e
+                && (HttpStatus.NOT_FOUND.equals(e.getStatusCode())
+                    || HttpStatus.METHOD_NOT_ALLOWED.equals(e.getStatusCode())
+                    || HttpStatus.NOT_IMPLEMENTED.equals(e.getStatusCode()));
+    }
+
     private Mono<Void> postOffenderMatches(String caseId, String defendantId, GroupedOffenderMatches offenderMatches) {
         if (offenderMatches == null) {
             return Mono.empty();
@@ -97,6 +165,11 @@ public class CourtCaseServiceClient {
 
         final var path = String.format("/defendant/%s/grouped-offender-matches", defendantId);
         final var request = CCSGroupedOffenderMatchesRequest.of(offenderMatches);
+        final var fingerprint = OffenderMatchFingerprintStore.fingerprint(request);
+        if (offenderMatchFingerprintStore.isUnchanged(defendantId, fingerprint)) {
+            log.debug("Skipping POST of unchanged offender matches for case id {} and defendant id {}", caseId, defendantId);
+            return Mono.empty();
+        }
 
         return restHelper.postObject(path, request, CCSGroupedOffenderMatchesRequest.class)
             .retrieve()
@@ -107,6 +180,7 @@ public class CourtCaseServiceClient {
                     .map(HttpEntity::getHeaders)
                     .map((HttpHeaders headers) -> headers.getFirst(HttpHeaders.LOCATION))
                     .orElse("[NOT FOUND]")))
+            .doOnNext(responseEntity -> offenderMatchFingerprintStore.record(defendantId, fingerprint))
             .doOnError(throwable -> log.error(String.format(ERR_MSG_FORMAT_POST_MATCHES, caseId), throwable))
             .then();
     }
@@ -62,6 +62,16 @@ public class CourtCaseServiceRestHelper {
         return addSpecAuthAttribute(spec, path);
     }
 
+    WebClient.RequestHeadersSpec<?> patchObject(String path, Object obj, Class<?> type) {
+        WebClient.RequestHeadersSpec<?> spec = webClient
+                .patch()
+                .uri(uriBuilder -> uriBuilder.path(path).build())
+                .body(Mono.just(obj), type)
+                .accept(MediaType.APPLICATION_JSON);
+
+        return addSpecAuthAttribute(spec, path);
+    }
+
     WebClient.RequestHeadersSpec<?> addSpecAuthAttribute(WebClient.RequestHeadersSpec<?> spec, String path) {
         if (disableAuthentication) {
             return spec;
@@ -1,6 +1,8 @@
 package uk.gov.justice.probation.courtcasematcher.restclient;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
@@ -16,6 +18,7 @@ import uk.gov.justice.probation.courtcasematcher.restclient.exception.CprCanonic
 import uk.gov.justice.probation.courtcasematcher.restclient.model.cprservice.CprDefendant;
 
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 
 @Component
 @Slf4j
@@ -25,18 +28,33 @@ public class CprServiceClient {
 
     private final WebClient webClient;
 
-    public CprServiceClient(@Qualifier("personRecordServiceWebClient") WebClient webClient) {
+    private final LookupCache<CprDefendant> cache;
+
+    @Autowired
+    public CprServiceClient(@Qualifier("personRecordServiceWebClient") WebClient webClient,
+                            @Value("${hearing-processing.cpr-cache.enabled:false}") boolean cacheEnabled,
+                            @Value("${hearing-processing.cpr-cache.ttl-seconds:900}") long ttlSeconds,
+                            @Value("${hearing-processing.cpr-cache.negative-ttl-seconds:120}") long negativeTtlSeconds,
+                            @Value("${hearing-processing.cpr-cache.refresh-ahead-fraction:0.8}") double refreshAheadFraction,
+                            @Value("${hearing-processing.cpr-cache.max-entries:20000}") int maxEntries,
+                            MeterRegistry meterRegistry) {
+        this(webClient, new LookupCache<>("cpr", cacheEnabled, Duration.ofSeconds(ttlSeconds), Duration.ofSeconds(negativeTtlSeconds),
+                refreshAheadFraction, maxEntries, meterRegistry));
+    }
+
+    CprServiceClient(WebClient webClient, LookupCache<CprDefendant> cache) {
         this.webClient = webClient;
+        this.cache = cache;
     }
 
     public Mono<CprDefendant> getCprCanonicalRecordByCommonPlatformId(String defendantId) {
         final String path = String.format("/person/commonplatform/%s", defendantId);
-        return getCprRecord(path, defendantId);
+        return cache.get("commonplatform:" + defendantId, () -> getCprRecord(path, defendantId));
     }
 
     public Mono<CprDefendant> getCprCanonicalRecordByLibraId(String cId) {
         final String path = String.format("/person/libra/%s", cId);
-        return getCprRecord(path, cId);
+        return cache.get("libra:" + cId, () -> getCprRecord(path, cId));
     }
 
     private Mono<CprDefendant> getCprRecord(String path, String identifier) {
@@ -0,0 +1,282 @@
+package uk.gov.justice.probation.courtcasematcher.restclient;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import reactor.core.publisher.Mono;
+import uk.gov.justice.probation.courtcasematcher.restclient.exception.DownstreamUnavailableException;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A circuit breaker and a bulkhead for each downstream service, applied to its WebClient as a filter. A call which the
+ * circuit or bulkhead refuses fails at once with a {@link DownstreamUnavailableException}, which is never retried. The
+ * listeners make the hearing's message visible again once the circuit is due to half open, or after
+ * rejected-visibility-seconds, rather than leaving it to wait out the queue's visibility timeout.
+ * <ul>
+ *     <li>The circuit opens once failure-rate-threshold of the last window-size calls failed, given at least
+ *     minimum-calls of them. Like {@link uk.gov.justice.probation.courtcasematcher.messaging.AdaptiveConcurrencyLimiter},
+ *     a 5xx or 429 response, or no response at all, is a failure.</li>
+ *     <li>After open-duration-ms the circuit is half open and lets half-open-calls trial calls through. It closes once
+ *     they all succeed, and opens again as soon as one fails.</li>
+ *     <li>The bulkhead refuses a call while max-concurrent-calls to the same downstream are in flight.</li>
+ * </ul>
+ * Registers downstream.circuit.state (0 closed, 1 open, 2 half open), downstream.circuit.transitions, tagged with the
+ * state changed to, downstream.calls.rejected, tagged with the reason, and downstream.bulkhead.inflight, all tagged
+ * with the downstream.
+ */
+@Component
+@Slf4j
+public class DownstreamCircuitBreakers {
+
+    static final String STATE_METRIC = "downstream.circuit.state";
+    static final String TRANSITIONS_METRIC = "downstream.circuit.transitions";
+    static final String REJECTED_METRIC = "downstream.calls.rejected";
+    static final String IN_FLIGHT_METRIC = "downstream.bulkhead.inflight";
+
+    enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final boolean enabled;
+    private final double failureRateThreshold;
+    private final int minimumCalls;
+    private final int windowSize;
+    private final Duration openDuration;
+    private final int halfOpenCalls;
+    private final int maxConcurrentCalls;
+    private final int rejectedVisibilitySeconds;
+    private final MeterRegistry meterRegistry;
+    private final Clock clock;
+
+    private final Map<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+    @Autowired
+    public DownstreamCircuitBreakers(@Value("${hearing-processing.circuit-breaker.enabled:false}") boolean enabled,
+                                     @Value("${hearing-processing.circuit-breaker.failure-rate-threshold:0.5}") double failureRateThreshold,
+                                     @Value("${hearing-processing.circuit-breaker.minimum-calls:10}") int minimumCalls,
+                                     @Value("${hearing-processing.circuit-breaker.window-size:20}") int windowSize,
+                                     @Value("${hearing-processing.circuit-breaker.open-duration-ms:30000}") long openDurationMs,
+                                     @Value("${hearing-processing.circuit-breaker.half-open-calls:3}") int halfOpenCalls,
+                                     @Value("${hearing-processing.circuit-breaker.max-concurrent-calls:50}") int maxConcurrentCalls,
+                                     @Value("${hearing-processing.circuit-breaker.rejected-visibility-seconds:5}") int rejectedVisibilitySeconds,
+                                     MeterRegistry meterRegistry) {
+        this(enabled, failureRateThreshold, minimumCalls, windowSize, openDurationMs, halfOpenCalls, maxConcurrentCalls,
+                rejectedVisibilitySeconds, meterRegistry, Clock.systemUTC());
+    }
+
+    DownstreamCircuitBreakers(boolean enabled, double failureRateThreshold, int minimumCalls, int windowSize,
+                              long openDurationMs, int halfOpenCalls, int maxConcurrentCalls, int rejectedVisibilitySeconds,
+                              MeterRegistry meterRegistry, Clock clock) {
+        this.enabled = enabled;
+        this.failureRateThreshold = failureRateThreshold;
+        this.windowSize = Math.max(1, windowSize);
+        this.minimumCalls = Math.max(1, Math.min(minimumCalls, this.windowSize));
+        this.openDuration = Duration.ofMillis(openDurationMs);
+        this.halfOpenCalls = Math.max(1, halfOpenCalls);
+        this.maxConcurrentCalls = Math.max(1, maxConcurrentCalls);
+        this.rejectedVisibilitySeconds = Math.max(0, rejectedVisibilitySeconds);
+        this.meterRegistry = meterRegistry;
+        this.clock = clock;
+    }
+
+    /**
+     * @param downstream the service the WebClient calls, which names its circuit and tags its metrics
+     */
+    public ExchangeFilterFunction filter(String downstream) {
+        if (!enabled) {
+            return (request, next) -> next.exchange(request);
+        }
+        final var breaker = breakers.computeIfAbsent(downstream, CircuitBreaker::new);
+        return (request, next) -> Mono.defer(() -> {
+            final var call = breaker.acquire();
+            return next.exchange(request)
+                    .doOnNext(response -> call.complete(isFailure(response.statusCode().value())))
+                    .doOnError(e -> call.complete(true))
+                    .doFinally(signal -> call.release());
+        });
+    }
+
+    State getState(String downstream) {
+        return breakers.get(downstream).getState();
+    }
+
+    private static boolean isFailure(int statusCode) {
+        return statusCode >= 500 || statusCode == 429;
+    }
+
+    private final class CircuitBreaker {
+        private final String downstream;
+        private final boolean[] window = new boolean[windowSize];
+        private final Map<State, Counter> transitions = new EnumMap<>(State.class);
+        private final Counter circuitOpenRejections;
+        private final Counter bulkheadRejections;
+
+        private State state = State.CLOSED;
+        // Changes with every transition, so that a call made before one cannot count towards the new state
+        private long period;
+        private Instant openUntil;
+        private int windowCalls;
+        private int windowFailures;
+        private int nextInWindow;
+        private int trialsInFlight;
+        private int trialSuccesses;
+        private int inFlight;
+
+        private CircuitBreaker(String downstream) {
+            this.downstream = downstream;
+            for (State to : State.values()) {
+                transitions.put(to, Counter.builder(TRANSITIONS_METRIC)
+                        .description("Changes of state of the circuit to a downstream service")
+                        .tag("downstream", downstream)
+                        .tag("state", to.name().toLowerCase())
+                        .register(meterRegistry));
+            }
+            circuitOpenRejections = rejectedCounter("circuit-open");
+            bulkheadRejections = rejectedCounter("bulkhead-full");
+            Gauge.builder(STATE_METRIC, this, breaker -> breaker.getState().ordinal())
+                    .description("State of the circuit to a downstream service: 0 closed, 1 open, 2 half open")
+                    .tag("downstream", downstream)
+                    .register(meterRegistry);
+            Gauge.builder(IN_FLIGHT_METRIC, this, CircuitBreaker::getInFlight)
+                    .description("Calls in flight to a downstream service")
+                    .tag("downstream", downstream)
+                    .register(meterRegistry);
+        }
+
+        private synchronized Call acquire() {
+            if (state == State.OPEN && !clock.instant().isBefore(openUntil)) {
+                transition(State.HALF_OPEN);
+            }
+            if (state == State.OPEN || (state == State.HALF_OPEN && trialsInFlight + trialSuccesses >= halfOpenCalls)) {
+                circuitOpenRejections.increment();
+                throw new DownstreamUnavailableException(downstream, "its circuit is open", retryAfterSeconds());
+            }
+            if (inFlight >= maxConcurrentCalls) {
+                bulkheadRejections.increment();
+                throw new DownstreamUnavailableException(downstream, "its bulkhead is full", rejectedVisibilitySeconds);
+            }
+            inFlight++;
+            final var trial = state == State.HALF_OPEN;
+            if (trial) {
+                trialsInFlight++;
+            }
+            return new Call(this, period, trial);
+        }
+
+        private synchronized void onResult(Call call, boolean failed) {
+            if (call.period != period) {
+                return;
+            }
+            if (call.trial) {
+                trialsInFlight--;
+                if (failed) {
+                    open();
+                } else if (++trialSuccesses >= halfOpenCalls) {
+                    transition(State.CLOSED);
+                }
+                return;
+            }
+            if (windowCalls == window.length) {
+                if (window[nextInWindow]) {
+                    windowFailures--;
+                }
+            } else {
+                windowCalls++;
+            }
+            window[nextInWindow] = failed;
+            if (failed) {
+                windowFailures++;
+            }
+            nextInWindow = (nextInWindow + 1) % window.length;
+            if (windowCalls >= minimumCalls && (double) windowFailures / windowCalls >= failureRateThreshold) {
+                open();
+            }
+        }
+
+        // A trial cancelled before its result frees its place for another
+        private synchronized void release(Call call, boolean completed) {
+            inFlight--;
+            if (call.trial && !completed && call.period == period) {
+                trialsInFlight--;
+            }
+        }
+
+        // Until the circuit is due to half open, rounded up, and no sooner than rejected-visibility-seconds
+        private int retryAfterSeconds() {
+            if (state != State.OPEN) {
+                return rejectedVisibilitySeconds;
+            }
+            final var untilHalfOpen = Duration.between(clock.instant(), openUntil);
+            final var seconds = untilHalfOpen.toSeconds() + (untilHalfOpen.toNanosPart() > 0 ? 1 : 0);
+            return (int) Math.max(rejectedVisibilitySeconds, seconds);
+        }
+
+        private void open() {
+            transition(State.OPEN);
+            openUntil = clock.instant().plus(openDuration);
+        }
+
+        private void transition(State to) {
+            log.info("Circuit to {} changed from {} to {}", downstream, state, to);
+            state = to;
+            period++;
+            windowCalls = 0;
+            windowFailures = 0;
+            nextInWindow = 0;
+            trialsInFlight = 0;
+            trialSuccesses = 0;
+            transitions.get(to).increment();
+        }
+
+        private synchronized State getState() {
+            return state;
+        }
+
+        private synchronized int getInFlight() {
+            return inFlight;
+        }
+
+        private Counter rejectedCounter(String reason) {
+            return Counter.builder(REJECTED_METRIC)
+                    .description("Calls to a downstream service refused without being made, by reason")
+                    .tag("downstream", downstream)
+                    .tag("reason", reason)
+                    .register(meterRegistry);
+        }
+    }
+
+    private static final class Call {
+        private final CircuitBreaker breaker;
+        private final long period;
+        private final boolean trial;
+        private boolean completed;
+
+        private Call(CircuitBreaker breaker, long period, boolean trial) {
+            this.breaker = breaker;
+            this.period = period;
+            this.trial = trial;
+        }
+
+        private void complete(boolean failed) {
+            completed = true;
+            breaker.onResult(this, failed);
+        }
+
+        private void release() {
+            breaker.release(this, completed);
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package uk.gov.justice.probation.courtcasematcher.restclient;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Bounded in-memory cache of the results of a downstream lookup, shared by every hearing the pod processes. Unlike
+ * {@link uk.gov.justice.probation.courtcasematcher.service.BatchLookupCache}, which only lives for one SQS batch,
+ * entries are kept for a TTL.
+ * <ul>
+ *     <li>Concurrent misses for the same key share one in-flight lookup.</li>
+ *     <li>A lookup which completes empty, as for a 404, is remembered for the shorter negative TTL.</li>
+ *     <li>Errors are not cached.</li>
+ *     <li>Once an entry has been held for refresh-ahead-fraction of its TTL, the next hit is still answered from the
+ *     cache, and the entry is reloaded in the background, so that entries which keep being used never expire in the
+ *     path of a hearing.</li>
+ *     <li>The least recently used entries are evicted beyond max-entries.</li>
+ * </ul>
+ * Registers the cache.gets counter, tagged with the result, from which the hit rate is derived, cache.lookups.saved,
+ * which counts the gets answered without a lookup of their own, as well as cache.size and cache.refreshes, all tagged
+ * with the cache name.
+ */
+@Slf4j
+public class LookupCache<V> {
+
+    static final String GETS_METRIC = "cache.gets";
+    static final String SAVED_METRIC = "cache.lookups.saved";
+    static final String REFRESHES_METRIC = "cache.refreshes";
+    static final String SIZE_METRIC = "cache.size";
+
+    private final String name;
+    private final boolean enabled;
+    private final Duration ttl;
+    private final Duration negativeTtl;
+    private final double refreshAheadFraction;
+    private final Clock clock;
+
+    private final Map<String, Entry<V>> entries;
+    private final Map<String, Mono<V>> inFlight = new ConcurrentHashMap<>();
+
+    private final Counter hits;
+    private final Counter negativeHits;
+    private final Counter misses;
+    private final Counter coalesced;
+    private final Counter saved;
+    private final Counter refreshes;
+
+    public LookupCache(String name, boolean enabled, Duration ttl, Duration negativeTtl, double refreshAheadFraction,
+                       int maxEntries, MeterRegistry meterRegistry) {
+        this(name, enabled, ttl, negativeTtl, refreshAheadFraction, maxEntries, meterRegistry, Clock.systemUTC());
+    }
+
+    LookupCache(String name, boolean enabled, Duration ttl, Duration negativeTtl, double refreshAheadFraction,
+                int maxEntries, MeterRegistry meterRegistry, Clock clock) {
+        this.name = name;
+        this.enabled = enabled;
+        this.ttl = ttl;
+        this.negativeTtl = negativeTtl;
+        this.refreshAheadFraction = refreshAheadFraction;
+        this.clock = clock;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry<V>> eldest) {
+                return size() > maxEntries;
+            }
+        };
+
+        hits = getsCounter("hit", meterRegistry);
+        negativeHits = getsCounter("negative-hit", meterRegistry);
+        misses = getsCounter("miss", meterRegistry);
+        coalesced = getsCounter("coalesced", meterRegistry);
+        saved = Counter.builder(SAVED_METRIC)
+                .description("Gets answered from the cache or from another get's in-flight lookup")
+                .tag("cache", name)
+                .register(meterRegistry);
+        refreshes = Counter.builder(REFRESHES_METRIC)
+                .description("Cache entries reloaded ahead of their expiry")
+                .tag("cache", name)
+                .register(meterRegistry);
+        Gauge.builder(SIZE_METRIC, this, LookupCache::size)
+                .description("Entries held by the cache")
+                .tag("cache", name)
+                .register(meterRegistry);
+    }
+
+    public Mono<V> get(String key, Supplier<Mono<V>> lookup) {
+        if (!enabled) {
+            return lookup.get();
+        }
+        return Mono.defer(() -> {
+            final var now = clock.instant();
+            final Entry<V> entry;
+            final boolean refresh;
+            synchronized (entries) {
+                entry = entries.get(key);
+                if (entry == null || !entry.expiresAt.isAfter(now)) {
+                    entries.remove(key);
+                    return inFlightLookup(key, lookup);
+                }
+                refresh = !entry.refreshing && !entry.refreshAt.isAfter(now);
+                if (refresh) {
+                    entry.refreshing = true;
+                }
+            }
+            if (refresh) {
+                refresh(key, entry, lookup);
+            }
+            saved.increment();
+            if (entry.value == null) {
+                negativeHits.increment();
+                return Mono.empty();
+            }
+            hits.increment();
+            return Mono.just(entry.value);
+        });
+    }
+
+    /**
+     * Gets the values of several keys, looking up all of those which are neither cached nor being looked up by
+     * {@link #get} with a single call to lookup. Entries are not refreshed ahead of their expiry by getAll.
+     *
+     * @param lookup given the keys to look up, returns their values. A key missing from the map is cached as empty.
+     * @return the values found, by key
+     */
+    public Mono<Map<String, V>> getAll(Collection<String> keys, Function<List<String>, Mono<Map<String, V>>> lookup) {
+        if (!enabled) {
+            return lookup.apply(List.copyOf(keys));
+        }
+        return Mono.defer(() -> {
+            final var now = clock.instant();
+            final Map<String, V> cached = new HashMap<>();
+            final List<Mono<Map.Entry<String, V>>> shared = new ArrayList<>();
+            final List<String> missing = new ArrayList<>();
+            synchronized (entries) {
+                for (var key : keys) {
+                    final var entry = entries.get(key);
+                    final var existing = inFlight.get(key);
+                    if (entry != null && entry.expiresAt.isAfter(now)) {
+                        saved.increment();
+                        if (entry.value == null) {
+                            negativeHits.increment();
+                        } else {
+                            hits.increment();
+                            cached.put(key, entry.value);
+                        }
+                    } else if (existing != null) {
+                        coalesced.increment();
+                        saved.increment();
+                        shared.add(existing.map(value -> Map.entry(key, value)));
+                    } else {
+                        entries.remove(key);
+                        misses.increment();
+                        missing.add(key);
+                    }
+                }
+            }
+            final var lookedUp = missing.isEmpty() ? Mono.just(Map.<String, V>of()) : lookup.apply(missing)
+                    .defaultIfEmpty(Map.of())
+                    .doOnNext(values -> missing.forEach(key -> put(key, values.get(key))));
+            return Flux.merge(shared)
+                    .collectMap(Map.Entry::getKey, Map.Entry::getValue)
+                    .zipWith(lookedUp, (fromInFlight, values) -> {
+                        final Map<String, V> all = new HashMap<>(cached);
+                        all.putAll(fromInFlight);
+                        all.putAll(values);
+                        return all;
+                    });
+        });
+    }
+
+    int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    // Called holding the entries lock, so that only one lookup per key is started
+    private Mono<V> inFlightLookup(String key, Supplier<Mono<V>> lookup) {
+        final var existing = inFlight.get(key);
+        if (existing != null) {
+            coalesced.increment();
+            saved.increment();
+            return existing;
+        }
+        misses.increment();
+        final var shared = lookup.get()
+                .doOnSuccess(value -> put(key, value))
+                .doFinally(signal -> inFlight.remove(key))
+                .cache();
+        inFlight.put(key, shared);
+        return shared;
+    }
+
+    private void refresh(String key, Entry<V> entry, Supplier<Mono<V>> lookup) {
+        refreshes.increment();
+        lookup.get()
+                .doOnSuccess(value -> put(key, value))
+                .doOnError(e -> {
+                    log.warn("Failed to refresh the {} cache entry for {}, keeping it until it expires", name, key, e);
+                    entry.refreshing = false;
+                })
+                .onErrorComplete()
+                .subscribe();
+    }
+
+    private void put(String key, V value) {
+        final var now = clock.instant();
+        final var entryTtl = value == null ? negativeTtl : ttl;
+        final var refreshAt = now.plusMillis((long) (entryTtl.toMillis() * refreshAheadFraction));
+        synchronized (entries) {
+            entries.put(key, new Entry<>(value, refreshAt, now.plus(entryTtl)));
+        }
+    }
+
+    private Counter getsCounter(String result, MeterRegistry meterRegistry) {
+        return Counter.builder(GETS_METRIC)
+                .description("Gets answered by the cache (hit, negative-hit), by another get's in-flight lookup (coalesced) or passed to the downstream service (miss)")
+                .tag("cache", name)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private static final class Entry<V> {
+        private final V value;
+        private final Instant refreshAt;
+        private final Instant expiresAt;
+        private volatile boolean refreshing;
+
+        private Entry(V value, Instant refreshAt, Instant expiresAt) {
+            this.value = value;
+            this.refreshAt = refreshAt;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
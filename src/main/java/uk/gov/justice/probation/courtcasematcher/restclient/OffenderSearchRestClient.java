@@ -1,5 +1,6 @@
 package uk.gov.justice.probation.courtcasematcher.restclient;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -12,14 +13,26 @@ import org.springframework.web.reactive.function.BodyInserters;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
 import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.util.retry.Retry;
 import reactor.util.retry.Retry.RetrySignal;
+import uk.gov.justice.probation.courtcasematcher.restclient.exception.DownstreamUnavailableException;
 import uk.gov.justice.probation.courtcasematcher.restclient.model.offendersearch.MatchRequest;
 import uk.gov.justice.probation.courtcasematcher.restclient.model.offendersearch.MatchResponse;
+import uk.gov.justice.probation.courtcasematcher.restclient.model.offendersearch.SearchResponse;
 import uk.gov.justice.probation.courtcasematcher.restclient.model.offendersearch.SearchResponses;
 
 import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Predicate;
 
 
@@ -37,6 +50,22 @@ public class OffenderSearchRestClient {
     @Value("${offender-search.post-search-url}")
     private String postSearchUrl;
 
+    @Setter
+    @Value("${offender-search.post-crns-url:/crns}")
+    private String postCrnsUrl;
+
+    @Setter
+    @Value("${offender-search.max-crns-per-request:50}")
+    private int maxCrnsPerRequest;
+
+    @Setter
+    @Value("${offender-search.max-concurrent-searches:4}")
+    private int maxConcurrentSearches;
+
+    @Setter
+    @Value("${offender-search.crns-unsupported-backoff-seconds:600}")
+    private int crnsUnsupportedBackOffSeconds;
+
     @Setter
     @Value("${offender-search.disable-authentication:false}")
     private Boolean disableAuthentication;
@@ -51,10 +80,25 @@ public class OffenderSearchRestClient {
 
     private final WebClient webClient;
 
+    private final LookupCache<SearchResponses> searchCache;
+
+    // Searches by CRNs are not tried until then, after offender search last answered one with 405 or 501
+    private final AtomicReference<Instant> crnsSearchUnsupportedUntil = new AtomicReference<>(Instant.MIN);
+
     @Autowired
-    public OffenderSearchRestClient(@Qualifier("offenderSearchWebClient") WebClient webClient) {
+    public OffenderSearchRestClient(@Qualifier("offenderSearchWebClient") WebClient webClient,
+                                    @Value("${hearing-processing.offender-search-cache.enabled:false}") boolean cacheEnabled,
+                                    @Value("${hearing-processing.offender-search-cache.ttl-seconds:60}") long ttlSeconds,
+                                    @Value("${hearing-processing.offender-search-cache.max-entries:20000}") int maxEntries,
+                                    MeterRegistry meterRegistry) {
+        this(webClient, new LookupCache<>("offender-search", cacheEnabled, Duration.ofSeconds(ttlSeconds), Duration.ofSeconds(ttlSeconds),
+                1.0d, maxEntries, meterRegistry));
+    }
+
+    OffenderSearchRestClient(WebClient webClient, LookupCache<SearchResponses> searchCache) {
         super();
         this.webClient = webClient;
+        this.searchCache = searchCache;
     }
     public Mono<MatchResponse> match(MatchRequest body){
 
@@ -72,6 +116,86 @@ public class OffenderSearchRestClient {
     }
 
     public Mono<SearchResponses> search(String crn){
+        return searchCache.get(crn, () -> searchByCrn(crn));
+    }
+
+    /**
+     * Searches for several CRNs, POSTing up to max-crns-per-request of them at a time to post-crns-url. Falls back to
+     * searching for each CRN of a chunk separately, max-concurrent-searches at a time, when offender search answers its
+     * search by CRNs with 404. A 405 or 501 means it does not support the search at all, so every chunk is searched CRN by
+     * CRN for crns-unsupported-backoff-seconds, after which the search by CRNs is tried again.
+     *
+     * @return the SearchResponses of each CRN, which are empty for a CRN that offender search does not know
+     */
+    public Mono<Map<String, SearchResponses>> search(Collection<String> crns){
+        return searchCache.getAll(new LinkedHashSet<>(crns), this::searchByCrns);
+    }
+
+    private Mono<Map<String, SearchResponses>> searchByCrns(List<String> crns){
+        return Flux.fromIterable(crns)
+            .buffer(Math.max(1, maxCrnsPerRequest))
+            .flatMap(this::searchChunk, Math.max(1, maxConcurrentSearches))
+            .collectMap(Map.Entry::getKey, Map.Entry::getValue);
+    }
+
+    private Flux<Map.Entry<String, SearchResponses>> searchChunk(List<String> crns){
+        if (crns.size() == 1 || Instant.now().isBefore(crnsSearchUnsupportedUntil.get())) {
+            return searchEach(crns);
+        }
+        return post(postCrnsUrl)
+            .bodyValue(crns)
+            .accept(MediaType.APPLICATION_JSON)
+            .retrieve()
+            .bodyToMono(SearchResponses.class)
+            .retryWhen(Retry.backoff(maxRetries, Duration.ofSeconds(minBackOffSeconds))
+                .jitter(0.0d)
+                .doAfterRetryAsync(this::logRetrySignal)
+                .filter(throwable -> !isCrnsSearchNotApplied(throwable) && EXCEPTION_RETRY_FILTER.test(throwable)))
+            .defaultIfEmpty(SearchResponses.builder().build())
+            .flatMapIterable(searchResponses -> byCrn(crns, searchResponses).entrySet())
+            .onErrorResume(OffenderSearchRestClient::isCrnsSearchNotApplied, throwable -> {
+                if (isCrnsSearchUnsupported(throwable)) {
+                    log.warn("Offender search does not support searching by CRNs ({}), searching for each CRN separately for the next {}s",
+                        throwable.getMessage(), crnsUnsupportedBackOffSeconds);
+                    crnsSearchUnsupportedUntil.set(Instant.now().plusSeconds(crnsUnsupportedBackOffSeconds));
+                } else {
+                    log.warn("Search by CRNs not found ({}), searching for each CRN of the chunk separately", throwable.getMessage());
+                }
+                return searchEach(crns);
+            });
+    }
+
+    private Flux<Map.Entry<String, SearchResponses>> searchEach(List<String> crns){
+        return Flux.fromIterable(crns)
+            .flatMap(crn -> searchByCrn(crn)
+                .defaultIfEmpty(SearchResponses.builder().build())
+                .map(searchResponses -> Map.entry(crn, searchResponses)), Math.max(1, maxConcurrentSearches));
+    }
+
+    private static Map<String, SearchResponses> byCrn(List<String> crns, SearchResponses searchResponses){
+        final Map<String, List<SearchResponse>> byCrn = new LinkedHashMap<>();
+        crns.forEach(crn -> byCrn.put(crn, new ArrayList<>()));
+        searchResponses.getSearchResponses().stream()
+            .filter(searchResponse -> searchResponse.getOtherIds() != null)
+            .forEach(searchResponse -> Optional.ofNullable(byCrn.get(searchResponse.getOtherIds().getCrn()))
+                .ifPresent(responses -> responses.add(searchResponse)));
+        final Map<String, SearchResponses> result = new LinkedHashMap<>();
+        byCrn.forEach((crn, responses) -> result.put(crn, SearchResponses.builder().searchResponses(responses).build()));
+        return result;
+    }
+
+    private static boolean isCrnsSearchNotApplied(Throwable throwable){
+        return isCrnsSearchUnsupported(throwable)
+            || throwable instanceof WebClientResponseException ex && ex.getStatusCode().value() == HttpStatus.NOT_FOUND.value();
+    }
+
+    private static boolean isCrnsSearchUnsupported(Throwable throwable){
+        return throwable instanceof WebClientResponseException ex
+            && (ex.getStatusCode().value() == HttpStatus.METHOD_NOT_ALLOWED.value()
+                || ex.getStatusCode().value() == HttpStatus.NOT_IMPLEMENTED.value());
+    }
+
+    private Mono<SearchResponses> searchByCrn(String crn){
         return post(postSearchUrl)
             .bodyValue("{\"crn\": \"" + crn+ "\"}")
             .accept(MediaType.APPLICATION_JSON)
@@ -122,6 +246,9 @@ public class OffenderSearchRestClient {
      * Filter which decides whether or not to retry. Return true if we do wish to retry.
      */
     static final Predicate<? super Throwable> EXCEPTION_RETRY_FILTER = throwable -> {
+        if (throwable instanceof DownstreamUnavailableException) {
+            return false;
+        }
         boolean retry = true;
         if (throwable instanceof WebClientResponseException) {
             WebClientResponseException ex = (WebClientResponseException) throwable;
@@ -0,0 +1,33 @@
+package uk.gov.justice.probation.courtcasematcher.restclient.exception;
+
+import lombok.Getter;
+
+import java.util.Optional;
+
+/**
+ * A call to a downstream service refused without being made, as its circuit was open or its bulkhead full. Never retried.
+ */
+@Getter
+public class DownstreamUnavailableException extends RuntimeException {
+    /**
+     * How long until the downstream may accept calls again, after which the message should be made visible again
+     */
+    private final int retryAfterSeconds;
+
+    public DownstreamUnavailableException(String downstream, String reason, int retryAfterSeconds) {
+        super(String.format("Call to %s rejected as %s", downstream, reason));
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    /**
+     * @return the refused call which failed processing, however deeply it has been wrapped on the way up
+     */
+    public static Optional<DownstreamUnavailableException> causeOf(Throwable throwable) {
+        for (var cause = throwable; cause != null; cause = cause.getCause()) {
+            if (cause instanceof DownstreamUnavailableException unavailable) {
+                return Optional.of(unavailable);
+            }
+        }
+        return Optional.empty();
+    }
+}
@@ -54,7 +54,7 @@ public class CCSDefendant {
         return builder()
                 .defendantId(defendant.getDefendantId())
                 .personId(defendant.getPersonId())
-                .name(CCSName.of(defendant.getName()))
+                .name(Optional.ofNullable(defendant.getName()).map(CCSName::of).orElse(null))
                 .dateOfBirth(defendant.getDateOfBirth())
                 .address(Optional.ofNullable(defendant.getAddress()).map(CCSAddress::of).orElse(null))
                 .type(CCSDefendantType.of(defendant.getType()))
@@ -0,0 +1,59 @@
+package uk.gov.justice.probation.courtcasematcher.restclient.model.courtcaseservice;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import uk.gov.justice.probation.courtcasematcher.model.domain.Hearing;
+import uk.gov.justice.probation.courtcasematcher.model.domain.HearingDelta;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Partial update of a hearing. The hearing level fields are always sent; hearingDays only when they have changed, and
+ * of the defendants only those added or changed, with the ids of those removed.
+ */
+@Builder
+@Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@AllArgsConstructor
+@NoArgsConstructor(access = AccessLevel.PRIVATE, force = true)
+public class CCSHearingPatch {
+    private String caseId;
+    private String hearingId;
+    private String caseNo;
+    private String urn;
+    private CCSDataSource source;
+    private String hearingEventType;
+    private String hearingType;
+    private List<CCSHearingDay> hearingDays;
+    private List<CCSCaseMarker> caseMarkers;
+    private List<CCSDefendant> defendants;
+    private List<String> removedDefendantIds;
+
+    public static CCSHearingPatch of(HearingDelta delta) {
+        final Hearing hearing = delta.getHearing();
+        return CCSHearingPatch.builder()
+                .caseId(hearing.getCaseId())
+                .hearingId(hearing.getHearingId())
+                .caseNo(hearing.getCaseNo())
+                .urn(hearing.getUrn())
+                .source(CCSDataSource.of(hearing.getSource()))
+                .hearingEventType(hearing.getHearingEventType())
+                .hearingType(hearing.getHearingType())
+                .hearingDays(delta.isHearingDaysChanged() && hearing.getHearingDays() != null ? hearing.getHearingDays().stream()
+                        .map(CCSHearingDay::of)
+                        .collect(Collectors.toList()) : null)
+                .caseMarkers(hearing.getCaseMarkers() == null ? null : hearing.getCaseMarkers().stream()
+                        .map(CCSCaseMarker::of)
+                        .collect(Collectors.toList()))
+                .defendants(delta.getChangedDefendants().stream()
+                        .map(CCSDefendant::of)
+                        .collect(Collectors.toList()))
+                .removedDefendantIds(delta.getRemovedDefendantIds().isEmpty() ? null : delta.getRemovedDefendantIds())
+                .build();
+    }
+}
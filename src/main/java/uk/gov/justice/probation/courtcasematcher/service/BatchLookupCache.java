@@ -0,0 +1,39 @@
+package uk.gov.justice.probation.courtcasematcher.service;
+
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Shares downstream lookups between the hearings of one SQS batch. The cache is carried in the Reactor context, so
+ * lookups made outside a batch go straight to the downstream service. Only successful lookups are kept: a failed one is
+ * shared with the hearings already waiting on it, and the next hearing to look up the key tries again.
+ */
+public class BatchLookupCache {
+
+    private final Map<String, Mono<?>> lookups = new ConcurrentHashMap<>();
+
+    public static Context context(BatchLookupCache cache) {
+        return Context.of(BatchLookupCache.class, cache);
+    }
+
+    public static <T> Mono<T> lookup(String key, Supplier<Mono<T>> lookup) {
+        return Mono.deferContextual(context -> context.<BatchLookupCache>getOrEmpty(BatchLookupCache.class)
+                .map(cache -> cache.get(key, lookup))
+                .orElseGet(lookup));
+    }
+
+    @SuppressWarnings("unchecked")
+    <T> Mono<T> get(String key, Supplier<Mono<T>> lookup) {
+        return (Mono<T>) lookups.computeIfAbsent(key, k -> lookup.get()
+                .doOnError(e -> lookups.remove(k))
+                .cache());
+    }
+
+    public int size() {
+        return lookups.size();
+    }
+}
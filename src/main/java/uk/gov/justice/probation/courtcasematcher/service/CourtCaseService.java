@@ -1,23 +1,24 @@
 package uk.gov.justice.probation.courtcasematcher.service;
 
-import lombok.AllArgsConstructor;
 import lombok.NoArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import uk.gov.justice.probation.courtcasematcher.model.domain.DataSource;
 import uk.gov.justice.probation.courtcasematcher.model.domain.Defendant;
 import uk.gov.justice.probation.courtcasematcher.model.domain.Hearing;
+import uk.gov.justice.probation.courtcasematcher.model.domain.HearingDelta;
 import uk.gov.justice.probation.courtcasematcher.model.mapper.HearingMapper;
 import uk.gov.justice.probation.courtcasematcher.restclient.CourtCaseServiceClient;
 import uk.gov.justice.probation.courtcasematcher.restclient.OffenderSearchRestClient;
 
-import java.util.stream.Collectors;
+import java.time.Duration;
 
 @Service
 @Slf4j
-@AllArgsConstructor(onConstructor_ = @Autowired)
 @NoArgsConstructor
 public class CourtCaseService {
 
@@ -27,6 +28,32 @@ public class CourtCaseService {
 
     private TelemetryService telemetryService;
 
+    private HearingWriteQueue hearingWriteQueue;
+
+    private int refreshConcurrency;
+
+    private Duration refreshDeadline;
+
+    /**
+     * @param refreshConcurrency the number of a hearing's defendants whose probation status to refresh at once
+     * @param refreshDeadlineMs how long to spend refreshing the probation status of a hearing's defendants, after which
+     *                          those not yet refreshed keep their existing status. 0 for no deadline.
+     */
+    @Autowired
+    public CourtCaseService(CourtCaseServiceClient courtCaseServiceClient,
+                            OffenderSearchRestClient offenderSearchRestClient,
+                            TelemetryService telemetryService,
+                            HearingWriteQueue hearingWriteQueue,
+                            @Value("${hearing-processing.probation-status-refresh.concurrency:1}") int refreshConcurrency,
+                            @Value("${hearing-processing.probation-status-refresh.deadline-ms:0}") long refreshDeadlineMs) {
+        this.courtCaseServiceClient = courtCaseServiceClient;
+        this.offenderSearchRestClient = offenderSearchRestClient;
+        this.telemetryService = telemetryService;
+        this.hearingWriteQueue = hearingWriteQueue;
+        this.refreshConcurrency = Math.max(1, refreshConcurrency);
+        this.refreshDeadline = Duration.ofMillis(Math.max(0, refreshDeadlineMs));
+    }
+
     public Mono<Hearing> findHearing(Hearing hearing) {
         if (hearing.getSource() == DataSource.COMMON_PLATFORM) {
             return courtCaseServiceClient.getHearing(hearing.getHearingId(), hearing.getCaseId());
@@ -35,36 +62,75 @@ public class CourtCaseService {
     }
 
     public void saveHearing(Hearing hearing) {
-        Hearing updatedHearing = hearing;
+        saveHearingAsync(hearing).block();
+    }
 
-        // If this is a new case from COMMON platform, set caseNo = caseId
-        if (hearing.getSource() == DataSource.COMMON_PLATFORM && hearing.getCaseNo() == null) {
-            updatedHearing = hearing.withCaseNo(updatedHearing.getCaseId());
-        }
+    public Mono<Void> saveHearingAsync(Hearing hearing) {
+        final Hearing updatedHearing = withCaseNo(hearing);
+        return save(courtCaseServiceClient.putHearing(updatedHearing), updatedHearing);
+    }
 
-        courtCaseServiceClient.putHearing(updatedHearing)
+    /**
+     * Saves an update to a hearing court-case-service already holds, sending only what has changed where it can
+     */
+    public Mono<Void> saveHearingAsync(HearingDelta delta) {
+        final Hearing updatedHearing = withCaseNo(delta.getHearing());
+        return save(courtCaseServiceClient.patchHearing(delta.withHearing(updatedHearing)), updatedHearing);
+    }
+
+    private Mono<Void> save(Mono<Void> write, Hearing updatedHearing) {
+        return hearingWriteQueue.submit(updatedHearing.getCaseId(), () -> write
                 .doOnError(throwable -> {
-                    log.error("Save court case failed for case id {} with {}", hearing.getCaseId(), throwable.getMessage());
-                    throw new RuntimeException(throwable.getMessage());
+                    log.error("Save court case failed for case id {} with {}", updatedHearing.getCaseId(), throwable.getMessage());
+                    throw new RuntimeException(throwable.getMessage(), throwable);
                 })
-                .block();
-
-        courtCaseServiceClient.postOffenderMatches(updatedHearing.getCaseId(), updatedHearing.getDefendants())
-                .block();
+                .then(Mono.defer(() -> courtCaseServiceClient.postOffenderMatches(updatedHearing.getCaseId(), updatedHearing.getDefendants()))));
+    }
 
+    // If this is a new case from COMMON platform, set caseNo = caseId
+    private static Hearing withCaseNo(Hearing hearing) {
+        return hearing.getSource() == DataSource.COMMON_PLATFORM && hearing.getCaseNo() == null
+                ? hearing.withCaseNo(hearing.getCaseId())
+                : hearing;
     }
+
     public Mono<Hearing> updateProbationStatusDetail(Hearing hearing) {
-        final var updatedDefendants = hearing.getDefendants()
-                .stream()
-                .map(defendant -> defendant.getCrn() != null && defendant.getCprUUID() == null ? updateDefendant(defendant) : Mono.just(defendant))
-                .map(Mono::block)
-                .collect(Collectors.toList());
+        return Mono.defer(() -> {
+            // One timer for the whole hearing, so a defendant waiting for its turn only gets what is left of the deadline
+            final Mono<Long> deadline = refreshDeadline.isZero() ? Mono.never() : Mono.delay(refreshDeadline).cache();
+            final var defendants = hearing.getDefendants();
+            return Flux.fromIterable(defendants)
+                    // Defendants not yet started when the deadline passes are not searched for at all
+                    .takeUntilOther(deadline)
+                    .flatMapSequential(defendant -> needsRefresh(defendant)
+                            ? updateDefendant(defendant).timeout(deadline, keepProbationStatus(hearing, defendant))
+                            : Mono.just(defendant), refreshConcurrency)
+                    .collectList()
+                    .flatMapMany(started -> Flux.fromIterable(started)
+                            .concatWith(Flux.fromIterable(defendants.subList(started.size(), defendants.size()))
+                                    .concatMap(defendant -> needsRefresh(defendant)
+                                            ? keepProbationStatus(hearing, defendant)
+                                            : Mono.just(defendant))))
+                    .collectList()
+                    .map(hearing::withDefendants);
+        });
+    }
+
+    private static boolean needsRefresh(Defendant defendant) {
+        return defendant.getCrn() != null && defendant.getCprUUID() == null;
+    }
 
-        return Mono.just(hearing.withDefendants(updatedDefendants));
+    private Mono<Defendant> keepProbationStatus(Hearing hearing, Defendant defendant) {
+        return Mono.fromSupplier(() -> {
+            log.warn("Deadline of {}ms passed refreshing the probation status of defendant id {} on hearing id {}, keeping its existing status",
+                    refreshDeadline.toMillis(), defendant.getDefendantId(), hearing.getHearingId());
+            telemetryService.trackDefendantProbationStatusNotUpdatedEvent(defendant);
+            return defendant;
+        });
     }
 
     public Mono<Defendant> updateDefendant(Defendant defendant) {
-        return offenderSearchRestClient.search(defendant.getCrn())
+        return BatchLookupCache.lookup("offender-search:" + defendant.getCrn(), () -> offenderSearchRestClient.search(defendant.getCrn()))
                 .filter(searchResponses -> searchResponses.getSearchResponses().size() == 1)
                 .map(searchResponses -> searchResponses.getSearchResponses().getFirst().getProbationStatusDetail())
                 .map(probationStatusDetail -> HearingMapper.merge(probationStatusDetail, defendant))
@@ -1,11 +1,14 @@
 package uk.gov.justice.probation.courtcasematcher.service;
 
-import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.util.CollectionUtils;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
+import reactor.util.function.Tuples;
 import uk.gov.justice.probation.courtcasematcher.model.domain.Address;
 import uk.gov.justice.probation.courtcasematcher.model.domain.Defendant;
 import uk.gov.justice.probation.courtcasematcher.model.domain.GroupedOffenderMatches;
@@ -28,37 +31,91 @@ import uk.gov.justice.probation.courtcasematcher.restclient.model.offendersearch
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Service
 @Slf4j
-@AllArgsConstructor(onConstructor_ = @Autowired)
 public class CprService {
 
     private final CprServiceClient cprServiceClient;
     private final OffenderSearchRestClient offenderSearchRestClient;
+    private final int defendantConcurrency;
+    private final int crnConcurrency;
+    private final boolean batchSearch;
+
+    /**
+     * @param defendantConcurrency the number of a hearing's defendants to enrich at once
+     * @param crnConcurrency the number of a defendant's CRNs to search at once, for each defendant
+     * @param batchSearch whether to search for the CRNs of all of a hearing's defendants together
+     */
+    @Autowired
+    public CprService(CprServiceClient cprServiceClient,
+                      OffenderSearchRestClient offenderSearchRestClient,
+                      @Value("${hearing-processing.enrichment.defendant-concurrency:1}") int defendantConcurrency,
+                      @Value("${hearing-processing.enrichment.crn-concurrency:1}") int crnConcurrency,
+                      @Value("${hearing-processing.enrichment.batch-search:false}") boolean batchSearch) {
+        this.cprServiceClient = cprServiceClient;
+        this.offenderSearchRestClient = offenderSearchRestClient;
+        this.defendantConcurrency = Math.max(1, defendantConcurrency);
+        this.crnConcurrency = Math.max(1, crnConcurrency);
+        this.batchSearch = batchSearch;
+    }
 
     public void updateDefendants(List<Defendant> defendants) {
-        defendants.stream()
-            .filter(defendant -> defendant.getDefendantId() != null || defendant.getCId() != null)
-            .forEach(this::updateDefendant);
+        updateDefendantsAsync(defendants).block();
+    }
+
+    // Each defendant is only updated by its own enrichment, so the order in which they complete does not matter
+    public Mono<Void> updateDefendantsAsync(List<Defendant> defendants) {
+        final var defendantsWithIds = Flux.fromIterable(defendants)
+            .filter(defendant -> defendant.getDefendantId() != null || defendant.getCId() != null);
+        if (batchSearch) {
+            return defendantsWithIds
+                .flatMapSequential(defendant -> getCprCanonicalRecord(defendant)
+                    .map(cprDefendant -> Tuples.of(defendant, cprDefendant)), defendantConcurrency)
+                .collectList()
+                .flatMap(this::updateDefendantsWithBatchSearch);
+        }
+        return defendantsWithIds
+            .flatMap(this::updateDefendantAsync, defendantConcurrency)
+            .then();
+    }
+
+    private Mono<Void> updateDefendantsWithBatchSearch(List<Tuple2<Defendant, CprDefendant>> cprRecords) {
+        final var crns = cprRecords.stream()
+            .flatMap(cprRecord -> cprRecord.getT2().getIdentifiers().getCrns().stream())
+            .toList();
+        final Mono<Map<String, SearchResponses>> searchResponsesByCrn = crns.isEmpty() ? Mono.just(Map.of()) : offenderSearchRestClient.search(crns);
+        return searchResponsesByCrn
+            .flatMap(byCrn -> Flux.fromIterable(cprRecords)
+                .concatMap(cprRecord -> mapCprDefendantToDefendant(cprRecord.getT1(), cprRecord.getT2(), crn -> Mono.justOrEmpty(byCrn.get(crn))))
+                .then());
     }
 
     public void updateDefendant(Defendant defendant) {
-        Mono<CprDefendant> cprCanonicalRecord;
+        updateDefendantAsync(defendant).block();
+    }
+
+    public Mono<Void> updateDefendantAsync(Defendant defendant) {
+        return getCprCanonicalRecord(defendant)
+            .flatMap(cprDefendant -> mapCprDefendantToDefendant(defendant, cprDefendant, this::offenderSearch));
+    }
+
+    private Mono<CprDefendant> getCprCanonicalRecord(Defendant defendant) {
         if (defendant.getCId() != null) {
-            cprCanonicalRecord = cprServiceClient.getCprCanonicalRecordByLibraId(defendant.getCId());
+            return BatchLookupCache.lookup("cpr:libra:" + defendant.getCId(),
+                () -> cprServiceClient.getCprCanonicalRecordByLibraId(defendant.getCId()));
         } else if (defendant.getDefendantId() != null) {
-            cprCanonicalRecord = cprServiceClient.getCprCanonicalRecordByCommonPlatformId(defendant.getDefendantId());
-        } else {
-            cprCanonicalRecord = Mono.empty();
+            return BatchLookupCache.lookup("cpr:commonplatform:" + defendant.getDefendantId(),
+                () -> cprServiceClient.getCprCanonicalRecordByCommonPlatformId(defendant.getDefendantId()));
         }
-        cprCanonicalRecord.blockOptional()
-            .ifPresentOrElse(cprDefendant -> mapCprDefendantToDefendant(defendant, cprDefendant), () -> {});
+        return Mono.empty();
     }
 
-    private void mapCprDefendantToDefendant(Defendant defendant, CprDefendant cprDefendant) {
+    private Mono<Void> mapCprDefendantToDefendant(Defendant defendant, CprDefendant cprDefendant, Function<String, Mono<SearchResponses>> search) {
         defendant.setCprUUID(cprDefendant.getCprUUID());
         defendant.setName(Name.builder()
             .title(cprDefendant.getTitle().getDescription())
@@ -69,8 +126,12 @@ public class CprService {
         setDateOfBirth(defendant, cprDefendant);
         defendant.setSex(cprDefendant.getSex().getDescription());
         setLatestAddress(defendant, cprDefendant);
-        setDefendantDetailsWhenExactMatch(defendant, cprDefendant);
-        defendant.setGroupedOffenderMatches(buildGroupedOffenderMatch(cprDefendant));
+        return setDefendantDetailsWhenExactMatch(defendant, cprDefendant, search)
+            .then(Mono.defer(() -> buildGroupedOffenderMatch(cprDefendant, search)
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty())))
+            .doOnNext(groupedOffenderMatches -> defendant.setGroupedOffenderMatches(groupedOffenderMatches.orElse(null)))
+            .then();
     }
 
     private void setDateOfBirth(Defendant defendant, CprDefendant cprDefendant) {
@@ -79,15 +140,21 @@ public class CprService {
         }
     }
 
-    public void setDefendantDetailsWhenExactMatch(Defendant defendant, CprDefendant cprDefendant) {
+    public Mono<Void> setDefendantDetailsWhenExactMatch(Defendant defendant, CprDefendant cprDefendant) {
+        return setDefendantDetailsWhenExactMatch(defendant, cprDefendant, this::offenderSearch);
+    }
+
+    private Mono<Void> setDefendantDetailsWhenExactMatch(Defendant defendant, CprDefendant cprDefendant, Function<String, Mono<SearchResponses>> search) {
         if(cprDefendant.getIdentifiers().getCrns().size() == 1) {
-            List<SearchResponse> searchResponses = offenderSearch(cprDefendant.getIdentifiers().getCrns().getFirst()).getSearchResponses();
-            if(searchResponses.size() == 1) {
-                searchResponses.forEach(searchResponse ->
+            return search.apply(cprDefendant.getIdentifiers().getCrns().getFirst())
+                .map(SearchResponses::getSearchResponses)
+                .filter(searchResponses -> searchResponses.size() == 1)
+                .doOnNext(searchResponses -> searchResponses.forEach(searchResponse ->
                     setDefendantProperties(searchResponse.getOtherIds(), searchResponse.getProbationStatusDetail(), defendant)
-                );
-            }
+                ))
+                .then();
         }
+        return Mono.empty();
     }
 
     private void setDefendantProperties(OtherIds otherIds, ProbationStatusDetail probationStatus, Defendant defendant) {
@@ -119,18 +186,30 @@ public class CprService {
             .build()));
     }
 
-    public GroupedOffenderMatches buildGroupedOffenderMatch(CprDefendant cprDefendant) {
+    public Mono<GroupedOffenderMatches> buildGroupedOffenderMatch(CprDefendant cprDefendant) {
+        return buildGroupedOffenderMatch(cprDefendant, this::offenderSearch);
+    }
+
+    private Mono<GroupedOffenderMatches> buildGroupedOffenderMatch(CprDefendant cprDefendant, Function<String, Mono<SearchResponses>> search) {
         if (!cprDefendant.getIdentifiers().getCrns().isEmpty()) {
-            return GroupedOffenderMatches.builder()
-                .matches(cprDefendant.getIdentifiers().getCrns().stream()
-                    .map(crn -> buildOffenderMatch(crn, cprDefendant.getAliases())).toList())
-                .build();
+            return Flux.fromIterable(cprDefendant.getIdentifiers().getCrns())
+                .flatMapSequential(crn -> buildOffenderMatch(crn, cprDefendant.getAliases(), search), crnConcurrency)
+                .collectList()
+                .map(matches -> GroupedOffenderMatches.builder()
+                    .matches(matches)
+                    .build());
         }
-        return null;
+        return Mono.empty();
+    }
+
+    private Mono<OffenderMatch> buildOffenderMatch(String crn, List<CprAlias> aliases, Function<String, Mono<SearchResponses>> search) {
+        return search.apply(crn)
+            .map(SearchResponses::getSearchResponses)
+            .defaultIfEmpty(List.of())
+            .map(searchResponses -> buildOffenderMatch(crn, aliases, searchResponses));
     }
 
-    private OffenderMatch buildOffenderMatch(String crn, List<CprAlias> aliases) {
-        List<SearchResponse> searchResponses = offenderSearch(crn).getSearchResponses();
+    private OffenderMatch buildOffenderMatch(String crn, List<CprAlias> aliases, List<SearchResponse> searchResponses) {
         OtherIds otherIds = !searchResponses.isEmpty() ? searchResponses.getFirst().getOtherIds() : null;
         return OffenderMatch.builder()
             .matchIdentifiers(MatchIdentifiers.builder()
@@ -159,7 +238,7 @@ public class CprService {
     }
 
 
-    private SearchResponses offenderSearch(String crn) {
-        return offenderSearchRestClient.search(crn).block();
+    private Mono<SearchResponses> offenderSearch(String crn) {
+        return BatchLookupCache.lookup("offender-search:" + crn, () -> offenderSearchRestClient.search(crn));
     }
 }
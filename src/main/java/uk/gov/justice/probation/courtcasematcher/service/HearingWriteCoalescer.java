@@ -0,0 +1,168 @@
+package uk.gov.justice.probation.courtcasematcher.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Coalesces the saves of the same case of a hearing which arrive while an earlier save of it is being written, as when a hearing
+ * is confirmed, updated and re-listed in quick succession during list publication. A save of a hearing with no write in
+ * flight is written straight away. Saves arriving during that write wait behind it, and of them only the state
+ * received latest is written once it completes, so that a burst of saves costs at most two writes and no save waits
+ * longer than the write ahead of it. Every coalesced save completes, or fails, with the one write that is made for it,
+ * so each message is only acknowledged once the final state is saved. A write held behind another was prepared from the
+ * hearing as read before that write completed, so it is told to save the hearing in full rather than only what differed.
+ * <p>
+ * Only saves which are processed concurrently can be coalesced, so there is nothing to gain in the PARTITIONED mode,
+ * which saves a hearing before it processes the next message for it.
+ */
+@Component
+@Slf4j
+public class HearingWriteCoalescer {
+
+    static final String WRITES_METRIC = "hearing.write.coalescer.writes";
+    static final String COALESCED_METRIC = "hearing.write.coalesced";
+
+    private final boolean enabled;
+
+    private final AtomicLong sequences = new AtomicLong();
+    // Hearings with a write in flight
+    private final Map<String, Slot> slots = new HashMap<>();
+
+    private final Counter writes;
+    private final Counter coalesced;
+
+    public HearingWriteCoalescer(@Value("${hearing-processing.write-coalescing.enabled:false}") boolean enabled,
+                                 MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+
+        writes = Counter.builder(WRITES_METRIC)
+                .description("Hearing saves written by the coalescer")
+                .register(meterRegistry);
+        coalesced = Counter.builder(COALESCED_METRIC)
+                .description("Hearing saves which joined a save of the same hearing waiting behind a write in flight")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @return the sequence of a hearing received now, which orders it against the other saves of the same hearing
+     */
+    public long nextSequence() {
+        return sequences.incrementAndGet();
+    }
+
+    /**
+     * Saves a hearing straight away, or after the write of it in flight if there is one, when only the state received
+     * latest meanwhile is written.
+     *
+     * @param key   the case of a hearing, as the saves of different cases of a hearing are separate writes. A null key
+     *              is saved straight away
+     * @param write given true when it was held behind another write of the same case, so that the state of the hearing
+     *              read before it may no longer be current, and it should be saved in full
+     * @return true once this save has been written, or false once a later save which superseded it has
+     */
+    public Mono<Boolean> write(String key, long sequence, Function<Boolean, Mono<Void>> write) {
+        if (!enabled || key == null) {
+            return write.apply(false).thenReturn(true);
+        }
+        return Mono.defer(() -> {
+            final PendingWrite started;
+            final Mono<Boolean> result;
+            synchronized (slots) {
+                final var slot = slots.get(key);
+                if (slot == null) {
+                    started = new PendingWrite(sequence, write);
+                    slots.put(key, new Slot());
+                    result = started.resultFor(sequence);
+                } else {
+                    started = null;
+                    if (slot.next == null) {
+                        slot.next = new PendingWrite(sequence, write);
+                    } else {
+                        coalesced.increment();
+                        slot.next.supersede(sequence, write);
+                    }
+                    result = slot.next.resultFor(sequence);
+                }
+            }
+            if (started != null) {
+                start(key, started, false);
+            }
+            return result;
+        });
+    }
+
+    // On boundedElastic, as a blocking save may block in the write
+    private void start(String key, PendingWrite pendingWrite, boolean heldBehind) {
+        writes.increment();
+        Mono.defer(() -> pendingWrite.write.apply(heldBehind))
+                .subscribeOn(Schedulers.boundedElastic())
+                .subscribe(null, e -> finish(key, pendingWrite, e), () -> finish(key, pendingWrite, null));
+    }
+
+    // The next write is made whether or not this one failed, unless it is of a state received before this one's
+    private void finish(String key, PendingWrite finished, Throwable error) {
+        final PendingWrite next;
+        synchronized (slots) {
+            final var slot = slots.get(key);
+            next = slot.next;
+            if (next != null && next.sequence > finished.sequence) {
+                slot.next = null;
+            } else {
+                slots.remove(key);
+            }
+        }
+        if (error != null) {
+            finished.done.tryEmitError(error);
+        } else {
+            finished.written = true;
+            finished.done.tryEmitEmpty();
+        }
+        if (next != null) {
+            if (next.sequence > finished.sequence) {
+                start(key, next, true);
+            } else {
+                next.done.tryEmitEmpty();
+            }
+        }
+    }
+
+    private static final class Slot {
+        // Saves arriving while the write is in flight, coalesced into the latest of them
+        private PendingWrite next;
+    }
+
+    private static final class PendingWrite {
+        private final Sinks.Empty<Void> done = Sinks.empty();
+        private long sequence;
+        private Function<Boolean, Mono<Void>> write;
+        private volatile boolean written;
+
+        private PendingWrite(long sequence, Function<Boolean, Mono<Void>> write) {
+            this.sequence = sequence;
+            this.write = write;
+        }
+
+        private void supersede(long sequence, Function<Boolean, Mono<Void>> write) {
+            if (sequence > this.sequence) {
+                this.sequence = sequence;
+                this.write = write;
+            }
+        }
+
+        // The sequence no longer changes once the write has started
+        private Mono<Boolean> resultFor(long sequence) {
+            return done.asMono().then(Mono.fromSupplier(() -> written && this.sequence == sequence));
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package uk.gov.justice.probation.courtcasematcher.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Bounded stage for the writes which save a hearing to court-case-service: its PUT or PATCH, followed by the POST of
+ * its offender matches. At most concurrency writes run at once, and up to queue-depth more wait for their turn. A
+ * submitted write completes only once it has been made, so the message it came from is acknowledged only after its
+ * hearing is saved, and a failed save leaves the message to be redelivered.
+ * <p>
+ * When the queue is full, a write waits up to max-wait for room, in turn with the others waiting, without holding a
+ * thread. A blocking caller, such as a listener thread, blocks on the write meanwhile, which holds back the listener
+ * from taking more messages, and a non-blocking one holds up the rest of its message's processing in the same way. A
+ * write still without room after max-wait is rejected, and its message stays on the queue.
+ */
+@Component
+@Slf4j
+public class HearingWriteQueue {
+
+    static final String DEPTH_METRIC = "hearing.write.queue.depth";
+    static final String IN_FLIGHT_METRIC = "hearing.write.inflight";
+    static final String WAIT_METRIC = "hearing.write.queue.wait";
+    static final String LATENCY_METRIC = "hearing.write.latency";
+    static final String REJECTED_METRIC = "hearing.write.rejected";
+
+    private final boolean enabled;
+    private final int capacity;
+    private final Duration maxWait;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    // Waiting and running writes
+    private int admitted;
+    // Writes waiting for room, in order of arrival
+    private final Deque<Sinks.Empty<Void>> waiting = new ArrayDeque<>();
+    private final AtomicInteger running = new AtomicInteger();
+
+    private final Sinks.Many<PendingWrite> queue = Sinks.many().unicast().onBackpressureBuffer();
+
+    private final Counter rejected;
+    private final Timer queueWait;
+    private final Timer succeeded;
+    private final Timer failed;
+
+    public HearingWriteQueue(@Value("${hearing-processing.write-queue.enabled:false}") boolean enabled,
+                             @Value("${hearing-processing.write-queue.concurrency:8}") int concurrency,
+                             @Value("${hearing-processing.write-queue.queue-depth:50}") int queueDepth,
+                             @Value("${hearing-processing.write-queue.max-wait-ms:1000}") long maxWaitMs,
+                             MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.capacity = Math.max(1, concurrency) + Math.max(0, queueDepth);
+        this.maxWait = Duration.ofMillis(maxWaitMs);
+
+        rejected = Counter.builder(REJECTED_METRIC)
+                .description("Hearing saves rejected as the write queue was full, leaving their message on the queue")
+                .register(meterRegistry);
+        queueWait = Timer.builder(WAIT_METRIC)
+                .description("Time hearing saves waited in the write queue")
+                .register(meterRegistry);
+        succeeded = latencyTimer("success", meterRegistry);
+        failed = latencyTimer("failure", meterRegistry);
+        Gauge.builder(DEPTH_METRIC, this, HearingWriteQueue::getDepth)
+                .description("Hearing saves waiting in the write queue")
+                .register(meterRegistry);
+        Gauge.builder(IN_FLIGHT_METRIC, running, AtomicInteger::get)
+                .description("Hearing saves being written to court-case-service")
+                .register(meterRegistry);
+
+        if (enabled) {
+            queue.asFlux()
+                    .flatMap(PendingWrite::run, Math.max(1, concurrency))
+                    .subscribe();
+        }
+    }
+
+    /**
+     * Queues a write, subscribing to it when its turn comes.
+     *
+     * @return completes when the write does, or errors with a {@link WriteQueueFullException} if there was no room
+     */
+    public Mono<Void> submit(String caseId, Supplier<Mono<Void>> write) {
+        if (!enabled) {
+            return write.get();
+        }
+        return reserve(caseId).then(Mono.defer(() -> {
+            final var pending = new PendingWrite(write);
+            synchronized (queue) {
+                queue.emitNext(pending, Sinks.EmitFailureHandler.FAIL_FAST);
+            }
+            return pending.result.asMono();
+        }));
+    }
+
+    int getDepth() {
+        lock.lock();
+        try {
+            return admitted - running.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Completes once the write has room, holding it until the write completes
+    private Mono<Void> reserve(String caseId) {
+        return Mono.defer(() -> {
+            final Sinks.Empty<Void> room;
+            lock.lock();
+            try {
+                if (admitted < capacity && waiting.isEmpty()) {
+                    admitted++;
+                    return Mono.empty();
+                }
+                room = Sinks.empty();
+                waiting.add(room);
+            } finally {
+                lock.unlock();
+            }
+            return room.asMono()
+                    .timeout(maxWait, Mono.defer(() -> giveUp(room, caseId)))
+                    .doOnCancel(() -> cancel(room));
+        });
+    }
+
+    // Unless room was handed to the write as it ran out of time, in which case it goes ahead
+    private Mono<Void> giveUp(Sinks.Empty<Void> room, String caseId) {
+        lock.lock();
+        try {
+            if (!waiting.remove(room)) {
+                return Mono.empty();
+            }
+        } finally {
+            lock.unlock();
+        }
+        rejected.increment();
+        return Mono.error(new WriteQueueFullException("No room in the write queue to save case id " + caseId));
+    }
+
+    private void cancel(Sinks.Empty<Void> room) {
+        final boolean handedRoom;
+        lock.lock();
+        try {
+            handedRoom = !waiting.remove(room);
+        } finally {
+            lock.unlock();
+        }
+        if (handedRoom) {
+            release();
+        }
+    }
+
+    // Room is handed to the writes waiting for it outside the lock, as each then goes on to queue its write
+    private void release() {
+        final List<Sinks.Empty<Void>> handed = new ArrayList<>();
+        lock.lock();
+        try {
+            admitted--;
+            while (admitted < capacity && !waiting.isEmpty()) {
+                admitted++;
+                handed.add(waiting.poll());
+            }
+        } finally {
+            lock.unlock();
+        }
+        handed.forEach(Sinks.Empty::tryEmitEmpty);
+    }
+
+    private Timer latencyTimer(String outcome, MeterRegistry meterRegistry) {
+        return Timer.builder(LATENCY_METRIC)
+                .description("Time taken to save a hearing to court-case-service, once its turn came")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    private final class PendingWrite {
+        private final Supplier<Mono<Void>> write;
+        private final Sinks.One<Void> result = Sinks.one();
+        private final long queuedAt = System.nanoTime();
+
+        private PendingWrite(Supplier<Mono<Void>> write) {
+            this.write = write;
+        }
+
+        // Never errors, so that one failed write does not end the queue
+        private Mono<Void> run() {
+            final var startedAt = System.nanoTime();
+            queueWait.record(startedAt - queuedAt, TimeUnit.NANOSECONDS);
+            running.incrementAndGet();
+            return Mono.defer(write)
+                    .doOnSuccess(ignored -> {
+                        finish(succeeded, startedAt);
+                        result.tryEmitEmpty();
+                    })
+                    .doOnError(e -> {
+                        finish(failed, startedAt);
+                        result.tryEmitError(e);
+                    })
+                    .onErrorComplete();
+        }
+
+        private void finish(Timer latency, long startedAt) {
+            latency.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+            running.decrementAndGet();
+            release();
+        }
+    }
+
+    static class WriteQueueFullException extends RuntimeException {
+        WriteQueueFullException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,316 @@
+package uk.gov.justice.probation.courtcasematcher.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.reactivestreams.Subscription;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Downloads large hearings with the non-blocking S3 client. Objects are read in ranged GETs of part-size bytes, the
+ * first telling us the size of the object and the rest then running in parallel, up to max-parts-in-flight at a time.
+ * <p>
+ * The download is read as a stream which hands the parts to the parser in order as they arrive. Parts are requested
+ * only as the parser takes them, so a download holds at most max-parts-in-flight parts ahead of the parser rather than
+ * the whole object.
+ * <p>
+ * A download can be started ahead of the message which needs it with {@link #prefetch(String, String)}. At most
+ * max-prefetched downloads are held waiting to be claimed, beyond which the oldest is dropped, and one not claimed
+ * within prefetch-ttl-ms is dropped too. Prefetches are only started for messages already admitted by the
+ * {@link uk.gov.justice.probation.courtcasematcher.messaging.HearingAdmissionController}, whose heavy lane counts the
+ * whole object.
+ */
+@Component
+@Slf4j
+public class LargeHearingDownloader {
+
+    static final String BYTES_METRIC = "hearing.s3.download.bytes";
+    static final String THROUGHPUT_METRIC = "hearing.s3.download.throughput";
+    static final String DURATION_METRIC = "hearing.s3.download.duration";
+    static final String IN_FLIGHT_METRIC = "hearing.s3.download.inflight";
+
+    private final S3AsyncClient s3AsyncClient;
+    private final boolean enabled;
+    private final long partSizeBytes;
+    private final int maxPartsInFlight;
+    private final Duration prefetchTtl;
+
+    private final Map<String, PartStream> prefetched;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final Counter bytes;
+    private final DistributionSummary throughput;
+    private final Timer duration;
+
+    public LargeHearingDownloader(S3AsyncClient s3AsyncClient,
+                                  @Value("${hearing-processing.large-hearing-download.enabled:false}") boolean enabled,
+                                  @Value("${hearing-processing.large-hearing-download.part-size-bytes:8388608}") long partSizeBytes,
+                                  @Value("${hearing-processing.large-hearing-download.max-parts-in-flight:4}") int maxPartsInFlight,
+                                  @Value("${hearing-processing.large-hearing-download.max-prefetched:10}") int maxPrefetched,
+                                  @Value("${hearing-processing.large-hearing-download.prefetch-ttl-ms:60000}") long prefetchTtlMs,
+                                  MeterRegistry meterRegistry) {
+        this.s3AsyncClient = s3AsyncClient;
+        this.enabled = enabled;
+        this.partSizeBytes = partSizeBytes;
+        this.maxPartsInFlight = Math.max(1, maxPartsInFlight);
+        this.prefetchTtl = Duration.ofMillis(prefetchTtlMs);
+        this.prefetched = new LinkedHashMap<>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PartStream> eldest) {
+                if (size() > maxPrefetched) {
+                    log.warn("Dropping unclaimed prefetch of large hearing {}", eldest.getKey());
+                    eldest.getValue().close();
+                    return true;
+                }
+                return false;
+            }
+        };
+
+        bytes = Counter.builder(BYTES_METRIC)
+                .description("Bytes of large hearings downloaded from S3")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        throughput = DistributionSummary.builder(THROUGHPUT_METRIC)
+                .description("Download rate of each large hearing from S3")
+                .baseUnit("bytes per second")
+                .register(meterRegistry);
+        duration = Timer.builder(DURATION_METRIC)
+                .description("Time to download a large hearing from S3, from the first request to the last part taken by the parser")
+                .register(meterRegistry);
+        Gauge.builder(IN_FLIGHT_METRIC, inFlight, AtomicInteger::get)
+                .description("Large hearings currently downloading from S3")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns at once, without waiting for any of the object. Reads block until the part they need has arrived, and
+     * throw an {@link IOException} if the download failed. Closing the stream cancels what is left of the download.
+     *
+     * @return the prefetched download of the object if there is one, otherwise a newly started download
+     */
+    public InputStream download(String bucket, String key) {
+        final PartStream prefetchedDownload;
+        synchronized (prefetched) {
+            prefetchedDownload = prefetched.remove(idOf(bucket, key));
+        }
+        return prefetchedDownload != null ? prefetchedDownload : start(bucket, key);
+    }
+
+    public void prefetch(String bucket, String key) {
+        final var id = idOf(bucket, key);
+        final PartStream download;
+        synchronized (prefetched) {
+            if (prefetched.containsKey(id)) {
+                return;
+            }
+            download = start(bucket, key);
+            prefetched.put(id, download);
+        }
+        Mono.delay(prefetchTtl).subscribe(ignored -> expire(id, download));
+    }
+
+    int prefetchedCount() {
+        synchronized (prefetched) {
+            return prefetched.size();
+        }
+    }
+
+    private void expire(String id, PartStream download) {
+        final boolean expired;
+        synchronized (prefetched) {
+            expired = prefetched.remove(id, download);
+        }
+        if (expired) {
+            log.warn("Dropping prefetch of large hearing {} unclaimed after {}ms", id, prefetchTtl.toMillis());
+            download.close();
+        }
+    }
+
+    private PartStream start(String bucket, String key) {
+        return new PartStream(Flux.defer(() -> {
+            final var startTime = System.nanoTime();
+            final var downloaded = new AtomicLong();
+            final var partsDownloaded = new AtomicInteger();
+            inFlight.incrementAndGet();
+            return parts(bucket, key)
+                    .doOnNext(part -> {
+                        downloaded.addAndGet(part.length());
+                        partsDownloaded.incrementAndGet();
+                    })
+                    .doOnComplete(() -> {
+                        final var elapsed = Duration.ofNanos(System.nanoTime() - startTime);
+                        final var size = downloaded.get();
+                        bytes.increment(size);
+                        duration.record(elapsed);
+                        throughput.record(size / Math.max(elapsed.toNanos() / 1e9, 1e-9));
+                        log.info("Downloaded large s3 object {} in {} of {} bytes in {} parts in {}ms", key, bucket, size, partsDownloaded.get(), elapsed.toMillis());
+                    })
+                    .doFinally(signal -> inFlight.decrementAndGet());
+        }));
+    }
+
+    private Flux<PartBytes> parts(String bucket, String key) {
+        return Mono.fromFuture(() -> getPart(bucket, key, 0))
+                .flatMapMany(firstPart -> {
+                    final var objectSize = objectSize(firstPart);
+                    if (objectSize <= firstPart.length()) {
+                        return Flux.just(firstPart);
+                    }
+                    final var parts = (int) ((objectSize + partSizeBytes - 1) / partSizeBytes);
+                    return Flux.range(1, parts - 1)
+                            .flatMapSequential(part -> Mono.fromFuture(() -> getPart(bucket, key, part)), maxPartsInFlight, 1)
+                            .startWith(firstPart);
+                });
+    }
+
+    private CompletableFuture<PartBytes> getPart(String bucket, String key, long part) {
+        final var firstByte = part * partSizeBytes;
+        final var request = GetObjectRequest.builder()
+                .bucket(bucket)
+                .key(key)
+                .range("bytes=" + firstByte + "-" + (firstByte + partSizeBytes - 1))
+                .build();
+        return s3AsyncClient.getObject(request, AsyncResponseTransformer.toBytes())
+                .thenApply(response -> new PartBytes(response.asByteArrayUnsafe(), response.response().contentRange()));
+    }
+
+    // Content-Range is "bytes 0-8388607/20971520", or absent when S3 ignored the range and returned the whole object
+    private static long objectSize(PartBytes firstPart) {
+        final var contentRange = firstPart.contentRange();
+        if (contentRange == null || contentRange.indexOf('/') < 0) {
+            return firstPart.length();
+        }
+        return Long.parseLong(contentRange.substring(contentRange.indexOf('/') + 1));
+    }
+
+    private static String idOf(String bucket, String key) {
+        return bucket + "/" + key;
+    }
+
+    /**
+     * Takes the parts in order as they arrive, requesting the next part from the download only once the parser has
+     * taken the one before it.
+     */
+    private static final class PartStream extends InputStream {
+        private static final PartBytes END = new PartBytes(new byte[0], null);
+
+        private final BlockingQueue<PartBytes> parts = new LinkedBlockingQueue<>();
+        private final PartSubscriber subscriber = new PartSubscriber();
+        private volatile Throwable error;
+        private ByteArrayInputStream current = new ByteArrayInputStream(new byte[0]);
+        private boolean ended;
+
+        private PartStream(Flux<PartBytes> download) {
+            download.subscribe(subscriber);
+        }
+
+        @Override
+        public int read() throws IOException {
+            while (true) {
+                final var next = current.read();
+                if (next >= 0 || !nextPart()) {
+                    return next;
+                }
+            }
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            while (true) {
+                final var read = current.read(buffer, offset, length);
+                if (read > 0 || !nextPart()) {
+                    return read;
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            ended = true;
+            subscriber.dispose();
+            parts.clear();
+        }
+
+        private boolean nextPart() throws IOException {
+            if (ended) {
+                return false;
+            }
+            final PartBytes part;
+            try {
+                part = parts.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for part of large hearing");
+            }
+            if (part == END) {
+                ended = true;
+                if (error != null) {
+                    throw new IOException("Failed to download large hearing from S3", error);
+                }
+                return false;
+            }
+            current = new ByteArrayInputStream(part.bytes());
+            subscriber.request(1);
+            return true;
+        }
+
+        private final class PartSubscriber extends BaseSubscriber<PartBytes> {
+            @Override
+            protected void hookOnSubscribe(Subscription subscription) {
+                request(1);
+            }
+
+            @Override
+            protected void hookOnNext(PartBytes part) {
+                parts.add(part);
+            }
+
+            @Override
+            protected void hookOnError(Throwable throwable) {
+                error = throwable;
+                parts.add(END);
+            }
+
+            @Override
+            protected void hookOnComplete() {
+                parts.add(END);
+            }
+        }
+    }
+
+    private record PartBytes(byte[] bytes, String contentRange) {
+        int length() {
+            return bytes.length;
+        }
+    }
+}
@@ -7,8 +7,9 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
 
-import java.nio.charset.StandardCharsets;
+import java.io.InputStream;
 
 @Service
 @Slf4j
@@ -21,14 +22,54 @@ public class S3Service {
     @Autowired
     private S3Client s3Client;
 
-    public String getObject(String key){
+    @Autowired
+    private LargeHearingDownloader largeHearingDownloader;
+
+    /**
+     * Opens the object for reading as it downloads, so that it can be parsed without first holding all of it in memory.
+     * The caller must close the stream. When the {@link LargeHearingDownloader} is enabled the object is instead fetched
+     * with parallel ranged GETs, or claimed from an earlier {@link #prefetchObject(String, String)}, and the stream is
+     * returned without waiting for the first part.
+     *
+     * @param bucket the bucket named in the large message pointer, or blank for the configured large hearings bucket
+     */
+    public InputStream getObjectStream(String bucket, String key){
+        final var bucketToRead = bucketOrDefault(bucket);
         try {
-          String message = s3Client.getObjectAsBytes(GetObjectRequest.builder().bucket(bucketName).key(key).build()).asString(StandardCharsets.UTF_8);
-          log.info("Successfully downloaded large s3 object {}", key);
-          return message;
+          if (largeHearingDownloader.isEnabled()) {
+              return largeHearingDownloader.download(bucketToRead, key);
+          }
+          final var stream = s3Client.getObject(GetObjectRequest.builder().bucket(bucketToRead).key(key).build());
+          log.info("Opened large s3 object {} in {} of {} bytes", key, bucketToRead, stream.response().contentLength());
+          return stream;
         } catch (RuntimeException e) {
           log.error("Failed to get file {} from S3", key, e);
           throw new RuntimeException("Failed to get file from S3", e);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * @return the size of the object in bytes, read from its metadata without downloading it
+     */
+    public long getObjectSize(String bucket, String key) {
+        return s3Client.headObject(HeadObjectRequest.builder().bucket(bucketOrDefault(bucket)).key(key).build())
+                .contentLength();
+    }
+
+    public boolean isPrefetchEnabled() {
+        return largeHearingDownloader.isEnabled();
+    }
+
+    /**
+     * Starts downloading the object in the background, to be claimed by a later {@link #getObjectStream(String, String)}
+     */
+    public void prefetchObject(String bucket, String key) {
+        if (largeHearingDownloader.isEnabled()) {
+            largeHearingDownloader.prefetch(bucketOrDefault(bucket), key);
+        }
+    }
+
+    private String bucketOrDefault(String bucket) {
+        return bucket == null || bucket.isBlank() ? bucketName : bucket;
+    }
+}
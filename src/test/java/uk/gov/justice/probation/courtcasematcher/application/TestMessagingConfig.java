@@ -5,7 +5,9 @@ import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.context.annotation.Bean;
 import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
 import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
 import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
 import software.amazon.awssdk.services.s3.S3Client;
 
 import java.net.URI;
@@ -26,4 +28,15 @@ public class TestMessagingConfig {
             .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create("any", "any")))
             .build();
     }
+
+    @Bean
+    public S3AsyncClient amazonS3LocalStackAsyncClient() {
+        return S3AsyncClient.builder()
+            .httpClientBuilder(NettyNioAsyncHttpClient.builder())
+            .endpointOverride(URI.create(endpointUrl))
+            .forcePathStyle(true)
+            .region(Region.of(regionName))
+            .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create("any", "any")))
+            .build();
+    }
 }
@@ -0,0 +1,42 @@
+package uk.gov.justice.probation.courtcasematcher.fingerprint;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class Fnv1aHasherTest {
+
+    // Test vectors for FNV-1a 64 from the FNV reference implementation
+    @Test
+    void givenText_thenHashAsFnv1a64() {
+        assertThat(new Fnv1aHasher().putText("").value()).isEqualTo(0xcbf29ce484222325L);
+        assertThat(new Fnv1aHasher().putText("a").value()).isEqualTo(0xaf63dc4c8601ec8cL);
+        assertThat(new Fnv1aHasher().putText("foobar").value()).isEqualTo(0x85944171f73967e8L);
+    }
+
+    @Test
+    void givenNonAsciiText_thenHashItsUtf8Bytes() {
+        final var text = "Café € 😀";
+        var expected = 0xcbf29ce484222325L;
+        for (byte b : text.getBytes(StandardCharsets.UTF_8)) {
+            expected = (expected ^ (b & 0xff)) * 0x100000001b3L;
+        }
+
+        assertThat(new Fnv1aHasher().putText(text).value()).isEqualTo(expected);
+    }
+
+    @Test
+    void givenCharsWithinALargerArray_thenHashAsTheEquivalentString() {
+        final var chars = "[Café 😀]".toCharArray();
+
+        assertThat(Fnv1aHasher.hash(chars, 1, chars.length - 2)).isEqualTo(Fnv1aHasher.hash("Café 😀"));
+    }
+
+    @Test
+    void givenValuesSplitDifferently_thenHashDifferently() {
+        assertThat(new Fnv1aHasher().put("ab").put("c").value()).isNotEqualTo(new Fnv1aHasher().put("a").put("bc").value());
+        assertThat(new Fnv1aHasher().put(null).value()).isNotEqualTo(new Fnv1aHasher().put("").value());
+    }
+}
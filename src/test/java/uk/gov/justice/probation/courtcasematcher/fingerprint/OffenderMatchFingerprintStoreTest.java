@@ -0,0 +1,116 @@
+package uk.gov.justice.probation.courtcasematcher.fingerprint;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import uk.gov.justice.probation.courtcasematcher.model.type.MatchType;
+import uk.gov.justice.probation.courtcasematcher.restclient.model.courtcaseservice.CCSGroupedOffenderMatchesRequest;
+import uk.gov.justice.probation.courtcasematcher.restclient.model.courtcaseservice.CCSMatchIdentifiers;
+import uk.gov.justice.probation.courtcasematcher.restclient.model.courtcaseservice.CCSOffenderAlias;
+import uk.gov.justice.probation.courtcasematcher.restclient.model.courtcaseservice.CCSOffenderMatch;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OffenderMatchFingerprintStoreTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void givenSameMatches_thenSameFingerprint() {
+        assertThat(OffenderMatchFingerprintStore.fingerprint(request(match("X123456", 0.9d, "Arthur"))))
+                .isEqualTo(OffenderMatchFingerprintStore.fingerprint(request(match("X123456", 0.9d, "Arthur"))));
+    }
+
+    @Test
+    void givenMatchesDiffer_thenDifferentFingerprint() {
+        final var fingerprint = OffenderMatchFingerprintStore.fingerprint(request(match("X123456", 0.9d, "Arthur"), match("X654321", 0.8d, "John")));
+
+        assertThat(OffenderMatchFingerprintStore.fingerprint(request(match("X123456", 0.9d, "Arthur"))))
+                .isNotEqualTo(fingerprint);
+        assertThat(OffenderMatchFingerprintStore.fingerprint(request(match("X654321", 0.8d, "John"), match("X123456", 0.9d, "Arthur"))))
+                .isNotEqualTo(fingerprint);
+        assertThat(OffenderMatchFingerprintStore.fingerprint(request(match("X123456", 0.7d, "Arthur"), match("X654321", 0.8d, "John"))))
+                .isNotEqualTo(fingerprint);
+        assertThat(OffenderMatchFingerprintStore.fingerprint(request(match("X123456", 0.9d, "Arthur"), match("X654321", 0.8d, "Jon"))))
+                .isNotEqualTo(fingerprint);
+        assertThat(OffenderMatchFingerprintStore.fingerprint(request()))
+                .isNotEqualTo(OffenderMatchFingerprintStore.fingerprint(new CCSGroupedOffenderMatchesRequest(null)));
+    }
+
+    @Test
+    void givenRecordedMatches_whenSameMatchesPosted_thenUnchanged() {
+        final var store = new OffenderMatchFingerprintStore(true, 10, "", meterRegistry);
+        store.record("defendant-1", 1L);
+
+        assertThat(store.isUnchanged("defendant-1", 1L)).isTrue();
+        assertThat(store.isUnchanged("defendant-1", 2L)).isFalse();
+        assertThat(store.isUnchanged("defendant-2", 1L)).isFalse();
+        assertThat(meterRegistry.get(OffenderMatchFingerprintStore.SKIPPED_METRIC).counter().count()).isEqualTo(1.0d);
+    }
+
+    @Test
+    void givenMaxEntriesExceeded_thenEvictLeastRecentlyUsed() {
+        final var store = new OffenderMatchFingerprintStore(true, 2, "", meterRegistry);
+        store.record("defendant-1", 1L);
+        store.record("defendant-2", 2L);
+        store.isUnchanged("defendant-1", 1L);
+        store.record("defendant-3", 3L);
+
+        assertThat(store.size()).isEqualTo(2);
+        assertThat(meterRegistry.get(OffenderMatchFingerprintStore.SIZE_METRIC).gauge().value()).isEqualTo(2.0d);
+        assertThat(store.isUnchanged("defendant-1", 1L)).isTrue();
+        assertThat(store.isUnchanged("defendant-2", 2L)).isFalse();
+    }
+
+    @Test
+    void givenFile_whenRestarted_thenFingerprintsSurvive() {
+        final var file = tempDir.resolve("offender-match-fingerprints.tsv");
+        final var store = new OffenderMatchFingerprintStore(true, 10, file.toString(), meterRegistry);
+        store.record("defendant-1", 1L);
+        store.record("defendant-1", 2L);
+        store.close();
+
+        final var restarted = new OffenderMatchFingerprintStore(true, 10, file.toString(), new SimpleMeterRegistry());
+
+        assertThat(restarted.isUnchanged("defendant-1", 2L)).isTrue();
+        assertThat(restarted.isUnchanged("defendant-1", 1L)).isFalse();
+        restarted.close();
+    }
+
+    @Test
+    void givenDisabled_thenNeverUnchanged() {
+        final var store = new OffenderMatchFingerprintStore(false, 10, "", meterRegistry);
+        store.record("defendant-1", 1L);
+
+        assertThat(store.isUnchanged("defendant-1", 1L)).isFalse();
+    }
+
+    private static CCSGroupedOffenderMatchesRequest request(CCSOffenderMatch... matches) {
+        return new CCSGroupedOffenderMatchesRequest(List.of(matches));
+    }
+
+    private static CCSOffenderMatch match(String crn, double probability, String aliasFirstName) {
+        return CCSOffenderMatch.builder()
+                .matchIdentifiers(CCSMatchIdentifiers.builder()
+                        .crn(crn)
+                        .pnc("2004/0012345U")
+                        .aliases(List.of(CCSOffenderAlias.builder()
+                                .firstName(aliasFirstName)
+                                .surname("Morgan")
+                                .dateOfBirth(LocalDate.of(1980, 1, 1))
+                                .build()))
+                        .build())
+                .matchType(MatchType.NAME_DOB)
+                .confirmed(false)
+                .rejected(false)
+                .matchProbability(probability)
+                .build();
+    }
+}
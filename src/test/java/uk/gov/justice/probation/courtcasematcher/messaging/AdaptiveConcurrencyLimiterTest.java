@@ -0,0 +1,136 @@
+package uk.gov.justice.probation.courtcasematcher.messaging;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AdaptiveConcurrencyLimiterTest {
+
+    private static final int SAMPLE_WINDOW = 4;
+    private static final Duration FAST = Duration.ofMillis(100);
+    private static final Duration SLOW = Duration.ofMillis(5000);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AdaptiveConcurrencyLimiter limiter = limiter(true);
+
+    @Test
+    void givenHealthyWindow_thenIncreaseLimitByOne() {
+        recordWindow(FAST, 200);
+
+        assertThat(limiter.getLimit()).isEqualTo(11);
+        assertThat(limitChanges("healthy")).isEqualTo(1.0d);
+        assertThat(meterRegistry.get(AdaptiveConcurrencyLimiter.LIMIT_METRIC).gauge().value()).isEqualTo(11.0d);
+    }
+
+    @Test
+    void givenSlowWindow_thenBackOffMultiplicatively() {
+        recordWindow(SLOW, 200);
+
+        assertThat(limiter.getLimit()).isEqualTo(5);
+        assertThat(limitChanges("latency")).isEqualTo(1.0d);
+    }
+
+    @Test
+    void givenThrottledWindow_thenBackOffMultiplicatively() {
+        recordWindow(FAST, 429);
+
+        assertThat(limiter.getLimit()).isEqualTo(5);
+        assertThat(limitChanges("errors")).isEqualTo(1.0d);
+    }
+
+    @Test
+    void givenServerErrorsAndTimeouts_thenBackOffNoLowerThanMinimum() {
+        IntStream.range(0, 10).forEach(i -> {
+            limiter.onDownstreamResponse("court-case-service", FAST, 503);
+            limiter.onDownstreamError("offender-search", SLOW);
+            limiter.onDownstreamResponse("court-case-service", FAST, 500);
+            limiter.onDownstreamError("offender-search", SLOW);
+        });
+
+        assertThat(limiter.getLimit()).isEqualTo(2);
+    }
+
+    @Test
+    void givenPartialWindow_thenLimitIsUnchanged() {
+        limiter.onDownstreamResponse("court-case-service", SLOW, 500);
+
+        assertThat(limiter.getLimit()).isEqualTo(10);
+    }
+
+    @Test
+    void givenLimitReached_thenAcquireWaitsForRelease() {
+        IntStream.range(0, 10).forEach(i -> limiter.acquire());
+
+        final var waiting = CompletableFuture.runAsync(limiter::acquire);
+        assertThat(waiting).failsWithin(200, TimeUnit.MILLISECONDS);
+
+        limiter.release();
+
+        assertThat(waiting).succeedsWithin(5, TimeUnit.SECONDS);
+        assertThat(meterRegistry.get(AdaptiveConcurrencyLimiter.IN_FLIGHT_METRIC).gauge().value()).isEqualTo(10.0d);
+    }
+
+    @Test
+    void givenLimitReached_thenLimitedWorkWaitsForRelease() {
+        IntStream.range(0, 9).forEach(i -> limiter.acquire());
+        final var running = Sinks.empty();
+
+        final var first = limiter.limit(running.asMono()).toFuture();
+        final var second = limiter.limit(Mono.fromRunnable(() -> { })).toFuture();
+        assertThat(limiter.getInFlight()).isEqualTo(10);
+        assertThat(second).isNotDone();
+
+        running.tryEmitEmpty();
+
+        assertThat(first).isCompleted();
+        assertThat(second).isCompleted();
+        assertThat(limiter.getInFlight()).isEqualTo(9);
+    }
+
+    @Test
+    void givenWaitingWorkCancelled_thenGiveUpItsPlace() {
+        IntStream.range(0, 10).forEach(i -> limiter.acquire());
+
+        limiter.limit(Mono.never()).subscribe().dispose();
+        limiter.release();
+
+        assertThat(limiter.getInFlight()).isEqualTo(9);
+        StepVerifier.create(limiter.limit(Mono.just("saved")))
+                .expectNext("saved")
+                .verifyComplete();
+        assertThat(limiter.getInFlight()).isEqualTo(9);
+    }
+
+    @Test
+    void givenDisabled_thenNeverLimitOrAdjust() {
+        final var disabled = limiter(false);
+
+        IntStream.range(0, 20).forEach(i -> disabled.acquire());
+        IntStream.range(0, SAMPLE_WINDOW).forEach(i -> disabled.onDownstreamResponse("court-case-service", SLOW, 500));
+
+        assertThat(disabled.getLimit()).isEqualTo(10);
+        assertThat(disabled.getInFlight()).isZero();
+    }
+
+    private void recordWindow(Duration latency, int statusCode) {
+        IntStream.range(0, SAMPLE_WINDOW).forEach(i -> limiter.onDownstreamResponse("court-case-service", latency, statusCode));
+    }
+
+    private double limitChanges(String reason) {
+        return meterRegistry.get(AdaptiveConcurrencyLimiter.LIMIT_CHANGE_METRIC).tag("reason", reason).counter().count();
+    }
+
+    private AdaptiveConcurrencyLimiter limiter(boolean enabled) {
+        return new AdaptiveConcurrencyLimiter(enabled, 10, 2, 20, SAMPLE_WINDOW, 0.5d, 2000, 0.1d,
+                enabled ? meterRegistry : new SimpleMeterRegistry());
+    }
+}
@@ -0,0 +1,118 @@
+package uk.gov.justice.probation.courtcasematcher.messaging;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import uk.gov.justice.probation.courtcasematcher.messaging.HearingAdmissionController.AdmissionRejectedException;
+import uk.gov.justice.probation.courtcasematcher.messaging.HearingAdmissionController.Lane;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+class HearingAdmissionControllerTest {
+
+    private static final long HEAVY_BYTES = 1000;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void givenMessage_thenClassifyLane() {
+        final var controller = controller(true, 1, 10_000, 100_000, 0);
+
+        assertThat(controller.laneOf(inline(100))).isEqualTo(Lane.LIGHT);
+        assertThat(controller.laneOf(MessageSize.fromS3(100))).isEqualTo(Lane.HEAVY);
+        assertThat(controller.laneOf(inline(HEAVY_BYTES))).isEqualTo(Lane.HEAVY);
+    }
+
+    @Test
+    void givenHeavyLaneFull_thenRejectHeavyButAdmitLight() {
+        final var controller = controller(true, 1, 10_000, 100_000, 0);
+        final var heavy = controller.admit(inline(2000));
+
+        assertThatExceptionOfType(AdmissionRejectedException.class)
+                .isThrownBy(() -> controller.admit(inline(2000)));
+        final var light = controller.admit(inline(100));
+
+        assertThat(controller.getInFlight(Lane.HEAVY)).isEqualTo(1);
+        assertThat(controller.getInFlight(Lane.LIGHT)).isEqualTo(1);
+        assertThat(meterRegistry.get(HearingAdmissionController.REJECTED_METRIC).tag("lane", "heavy").counter().count()).isEqualTo(1.0d);
+        heavy.release();
+        light.release();
+        assertThat(controller.getInFlightBytes(Lane.HEAVY)).isZero();
+        assertThat(controller.getInFlightBytes(Lane.LIGHT)).isZero();
+    }
+
+    @Test
+    void givenPodByteBudgetFull_thenRejectEvenLightMessages() {
+        final var controller = controller(true, 2, 10_000, 3000, 0);
+        controller.admit(inline(2500));
+
+        assertThatExceptionOfType(AdmissionRejectedException.class)
+                .isThrownBy(() -> controller.admit(inline(600)));
+        assertThat(controller.admit(inline(500)).lane()).isEqualTo(Lane.LIGHT);
+    }
+
+    @Test
+    void givenMessageLargerThanWholeBudget_whenNothingInFlight_thenAdmit() {
+        final var controller = controller(true, 1, 10_000, 10_000, 0);
+
+        assertThat(controller.admit(inline(50_000)).lane()).isEqualTo(Lane.HEAVY);
+    }
+
+    @Test
+    void givenRoomFreedWithinMaxWait_thenAdmit() {
+        final var controller = controller(true, 1, 10_000, 100_000, 5000);
+        final var heavy = controller.admit(inline(2000));
+
+        CompletableFuture.runAsync(heavy::release, CompletableFuture.delayedExecutor(100, TimeUnit.MILLISECONDS));
+
+        assertThat(controller.admit(inline(2000)).lane()).isEqualTo(Lane.HEAVY);
+        assertThat(controller.getInFlight(Lane.HEAVY)).isEqualTo(1);
+    }
+
+    @Test
+    void givenBatchOfHeavyMessages_whenHeavyLaneEmpty_thenAdmitTogetherWithoutWaitingOnThemselves() {
+        final var controller = controller(true, 1, 10_000, 100_000, 5000);
+
+        final var admissions = controller.admitAll(List.of(inline(2000), inline(2000), inline(100)));
+
+        assertThat(admissions).allMatch(Optional::isPresent);
+        assertThat(controller.getInFlight(Lane.HEAVY)).isEqualTo(2);
+        assertThat(controller.getInFlight(Lane.LIGHT)).isEqualTo(1);
+    }
+
+    @Test
+    void givenHeavyLaneHeldByAnotherBatch_thenAdmitOnlyTheBatchMessagesWhichFit() {
+        final var controller = controller(true, 1, 10_000, 100_000, 0);
+        controller.admit(inline(2000));
+
+        final var admissions = controller.admitAll(List.of(inline(2000), inline(100)));
+
+        assertThat(admissions.get(0)).isEmpty();
+        assertThat(admissions.get(1)).isPresent();
+        assertThat(meterRegistry.get(HearingAdmissionController.REJECTED_METRIC).tag("lane", "heavy").counter().count()).isEqualTo(1.0d);
+    }
+
+    @Test
+    void givenDisabled_thenAlwaysAdmit() {
+        final var controller = controller(false, 0, 0, 0, 0);
+
+        controller.admit(inline(50_000)).release();
+        controller.admit(inline(50_000)).release();
+
+        assertThat(controller.getInFlight(Lane.HEAVY)).isZero();
+    }
+
+    private HearingAdmissionController controller(boolean enabled, int heavyConcurrency, long heavyLaneMaxBytes, long maxInFlightBytes, long maxWaitMs) {
+        return new HearingAdmissionController(enabled, HEAVY_BYTES, heavyConcurrency, heavyLaneMaxBytes,
+                maxInFlightBytes, maxWaitMs, 30, meterRegistry);
+    }
+
+    private static MessageSize inline(long bytes) {
+        return new MessageSize(false, bytes);
+    }
+}
@@ -1,14 +1,14 @@
 package uk.gov.justice.probation.courtcasematcher.messaging;
 
+import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import uk.gov.justice.probation.courtcasematcher.messaging.model.MessageType;
-import uk.gov.justice.probation.courtcasematcher.messaging.model.S3Message;
 import uk.gov.justice.probation.courtcasematcher.messaging.model.commonplatform.CPCaseMarker;
 import uk.gov.justice.probation.courtcasematcher.messaging.model.commonplatform.CPCourtCentre;
 import uk.gov.justice.probation.courtcasematcher.messaging.model.commonplatform.CPDefendant;
@@ -29,13 +29,18 @@ import jakarta.validation.ConstraintViolationException;
 import jakarta.validation.Path;
 import uk.gov.justice.probation.courtcasematcher.service.S3Service;
 
-import java.util.ArrayList;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.Collections;
-import java.util.LinkedHashMap;
 import java.util.Set;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 import static org.assertj.core.api.AssertionsForClassTypes.assertThatExceptionOfType;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -62,7 +67,9 @@ class HearingExtractorTest {
     @Mock
     S3Service s3Service;
     @Mock
-    ObjectMapper objectMapper;
+    MessageDeduplicator messageDeduplicator;
+    @Mock
+    SnsEnvelopeParser snsEnvelopeParser;
 
     private HearingExtractor hearingExtractor;
     private final SnsMessageContainer.SnsMessageContainerBuilder messageContainerBuilder = SnsMessageContainer.builder()
@@ -100,8 +107,10 @@ class HearingExtractorTest {
                 snsContainerParser,
                 libraParser,
                 commonPlatformParser,
-                objectMapper,
-                s3Service
+                s3Service,
+                messageDeduplicator,
+                snsEnvelopeParser,
+                false
         );
     }
 
@@ -140,7 +149,7 @@ class HearingExtractorTest {
     }
 
     @Test
-    void whenS3StoredEventReceived_thenGetHearingFromS3_thenParseAndReturnHearing() throws JsonProcessingException {
+    void whenS3StoredEventReceived_thenGetHearingFromS3_thenParseAndReturnHearing() throws IOException {
         String s3Key = "ba8d919b-a9d8-433b-b4b4-c196f67c773e";
         String s3Bucket = "local-644707540a8083b7b15a77f51641f632";
         String messageBody = "[ \"software.amazon.payloadoffloading.PayloadS3Pointer\", {\n" +
@@ -158,21 +167,13 @@ class HearingExtractorTest {
                 .build()))
             .build());
 
-        ArrayList<Object> parseMessageBody = new ArrayList<>();
-        parseMessageBody.add("software.amazon.payloadoffloading.PayloadS3Pointer");
-        LinkedHashMap<String, String> s3Pointer = new LinkedHashMap<>();
-        s3Pointer.put("s3BucketName", s3Bucket);
-        s3Pointer.put("s3Key", s3Key);
-        parseMessageBody.add(s3Pointer);
-        when(objectMapper.readValue(messageBody, ArrayList.class)).thenReturn(parseMessageBody);
-        when(objectMapper.writeValueAsString(s3Pointer)).thenReturn(s3Pointer.toString());
-        when(objectMapper.readValue(s3Pointer.toString(), S3Message.class)).thenReturn(new S3Message(s3Bucket, s3Key));
-
-        when(s3Service.getObject(s3Key)).thenReturn(MESSAGE_STRING);
-        when(commonPlatformParser.parseMessage(MESSAGE_STRING, CPHearingEvent.class)).thenReturn(commonPlatformHearingEvent);
+        final var s3Object = spy(new ByteArrayInputStream(MESSAGE_STRING.getBytes(StandardCharsets.UTF_8)));
+        when(s3Service.getObjectStream(s3Bucket, s3Key)).thenReturn(s3Object);
+        when(commonPlatformParser.parseMessage(s3Object, CPHearingEvent.class)).thenReturn(commonPlatformHearingEvent);
 
         var hearing = hearingExtractor.extractHearings(MESSAGE_CONTAINER_STRING, MESSAGE_ID);
 
+        verify(s3Object).close();
         assertThat(hearing).isNotNull();
         assertThat(hearing.getFirst().getCaseId()).isEqualTo(CASE_ID);
         assertThat(hearing.getFirst().getHearingId()).isEqualTo(HEARING_ID);
@@ -221,6 +222,96 @@ class HearingExtractorTest {
                 .withMessage("Unprocessable message type: NONE");
     }
 
+    @Test
+    void whenReplayOfProcessedMessageReceived_thenReturnNoHearingsWithoutParsingMessage() throws JsonProcessingException {
+        final var messageContainer = messageContainerBuilder
+                .messageAttributes(new MessageAttributes(new MessageAttribute("String", LIBRA_EVENT_TYPE),
+                    MessageType.LIBRA_COURT_CASE, HearingEventType.builder()
+                        .value("ConfirmedOrUpdated")
+                        .build()))
+                .build();
+        when(snsContainerParser.parseMessage(MESSAGE_CONTAINER_STRING, SnsMessageContainer.class)).thenReturn(messageContainer);
+        when(messageDeduplicator.isReplay(messageContainer, MESSAGE_ID)).thenReturn(true);
+
+        var hearings = hearingExtractor.extractHearings(MESSAGE_CONTAINER_STRING, MESSAGE_ID);
+
+        assertThat(hearings.isEmpty()).isTrue();
+        verifyNoInteractions(libraParser, commonPlatformParser, s3Service);
+    }
+
+    @Test
+    void givenStreamingParse_whenCommonPlatformHearingEventReceived_thenReadFromEnvelopeAndReturnHearing() throws IOException {
+        hearingExtractor = new HearingExtractor(snsContainerParser, libraParser, commonPlatformParser, s3Service,
+                messageDeduplicator, snsEnvelopeParser, true);
+        final var envelope = new SnsEnvelopeParser.SnsEnvelope("sns-message-id",
+                new MessageAttributes(new MessageAttribute("String", CP_EVENT_TYPE),
+                    MessageType.COMMON_PLATFORM_HEARING, HearingEventType.builder()
+                        .value("ConfirmedOrUpdated")
+                        .build()),
+                1L, null);
+        when(snsEnvelopeParser.parse(MESSAGE_CONTAINER_STRING)).thenReturn(envelope);
+        when(snsEnvelopeParser.readMessage(envelope, CPHearingEvent.class)).thenReturn(commonPlatformHearingEvent);
+
+        var hearings = hearingExtractor.extractHearings(MESSAGE_CONTAINER_STRING, MESSAGE_ID);
+
+        assertThat(hearings.getFirst().getHearingId()).isEqualTo(HEARING_ID);
+        assertThat(hearings.getFirst().getHearingEventType()).isEqualTo("ConfirmedOrUpdated");
+        verifyNoInteractions(snsContainerParser, commonPlatformParser);
+    }
+
+    @Test
+    void givenLargeHearingPointer_whenPrefetching_thenStartDownloadFromPointerBucket() throws IOException {
+        final var pointer = new JsonFactory().createParser(
+                "[\"software.amazon.payloadoffloading.PayloadS3Pointer\", {\"s3BucketName\": \"bucket\", \"s3Key\": \"key\"}]");
+        pointer.nextToken();
+        final var envelope = new SnsEnvelopeParser.SnsEnvelope("sns-message-id",
+                new MessageAttributes(new MessageAttribute("String", "commonplatform.large.case.received"),
+                    MessageType.COMMON_PLATFORM_HEARING, null),
+                1L, TokenBuffer.asCopyOfValue(pointer));
+        final var payload = "{\"eventType\": \"commonplatform.large.case.received\"}";
+        when(s3Service.isPrefetchEnabled()).thenReturn(true);
+        when(snsEnvelopeParser.parse(payload)).thenReturn(envelope);
+
+        hearingExtractor.prefetchLargeHearing(payload);
+
+        verify(s3Service).prefetchObject("bucket", "key");
+    }
+
+    @Test
+    void givenLargeHearingPointerDeclaringItsSize_whenSized_thenSizeFromS3WithoutRequest() throws IOException {
+        final var payload = "{\"eventType\": \"commonplatform.large.case.received\"}";
+        when(snsEnvelopeParser.parse(payload)).thenReturn(largeHearingPointer(new MessageAttribute("Number", "5242880")));
+
+        assertThat(hearingExtractor.sizeOf(payload)).isEqualTo(MessageSize.fromS3(5242880));
+        verifyNoInteractions(s3Service);
+    }
+
+    @Test
+    void givenLargeHearingPointer_whenSized_thenReadSizeFromObjectMetadata() throws IOException {
+        final var payload = "{\"eventType\": \"commonplatform.large.case.received\"}";
+        when(snsEnvelopeParser.parse(payload)).thenReturn(largeHearingPointer(null));
+        when(s3Service.getObjectSize("bucket", "key")).thenReturn(5242880L);
+
+        assertThat(hearingExtractor.sizeOf(payload)).isEqualTo(MessageSize.fromS3(5242880));
+        verify(s3Service, never()).getObjectStream("bucket", "key");
+    }
+
+    @Test
+    void givenInlineHearing_whenSized_thenSizeAsMessageWithoutParsing() {
+        assertThat(hearingExtractor.sizeOf(MESSAGE_CONTAINER_STRING)).isEqualTo(MessageSize.inline(MESSAGE_CONTAINER_STRING));
+        verifyNoInteractions(snsEnvelopeParser, s3Service);
+    }
+
+    private static SnsEnvelopeParser.SnsEnvelope largeHearingPointer(MessageAttribute extendedPayloadSize) throws IOException {
+        final var pointer = new JsonFactory().createParser(
+                "[\"software.amazon.payloadoffloading.PayloadS3Pointer\", {\"s3BucketName\": \"bucket\", \"s3Key\": \"key\"}]");
+        pointer.nextToken();
+        return new SnsEnvelopeParser.SnsEnvelope("sns-message-id",
+                new MessageAttributes(new MessageAttribute("String", "commonplatform.large.case.received"),
+                    MessageType.COMMON_PLATFORM_HEARING, null, extendedPayloadSize),
+                1L, TokenBuffer.asCopyOfValue(pointer));
+    }
+
     @Test
     void givenInputIsInvalid_whenParsingMessageContainer_thenThrow() throws JsonProcessingException {
         final Set<? extends ConstraintViolation<?>> constraintViolations = Set.of(aViolation);
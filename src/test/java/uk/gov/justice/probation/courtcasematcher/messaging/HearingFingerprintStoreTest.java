@@ -0,0 +1,89 @@
+package uk.gov.justice.probation.courtcasematcher.messaging;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import uk.gov.justice.probation.courtcasematcher.model.domain.Hearing;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HearingFingerprintStoreTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void givenRecordedHearing_whenSameHearingReceived_thenUnchanged() {
+        final var store = new HearingFingerprintStore(true, 10, "", meterRegistry);
+        store.record(hearing("hearing-1", "URN"));
+
+        assertThat(store.isUnchanged(hearing("hearing-1", "URN"))).isTrue();
+        assertThat(store.isUnchanged(hearing("hearing-1", "OTHER-URN"))).isFalse();
+        assertThat(store.isUnchanged(hearing("hearing-2", "URN"))).isFalse();
+        assertThat(meterRegistry.get(HearingFingerprintStore.HIT_METRIC).counter().count()).isEqualTo(1.0d);
+        assertThat(meterRegistry.get(HearingFingerprintStore.MISS_METRIC).counter().count()).isEqualTo(2.0d);
+    }
+
+    @Test
+    void givenHearingWithoutIds_thenNeverRecorded() {
+        final var store = new HearingFingerprintStore(true, 10, "", meterRegistry);
+        final var newLibraHearing = Hearing.builder().urn("URN").build();
+        store.record(newLibraHearing);
+
+        assertThat(store.isUnchanged(newLibraHearing)).isFalse();
+        assertThat(store.size()).isZero();
+    }
+
+    @Test
+    void givenMaxEntriesExceeded_thenEvictLeastRecentlyUsed() {
+        final var store = new HearingFingerprintStore(true, 2, "", meterRegistry);
+        store.record(hearing("hearing-1", "URN"));
+        store.record(hearing("hearing-2", "URN"));
+        store.isUnchanged(hearing("hearing-1", "URN"));
+        store.record(hearing("hearing-3", "URN"));
+
+        assertThat(store.size()).isEqualTo(2);
+        assertThat(store.isUnchanged(hearing("hearing-1", "URN"))).isTrue();
+        assertThat(store.isUnchanged(hearing("hearing-2", "URN"))).isFalse();
+    }
+
+    @Test
+    void givenFile_whenRestarted_thenFingerprintsSurvive() throws IOException {
+        final var file = tempDir.resolve("fingerprints.tsv");
+        final var store = new HearingFingerprintStore(true, 10, file.toString(), meterRegistry);
+        store.record(hearing("hearing-1", "URN"));
+        store.record(hearing("hearing-1", "NEW-URN"));
+        store.close();
+        Files.writeString(file, "half-written-li", StandardOpenOption.APPEND);
+
+        final var restarted = new HearingFingerprintStore(true, 10, file.toString(), new SimpleMeterRegistry());
+
+        assertThat(restarted.isUnchanged(hearing("hearing-1", "NEW-URN"))).isTrue();
+        assertThat(restarted.isUnchanged(hearing("hearing-1", "URN"))).isFalse();
+        assertThat(Files.readAllLines(file)).hasSize(1);
+        restarted.close();
+    }
+
+    @Test
+    void givenDisabled_thenNeverUnchanged() {
+        final var store = new HearingFingerprintStore(false, 10, "", meterRegistry);
+        store.record(hearing("hearing-1", "URN"));
+
+        assertThat(store.isUnchanged(hearing("hearing-1", "URN"))).isFalse();
+    }
+
+    private static Hearing hearing(String hearingId, String urn) {
+        return Hearing.builder()
+                .hearingId(hearingId)
+                .caseId("case-1")
+                .urn(urn)
+                .build();
+    }
+}
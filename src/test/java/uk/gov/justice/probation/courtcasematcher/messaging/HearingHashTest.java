@@ -0,0 +1,79 @@
+package uk.gov.justice.probation.courtcasematcher.messaging;
+
+import org.junit.jupiter.api.Test;
+import uk.gov.justice.probation.courtcasematcher.model.domain.Address;
+import uk.gov.justice.probation.courtcasematcher.model.domain.Defendant;
+import uk.gov.justice.probation.courtcasematcher.model.domain.Hearing;
+import uk.gov.justice.probation.courtcasematcher.model.domain.HearingDay;
+import uk.gov.justice.probation.courtcasematcher.model.domain.Name;
+import uk.gov.justice.probation.courtcasematcher.model.domain.Offence;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.gov.justice.probation.courtcasematcher.model.type.DefendantType.PERSON;
+
+class HearingHashTest {
+
+    private static final Defendant DEFENDANT = Defendant.builder()
+            .defendantId("d1")
+            .type(PERSON)
+            .name(Name.builder().forename1("Arthur").surname("Morgan").build())
+            .address(Address.builder().line1("27").postcode("S1 1AB").build())
+            .offences(List.of(Offence.builder().offenceTitle("Theft").sequenceNumber(1).build()))
+            .build();
+
+    private static final Hearing HEARING = Hearing.builder()
+            .urn("URN")
+            .hearingDays(List.of(HearingDay.builder().courtCode("B10JQ").build()))
+            .defendants(List.of(DEFENDANT))
+            .build();
+
+    @Test
+    void givenEqualHearings_thenEqualHashes() {
+        final var copy = HEARING.withDefendants(List.of(DEFENDANT.withAddress(Address.builder().line1("27").postcode("S1 1AB").build())));
+
+        assertThat(HearingHash.of(copy)).isEqualTo(HearingHash.of(HEARING));
+    }
+
+    @Test
+    void givenFieldsNotCompared_thenEqualHashes() {
+        final var hearing = HEARING
+                .withCaseId("another case")
+                .withDefendants(List.of(DEFENDANT.withDefendantId("d2").withCrn("X123456").withProbationStatus("CURRENT")));
+
+        assertThat(HearingHash.of(hearing).value()).isEqualTo(HearingHash.of(HEARING).value());
+    }
+
+    @Test
+    void givenAddressChanged_thenOnlyAddressDefendantAndHearingHashesChange() {
+        final var original = HearingHash.of(HEARING);
+        final var changed = HearingHash.of(HEARING.withDefendants(List.of(DEFENDANT.withAddress(Address.builder().line1("27").postcode("S2 2AB").build()))));
+
+        assertThat(changed.value()).isNotEqualTo(original.value());
+        assertThat(changed.urn()).isEqualTo(original.urn());
+        assertThat(changed.hearingDays()).isEqualTo(original.hearingDays());
+        final var defendant = changed.defendants().getFirst();
+        final var originalDefendant = original.defendants().getFirst();
+        assertThat(defendant.value()).isNotEqualTo(originalDefendant.value());
+        assertThat(defendant.address()).isNotEqualTo(originalDefendant.address());
+        assertThat(defendant.details()).isEqualTo(originalDefendant.details());
+        assertThat(defendant.name()).isEqualTo(originalDefendant.name());
+        assertThat(defendant.phoneNumber()).isEqualTo(originalDefendant.phoneNumber());
+        assertThat(defendant.offences()).isEqualTo(originalDefendant.offences());
+    }
+
+    @Test
+    void givenAbsentAndEmptyParts_thenHashDifferently() {
+        final var noName = HearingHash.hashDefendant(DEFENDANT.withName(null));
+        final var emptyName = HearingHash.hashDefendant(DEFENDANT.withName(Name.builder().build()));
+        final var noOffences = HearingHash.hashDefendant(DEFENDANT.withOffences(null));
+        final var emptyOffences = HearingHash.hashDefendant(DEFENDANT.withOffences(List.of()));
+
+        assertThat(noName.name()).isEqualTo(HearingHash.ABSENT);
+        assertThat(emptyName.name()).isNotEqualTo(HearingHash.ABSENT);
+        assertThat(noOffences.offences()).isNotEqualTo(emptyOffences.offences());
+        assertThat(HearingHash.of(HEARING.withDefendants(null)).value())
+                .isNotEqualTo(HearingHash.of(HEARING.withDefendants(List.of())).value());
+    }
+}
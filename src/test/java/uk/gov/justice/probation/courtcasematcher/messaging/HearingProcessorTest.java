@@ -1,5 +1,6 @@
 package uk.gov.justice.probation.courtcasematcher.messaging;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
@@ -7,23 +8,31 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
 import uk.gov.justice.probation.courtcasematcher.application.FeatureFlags;
 import uk.gov.justice.probation.courtcasematcher.model.domain.CaseMarker;
 import uk.gov.justice.probation.courtcasematcher.model.domain.Defendant;
 import uk.gov.justice.probation.courtcasematcher.model.domain.Hearing;
+import uk.gov.justice.probation.courtcasematcher.model.domain.HearingDelta;
 import uk.gov.justice.probation.courtcasematcher.model.domain.HearingDay;
 import uk.gov.justice.probation.courtcasematcher.model.mapper.HearingMapper;
 import uk.gov.justice.probation.courtcasematcher.service.CourtCaseService;
 import uk.gov.justice.probation.courtcasematcher.service.CprService;
+import uk.gov.justice.probation.courtcasematcher.service.HearingWriteCoalescer;
 import uk.gov.justice.probation.courtcasematcher.service.TelemetryService;
 
+import java.time.Duration;
 import java.util.Collections;
 import java.util.UUID;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
-import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
@@ -32,7 +41,6 @@ import static uk.gov.justice.probation.courtcasematcher.model.type.DefendantType
 
 @ExtendWith(MockitoExtension.class)
 class HearingProcessorTest {
-    private static final long MATCHER_THREAD_TIMEOUT = 4000;
     private static final String MESSAGE_ID = "messageId";
 
     @Mock
@@ -48,6 +56,12 @@ class HearingProcessorTest {
     @Mock
     private CprService cprService;
 
+    @Mock
+    private AdaptiveConcurrencyLimiter concurrencyLimiter;
+
+    @Mock
+    private HearingFingerprintStore hearingFingerprintStore;
+
     private HearingProcessor hearingProcessor;
 
     @BeforeEach
@@ -55,8 +69,12 @@ class HearingProcessorTest {
         hearingProcessor = new HearingProcessor(telemetryService,
                 courtCaseService,
                 cprService,
-                featureFlags
+                featureFlags,
+                concurrencyLimiter,
+                hearingFingerprintStore,
+                new HearingWriteCoalescer(false, new SimpleMeterRegistry())
         );
+        lenient().when(concurrencyLimiter.limit(any())).thenAnswer(invocation -> invocation.getArgument(0));
 
     }
 
@@ -173,9 +191,34 @@ class HearingProcessorTest {
             verify(telemetryService).trackHearingChangedEvent(any(Hearing.class));
             verify(courtCaseService).findHearing(any(Hearing.class));
             verify(courtCaseService).updateProbationStatusDetail(eq(courtCaseMerged));
-            verify(courtCaseService, timeout(MATCHER_THREAD_TIMEOUT)).saveHearing(eq(courtCaseMerged));
+            verify(courtCaseService).saveHearing(eq(courtCaseMerged));
+            verify(hearingFingerprintStore).record(courtCase);
             verifyNoMoreInteractions(courtCaseService, telemetryService);
         }
+
+        @Test
+        void whenSaveOfChangedCaseFails_ThenFailProcessing() {
+            var courtCase = Hearing.builder()
+                    .caseId(caseId)
+                    .hearingDays(Collections.singletonList(HearingDay.builder()
+                            .courtCode("SHF")
+                            .build()))
+                    .defendants(Collections.singletonList(Defendant.builder()
+                            .type(PERSON)
+                            .crn("X320741")
+                            .defendantId(defendantId)
+                            .build()))
+                    .build();
+            var courtCaseMerged = HearingMapper.merge(courtCase, existingHearing);
+            when(courtCaseService.findHearing(any(Hearing.class))).thenReturn(Mono.just(existingHearing));
+            when(courtCaseService.updateProbationStatusDetail(courtCaseMerged)).thenReturn(Mono.just(courtCaseMerged));
+            doThrow(new RuntimeException("bang")).when(courtCaseService).saveHearing(any(Hearing.class));
+
+            assertThrows(RuntimeException.class, () -> hearingProcessor.process(courtCase, MESSAGE_ID));
+
+            verify(telemetryService).trackProcessingFailureEvent(courtCase);
+            verify(hearingFingerprintStore, never()).record(courtCase);
+        }
         @Test
         void whenThatCaseHasNotChanged_ThenJustTrackEvent() {
             when(courtCaseService.findHearing(any(Hearing.class))).thenReturn(Mono.just(existingHearing));
@@ -184,15 +227,183 @@ class HearingProcessorTest {
 
             verify(telemetryService).trackHearingUnChangedEvent(any(Hearing.class));
             verify(courtCaseService).findHearing(any(Hearing.class));
+            verify(hearingFingerprintStore).record(existingHearing);
             verifyNoMoreInteractions(courtCaseService, telemetryService);
         }
+
+        @Test
+        void whenFingerprintIsUnchanged_ThenTrackEventWithoutFetchingExistingHearing() {
+            when(hearingFingerprintStore.isUnchanged(existingHearing)).thenReturn(true);
+
+            hearingProcessor.process(existingHearing, MESSAGE_ID);
+
+            verify(telemetryService).trackHearingUnChangedEvent(existingHearing);
+            verifyNoMoreInteractions(courtCaseService, telemetryService, cprService);
+        }
     }
 
+    @Nested
+    class GivenReactiveProcessing {
+
+        @Test
+        void whenNewCase_ThenMatchAndSaveWithoutBlocking() {
+            var courtCase = Hearing.builder()
+                    .hearingDays(Collections.singletonList(HearingDay.builder()
+                            .courtCode("SHF")
+                            .build()))
+                    .defendants(Collections.singletonList(Defendant.builder()
+                            .cro("CRO")
+                            .type(PERSON)
+                            .build()))
+                    .build();
+            when(courtCaseService.findHearing(any(Hearing.class))).thenReturn(Mono.empty());
+            when(cprService.updateDefendantsAsync(courtCase.getDefendants())).thenReturn(Mono.empty());
+            when(courtCaseService.saveHearingAsync(courtCase)).thenReturn(Mono.empty());
+
+            StepVerifier.create(hearingProcessor.processAsync(courtCase, MESSAGE_ID))
+                    .verifyComplete();
+
+            verify(telemetryService).trackNewHearingEvent(any(Hearing.class), eq(MESSAGE_ID));
+            verify(courtCaseService).findHearing(any(Hearing.class));
+            verify(courtCaseService).saveHearingAsync(eq(courtCase));
+            verifyNoMoreInteractions(courtCaseService, telemetryService);
+        }
+
+        @Test
+        void whenExistingCaseHasChanged_ThenUpdateAndSaveBeforeCompleting() {
+            var defendantId = UUID.randomUUID().toString();
+            var existingHearing = Hearing.builder()
+                    .caseId("caseId")
+                    .defendants(Collections.singletonList(Defendant.builder()
+                            .type(PERSON)
+                            .defendantId(defendantId)
+                            .build()))
+                    .build();
+            var courtCase = existingHearing.withHearingDays(Collections.singletonList(HearingDay.builder()
+                    .courtCode("SHF")
+                    .build()));
+            var courtCaseMerged = HearingMapper.merge(courtCase, existingHearing);
+            when(courtCaseService.findHearing(any(Hearing.class))).thenReturn(Mono.just(existingHearing));
+            when(cprService.updateDefendantsAsync(courtCaseMerged.getDefendants())).thenReturn(Mono.empty());
+            when(courtCaseService.updateProbationStatusDetail(courtCaseMerged)).thenReturn(Mono.just(courtCaseMerged));
+            when(courtCaseService.saveHearingAsync(courtCaseMerged)).thenReturn(Mono.empty());
+
+            StepVerifier.create(hearingProcessor.processAsync(courtCase, MESSAGE_ID))
+                    .verifyComplete();
+
+            verify(telemetryService).trackHearingChangedEvent(any(Hearing.class));
+            verify(courtCaseService).saveHearingAsync(eq(courtCaseMerged));
+        }
+
+        @Test
+        void whenExistingCaseHasChangedAndUpdatesAreSerialised_ThenSaveOnlyWhatChanged() {
+            var existingHearing = existingHearing("caseId");
+            var courtCase = existingHearing.withHearingDays(Collections.singletonList(HearingDay.builder()
+                    .courtCode("SHF")
+                    .build()));
+            var courtCaseMerged = HearingMapper.merge(courtCase, existingHearing);
+            when(courtCaseService.findHearing(any(Hearing.class))).thenReturn(Mono.just(existingHearing));
+            when(cprService.updateDefendantsAsync(courtCaseMerged.getDefendants())).thenReturn(Mono.empty());
+            when(courtCaseService.updateProbationStatusDetail(courtCaseMerged)).thenReturn(Mono.just(courtCaseMerged));
+            when(courtCaseService.saveHearingAsync(HearingDelta.between(courtCaseMerged, existingHearing))).thenReturn(Mono.empty());
+
+            StepVerifier.create(hearingProcessor.processAsync(courtCase, MESSAGE_ID, true))
+                    .verifyComplete();
+
+            verify(courtCaseService).saveHearingAsync(eq(HearingDelta.between(courtCaseMerged, existingHearing)));
+        }
+
+        @Test
+        void whenSaveOfSameCaseHeldBehindWriteInFlight_ThenSaveInFull() {
+            final var coalescingProcessor = coalescingProcessor();
+            final var existingHearing = existingHearing("caseId");
+            final var courtCase = existingHearing.withHearingDays(Collections.singletonList(HearingDay.builder()
+                    .courtCode("SHF")
+                    .build()));
+            final var courtCaseMerged = HearingMapper.merge(courtCase, existingHearing);
+            final var inFlight = Sinks.empty();
+            when(courtCaseService.findHearing(any(Hearing.class))).thenReturn(Mono.just(existingHearing));
+            when(cprService.updateDefendantsAsync(courtCaseMerged.getDefendants())).thenReturn(Mono.empty());
+            when(courtCaseService.updateProbationStatusDetail(courtCaseMerged)).thenReturn(Mono.just(courtCaseMerged));
+            when(courtCaseService.saveHearingAsync(HearingDelta.between(courtCaseMerged, existingHearing))).thenReturn(inFlight.asMono().then());
+            when(courtCaseService.saveHearingAsync(courtCaseMerged)).thenReturn(Mono.empty());
+
+            final var first = coalescingProcessor.processAsync(courtCase, MESSAGE_ID, true).toFuture();
+            final var second = coalescingProcessor.processAsync(courtCase, "secondMessageId", true).toFuture();
+            inFlight.tryEmitEmpty();
+
+            assertThat(first).succeedsWithin(Duration.ofSeconds(5));
+            assertThat(second).succeedsWithin(Duration.ofSeconds(5));
+            verify(courtCaseService).saveHearingAsync(eq(courtCaseMerged));
+        }
+
+        @Test
+        void whenSavesOfDifferentCasesOfHearingOverlap_ThenSaveEachWithoutCoalescing() {
+            final var coalescingProcessor = coalescingProcessor();
+            final var firstExisting = existingHearing("caseId-1");
+            final var secondExisting = existingHearing("caseId-2");
+            final var firstCase = firstExisting.withHearingDays(Collections.singletonList(HearingDay.builder().courtCode("SHF").build()));
+            final var secondCase = secondExisting.withHearingDays(Collections.singletonList(HearingDay.builder().courtCode("SHF").build()));
+            final var firstMerged = HearingMapper.merge(firstCase, firstExisting);
+            final var secondMerged = HearingMapper.merge(secondCase, secondExisting);
+            final var inFlight = Sinks.empty();
+            when(courtCaseService.findHearing(firstCase)).thenReturn(Mono.just(firstExisting));
+            when(courtCaseService.findHearing(secondCase)).thenReturn(Mono.just(secondExisting));
+            when(cprService.updateDefendantsAsync(any())).thenReturn(Mono.empty());
+            when(courtCaseService.updateProbationStatusDetail(firstMerged)).thenReturn(Mono.just(firstMerged));
+            when(courtCaseService.updateProbationStatusDetail(secondMerged)).thenReturn(Mono.just(secondMerged));
+            when(courtCaseService.saveHearingAsync(HearingDelta.between(firstMerged, firstExisting))).thenReturn(inFlight.asMono().then());
+            when(courtCaseService.saveHearingAsync(HearingDelta.between(secondMerged, secondExisting))).thenReturn(Mono.empty());
+
+            final var first = coalescingProcessor.processAsync(firstCase, MESSAGE_ID, true).toFuture();
+            assertThat(coalescingProcessor.processAsync(secondCase, "secondMessageId", true).toFuture()).succeedsWithin(Duration.ofSeconds(5));
+            inFlight.tryEmitEmpty();
+
+            assertThat(first).succeedsWithin(Duration.ofSeconds(5));
+            verify(courtCaseService).saveHearingAsync(eq(HearingDelta.between(secondMerged, secondExisting)));
+            verify(courtCaseService, never()).saveHearingAsync(any(Hearing.class));
+        }
+
+        @Test
+        void whenSaveFails_ThenErrorAndTrackFailure() {
+            var courtCase = Hearing.builder()
+                    .caseId("caseId")
+                    .defendants(Collections.emptyList())
+                    .build();
+            when(courtCaseService.findHearing(any(Hearing.class))).thenReturn(Mono.empty());
+            when(cprService.updateDefendantsAsync(courtCase.getDefendants())).thenReturn(Mono.empty());
+            when(courtCaseService.saveHearingAsync(courtCase)).thenReturn(Mono.error(new RuntimeException("bang")));
+
+            StepVerifier.create(hearingProcessor.processAsync(courtCase, MESSAGE_ID))
+                    .verifyErrorMessage("bang");
+
+            verify(telemetryService).trackProcessingFailureEvent(courtCase);
+            verify(concurrencyLimiter).limit(any());
+        }
+    }
+
+    private HearingProcessor coalescingProcessor() {
+        return new HearingProcessor(telemetryService, courtCaseService, cprService, featureFlags, concurrencyLimiter,
+                hearingFingerprintStore, new HearingWriteCoalescer(true, new SimpleMeterRegistry()));
+    }
+
+    private static Hearing existingHearing(String caseId) {
+        return Hearing.builder()
+                .hearingId("hearingId")
+                .caseId(caseId)
+                .defendants(Collections.singletonList(Defendant.builder()
+                        .type(PERSON)
+                        .defendantId(UUID.randomUUID().toString())
+                        .build()))
+                .build();
+    }
 
     @Test
     void givenNullCourtCase_thenThrowRuntimeException() {
         var hearing = Hearing.builder().build();
         assertThrows(RuntimeException.class, () -> hearingProcessor.process(hearing, MESSAGE_ID));
         verify(telemetryService, times(1)).trackProcessingFailureEvent(hearing);
+        verify(concurrencyLimiter).acquire();
+        verify(concurrencyLimiter).release();
     }
 }
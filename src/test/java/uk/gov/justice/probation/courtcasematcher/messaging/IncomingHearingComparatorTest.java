@@ -4,18 +4,25 @@ import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.junit.jupiter.MockitoExtension;
+import uk.gov.justice.probation.courtcasematcher.messaging.HearingChangeSet.DefendantSection;
 import uk.gov.justice.probation.courtcasematcher.model.domain.Address;
+import uk.gov.justice.probation.courtcasematcher.model.domain.DataSource;
 import uk.gov.justice.probation.courtcasematcher.model.domain.Hearing;
 import uk.gov.justice.probation.courtcasematcher.model.domain.Defendant;
 import uk.gov.justice.probation.courtcasematcher.model.domain.HearingDay;
 import uk.gov.justice.probation.courtcasematcher.model.domain.Name;
+import uk.gov.justice.probation.courtcasematcher.model.domain.Offence;
 import uk.gov.justice.probation.courtcasematcher.model.domain.PhoneNumber;
 
 import java.time.LocalDate;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static uk.gov.justice.probation.courtcasematcher.model.type.DefendantType.ORGANISATION;
 import static uk.gov.justice.probation.courtcasematcher.model.type.DefendantType.PERSON;
@@ -425,4 +432,140 @@ class IncomingHearingComparatorTest {
 
         assertTrue(IncomingHearingComparator.hasCourtHearingChanged(courtCaseReceived, existingCourtCase));
     }
-}
\ No newline at end of file
+
+    @DisplayName("Fingerprint ignores fields the comparison ignores and changes with fields it compares")
+    @Test
+    void givenHearingsDifferOnlyInIgnoredFields_ThenFingerprintsMatch() {
+        var hearing = Hearing.builder()
+                .urn("URN")
+                .hearingDays(Collections.singletonList(HearingDay.builder()
+                        .courtCode("SHF")
+                        .build()))
+                .defendants(Collections.singletonList(Defendant.builder()
+                        .cro("CRO")
+                        .type(PERSON)
+                        .name(Name.builder().forename1("Arthur").surname("Morgan").build())
+                        .offences(Collections.emptyList())
+                        .build()))
+                .build();
+        var sameComparedFields = hearing
+                .withHearingType("Trial")
+                .withDefendants(Collections.singletonList(hearing.getDefendants().getFirst().withCrn("X123456")));
+        var differentAddress = hearing
+                .withDefendants(Collections.singletonList(hearing.getDefendants().getFirst()
+                        .withAddress(Address.builder().line1("27").build())));
+
+        assertEquals(IncomingHearingComparator.fingerprint(hearing), IncomingHearingComparator.fingerprint(sameComparedFields));
+        assertNotEquals(IncomingHearingComparator.fingerprint(hearing), IncomingHearingComparator.fingerprint(differentAddress));
+        assertNotEquals(IncomingHearingComparator.fingerprint(hearing), IncomingHearingComparator.fingerprint(hearing.withUrn("OTHER")));
+    }
+
+    @DisplayName("Two unchanged common platform defendants in a different order are not a change")
+    @Test
+    void givenUnchangedDefendantsInDifferentOrder_ThenReturnFalse() {
+        var defendant1 = Defendant.builder().defendantId("d1").cro("CRO-1").type(PERSON).build();
+        var defendant2 = Defendant.builder().defendantId("d2").cro("CRO-2").type(PERSON).build();
+        var courtCaseReceived = Hearing.builder()
+                .source(DataSource.COMMON_PLATFORM)
+                .defendants(Arrays.asList(defendant2, defendant1))
+                .build();
+        var existingCourtCase = Hearing.builder()
+                .source(DataSource.COMMON_PLATFORM)
+                .defendants(Arrays.asList(defendant1, defendant2))
+                .build();
+
+        assertFalse(IncomingHearingComparator.hasCourtHearingChanged(courtCaseReceived, existingCourtCase));
+    }
+
+    @DisplayName("Change set lists the defendants added, removed and modified and which sections changed")
+    @Test
+    void givenDefendantsAddedRemovedAndModified_ThenReturnChangeSet() {
+        var unchanged = Defendant.builder().defendantId("d1").cro("CRO-1").type(PERSON).build();
+        var existingModified = Defendant.builder().defendantId("d2").cro("CRO-2").type(PERSON)
+                .offences(List.of(Offence.builder().offenceTitle("Theft").build()))
+                .build();
+        var receivedModified = existingModified
+                .withAddress(Address.builder().line1("27").build())
+                .withOffences(List.of(Offence.builder().offenceTitle("Burglary").build()));
+        var removed = Defendant.builder().defendantId("d3").type(ORGANISATION).build();
+        var added = Defendant.builder().defendantId("d4").type(PERSON).build();
+        var courtCaseReceived = Hearing.builder()
+                .source(DataSource.COMMON_PLATFORM)
+                .defendants(Arrays.asList(added, receivedModified, unchanged))
+                .build();
+        var existingCourtCase = Hearing.builder()
+                .source(DataSource.COMMON_PLATFORM)
+                .defendants(Arrays.asList(unchanged, existingModified, removed))
+                .build();
+
+        var changeSet = IncomingHearingComparator.compare(courtCaseReceived, existingCourtCase);
+
+        assertTrue(changeSet.hasChanges());
+        assertFalse(changeSet.urnChanged());
+        assertFalse(changeSet.hearingDaysChanged());
+        assertEquals(List.of(added), changeSet.added());
+        assertEquals(List.of(removed), changeSet.removed());
+        assertEquals(List.of(new HearingChangeSet.DefendantChange(receivedModified, existingModified,
+                EnumSet.of(DefendantSection.ADDRESS, DefendantSection.OFFENCES))), changeSet.modified());
+    }
+
+    @DisplayName("LIBRA defendants have no id so are paired by position")
+    @Test
+    void givenLibraHearing_ThenCompareDefendantsByPosition() {
+        var defendant1 = Defendant.builder().cro("CRO-1").type(PERSON).build();
+        var defendant2 = Defendant.builder().cro("CRO-2").type(PERSON).build();
+        var courtCaseReceived = Hearing.builder()
+                .source(DataSource.LIBRA)
+                .defendants(Arrays.asList(defendant1, defendant2.withName(Name.builder().surname("Marston").build())))
+                .build();
+        var existingCourtCase = Hearing.builder()
+                .source(DataSource.LIBRA)
+                .defendants(Arrays.asList(defendant1.withDefendantId("d1"), defendant2.withDefendantId("d2")))
+                .build();
+
+        var changeSet = IncomingHearingComparator.compare(courtCaseReceived, existingCourtCase);
+
+        assertTrue(changeSet.added().isEmpty());
+        assertTrue(changeSet.removed().isEmpty());
+        assertEquals(1, changeSet.modified().size());
+        assertEquals(EnumSet.of(DefendantSection.NAME), changeSet.modified().getFirst().sections());
+    }
+
+    @DisplayName("Comparing hashes finds the same changes as comparing field by field")
+    @Test
+    void givenVariousChanges_ThenHashedCompareMatchesFieldByField() {
+        var defendant = Defendant.builder().defendantId("d1").cro("CRO-1").type(PERSON)
+                .name(Name.builder().surname("Marston").build())
+                .address(Address.builder().line1("27").build())
+                .phoneNumber(PhoneNumber.builder().mobile("07000000000").build())
+                .offences(List.of(Offence.builder().offenceTitle("Theft").sequenceNumber(1).build()))
+                .build();
+        var hearing = Hearing.builder()
+                .source(DataSource.COMMON_PLATFORM)
+                .urn("URN")
+                .hearingDays(List.of(HearingDay.builder().courtCode("SHF").build()))
+                .defendants(List.of(defendant, defendant.withDefendantId("d2").withCro("CRO-2")))
+                .build();
+        var variants = List.of(
+                hearing,
+                hearing.withUrn(null),
+                hearing.withHearingDays(null),
+                hearing.withHearingDays(List.of()),
+                hearing.withDefendants(null),
+                hearing.withDefendants(List.of(defendant.withName(null))),
+                hearing.withDefendants(List.of(defendant.withName(Name.builder().build()))),
+                hearing.withDefendants(List.of(defendant.withAddress(null).withPhoneNumber(PhoneNumber.builder().build()))),
+                hearing.withDefendants(List.of(defendant.withOffences(null))),
+                hearing.withDefendants(List.of(defendant.withOffences(List.of()))),
+                hearing.withDefendants(Arrays.asList(defendant, null)),
+                hearing.withDefendants(List.of(hearing.getDefendants().get(1), defendant)),
+                hearing.withSource(DataSource.LIBRA).withDefendants(List.of(defendant.withDefendantId(null).withSex("M"))));
+
+        for (var received : variants) {
+            for (var existing : variants) {
+                assertEquals(IncomingHearingComparator.compareFieldByField(received, existing),
+                        IncomingHearingComparator.compare(received, existing));
+            }
+        }
+    }
+}
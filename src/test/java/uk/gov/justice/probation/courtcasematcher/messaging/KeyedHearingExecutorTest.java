@@ -0,0 +1,143 @@
+package uk.gov.justice.probation.courtcasematcher.messaging;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import uk.gov.justice.probation.courtcasematcher.model.domain.DataSource;
+import uk.gov.justice.probation.courtcasematcher.model.domain.Hearing;
+import uk.gov.justice.probation.courtcasematcher.model.domain.HearingDay;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+class KeyedHearingExecutorTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final KeyedHearingExecutor executor = new KeyedHearingExecutor(4, meterRegistry);
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    void givenTasksForTheSameKey_whenSubmitted_thenRunInSubmissionOrder() throws Exception {
+        final var completed = new CopyOnWriteArrayList<Integer>();
+
+        final var futures = IntStream.range(0, 50)
+                .mapToObj(i -> executor.submit("hearing-1", () -> Mono.fromRunnable(() -> completed.add(i))))
+                .toArray(CompletableFuture[]::new);
+        CompletableFuture.allOf(futures).get(5, TimeUnit.SECONDS);
+
+        assertThat(completed).containsExactlyElementsOf(IntStream.range(0, 50).boxed().toList());
+    }
+
+    @Test
+    void givenLaterMessageDispatchedFirst_thenRunItsHearingsAfterTheEarlierMessage() throws Exception {
+        final var completed = new CopyOnWriteArrayList<String>();
+        final var first = executor.receive();
+        final var second = executor.receive();
+
+        final var secondProcessed = second.dispatch(List.of(hearing("hearing-1")), hearing -> Mono.fromRunnable(() -> completed.add("second")));
+        assertThat(secondProcessed).isNotDone();
+        assertThat(completed).isEmpty();
+
+        final var firstProcessed = first.dispatch(List.of(hearing("hearing-1")), hearing -> Mono.fromRunnable(() -> completed.add("first")));
+
+        CompletableFuture.allOf(firstProcessed, secondProcessed).get(5, TimeUnit.SECONDS);
+        assertThat(completed).containsExactly("first", "second");
+    }
+
+    @Test
+    void givenEarlierMessageAbandoned_thenRunTheLaterMessage() {
+        final var first = executor.receive();
+        final var second = executor.receive();
+        final var secondProcessed = second.dispatch(List.of(hearing("hearing-1")), hearing -> Mono.empty());
+
+        first.abandon();
+
+        assertThat(secondProcessed).succeedsWithin(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void givenTasksForDifferentPartitions_whenOneIsWaiting_thenTheOtherStillRuns() throws Exception {
+        final var release = Sinks.<Void>empty();
+        final var waitingKey = keyForPartition(0);
+        final var freeKey = keyForPartition(1);
+
+        final var waiting = executor.submit(waitingKey, release::asMono);
+        executor.submit(freeKey, Mono::empty).get(5, TimeUnit.SECONDS);
+
+        assertThat(waiting).isNotDone();
+        assertThat(meterRegistry.get(KeyedHearingExecutor.PARTITION_DEPTH_METRIC).tag("partition", "0").gauge().value()).isEqualTo(1.0d);
+        // The free partition counts its task down just after the task's future completes
+        await().atMost(5, TimeUnit.SECONDS)
+                .until(() -> meterRegistry.get(KeyedHearingExecutor.PARTITION_SKEW_METRIC).gauge().value() == 4.0d);
+        release.tryEmitEmpty();
+        waiting.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void whenTaskFails_thenFutureCompletesExceptionallyAndPartitionCarriesOn() {
+        final var failed = executor.submit("hearing-1", () -> Mono.error(new RuntimeException("bang")));
+
+        assertThat(failed).failsWithin(5, TimeUnit.SECONDS);
+        assertThat(executor.submit("hearing-1", Mono::empty)).succeedsWithin(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void givenCommonPlatformHearing_whenKeyOf_thenUseHearingId() {
+        final var hearing = Hearing.builder()
+                .hearingId("hearing-id")
+                .caseId("case-id")
+                .source(DataSource.COMMON_PLATFORM)
+                .build();
+
+        assertThat(KeyedHearingExecutor.keyOf(hearing)).isEqualTo("hearing-id");
+    }
+
+    @Test
+    void givenCommonPlatformHearing_whenCaseKeyOf_thenUseHearingIdAndCaseId() {
+        final var hearing = Hearing.builder()
+                .hearingId("hearing-id")
+                .caseId("case-id")
+                .source(DataSource.COMMON_PLATFORM)
+                .build();
+
+        assertThat(KeyedHearingExecutor.caseKeyOf(hearing)).isEqualTo("hearing-id:case-id");
+    }
+
+    @Test
+    void givenNewLibraHearing_whenKeyOf_thenUseCourtCodeAndCaseNo() {
+        final var hearing = Hearing.builder()
+                .caseNo("1600032952")
+                .hearingDays(List.of(HearingDay.builder().courtCode("B10JQ").build()))
+                .source(DataSource.LIBRA)
+                .build();
+
+        assertThat(KeyedHearingExecutor.keyOf(hearing)).isEqualTo("B10JQ:1600032952");
+    }
+
+    private static Hearing hearing(String hearingId) {
+        return Hearing.builder()
+                .hearingId(hearingId)
+                .source(DataSource.COMMON_PLATFORM)
+                .build();
+    }
+
+    private String keyForPartition(int partition) {
+        return IntStream.iterate(0, i -> i + 1)
+                .mapToObj(i -> "key-" + i)
+                .filter(key -> executor.partitionFor(key) == partition)
+                .findFirst()
+                .orElseThrow();
+    }
+}
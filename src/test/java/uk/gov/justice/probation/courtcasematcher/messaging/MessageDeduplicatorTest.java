@@ -0,0 +1,126 @@
+package uk.gov.justice.probation.courtcasematcher.messaging;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import uk.gov.justice.probation.courtcasematcher.model.SnsMessageContainer;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MessageDeduplicatorTest {
+
+    private static final Duration TTL = Duration.ofMinutes(10);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final MutableClock clock = new MutableClock();
+    private final MessageDeduplicator deduplicator = new MessageDeduplicator(true, TTL, 2, meterRegistry, clock);
+
+    @Test
+    void givenProcessedMessage_whenReceivedAgain_thenReplay() {
+        receiveAndComplete(container("sns-1", "{\"hearing\":1}"), "sqs-1");
+
+        assertThat(deduplicator.isReplay(container("sns-1", "{\"hearing\":1}"), "sqs-2")).isTrue();
+        assertThat(count(MessageDeduplicator.HIT_METRIC)).isEqualTo(1.0d);
+        assertThat(count(MessageDeduplicator.MISS_METRIC)).isEqualTo(1.0d);
+    }
+
+    @Test
+    void givenSameMessageIdWithDifferentBody_whenReceived_thenNotReplay() {
+        receiveAndComplete(container("sns-1", "{\"hearing\":1}"), "sqs-1");
+
+        assertThat(deduplicator.isReplay(container("sns-1", "{\"hearing\":2}"), "sqs-2")).isFalse();
+    }
+
+    @Test
+    void givenProcessingAbandoned_whenRedelivered_thenNotReplay() {
+        final var container = container("sns-1", "{\"hearing\":1}");
+        assertThat(deduplicator.isReplay(container, "sqs-1")).isFalse();
+        deduplicator.abandon("sqs-1");
+
+        assertThat(deduplicator.isReplay(container, "sqs-1")).isFalse();
+        assertThat(deduplicator.size()).isZero();
+    }
+
+    @Test
+    void givenMessageStillInFlight_whenRedelivered_thenNotReplay() {
+        final var container = container("sns-1", "{\"hearing\":1}");
+        assertThat(deduplicator.isReplay(container, "sqs-1")).isFalse();
+
+        assertThat(deduplicator.isReplay(container, "sqs-1")).isFalse();
+    }
+
+    @Test
+    void givenTtlElapsed_whenReceivedAgain_thenExpiredAndNotReplay() {
+        receiveAndComplete(container("sns-1", "{\"hearing\":1}"), "sqs-1");
+        clock.advance(TTL.plusSeconds(1));
+
+        assertThat(deduplicator.isReplay(container("sns-1", "{\"hearing\":1}"), "sqs-2")).isFalse();
+        assertThat(meterRegistry.get(MessageDeduplicator.EVICTION_METRIC).tag("cause", "expired").counter().count()).isEqualTo(1.0d);
+    }
+
+    @Test
+    void givenMaxEntriesExceeded_thenEvictOldest() {
+        receiveAndComplete(container("sns-1", "one"), "sqs-1");
+        receiveAndComplete(container("sns-2", "two"), "sqs-2");
+        receiveAndComplete(container("sns-3", "three"), "sqs-3");
+
+        assertThat(deduplicator.size()).isEqualTo(2);
+        assertThat(meterRegistry.get(MessageDeduplicator.EVICTION_METRIC).tag("cause", "capacity").counter().count()).isEqualTo(1.0d);
+        assertThat(deduplicator.isReplay(container("sns-1", "one"), "sqs-4")).isFalse();
+        assertThat(deduplicator.isReplay(container("sns-3", "three"), "sqs-5")).isTrue();
+    }
+
+    @Test
+    void givenDisabled_thenNeverReplay() {
+        final var disabled = new MessageDeduplicator(false, TTL, 2, new SimpleMeterRegistry(), clock);
+        final var container = container("sns-1", "{\"hearing\":1}");
+        disabled.isReplay(container, "sqs-1");
+        disabled.complete("sqs-1");
+
+        assertThat(disabled.isReplay(container, "sqs-2")).isFalse();
+    }
+
+    private void receiveAndComplete(SnsMessageContainer container, String messageId) {
+        assertThat(deduplicator.isReplay(container, messageId)).isFalse();
+        deduplicator.complete(messageId);
+    }
+
+    private double count(String metric) {
+        return meterRegistry.get(metric).counter().count();
+    }
+
+    private static SnsMessageContainer container(String snsMessageId, String message) {
+        return SnsMessageContainer.builder()
+                .messageId(snsMessageId)
+                .message(message)
+                .build();
+    }
+
+    private static class MutableClock extends Clock {
+        private Instant now = Instant.parse("2024-01-01T09:00:00Z");
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
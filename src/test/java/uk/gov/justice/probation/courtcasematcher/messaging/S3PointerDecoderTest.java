@@ -0,0 +1,51 @@
+package uk.gov.justice.probation.courtcasematcher.messaging;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import org.junit.jupiter.api.Test;
+import uk.gov.justice.probation.courtcasematcher.messaging.model.S3Message;
+
+import java.io.IOException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+class S3PointerDecoderTest {
+
+    @Test
+    void givenPointer_thenReadBucketAndKey() throws IOException {
+        final var pointer = """
+                [ "software.amazon.payloadoffloading.PayloadS3Pointer", {
+                  "s3BucketName" : "local-644707540a8083b7b15a77f51641f632",
+                  "s3Key" : "ba8d919b-a9d8-433b-b4b4-c196f67c773e"
+                } ]""";
+
+        assertThat(S3PointerDecoder.decode(pointer))
+                .isEqualTo(new S3Message("local-644707540a8083b7b15a77f51641f632", "ba8d919b-a9d8-433b-b4b4-c196f67c773e"));
+    }
+
+    @Test
+    void givenPointerWithUnknownFields_thenSkipThem() throws IOException {
+        final var pointer = """
+                ["software.amazon.payloadoffloading.PayloadS3Pointer",
+                 {"s3Key": "key", "metadata": {"size": [1, 2]}, "s3BucketName": "bucket"}]""";
+
+        assertThat(S3PointerDecoder.decode(pointer)).isEqualTo(new S3Message("bucket", "key"));
+    }
+
+    @Test
+    void givenPointerWithoutKey_thenThrow() {
+        final var pointer = """
+                ["software.amazon.payloadoffloading.PayloadS3Pointer", {"s3BucketName": "bucket"}]""";
+
+        assertThatExceptionOfType(JsonProcessingException.class)
+                .isThrownBy(() -> S3PointerDecoder.decode(pointer))
+                .withMessageContaining("S3 pointer has no s3Key");
+    }
+
+    @Test
+    void givenHearingRatherThanPointer_thenThrow() {
+        assertThatExceptionOfType(JsonProcessingException.class)
+                .isThrownBy(() -> S3PointerDecoder.decode("{\"hearing\": {}}"))
+                .withMessageContaining("Expected START_ARRAY");
+    }
+}
@@ -0,0 +1,87 @@
+package uk.gov.justice.probation.courtcasematcher.messaging;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.validation.ConstraintViolationException;
+import org.junit.jupiter.api.Test;
+import uk.gov.justice.probation.courtcasematcher.application.MessagingConfig;
+import uk.gov.justice.probation.courtcasematcher.fingerprint.Fnv1aHasher;
+import uk.gov.justice.probation.courtcasematcher.messaging.model.MessageType;
+import uk.gov.justice.probation.courtcasematcher.messaging.model.commonplatform.CPHearingEvent;
+import uk.gov.justice.probation.courtcasematcher.messaging.model.libra.LibraHearing;
+import uk.gov.justice.probation.courtcasematcher.model.SnsMessageContainer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+class SnsEnvelopeParserTest {
+
+    private final MessagingConfig messagingConfig = new MessagingConfig();
+    private final ObjectMapper objectMapper = messagingConfig.objectMapper();
+    private final SnsEnvelopeParser envelopeParser = new SnsEnvelopeParser(objectMapper, messagingConfig.validator());
+
+    @Test
+    void givenCommonPlatformEnvelope_thenReadSameHearingAsTwoPassParse() throws IOException {
+        final var hearingJson = Files.readString(Paths.get("src/test/resources/messages/common-platform/hearing.json"));
+        final var payload = envelope(hearingJson, "COMMON_PLATFORM_HEARING");
+
+        final var envelope = envelopeParser.parse(payload);
+
+        final var container = new MessageParser<SnsMessageContainer>(objectMapper, messagingConfig.validator())
+                .parseMessage(payload, SnsMessageContainer.class);
+        final var expected = new MessageParser<CPHearingEvent>(objectMapper, messagingConfig.validator())
+                .parseMessage(container.getMessage(), CPHearingEvent.class);
+        assertThat(envelope.messageId()).isEqualTo("sns-message-id");
+        assertThat(envelope.getMessageType()).isEqualTo(MessageType.COMMON_PLATFORM_HEARING);
+        assertThat(envelope.getHearingEventType().getValue()).isEqualTo("ConfirmedOrUpdated");
+        assertThat(envelope.getEventType()).isEqualTo("commonplatform.case.received");
+        assertThat(envelope.messageHash()).isEqualTo(Fnv1aHasher.hash(container.getMessage()));
+        assertThat(envelopeParser.readMessage(envelope, CPHearingEvent.class)).isEqualTo(expected);
+    }
+
+    @Test
+    void givenLibraEnvelopeWithAttributesLast_thenReadHearing() throws IOException {
+        final var payload = Files.readString(Paths.get("src/test/resources/messages/libra/case-sns-metadata.json"));
+
+        final var envelope = envelopeParser.parse(payload);
+
+        assertThat(envelopeParser.readMessage(envelope, LibraHearing.class).getCaseNo()).isEqualTo("1600032981");
+    }
+
+    @Test
+    void givenInvalidMessage_thenThrowConstraintViolation() throws IOException {
+        final var hearingJson = Files.readString(Paths.get("src/test/resources/messages/common-platform/hearing-invalid.json"));
+        final var envelope = envelopeParser.parse(envelope(hearingJson, "COMMON_PLATFORM_HEARING"));
+
+        assertThatExceptionOfType(ConstraintViolationException.class)
+                .isThrownBy(() -> envelopeParser.readMessage(envelope, CPHearingEvent.class));
+    }
+
+    @Test
+    void givenBlankMessage_thenThrow() throws JsonProcessingException {
+        final var payload = envelope("", "COMMON_PLATFORM_HEARING");
+
+        assertThatExceptionOfType(JsonProcessingException.class)
+                .isThrownBy(() -> envelopeParser.parse(payload))
+                .withMessageContaining("Message must not be blank");
+    }
+
+    private String envelope(String message, String messageType) throws JsonProcessingException {
+        final var envelope = new LinkedHashMap<String, Object>();
+        envelope.put("Type", "Notification");
+        envelope.put("MessageId", "sns-message-id");
+        envelope.put("Message", message);
+        envelope.put("Timestamp", "2024-01-01T09:00:00.000Z");
+        envelope.put("MessageAttributes", Map.of(
+                "messageType", Map.of("Type", "String", "Value", messageType),
+                "eventType", Map.of("Type", "String", "Value", "commonplatform.case.received"),
+                "hearingEventType", Map.of("Type", "String", "Value", "ConfirmedOrUpdated")));
+        return objectMapper.writeValueAsString(envelope);
+    }
+}
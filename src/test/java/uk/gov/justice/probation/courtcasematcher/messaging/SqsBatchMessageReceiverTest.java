@@ -0,0 +1,219 @@
+package uk.gov.justice.probation.courtcasematcher.messaging;
+
+import io.awspring.cloud.sqs.listener.SqsHeaders;
+import io.awspring.cloud.sqs.listener.Visibility;
+import io.awspring.cloud.sqs.listener.acknowledgement.BatchAcknowledgement;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.GenericMessage;
+import reactor.core.publisher.Mono;
+import uk.gov.justice.probation.courtcasematcher.model.domain.DataSource;
+import uk.gov.justice.probation.courtcasematcher.model.domain.Defendant;
+import uk.gov.justice.probation.courtcasematcher.model.domain.Hearing;
+import uk.gov.justice.probation.courtcasematcher.restclient.exception.DownstreamUnavailableException;
+import uk.gov.justice.probation.courtcasematcher.service.TelemetryService;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class SqsBatchMessageReceiverTest {
+
+    @Mock
+    private HearingProcessor hearingProcessor;
+    @Mock
+    private TelemetryService telemetryService;
+    @Mock
+    private HearingExtractor hearingExtractor;
+    @Mock
+    private MessageDeduplicator messageDeduplicator;
+    @Mock
+    private BatchAcknowledgement<String> acknowledgement;
+    @Captor
+    private ArgumentCaptor<Collection<Message<String>>> acknowledgedCaptor;
+
+    private final Message<String> firstMessage = new GenericMessage<>("first");
+    private final Message<String> secondMessage = new GenericMessage<>("second");
+    private final Message<String> badMessage = new GenericMessage<>("bad");
+
+    private SqsBatchMessageReceiver receiver;
+
+    @BeforeEach
+    void setUp() {
+        receiver = new SqsBatchMessageReceiver(hearingProcessor, telemetryService, hearingExtractor, messageDeduplicator,
+                admissionController(false), 2);
+    }
+
+    @Test
+    void givenTheSameHearingInTwoMessages_whenReceived_thenProcessLatestOnceAndAcknowledgeBoth() {
+        final var firstVersion = hearing("hearing-1", "Sentence");
+        final var secondVersion = hearing("hearing-1", "Trial");
+        when(hearingExtractor.extractHearings(anyString(), anyString()))
+                .thenReturn(List.of(firstVersion))
+                .thenReturn(List.of(secondVersion));
+        when(hearingProcessor.processAsync(any(Hearing.class), anyString())).thenReturn(Mono.empty());
+        when(acknowledgement.acknowledgeAsync(acknowledgedCaptor.capture())).thenReturn(CompletableFuture.completedFuture(null));
+
+        receiver.receive(List.of(firstMessage, secondMessage), acknowledgement).join();
+
+        verify(hearingExtractor).prefetchLargeHearing("first");
+        verify(hearingExtractor).prefetchLargeHearing("second");
+        verify(hearingProcessor).processAsync(secondVersion, String.valueOf(secondMessage.getHeaders().getId()));
+        verify(hearingProcessor, never()).processAsync(firstVersion, String.valueOf(firstMessage.getHeaders().getId()));
+        assertThat(acknowledgedCaptor.getValue()).containsExactly(firstMessage, secondMessage);
+    }
+
+    @Test
+    void givenTwoProsecutionCasesOfTheSameHearing_whenReceived_thenProcessBoth() {
+        final var firstCase = hearing("hearing-1", "Sentence").withCaseId("case-1");
+        final var secondCase = hearing("hearing-1", "Sentence").withCaseId("case-2");
+        final var messageId = String.valueOf(firstMessage.getHeaders().getId());
+        when(hearingExtractor.extractHearings("first", messageId)).thenReturn(List.of(firstCase, secondCase));
+        when(hearingProcessor.processAsync(any(Hearing.class), anyString())).thenReturn(Mono.empty());
+        when(acknowledgement.acknowledgeAsync(acknowledgedCaptor.capture())).thenReturn(CompletableFuture.completedFuture(null));
+
+        receiver.receive(List.of(firstMessage), acknowledgement).join();
+
+        verify(hearingProcessor).processAsync(firstCase, messageId);
+        verify(hearingProcessor).processAsync(secondCase, messageId);
+        assertThat(acknowledgedCaptor.getValue()).containsExactly(firstMessage);
+    }
+
+    @Test
+    void givenABadPayload_whenReceived_thenAcknowledgeOnlyTheGoodMessages() {
+        final var hearing = hearing("hearing-1", "Sentence");
+        when(hearingExtractor.extractHearings("first", String.valueOf(firstMessage.getHeaders().getId()))).thenReturn(List.of(hearing));
+        when(hearingExtractor.extractHearings("bad", String.valueOf(badMessage.getHeaders().getId()))).thenThrow(new RuntimeException("bang"));
+        when(hearingProcessor.processAsync(any(Hearing.class), anyString())).thenReturn(Mono.empty());
+        when(acknowledgement.acknowledgeAsync(acknowledgedCaptor.capture())).thenReturn(CompletableFuture.completedFuture(null));
+
+        receiver.receive(List.of(firstMessage, badMessage), acknowledgement).join();
+
+        assertThat(acknowledgedCaptor.getValue()).containsExactly(firstMessage);
+    }
+
+    @Test
+    void givenProcessingFailsForOneHearing_whenReceived_thenDoNotAcknowledgeItsMessage() {
+        final var goodHearing = hearing("hearing-1", "Sentence");
+        final var failingHearing = hearing("hearing-2", "Sentence");
+        when(hearingExtractor.extractHearings(anyString(), anyString()))
+                .thenReturn(List.of(goodHearing))
+                .thenReturn(List.of(failingHearing));
+        when(hearingProcessor.processAsync(any(Hearing.class), anyString())).thenReturn(Mono.empty());
+        when(hearingProcessor.processAsync(failingHearing, String.valueOf(secondMessage.getHeaders().getId())))
+                .thenReturn(Mono.error(new RuntimeException("bang")));
+        when(acknowledgement.acknowledgeAsync(acknowledgedCaptor.capture())).thenReturn(CompletableFuture.completedFuture(null));
+
+        receiver.receive(List.of(firstMessage, secondMessage), acknowledgement).join();
+
+        assertThat(acknowledgedCaptor.getValue()).containsExactly(firstMessage);
+        verify(messageDeduplicator).complete(String.valueOf(firstMessage.getHeaders().getId()));
+        verify(messageDeduplicator).abandon(String.valueOf(secondMessage.getHeaders().getId()));
+    }
+
+    @Test
+    void givenDownstreamUnavailableForOneHearing_whenReceived_thenReturnItsMessageToTheQueueUntilItMayBeBack() {
+        final var visibility = mock(Visibility.class);
+        final var refusedMessage = new GenericMessage<>("refused", Map.<String, Object>of(SqsHeaders.SQS_VISIBILITY_TIMEOUT_HEADER, visibility));
+        final var goodHearing = hearing("hearing-1", "Sentence");
+        final var refusedHearing = hearing("hearing-2", "Sentence");
+        when(hearingExtractor.extractHearings(anyString(), anyString()))
+                .thenReturn(List.of(goodHearing))
+                .thenReturn(List.of(refusedHearing));
+        when(hearingProcessor.processAsync(any(Hearing.class), anyString())).thenReturn(Mono.empty());
+        when(hearingProcessor.processAsync(refusedHearing, String.valueOf(refusedMessage.getHeaders().getId())))
+                .thenReturn(Mono.error(new DownstreamUnavailableException("offender-search", "its circuit is open", 12)));
+        when(acknowledgement.acknowledgeAsync(acknowledgedCaptor.capture())).thenReturn(CompletableFuture.completedFuture(null));
+
+        receiver.receive(List.of(firstMessage, refusedMessage), acknowledgement).join();
+
+        assertThat(acknowledgedCaptor.getValue()).containsExactly(firstMessage);
+        verify(visibility).changeToAsync(12);
+    }
+
+    @Test
+    void givenEveryMessageFails_whenReceived_thenAcknowledgeNothing() {
+        when(hearingExtractor.extractHearings(anyString(), anyString())).thenThrow(new RuntimeException("bang"));
+
+        receiver.receive(List.of(badMessage), acknowledgement).join();
+
+        verifyNoInteractions(acknowledgement, hearingProcessor);
+    }
+
+    @Test
+    void givenHeavyLaneFull_whenLargeHearingReceived_thenReturnItToTheQueueWithoutDownloading() {
+        final var visibility = mock(Visibility.class);
+        final var largeMessage = new GenericMessage<>("large", Map.<String, Object>of(SqsHeaders.SQS_VISIBILITY_TIMEOUT_HEADER, visibility));
+        final var hearing = hearing("hearing-1", "Sentence");
+        final var admissionController = admissionController(true);
+        // Held by another batch
+        admissionController.admit(MessageSize.fromS3(1024));
+        receiver = new SqsBatchMessageReceiver(hearingProcessor, telemetryService, hearingExtractor, messageDeduplicator,
+                admissionController, 2);
+        when(hearingExtractor.sizeOf("first")).thenReturn(MessageSize.inline("first"));
+        when(hearingExtractor.sizeOf("large")).thenReturn(MessageSize.fromS3(1024));
+        when(hearingExtractor.extractHearings("first", String.valueOf(firstMessage.getHeaders().getId()))).thenReturn(List.of(hearing));
+        when(hearingProcessor.processAsync(any(Hearing.class), anyString())).thenReturn(Mono.empty());
+        when(acknowledgement.acknowledgeAsync(acknowledgedCaptor.capture())).thenReturn(CompletableFuture.completedFuture(null));
+
+        receiver.receive(List.of(firstMessage, largeMessage), acknowledgement).join();
+
+        verify(visibility).changeToAsync(30);
+        verify(hearingExtractor, never()).prefetchLargeHearing("large");
+        verify(hearingExtractor, never()).extractHearings(eq("large"), anyString());
+        assertThat(acknowledgedCaptor.getValue()).containsExactly(firstMessage);
+    }
+
+    @Test
+    void givenTwoLargeHearingsInOneBatch_whenHeavyLaneEmpty_thenProcessBothWithoutWaitingOnTheBatch() {
+        final var firstHearing = hearing("hearing-1", "Sentence");
+        final var secondHearing = hearing("hearing-2", "Sentence");
+        receiver = new SqsBatchMessageReceiver(hearingProcessor, telemetryService, hearingExtractor, messageDeduplicator,
+                new HearingAdmissionController(true, 1024 * 1024, 1, 64L * 1024 * 1024, 128L * 1024 * 1024, 60_000, 30,
+                        new SimpleMeterRegistry()), 2);
+        when(hearingExtractor.sizeOf(anyString())).thenReturn(MessageSize.fromS3(1024));
+        when(hearingExtractor.extractHearings(anyString(), anyString()))
+                .thenReturn(List.of(firstHearing))
+                .thenReturn(List.of(secondHearing));
+        when(hearingProcessor.processAsync(any(Hearing.class), anyString())).thenReturn(Mono.empty());
+        when(acknowledgement.acknowledgeAsync(acknowledgedCaptor.capture())).thenReturn(CompletableFuture.completedFuture(null));
+
+        assertThat(receiver.receive(List.of(firstMessage, secondMessage), acknowledgement)).succeedsWithin(Duration.ofSeconds(5));
+
+        assertThat(acknowledgedCaptor.getValue()).containsExactly(firstMessage, secondMessage);
+    }
+
+    private static HearingAdmissionController admissionController(boolean enabled) {
+        return new HearingAdmissionController(enabled, 1024 * 1024, 1, 64L * 1024 * 1024, 128L * 1024 * 1024, 0, 30,
+                new SimpleMeterRegistry());
+    }
+
+    private static Hearing hearing(String hearingId, String hearingType) {
+        return Hearing.builder()
+                .hearingId(hearingId)
+                .hearingType(hearingType)
+                .source(DataSource.COMMON_PLATFORM)
+                .defendants(List.of(Defendant.builder().defendantId("defendant-1").build()))
+                .build();
+    }
+}
@@ -436,10 +436,20 @@ public class SqsMessageReceiverIntTest {
         private HearingProcessor caseMessageProcessor;
         @Autowired
         private HearingExtractor caseExtractor;
+        @Autowired
+        private VirtualThreadHearingExecutor virtualThreadHearingExecutor;
+        @Autowired
+        private KeyedHearingExecutor keyedHearingExecutor;
+
+        @Autowired
+        private MessageDeduplicator messageDeduplicator;
+
+        @Autowired
+        private HearingAdmissionController admissionController;
 
         @Bean
         public SqsMessageReceiver sqsMessageReceiver() {
-            return new SqsMessageReceiver(caseMessageProcessor, telemetryService, caseExtractor);
+            return new SqsMessageReceiver(caseMessageProcessor, telemetryService, caseExtractor, virtualThreadHearingExecutor, keyedHearingExecutor, messageDeduplicator, admissionController, ProcessingMode.BLOCKING);
         }
     }
 
@@ -1,5 +1,8 @@
 package uk.gov.justice.probation.courtcasematcher.messaging;
 
+import io.awspring.cloud.sqs.listener.Visibility;
+import io.awspring.cloud.sqs.listener.acknowledgement.Acknowledgement;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
@@ -7,20 +10,32 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Mono;
 import uk.gov.justice.probation.courtcasematcher.model.domain.Defendant;
 import uk.gov.justice.probation.courtcasematcher.model.domain.Hearing;
 import uk.gov.justice.probation.courtcasematcher.model.domain.DataSource;
+import uk.gov.justice.probation.courtcasematcher.restclient.exception.DownstreamUnavailableException;
 import uk.gov.justice.probation.courtcasematcher.service.TelemetryService;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.AssertionsForClassTypes.assertThatExceptionOfType;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -34,6 +49,12 @@ class SqsMessageReceiverTest {
     private TelemetryService telemetryService;
     @Mock
     private HearingExtractor caseExtractor;
+    @Mock
+    private MessageDeduplicator messageDeduplicator;
+    @Mock
+    private Acknowledgement acknowledgement;
+    @Mock
+    private Visibility visibility;
 
     private final List<Hearing> libraHearing = List.of(Hearing.builder()
             .source(DataSource.LIBRA)
@@ -48,6 +69,13 @@ class SqsMessageReceiverTest {
         .source(DataSource.COMMON_PLATFORM)
         .build());
 
+    private final VirtualThreadHearingExecutor virtualThreadHearingExecutor = new VirtualThreadHearingExecutor(10, new SimpleMeterRegistry());
+
+    private final KeyedHearingExecutor keyedHearingExecutor = new KeyedHearingExecutor(2, new SimpleMeterRegistry());
+
+    private final HearingAdmissionController admissionController = new HearingAdmissionController(true, 1024 * 1024, 1,
+            64 * 1024 * 1024, 128 * 1024 * 1024, 0, 30, new SimpleMeterRegistry());
+
     private SqsMessageReceiver sqsMessageReceiver;
 
     @BeforeAll
@@ -58,7 +86,9 @@ class SqsMessageReceiverTest {
 
     @BeforeEach
     public void setUp() {
-        sqsMessageReceiver = new SqsMessageReceiver(caseProcessor, telemetryService,  caseExtractor);
+        sqsMessageReceiver = new SqsMessageReceiver(caseProcessor, telemetryService,  caseExtractor, virtualThreadHearingExecutor, keyedHearingExecutor, messageDeduplicator, admissionController, ProcessingMode.BLOCKING);
+        lenient().when(caseExtractor.sizeOf(singleCaseJson)).thenReturn(MessageSize.inline(singleCaseJson));
+        lenient().when(acknowledgement.acknowledgeAsync()).thenReturn(CompletableFuture.completedFuture(null));
     }
 
     @DisplayName("Given a valid Libra JSON message then track and process")
@@ -66,11 +96,13 @@ class SqsMessageReceiverTest {
     void givenLibraMessage_whenReceived_ThenTrackAndProcess() throws Exception {
         when(caseExtractor.extractHearings(singleCaseJson, MESSAGE_ID)).thenReturn(libraHearing);
 
-        sqsMessageReceiver.receive(singleCaseJson, MESSAGE_ID);
+        sqsMessageReceiver.receive(singleCaseJson, MESSAGE_ID, acknowledgement, visibility);
 
         verify(telemetryService).trackHearingMessageReceivedEvent(MESSAGE_ID);
         verify(caseProcessor).process(libraHearing.getFirst(), MESSAGE_ID);
         verify(caseProcessor).process(libraHearing.getFirst(), MESSAGE_ID);
+        verify(messageDeduplicator).complete(MESSAGE_ID);
+        verify(acknowledgement).acknowledgeAsync();
     }
 
     @DisplayName("Given a valid Common Platform JSON message then track and process")
@@ -78,7 +110,7 @@ class SqsMessageReceiverTest {
     void givenCommonPlatformMessage_whenReceived_ThenProcess() throws Exception {
         when(caseExtractor.extractHearings(singleCaseJson, MESSAGE_ID)).thenReturn(commonPlatformHearing);
 
-        sqsMessageReceiver.receive(singleCaseJson, MESSAGE_ID);
+        sqsMessageReceiver.receive(singleCaseJson, MESSAGE_ID, acknowledgement, visibility);
 
 
         verify(telemetryService).trackHearingMessageReceivedEvent(MESSAGE_ID);
@@ -91,21 +123,128 @@ class SqsMessageReceiverTest {
     void givenInvalidCommonPlatformMessage_whenReceived_ThenDoNotProcess() throws Exception {
         when(caseExtractor.extractHearings(singleCaseJson, MESSAGE_ID)).thenReturn(invalidCommonPlatformHearing);
 
-        sqsMessageReceiver.receive(singleCaseJson, MESSAGE_ID);
+        sqsMessageReceiver.receive(singleCaseJson, MESSAGE_ID, acknowledgement, visibility);
 
         verify(telemetryService).trackHearingMessageReceivedEvent(MESSAGE_ID);
         verifyNoInteractions(caseProcessor); //Common Platform hearing with no defendants should not be processed
 
     }
 
+    @DisplayName("Given reactive processing mode then process asynchronously and complete when processing completes")
+    @Test
+    void givenReactiveMode_whenReceived_ThenProcessAsync() {
+        sqsMessageReceiver = new SqsMessageReceiver(caseProcessor, telemetryService,  caseExtractor, virtualThreadHearingExecutor, keyedHearingExecutor, messageDeduplicator, admissionController, ProcessingMode.REACTIVE);
+        when(caseExtractor.extractHearings(singleCaseJson, MESSAGE_ID)).thenReturn(commonPlatformHearing);
+        when(caseProcessor.processAsync(commonPlatformHearing.getFirst(), MESSAGE_ID)).thenReturn(Mono.empty());
+
+        final var result = sqsMessageReceiver.receive(singleCaseJson, MESSAGE_ID, acknowledgement, visibility);
+
+        assertThat(result).succeedsWithin(5, TimeUnit.SECONDS);
+        verify(telemetryService).trackHearingMessageReceivedEvent(MESSAGE_ID);
+        verify(caseProcessor).processAsync(commonPlatformHearing.getFirst(), MESSAGE_ID);
+        verifyNoMoreInteractions(caseProcessor);
+    }
+
+    @DisplayName("Given reactive processing mode then extract the message off the listener thread")
+    @Test
+    void givenReactiveMode_whenReceived_ThenExtractOffTheListenerThread() {
+        sqsMessageReceiver = new SqsMessageReceiver(caseProcessor, telemetryService,  caseExtractor, virtualThreadHearingExecutor, keyedHearingExecutor, messageDeduplicator, admissionController, ProcessingMode.REACTIVE);
+        final var listenerThread = Thread.currentThread();
+        final var extractedOn = new AtomicReference<Thread>();
+        when(caseExtractor.extractHearings(singleCaseJson, MESSAGE_ID)).thenAnswer(invocation -> {
+            extractedOn.set(Thread.currentThread());
+            return commonPlatformHearing;
+        });
+        when(caseProcessor.processAsync(commonPlatformHearing.getFirst(), MESSAGE_ID)).thenReturn(Mono.empty());
+
+        sqsMessageReceiver.receive(singleCaseJson, MESSAGE_ID, acknowledgement, visibility).join();
+
+        assertThat(extractedOn.get()).isNotNull().isNotEqualTo(listenerThread);
+        verify(acknowledgement).acknowledgeAsync();
+    }
+
+    @DisplayName("Given reactive processing mode and processing fails then complete exceptionally so the message is not acknowledged")
+    @Test
+    void givenReactiveMode_whenProcessingFails_ThenCompleteExceptionally() {
+        sqsMessageReceiver = new SqsMessageReceiver(caseProcessor, telemetryService,  caseExtractor, virtualThreadHearingExecutor, keyedHearingExecutor, messageDeduplicator, admissionController, ProcessingMode.REACTIVE);
+        when(caseExtractor.extractHearings(singleCaseJson, MESSAGE_ID)).thenReturn(libraHearing);
+        when(caseProcessor.processAsync(libraHearing.getFirst(), MESSAGE_ID)).thenReturn(Mono.error(new RuntimeException("Bang")));
+
+        final var result = sqsMessageReceiver.receive(singleCaseJson, MESSAGE_ID, acknowledgement, visibility);
+
+        assertThat(result).failsWithin(5, TimeUnit.SECONDS);
+        verify(messageDeduplicator).abandon(MESSAGE_ID);
+        verify(acknowledgement, never()).acknowledgeAsync();
+    }
+
+    @DisplayName("Given virtual thread processing mode then process on a virtual thread and complete when processing completes")
+    @Test
+    void givenVirtualThreadMode_whenReceived_ThenProcessOnVirtualThread() {
+        sqsMessageReceiver = new SqsMessageReceiver(caseProcessor, telemetryService,  caseExtractor, virtualThreadHearingExecutor, keyedHearingExecutor, messageDeduplicator, admissionController, ProcessingMode.VIRTUAL_THREADS);
+        when(caseExtractor.extractHearings(singleCaseJson, MESSAGE_ID)).thenReturn(libraHearing);
+        final var processedOnVirtualThread = new AtomicBoolean();
+        doAnswer(invocation -> {
+            processedOnVirtualThread.set(Thread.currentThread().isVirtual());
+            return null;
+        }).when(caseProcessor).process(libraHearing.getFirst(), MESSAGE_ID);
+
+        sqsMessageReceiver.receive(singleCaseJson, MESSAGE_ID, acknowledgement, visibility).join();
+
+        verify(caseProcessor).process(libraHearing.getFirst(), MESSAGE_ID);
+        assertThat(processedOnVirtualThread).isTrue();
+    }
+
+    @DisplayName("Given virtual thread processing mode and processing fails then complete exceptionally")
+    @Test
+    void givenVirtualThreadMode_whenProcessingFails_ThenCompleteExceptionally() {
+        sqsMessageReceiver = new SqsMessageReceiver(caseProcessor, telemetryService,  caseExtractor, virtualThreadHearingExecutor, keyedHearingExecutor, messageDeduplicator, admissionController, ProcessingMode.VIRTUAL_THREADS);
+        when(caseExtractor.extractHearings(singleCaseJson, MESSAGE_ID)).thenReturn(libraHearing);
+        doThrow(new RuntimeException("Bang")).when(caseProcessor).process(libraHearing.getFirst(), MESSAGE_ID);
+
+        assertThatExceptionOfType(CompletionException.class)
+                .isThrownBy(() -> sqsMessageReceiver.receive(singleCaseJson, MESSAGE_ID, acknowledgement, visibility).join())
+                .withMessageContaining("Bang");
+    }
+
+    @DisplayName("Given partitioned processing mode then process each hearing on its partition and complete when saved")
+    @Test
+    void givenPartitionedMode_whenReceived_ThenProcessOnPartition() {
+        sqsMessageReceiver = new SqsMessageReceiver(caseProcessor, telemetryService,  caseExtractor, virtualThreadHearingExecutor, keyedHearingExecutor, messageDeduplicator, admissionController, ProcessingMode.PARTITIONED);
+        when(caseExtractor.extractHearings(singleCaseJson, MESSAGE_ID)).thenReturn(commonPlatformHearing);
+        when(caseProcessor.processAsync(commonPlatformHearing.getFirst(), MESSAGE_ID, true)).thenReturn(Mono.empty());
+
+        sqsMessageReceiver.receive(singleCaseJson, MESSAGE_ID, acknowledgement, visibility).join();
+
+        verify(caseProcessor).processAsync(commonPlatformHearing.getFirst(), MESSAGE_ID, true);
+        verifyNoMoreInteractions(caseProcessor);
+    }
+
+    @DisplayName("Given partitioned processing mode and a message cannot be extracted then later messages are still processed")
+    @Test
+    void givenPartitionedMode_whenExtractionFails_ThenGiveUpThePlaceOfTheMessage() {
+        sqsMessageReceiver = new SqsMessageReceiver(caseProcessor, telemetryService,  caseExtractor, virtualThreadHearingExecutor, keyedHearingExecutor, messageDeduplicator, admissionController, ProcessingMode.PARTITIONED);
+        when(caseExtractor.extractHearings(singleCaseJson, MESSAGE_ID))
+                .thenThrow(new RuntimeException("Bang"))
+                .thenReturn(commonPlatformHearing);
+        when(caseProcessor.processAsync(commonPlatformHearing.getFirst(), MESSAGE_ID, true)).thenReturn(Mono.empty());
+
+        assertThatExceptionOfType(RuntimeException.class)
+                .isThrownBy(() -> sqsMessageReceiver.receive(singleCaseJson, MESSAGE_ID, acknowledgement, visibility));
+
+        assertThat(sqsMessageReceiver.receive(singleCaseJson, MESSAGE_ID, acknowledgement, visibility))
+                .succeedsWithin(5, TimeUnit.SECONDS);
+        verify(caseProcessor).processAsync(commonPlatformHearing.getFirst(), MESSAGE_ID, true);
+    }
+
     @Test
     void givenExceptionThrown_whenExtractCase_thenThrow() {
         final var runtimeException = new RuntimeException("Bang");
         when(caseExtractor.extractHearings(singleCaseJson, MESSAGE_ID)).thenThrow(runtimeException);
 
         assertThatExceptionOfType(RuntimeException.class)
-                .isThrownBy(() -> sqsMessageReceiver.receive(singleCaseJson, MESSAGE_ID))
+                .isThrownBy(() -> sqsMessageReceiver.receive(singleCaseJson, MESSAGE_ID, acknowledgement, visibility))
                 .isEqualTo(runtimeException);
+        verify(messageDeduplicator).abandon(MESSAGE_ID);
     }
 
     @Test
@@ -115,8 +254,55 @@ class SqsMessageReceiverTest {
         doThrow(runtimeException).when(caseProcessor).process(libraHearing.getFirst(), MESSAGE_ID);
 
         assertThatExceptionOfType(RuntimeException.class)
-                .isThrownBy(() -> sqsMessageReceiver.receive(singleCaseJson, MESSAGE_ID))
+                .isThrownBy(() -> sqsMessageReceiver.receive(singleCaseJson, MESSAGE_ID, acknowledgement, visibility))
                 .isEqualTo(runtimeException);
     }
 
+    @Test
+    void givenDownstreamUnavailable_whenProcessCase_thenReturnToQueueUntilItMayBeBack() {
+        when(caseExtractor.extractHearings(singleCaseJson, MESSAGE_ID)).thenReturn(libraHearing);
+        final var unavailable = new DownstreamUnavailableException("offender-search", "its circuit is open", 12);
+        doThrow(new RuntimeException(unavailable.getMessage(), unavailable)).when(caseProcessor).process(libraHearing.getFirst(), MESSAGE_ID);
+
+        assertThat(sqsMessageReceiver.receive(singleCaseJson, MESSAGE_ID, acknowledgement, visibility)).isCompleted();
+
+        verify(visibility).changeToAsync(12);
+        verify(acknowledgement, never()).acknowledgeAsync();
+        verify(messageDeduplicator).abandon(MESSAGE_ID);
+    }
+
+    @Test
+    void givenReactiveMode_whenDownstreamUnavailable_thenReturnToQueueUntilItMayBeBack() {
+        sqsMessageReceiver = new SqsMessageReceiver(caseProcessor, telemetryService,  caseExtractor, virtualThreadHearingExecutor, keyedHearingExecutor, messageDeduplicator, admissionController, ProcessingMode.REACTIVE);
+        when(caseExtractor.extractHearings(singleCaseJson, MESSAGE_ID)).thenReturn(libraHearing);
+        when(caseProcessor.processAsync(libraHearing.getFirst(), MESSAGE_ID))
+                .thenReturn(Mono.error(new DownstreamUnavailableException("court-case-service", "its bulkhead is full", 5)));
+
+        assertThat(sqsMessageReceiver.receive(singleCaseJson, MESSAGE_ID, acknowledgement, visibility)).succeedsWithin(5, TimeUnit.SECONDS);
+
+        verify(visibility).changeToAsync(5);
+        verify(acknowledgement, never()).acknowledgeAsync();
+    }
+
+    @Test
+    void givenHeavyLaneFull_whenLargeHearingReceived_thenReturnToQueueWithoutDownloading() {
+        final var largeHearing = MessageSize.fromS3(5 * 1024 * 1024);
+        when(caseExtractor.sizeOf(singleCaseJson)).thenReturn(largeHearing);
+        final var admission = admissionController.admit(largeHearing);
+
+        assertThat(sqsMessageReceiver.receive(singleCaseJson, MESSAGE_ID, acknowledgement, visibility)).isCompleted();
+
+        verify(visibility).changeToAsync(30);
+        verify(acknowledgement, never()).acknowledgeAsync();
+        verify(messageDeduplicator).abandon(MESSAGE_ID);
+        verify(caseExtractor, never()).extractHearings(singleCaseJson, MESSAGE_ID);
+        verifyNoInteractions(caseProcessor);
+
+        admission.release();
+        when(caseExtractor.extractHearings(singleCaseJson, MESSAGE_ID)).thenReturn(commonPlatformHearing);
+        sqsMessageReceiver.receive(singleCaseJson, MESSAGE_ID, acknowledgement, visibility).join();
+        verify(caseProcessor).process(commonPlatformHearing.getFirst(), MESSAGE_ID);
+        verify(acknowledgement).acknowledgeAsync();
+        assertThat(admissionController.getInFlight(HearingAdmissionController.Lane.HEAVY)).isZero();
+    }
 }
@@ -0,0 +1,67 @@
+package uk.gov.justice.probation.courtcasematcher.messaging;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+class VirtualThreadHearingExecutorTest {
+
+    private static final int MAX_CONCURRENCY = 2;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final VirtualThreadHearingExecutor executor = new VirtualThreadHearingExecutor(MAX_CONCURRENCY, meterRegistry);
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    void givenMoreTasksThanTheCeiling_whenSubmitted_thenOnlyRunUpToTheCeilingConcurrently() throws Exception {
+        final var release = new CountDownLatch(1);
+        final var running = new AtomicInteger();
+        final var maxRunning = new AtomicInteger();
+
+        final var futures = IntStream.range(0, 5)
+                .mapToObj(i -> executor.submit(() -> {
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    try {
+                        release.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    running.decrementAndGet();
+                }))
+                .toArray(CompletableFuture[]::new);
+
+        await().atMost(5, TimeUnit.SECONDS)
+                .until(() -> meterRegistry.get(VirtualThreadHearingExecutor.WAITING_METRIC).gauge().value() == 3.0d);
+        assertThat(meterRegistry.get(VirtualThreadHearingExecutor.IN_FLIGHT_METRIC).gauge().value()).isEqualTo(2.0d);
+
+        release.countDown();
+        CompletableFuture.allOf(futures).get(5, TimeUnit.SECONDS);
+
+        assertThat(maxRunning.get()).isEqualTo(MAX_CONCURRENCY);
+        assertThat(meterRegistry.get(VirtualThreadHearingExecutor.IN_FLIGHT_METRIC).gauge().value()).isEqualTo(0.0d);
+    }
+
+    @Test
+    void whenTaskThrows_thenFutureCompletesExceptionallyAndPermitIsReleased() {
+        final var failed = executor.submit(() -> {
+            throw new RuntimeException("bang");
+        });
+
+        assertThat(failed).failsWithin(5, TimeUnit.SECONDS);
+        assertThat(executor.submit(() -> { })).succeedsWithin(5, TimeUnit.SECONDS);
+        assertThat(meterRegistry.get(VirtualThreadHearingExecutor.IN_FLIGHT_METRIC).gauge().value()).isEqualTo(0.0d);
+    }
+}
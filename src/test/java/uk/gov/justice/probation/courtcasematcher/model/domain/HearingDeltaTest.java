@@ -0,0 +1,73 @@
+package uk.gov.justice.probation.courtcasematcher.model.domain;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HearingDeltaTest {
+
+    private static final Defendant DEFENDANT_1 = Defendant.builder().defendantId("D1").crn("X000001").build();
+    private static final Defendant DEFENDANT_2 = Defendant.builder().defendantId("D2").crn("X000002").build();
+    private static final Defendant DEFENDANT_3 = Defendant.builder().defendantId("D3").crn("X000003").build();
+    private static final List<HearingDay> HEARING_DAYS = List.of(HearingDay.builder().courtCode("B10JQ").build());
+
+    @Test
+    void givenDefendantsReorderedAndOneChanged_thenOnlyChangedDefendantInDelta() {
+        final var changed = DEFENDANT_2.withCrn("X999999");
+        final var hearing = hearing(List.of(changed, DEFENDANT_1));
+
+        final var delta = HearingDelta.between(hearing, hearing(List.of(DEFENDANT_1, DEFENDANT_2)));
+
+        assertThat(delta.isPartial()).isTrue();
+        assertThat(delta.isHearingDaysChanged()).isFalse();
+        assertThat(delta.getChangedDefendants()).containsExactly(changed);
+        assertThat(delta.getRemovedDefendantIds()).isEmpty();
+        assertThat(delta.changedFraction()).isEqualTo(0.5d);
+    }
+
+    @Test
+    void givenDefendantsAddedAndRemoved_thenIncludeBoth() {
+        final var hearing = hearing(List.of(DEFENDANT_1, DEFENDANT_3));
+
+        final var delta = HearingDelta.between(hearing, hearing(List.of(DEFENDANT_1, DEFENDANT_2)).withHearingDays(List.of()));
+
+        assertThat(delta.isHearingDaysChanged()).isTrue();
+        assertThat(delta.getChangedDefendants()).containsExactly(DEFENDANT_3);
+        assertThat(delta.getRemovedDefendantIds()).containsExactly("D2");
+        assertThat(delta.changedFraction()).isEqualTo(2.0d / 3);
+    }
+
+    @Test
+    void givenDefendantsDifferOnlyInFieldsNotSaved_thenNotChanged() {
+        final var matched = DEFENDANT_1.withGroupedOffenderMatches(GroupedOffenderMatches.builder()
+                .matches(List.of(OffenderMatch.builder().build()))
+                .build());
+        final var hearing = hearing(List.of(matched, DEFENDANT_2));
+
+        final var delta = HearingDelta.between(hearing, hearing(List.of(DEFENDANT_1, DEFENDANT_2)));
+
+        assertThat(delta.getChangedDefendants()).isEmpty();
+        assertThat(delta.changedFraction()).isZero();
+    }
+
+    @Test
+    void givenDefendantWithoutId_thenFullDelta() {
+        final var hearing = hearing(List.of(DEFENDANT_1.withDefendantId(null)));
+
+        final var delta = HearingDelta.between(hearing, hearing(List.of(DEFENDANT_1)));
+
+        assertThat(delta.isPartial()).isFalse();
+        assertThat(delta.getChangedDefendants()).isEqualTo(hearing.getDefendants());
+        assertThat(delta.changedFraction()).isEqualTo(1.0d);
+    }
+
+    private static Hearing hearing(List<Defendant> defendants) {
+        return Hearing.builder()
+                .hearingId("H1")
+                .hearingDays(HEARING_DAYS)
+                .defendants(defendants)
+                .build();
+    }
+}
@@ -520,6 +520,37 @@ class HearingMapperTest {
 
         }
 
+        @DisplayName("Common Platform defendants are matched by defendantId whatever their order, the first existing match winning")
+        @Test
+        void givenCommonPlatformCase_whenDefendantsReordered_ThenMatchEachByDefendantId() {
+            final var existingCourtCase = Hearing.builder()
+                    .caseId(CASE_ID)
+                    .defendants(List.of(Defendant.builder()
+                                    .defendantId(DEFENDANT_ID_2)
+                                    .crn("crn 2")
+                                    .build(),
+                            Defendant.builder()
+                                    .defendantId(DEFENDANT_ID)
+                                    .crn("crn 1")
+                                    .cId("cId 1")
+                                    .build(),
+                            Defendant.builder()
+                                    .defendantId(DEFENDANT_ID)
+                                    .crn("ignored crn")
+                                    .build()))
+                    .build();
+
+            var courtCase = HearingMapper.merge(commonPlatformCase, existingCourtCase);
+
+            final var first = courtCase.getDefendants().get(0);
+            assertThat(first.getDefendantId()).isEqualTo(DEFENDANT_ID);
+            assertThat(first.getCrn()).isEqualTo("crn 1");
+            assertThat(first.getCId()).isEqualTo("cId 1");
+            assertThat(first.getName()).isEqualTo(commonPlatformCase.getDefendants().get(0).getName());
+            assertThat(first.getOffences()).isEqualTo(commonPlatformCase.getDefendants().get(0).getOffences());
+            assertThat(courtCase.getDefendants().get(1).getCrn()).isEqualTo("crn 2");
+        }
+
         @DisplayName("Update from existing case for Libra cases")
         @Test
         void givenLibraCase_whenMergeWithExistingCaseWithoutIds_ThenUseNewIds() {
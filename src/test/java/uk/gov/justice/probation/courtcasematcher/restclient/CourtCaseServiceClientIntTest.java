@@ -5,6 +5,7 @@ import ch.qos.logback.classic.Logger;
 import ch.qos.logback.classic.spi.ILoggingEvent;
 import ch.qos.logback.classic.spi.LoggingEvent;
 import ch.qos.logback.core.Appender;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -24,11 +25,13 @@ import org.springframework.test.context.ActiveProfiles;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
 import reactor.core.publisher.Mono;
 import uk.gov.justice.probation.courtcasematcher.application.TestMessagingConfig;
+import uk.gov.justice.probation.courtcasematcher.fingerprint.OffenderMatchFingerprintStore;
 import uk.gov.justice.probation.courtcasematcher.model.domain.Hearing;
 import uk.gov.justice.probation.courtcasematcher.model.domain.Defendant;
 import uk.gov.justice.probation.courtcasematcher.model.type.DefendantType;
 import uk.gov.justice.probation.courtcasematcher.model.domain.GroupedOffenderMatches;
 import uk.gov.justice.probation.courtcasematcher.model.domain.HearingDay;
+import uk.gov.justice.probation.courtcasematcher.model.domain.HearingDelta;
 import uk.gov.justice.probation.courtcasematcher.model.domain.MatchIdentifiers;
 import uk.gov.justice.probation.courtcasematcher.model.type.MatchType;
 import uk.gov.justice.probation.courtcasematcher.model.domain.OffenderMatch;
@@ -38,8 +41,12 @@ import uk.gov.justice.probation.courtcasematcher.wiremock.WiremockMockServer;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.UUID;
 
+import static com.github.tomakehurst.wiremock.client.WireMock.containing;
 import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.notContaining;
+import static com.github.tomakehurst.wiremock.client.WireMock.patchRequestedFor;
 import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
 import static com.github.tomakehurst.wiremock.client.WireMock.putRequestedFor;
 import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
@@ -60,6 +67,7 @@ import static uk.gov.justice.probation.courtcasematcher.restclient.LegacyCourtCa
 @ExtendWith(MockitoExtension.class)
 class CourtCaseServiceClientIntTest {
     public static final String HEARING_ID_SERVER_ERROR = "771F1C21-D2CA-4235-8659-5C3C7D7C58B6";
+    private static final String HEARING_ID_PATCH_NOT_SUPPORTED = "F05F1C21-D2CA-4235-8659-5C3C7D7C58B6";
     @Mock
     private Appender<ILoggingEvent> mockAppender;
     @Captor
@@ -72,6 +80,9 @@ class CourtCaseServiceClientIntTest {
     @Autowired
     private CourtCaseServiceClient client;
 
+    @Autowired
+    private CourtCaseServiceRestHelper restHelper;
+
     private static final WiremockMockServer MOCK_SERVER = new WiremockMockServer(8090);
 
     @RegisterExtension
@@ -166,6 +177,74 @@ class CourtCaseServiceClientIntTest {
                 .withMessage("Retries exhausted: 1/1");
     }
 
+    @Test
+    void givenPartialDelta_whenPatchHearing_thenPatchOnlyChangedDefendants() {
+        final var hearing = aHearingWithTwoDefendants(HEARING_ID, CASE_ID);
+        final var existingHearing = hearing.withDefendants(List.of(
+                hearing.getDefendants().get(0),
+                hearing.getDefendants().get(1).withCrn("X999999")));
+
+        final var voidMono = partialUpdateClient().patchHearing(HearingDelta.between(hearing, existingHearing));
+        assertThat(voidMono.blockOptional()).isEmpty();
+
+        MOCK_SERVER.verify(
+                patchRequestedFor(urlEqualTo(String.format("/hearing/%s", HEARING_ID)))
+                        .withRequestBody(containing(DEFENDANT_ID_2))
+                        .withRequestBody(notContaining(DEFENDANT_ID))
+                        .withRequestBody(notContaining("hearingDays"))
+        );
+        MOCK_SERVER.verify(0, putRequestedFor(urlEqualTo(String.format("/hearing/%s", HEARING_ID))));
+    }
+
+    @Test
+    void givenLargeDelta_whenPatchHearing_thenPutInFull() {
+        final var hearing = aHearingWithTwoDefendants(HEARING_ID, CASE_ID);
+
+        final var voidMono = partialUpdateClient().patchHearing(HearingDelta.between(hearing, hearing.withDefendants(List.of())));
+        assertThat(voidMono.blockOptional()).isEmpty();
+
+        MOCK_SERVER.verify(0, patchRequestedFor(urlEqualTo(String.format("/hearing/%s", HEARING_ID))));
+        MOCK_SERVER.verify(putRequestedFor(urlEqualTo(String.format("/hearing/%s", HEARING_ID))));
+    }
+
+    @Test
+    void givenFullDelta_whenAnyShareOfDefendantsMayBePatched_thenPutInFull() {
+        final var hearing = aHearingWithTwoDefendants(HEARING_ID, CASE_ID);
+        final var client = new CourtCaseServiceClient(legacyClient, restHelper, true, 1.0d, 600000,
+                new OffenderMatchFingerprintStore(false, 0, "", new SimpleMeterRegistry()));
+
+        assertThat(client.patchHearing(HearingDelta.full(hearing)).blockOptional()).isEmpty();
+
+        MOCK_SERVER.verify(0, patchRequestedFor(urlEqualTo(String.format("/hearing/%s", HEARING_ID))));
+        MOCK_SERVER.verify(putRequestedFor(urlEqualTo(String.format("/hearing/%s", HEARING_ID))));
+    }
+
+    @Test
+    void givenPatchNotSupported_whenPatchHearing_thenPutInFullAndStopPatching() {
+        final var hearing = aHearingWithTwoDefendants(HEARING_ID_PATCH_NOT_SUPPORTED, UUID.randomUUID().toString());
+        final var existingHearing = hearing.withHearingDays(List.of());
+        final var client = partialUpdateClient();
+
+        assertThat(client.patchHearing(HearingDelta.between(hearing, existingHearing)).blockOptional()).isEmpty();
+        assertThat(client.patchHearing(HearingDelta.between(hearing, existingHearing)).blockOptional()).isEmpty();
+
+        MOCK_SERVER.verify(1, patchRequestedFor(urlEqualTo(String.format("/hearing/%s", HEARING_ID_PATCH_NOT_SUPPORTED))));
+        MOCK_SERVER.verify(2, putRequestedFor(urlEqualTo(String.format("/hearing/%s", HEARING_ID_PATCH_NOT_SUPPORTED))));
+    }
+
+    @Test
+    void givenPatchNotSupported_whenBackoffPassed_thenTryPatchAgain() {
+        final var hearing = aHearingWithTwoDefendants(HEARING_ID_PATCH_NOT_SUPPORTED, UUID.randomUUID().toString());
+        final var existingHearing = hearing.withHearingDays(List.of());
+        final var client = partialUpdateClient(0);
+
+        assertThat(client.patchHearing(HearingDelta.between(hearing, existingHearing)).blockOptional()).isEmpty();
+        assertThat(client.patchHearing(HearingDelta.between(hearing, existingHearing)).blockOptional()).isEmpty();
+
+        MOCK_SERVER.verify(2, patchRequestedFor(urlEqualTo(String.format("/hearing/%s", HEARING_ID_PATCH_NOT_SUPPORTED))));
+        MOCK_SERVER.verify(2, putRequestedFor(urlEqualTo(String.format("/hearing/%s", HEARING_ID_PATCH_NOT_SUPPORTED))));
+    }
+
     @Test
     void getHearing_delegatesToLegacyClient() {
         when(legacyClient.getHearing("court code", "case no", "list no")).thenReturn(courtCaseMono);
@@ -250,6 +329,57 @@ class CourtCaseServiceClientIntTest {
         );
     }
 
+    @Test
+    void givenMatchesAlreadyPosted_whenPostSameMatches_thenSkipPost() {
+        final var fingerprintStore = new OffenderMatchFingerprintStore(true, 10, "", new SimpleMeterRegistry());
+        final var fingerprintingClient = new CourtCaseServiceClient(legacyClient, restHelper, false, 0.5d, 600000, fingerprintStore);
+        final var defendants = buildDefendants();
+        final var defendantId = UUID.randomUUID().toString();
+        final var defendant = defendants.get(0).withDefendantId(defendantId);
+        final var path = String.format("/defendant/%s/grouped-offender-matches", defendantId);
+
+        fingerprintingClient.postOffenderMatches(CASE_ID, List.of(defendant)).block();
+        fingerprintingClient.postOffenderMatches(CASE_ID, List.of(defendant)).block();
+
+        MOCK_SERVER.verify(1, postRequestedFor(urlEqualTo(path)));
+
+        fingerprintingClient.postOffenderMatches(CASE_ID, List.of(defendant.withGroupedOffenderMatches(defendants.get(1).getGroupedOffenderMatches()))).block();
+
+        MOCK_SERVER.verify(2, postRequestedFor(urlEqualTo(path)));
+    }
+
+    @Test
+    void givenPostOfMatchesFailed_whenPostSameMatches_thenPostAgain() {
+        final var fingerprintStore = new OffenderMatchFingerprintStore(true, 10, "", new SimpleMeterRegistry());
+        final var fingerprintingClient = new CourtCaseServiceClient(legacyClient, restHelper, false, 0.5d, 600000, fingerprintStore);
+        final var defendants = buildDefendants("HTTP_500").subList(0, 1);
+
+        assertThatExceptionOfType(RuntimeException.class)
+                .isThrownBy(() -> fingerprintingClient.postOffenderMatches("X500", defendants).block());
+        assertThatExceptionOfType(RuntimeException.class)
+                .isThrownBy(() -> fingerprintingClient.postOffenderMatches("X500", defendants).block());
+
+        MOCK_SERVER.verify(4, postRequestedFor(urlEqualTo(String.format("/defendant/HTTP_500%s/grouped-offender-matches", DEFENDANT_ID))));
+    }
+
+    private CourtCaseServiceClient partialUpdateClient() {
+        return partialUpdateClient(600000);
+    }
+
+    private CourtCaseServiceClient partialUpdateClient(long unsupportedBackoffMs) {
+        return new CourtCaseServiceClient(legacyClient, restHelper, true, 0.5d, unsupportedBackoffMs,
+                new OffenderMatchFingerprintStore(false, 0, "", new SimpleMeterRegistry()));
+    }
+
+    private static Hearing aHearingWithTwoDefendants(String hearingId, String caseId) {
+        final var hearing = aHearingBuilderWithAllFields()
+                .hearingId(hearingId)
+                .caseId(caseId)
+                .build();
+        final var defendant = hearing.getDefendants().get(0);
+        return hearing.withDefendants(List.of(defendant, defendant.withDefendantId(DEFENDANT_ID_2).withCrn("X123456")));
+    }
+
     private List<Defendant> buildDefendants() {
         return buildDefendants(null);
     }
@@ -0,0 +1,216 @@
+package uk.gov.justice.probation.courtcasematcher.restclient;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+import uk.gov.justice.probation.courtcasematcher.restclient.DownstreamCircuitBreakers.State;
+import uk.gov.justice.probation.courtcasematcher.restclient.exception.DownstreamUnavailableException;
+
+import java.io.IOException;
+import java.net.URI;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DownstreamCircuitBreakersTest {
+
+    private static final String DOWNSTREAM = "offender-search";
+    private static final Duration OPEN_DURATION = Duration.ofSeconds(30);
+    private static final ClientRequest REQUEST = ClientRequest.create(HttpMethod.GET, URI.create("http://localhost/search")).build();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final MutableClock clock = new MutableClock();
+    private final DownstreamCircuitBreakers circuitBreakers =
+            new DownstreamCircuitBreakers(true, 0.5d, 4, 4, OPEN_DURATION.toMillis(), 2, 2, 5, meterRegistry, clock);
+    private final ExchangeFilterFunction filter = circuitBreakers.filter(DOWNSTREAM);
+
+    private final AtomicInteger calls = new AtomicInteger();
+
+    @Test
+    void givenFailureRateReached_thenOpenAndFailFastWithoutCalling() {
+        call(HttpStatus.OK);
+        call(HttpStatus.INTERNAL_SERVER_ERROR);
+        call(HttpStatus.OK);
+        assertThat(circuitBreakers.getState(DOWNSTREAM)).isEqualTo(State.CLOSED);
+
+        call(HttpStatus.TOO_MANY_REQUESTS);
+
+        assertThat(circuitBreakers.getState(DOWNSTREAM)).isEqualTo(State.OPEN);
+        StepVerifier.create(filter.filter(REQUEST, respondWith(HttpStatus.OK)))
+                .verifyError(DownstreamUnavailableException.class);
+        assertThat(calls).hasValue(4);
+        assertThat(rejected("circuit-open")).isEqualTo(1.0d);
+        assertThat(transitions("open")).isEqualTo(1.0d);
+        assertThat(meterRegistry.get(DownstreamCircuitBreakers.STATE_METRIC).tag("downstream", DOWNSTREAM).gauge().value())
+                .isEqualTo(1.0d);
+    }
+
+    @Test
+    void givenOpen_thenRetryOnceDueToHalfOpen() {
+        open();
+        clock.advance(Duration.ofMillis(20_500));
+
+        StepVerifier.create(filter.filter(REQUEST, respondWith(HttpStatus.OK)))
+                .verifyErrorSatisfies(e -> assertThat(((DownstreamUnavailableException) e).getRetryAfterSeconds()).isEqualTo(10));
+        clock.advance(Duration.ofSeconds(7));
+        StepVerifier.create(filter.filter(REQUEST, respondWith(HttpStatus.OK)))
+                .verifyErrorSatisfies(e -> assertThat(((DownstreamUnavailableException) e).getRetryAfterSeconds()).isEqualTo(5));
+    }
+
+    @Test
+    void givenNotFoundResponses_thenStayClosed() {
+        for (int i = 0; i < 4; i++) {
+            call(HttpStatus.NOT_FOUND);
+        }
+
+        assertThat(circuitBreakers.getState(DOWNSTREAM)).isEqualTo(State.CLOSED);
+    }
+
+    @Test
+    void givenNoResponse_thenCountAsFailure() {
+        for (int i = 0; i < 4; i++) {
+            StepVerifier.create(filter.filter(REQUEST, request -> Mono.error(new IOException("Connection refused"))))
+                    .verifyError(IOException.class);
+        }
+
+        assertThat(circuitBreakers.getState(DOWNSTREAM)).isEqualTo(State.OPEN);
+    }
+
+    @Test
+    void givenOpenDurationPassed_whenTrialCallsSucceed_thenClose() {
+        open();
+        clock.advance(OPEN_DURATION);
+
+        call(HttpStatus.OK);
+        assertThat(circuitBreakers.getState(DOWNSTREAM)).isEqualTo(State.HALF_OPEN);
+        call(HttpStatus.OK);
+
+        assertThat(circuitBreakers.getState(DOWNSTREAM)).isEqualTo(State.CLOSED);
+        assertThat(transitions("half_open")).isEqualTo(1.0d);
+        assertThat(transitions("closed")).isEqualTo(1.0d);
+    }
+
+    @Test
+    void givenHalfOpen_whenTrialCallFails_thenOpenAgain() {
+        open();
+        clock.advance(OPEN_DURATION);
+
+        call(HttpStatus.SERVICE_UNAVAILABLE);
+
+        assertThat(circuitBreakers.getState(DOWNSTREAM)).isEqualTo(State.OPEN);
+        StepVerifier.create(filter.filter(REQUEST, respondWith(HttpStatus.OK)))
+                .verifyError(DownstreamUnavailableException.class);
+    }
+
+    @Test
+    void givenHalfOpen_whenAllTrialCallsInFlight_thenFailFast() {
+        open();
+        clock.advance(OPEN_DURATION);
+        final var response = Sinks.<ClientResponse>one();
+        final var firstTrial = filter.filter(REQUEST, request -> response.asMono()).toFuture();
+        final var secondTrial = filter.filter(REQUEST, request -> response.asMono()).toFuture();
+
+        StepVerifier.create(filter.filter(REQUEST, respondWith(HttpStatus.OK)))
+                .verifyError(DownstreamUnavailableException.class);
+
+        response.tryEmitValue(ClientResponse.create(HttpStatus.OK).build());
+        assertThat(firstTrial).isCompleted();
+        assertThat(secondTrial).isCompleted();
+        assertThat(circuitBreakers.getState(DOWNSTREAM)).isEqualTo(State.CLOSED);
+    }
+
+    @Test
+    void givenMaxConcurrentCallsInFlight_thenFailFastUntilOneCompletes() {
+        final var response = Sinks.<ClientResponse>one();
+        filter.filter(REQUEST, request -> response.asMono()).subscribe();
+        filter.filter(REQUEST, request -> response.asMono()).subscribe();
+
+        StepVerifier.create(filter.filter(REQUEST, respondWith(HttpStatus.OK)))
+                .verifyErrorSatisfies(e -> assertThat(e)
+                        .hasMessage("Call to offender-search rejected as its bulkhead is full")
+                        .extracting("retryAfterSeconds").isEqualTo(5));
+        assertThat(rejected("bulkhead-full")).isEqualTo(1.0d);
+        assertThat(meterRegistry.get(DownstreamCircuitBreakers.IN_FLIGHT_METRIC).gauge().value()).isEqualTo(2.0d);
+
+        response.tryEmitValue(ClientResponse.create(HttpStatus.OK).build());
+        call(HttpStatus.OK);
+        assertThat(meterRegistry.get(DownstreamCircuitBreakers.IN_FLIGHT_METRIC).gauge().value()).isZero();
+    }
+
+    @Test
+    void givenDisabled_thenNeverFailFast() {
+        final var disabled = new DownstreamCircuitBreakers(false, 0.5d, 4, 4, OPEN_DURATION.toMillis(), 2, 2, 5, meterRegistry, clock)
+                .filter(DOWNSTREAM);
+
+        for (int i = 0; i < 6; i++) {
+            StepVerifier.create(disabled.filter(REQUEST, respondWith(HttpStatus.INTERNAL_SERVER_ERROR)))
+                    .expectNextCount(1)
+                    .verifyComplete();
+        }
+        assertThat(calls).hasValue(6);
+    }
+
+    private void open() {
+        for (int i = 0; i < 4; i++) {
+            call(HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+        assertThat(circuitBreakers.getState(DOWNSTREAM)).isEqualTo(State.OPEN);
+    }
+
+    private void call(HttpStatus status) {
+        StepVerifier.create(filter.filter(REQUEST, respondWith(status)))
+                .expectNextCount(1)
+                .verifyComplete();
+    }
+
+    private ExchangeFunction respondWith(HttpStatus status) {
+        return request -> Mono.fromSupplier(() -> {
+            calls.incrementAndGet();
+            return ClientResponse.create(status).build();
+        });
+    }
+
+    private double rejected(String reason) {
+        return meterRegistry.get(DownstreamCircuitBreakers.REJECTED_METRIC).tag("downstream", DOWNSTREAM).tag("reason", reason).counter().count();
+    }
+
+    private double transitions(String state) {
+        return meterRegistry.get(DownstreamCircuitBreakers.TRANSITIONS_METRIC).tag("downstream", DOWNSTREAM).tag("state", state).counter().count();
+    }
+
+    private static class MutableClock extends Clock {
+        private Instant now = Instant.parse("2024-01-01T09:00:00Z");
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package uk.gov.justice.probation.courtcasematcher.restclient;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LookupCacheTest {
+
+    private static final Duration TTL = Duration.ofMinutes(10);
+    private static final Duration NEGATIVE_TTL = Duration.ofMinutes(1);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final MutableClock clock = new MutableClock();
+    private final LookupCache<String> cache = new LookupCache<>("test", true, TTL, NEGATIVE_TTL, 0.8d, 2, meterRegistry, clock);
+
+    private final AtomicInteger lookups = new AtomicInteger();
+
+    @Test
+    void givenCachedValue_whenGetAgain_thenNoLookup() {
+        StepVerifier.create(cache.get("a", lookup("record"))).expectNext("record").verifyComplete();
+        StepVerifier.create(cache.get("a", lookup("another record"))).expectNext("record").verifyComplete();
+
+        assertThat(lookups).hasValue(1);
+        assertThat(gets("hit")).isEqualTo(1.0d);
+        assertThat(gets("miss")).isEqualTo(1.0d);
+    }
+
+    @Test
+    void givenEmptyLookup_whenGetAgainWithinNegativeTtl_thenEmptyWithoutLookup() {
+        StepVerifier.create(cache.get("a", lookup(null))).verifyComplete();
+        StepVerifier.create(cache.get("a", lookup("record"))).verifyComplete();
+
+        assertThat(lookups).hasValue(1);
+        assertThat(gets("negative-hit")).isEqualTo(1.0d);
+
+        clock.advance(NEGATIVE_TTL);
+        StepVerifier.create(cache.get("a", lookup("record"))).expectNext("record").verifyComplete();
+        assertThat(lookups).hasValue(2);
+    }
+
+    @Test
+    void givenLookupFails_whenGetAgain_thenLookupAgain() {
+        StepVerifier.create(cache.get("a", () -> Mono.error(new RuntimeException("timeout")))).verifyError();
+        StepVerifier.create(cache.get("a", lookup("record"))).expectNext("record").verifyComplete();
+
+        assertThat(lookups).hasValue(1);
+    }
+
+    @Test
+    void givenLookupInFlight_whenGetSameKey_thenShareLookup() {
+        final var response = Sinks.<String>one();
+        final Supplier<Mono<String>> slowLookup = () -> {
+            lookups.incrementAndGet();
+            return response.asMono();
+        };
+
+        final var first = cache.get("a", slowLookup).toFuture();
+        final var second = cache.get("a", slowLookup).toFuture();
+        response.tryEmitValue("record");
+
+        assertThat(first).isCompletedWithValue("record");
+        assertThat(second).isCompletedWithValue("record");
+        assertThat(lookups).hasValue(1);
+        assertThat(gets("coalesced")).isEqualTo(1.0d);
+        assertThat(meterRegistry.get(LookupCache.SAVED_METRIC).counter().count()).isEqualTo(1.0d);
+
+        StepVerifier.create(cache.get("a", lookup("another record"))).expectNext("record").verifyComplete();
+        assertThat(meterRegistry.get(LookupCache.SAVED_METRIC).counter().count()).isEqualTo(2.0d);
+    }
+
+    @Test
+    void givenInFlightLookupFails_whenGetAgain_thenNewLookup() {
+        final var response = Sinks.<String>one();
+
+        final var first = cache.get("a", response::asMono).toFuture();
+        response.tryEmitError(new RuntimeException("timeout"));
+
+        assertThat(first).isCompletedExceptionally();
+        StepVerifier.create(cache.get("a", lookup("record"))).expectNext("record").verifyComplete();
+        assertThat(lookups).hasValue(1);
+    }
+
+    @Test
+    void givenSomeKeysCached_whenGetAll_thenLookUpOnlyTheOthersTogether() {
+        cache.get("a", lookup("cached a")).block();
+        cache.get("b", lookup(null)).block();
+        final List<List<String>> batches = new ArrayList<>();
+
+        final var values = cache.getAll(List.of("a", "b", "c", "d"), keys -> {
+            batches.add(keys);
+            return Mono.just(Map.of("c", "looked up c"));
+        }).block();
+
+        assertThat(values).containsExactlyInAnyOrderEntriesOf(Map.of("a", "cached a", "c", "looked up c"));
+        assertThat(batches).containsExactly(List.of("c", "d"));
+        StepVerifier.create(cache.get("c", lookup("another c"))).expectNext("looked up c").verifyComplete();
+        StepVerifier.create(cache.get("d", lookup("d"))).verifyComplete();
+        assertThat(gets("negative-hit")).isEqualTo(2.0d);
+    }
+
+    @Test
+    void givenKeyInFlight_whenGetAll_thenShareLookup() {
+        final var response = Sinks.<String>one();
+        final var first = cache.get("a", response::asMono).toFuture();
+
+        final var values = cache.getAll(List.of("a", "b"), keys -> Mono.just(Map.of("b", "b"))).toFuture();
+        response.tryEmitValue("a");
+
+        assertThat(first).isCompletedWithValue("a");
+        assertThat(values).isCompletedWithValue(Map.of("a", "a", "b", "b"));
+        assertThat(gets("coalesced")).isEqualTo(1.0d);
+    }
+
+    @Test
+    void givenTtlElapsed_whenGet_thenLookupAgain() {
+        StepVerifier.create(cache.get("a", lookup("record"))).expectNext("record").verifyComplete();
+        clock.advance(TTL);
+
+        StepVerifier.create(cache.get("a", lookup("updated record"))).expectNext("updated record").verifyComplete();
+        assertThat(lookups).hasValue(2);
+    }
+
+    @Test
+    void givenRefreshAheadReached_whenGet_thenAnswerFromCacheAndRefreshOnce() {
+        StepVerifier.create(cache.get("a", lookup("record"))).expectNext("record").verifyComplete();
+        clock.advance(Duration.ofMinutes(8));
+
+        StepVerifier.create(cache.get("a", lookup("updated record"))).expectNext("record").verifyComplete();
+        StepVerifier.create(cache.get("a", lookup("updated record"))).expectNext("updated record").verifyComplete();
+
+        assertThat(lookups).hasValue(2);
+        assertThat(meterRegistry.get(LookupCache.REFRESHES_METRIC).counter().count()).isEqualTo(1.0d);
+
+        clock.advance(Duration.ofMinutes(9));
+        StepVerifier.create(cache.get("a", lookup("another record"))).expectNext("updated record").verifyComplete();
+    }
+
+    @Test
+    void givenRefreshFails_whenGet_thenKeepEntryAndRetryRefresh() {
+        StepVerifier.create(cache.get("a", lookup("record"))).expectNext("record").verifyComplete();
+        clock.advance(Duration.ofMinutes(8));
+
+        StepVerifier.create(cache.get("a", () -> Mono.error(new RuntimeException("timeout")))).expectNext("record").verifyComplete();
+        StepVerifier.create(cache.get("a", lookup("updated record"))).expectNext("record").verifyComplete();
+        StepVerifier.create(cache.get("a", lookup("another record"))).expectNext("updated record").verifyComplete();
+    }
+
+    @Test
+    void givenMaxEntries_whenMoreCached_thenLeastRecentlyUsedEvicted() {
+        cache.get("a", lookup("a")).block();
+        cache.get("b", lookup("b")).block();
+        cache.get("a", lookup("a")).block();
+        cache.get("c", lookup("c")).block();
+
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(meterRegistry.get(LookupCache.SIZE_METRIC).gauge().value()).isEqualTo(2.0d);
+        cache.get("a", lookup("a")).block();
+        cache.get("b", lookup("b")).block();
+        assertThat(lookups).hasValue(4);
+    }
+
+    @Test
+    void givenDisabled_whenGet_thenAlwaysLookup() {
+        final var disabled = new LookupCache<String>("disabled", false, TTL, NEGATIVE_TTL, 0.8d, 2, meterRegistry, clock);
+
+        disabled.get("a", lookup("record")).block();
+        disabled.get("a", lookup("record")).block();
+
+        assertThat(lookups).hasValue(2);
+    }
+
+    private Supplier<Mono<String>> lookup(String value) {
+        return () -> Mono.fromCallable(() -> {
+            lookups.incrementAndGet();
+            return value;
+        });
+    }
+
+    private double gets(String result) {
+        return meterRegistry.get(LookupCache.GETS_METRIC).tag("cache", "test").tag("result", result).counter().count();
+    }
+
+    private static class MutableClock extends Clock {
+        private Instant now = Instant.parse("2024-01-01T09:00:00Z");
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
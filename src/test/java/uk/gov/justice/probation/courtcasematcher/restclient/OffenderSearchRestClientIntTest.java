@@ -1,13 +1,16 @@
 package uk.gov.justice.probation.courtcasematcher.restclient;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.RegisterExtension;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.context.annotation.Import;
 import org.springframework.test.context.ActiveProfiles;
+import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
 import reactor.test.StepVerifier;
 import uk.gov.justice.probation.courtcasematcher.application.TestMessagingConfig;
@@ -16,9 +19,13 @@ import uk.gov.justice.probation.courtcasematcher.restclient.model.offendersearch
 import uk.gov.justice.probation.courtcasematcher.wiremock.WiremockExtension;
 import uk.gov.justice.probation.courtcasematcher.wiremock.WiremockMockServer;
 
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.Month;
+import java.util.List;
 
+import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
 import static org.assertj.core.api.Assertions.assertThat;
 
 @SpringBootTest
@@ -271,4 +278,73 @@ public class OffenderSearchRestClientIntTest {
         }
     }
 
+    @Nested
+    class SearchCrns {
+
+        @Autowired
+        @Qualifier("offenderSearchWebClient")
+        private WebClient webClient;
+
+        @Test
+        public void whenSearchCrns_thenReturnSearchResponsesOfEachCrn() {
+            var search = restClient.search(List.of("X320741", "X346204", "X999999")).block();
+
+            assertThat(search).containsOnlyKeys("X320741", "X346204", "X999999");
+            assertThat(search.get("X320741").getSearchResponses()).extracting(response -> response.getOtherIds().getPncNumber())
+                .containsExactly("PNC123");
+            assertThat(search.get("X346204").getSearchResponses()).extracting(response -> response.getProbationStatusDetail().getStatus())
+                .containsExactly("PREVIOUSLY_KNOWN");
+            assertThat(search.get("X999999").getSearchResponses()).isEmpty();
+            MOCK_SERVER.verify(1, postRequestedFor(urlEqualTo("/crns")));
+        }
+
+        @Test
+        public void givenSearchByCrnsNotSupported_whenSearchCrns_thenSearchEachCrn() {
+            var client = crnsSearchClient("/crns-not-supported");
+
+            var search = client.search(List.of("X320741", "CRNMULTI")).block();
+            client.search(List.of("X320741", "CRNMULTI")).block();
+
+            assertThat(search.get("X320741").getSearchResponses()).hasSize(1);
+            assertThat(search.get("CRNMULTI").getSearchResponses()).hasSize(2);
+            MOCK_SERVER.verify(1, postRequestedFor(urlEqualTo("/crns-not-supported")));
+            MOCK_SERVER.verify(4, postRequestedFor(urlEqualTo("/search")));
+        }
+
+        @Test
+        public void givenSearchByCrnsNotSupported_whenBackOffPassed_thenSearchByCrnsAgain() {
+            var client = crnsSearchClient("/crns-not-supported");
+            client.setCrnsUnsupportedBackOffSeconds(0);
+
+            client.search(List.of("X320741", "CRNMULTI")).block();
+            client.search(List.of("X320741", "CRNMULTI")).block();
+
+            MOCK_SERVER.verify(2, postRequestedFor(urlEqualTo("/crns-not-supported")));
+            MOCK_SERVER.verify(4, postRequestedFor(urlEqualTo("/search")));
+        }
+
+        @Test
+        public void givenSearchByCrnsNotFound_whenSearchCrns_thenSearchEachCrnOfThatChunkOnly() {
+            var client = crnsSearchClient("/crns-not-found");
+
+            var search = client.search(List.of("X320741", "CRNMULTI")).block();
+            client.search(List.of("X320741", "CRNMULTI")).block();
+
+            assertThat(search.get("CRNMULTI").getSearchResponses()).hasSize(2);
+            MOCK_SERVER.verify(2, postRequestedFor(urlEqualTo("/crns-not-found")));
+            MOCK_SERVER.verify(4, postRequestedFor(urlEqualTo("/search")));
+        }
+
+        private OffenderSearchRestClient crnsSearchClient(String postCrnsUrl) {
+            var client = new OffenderSearchRestClient(webClient, new LookupCache<>("test", false, Duration.ZERO, Duration.ZERO, 1.0d, 1, new SimpleMeterRegistry()));
+            client.setPostSearchUrl("/search");
+            client.setPostCrnsUrl(postCrnsUrl);
+            client.setMaxCrnsPerRequest(50);
+            client.setMaxConcurrentSearches(2);
+            client.setDisableAuthentication(true);
+            client.setCrnsUnsupportedBackOffSeconds(600);
+            return client;
+        }
+    }
+
 }
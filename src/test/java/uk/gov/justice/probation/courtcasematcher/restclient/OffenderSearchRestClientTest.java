@@ -1,6 +1,7 @@
 package uk.gov.justice.probation.courtcasematcher.restclient;
 
 import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.EnumSource;
@@ -9,6 +10,7 @@ import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
+import uk.gov.justice.probation.courtcasematcher.restclient.exception.DownstreamUnavailableException;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static uk.gov.justice.probation.courtcasematcher.restclient.OffenderSearchRestClient.EXCEPTION_RETRY_FILTER;
@@ -37,6 +39,11 @@ class OffenderSearchRestClientTest {
         assertThat(EXCEPTION_RETRY_FILTER.test(exception)).isTrue();
     }
 
+    @Test
+    void givenDownstreamUnavailable_whenUsePredicate_thenDoNotRetry() {
+        assertThat(EXCEPTION_RETRY_FILTER.test(new DownstreamUnavailableException("offender-search", "its circuit is open", 30))).isFalse();
+    }
+
     static WebClientResponseException createException(HttpStatus httpStatus) {
         return WebClientResponseException.create(httpStatus.value(), "", HEADERS, "".getBytes(), null);
     }
@@ -0,0 +1,43 @@
+package uk.gov.justice.probation.courtcasematcher.restclient.model.courtcaseservice;
+
+import org.junit.jupiter.api.Test;
+import uk.gov.justice.probation.courtcasematcher.model.domain.HearingDelta;
+import uk.gov.justice.probation.courtcasematcher.pact.DomainDataHelper;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CCSHearingPatchTest {
+
+    @Test
+    void shouldMapHearingFieldsAndOnlyChangedDefendants() {
+        final var hearing = DomainDataHelper.aHearingWithAllFields();
+        final var defendant = hearing.getDefendants().get(0);
+        final var added = defendant.withDefendantId(DomainDataHelper.DEFENDANT_ID_2);
+        final var received = hearing.withDefendants(List.of(defendant, added));
+        final var existing = hearing.withDefendants(List.of(defendant, defendant.withDefendantId("removed")));
+
+        final var actual = CCSHearingPatch.of(HearingDelta.between(received, existing));
+
+        assertThat(actual.getCaseId()).isEqualTo(hearing.getCaseId());
+        assertThat(actual.getHearingId()).isEqualTo(hearing.getHearingId());
+        assertThat(actual.getCaseNo()).isEqualTo(hearing.getCaseNo());
+        assertThat(actual.getUrn()).isEqualTo(hearing.getUrn());
+        assertThat(actual.getSource()).isEqualTo(CCSDataSource.COMMON_PLATFORM);
+        assertThat(actual.getHearingDays()).isNull();
+        assertThat(actual.getDefendants()).containsExactly(CCSDefendant.of(added));
+        assertThat(actual.getRemovedDefendantIds()).containsExactly("removed");
+    }
+
+    @Test
+    void givenHearingDaysChanged_thenIncludeHearingDays() {
+        final var hearing = DomainDataHelper.aHearingWithAllFields();
+
+        final var actual = CCSHearingPatch.of(HearingDelta.between(hearing, hearing.withHearingDays(List.of())));
+
+        assertThat(actual.getHearingDays()).hasSize(1);
+        assertThat(actual.getDefendants()).isEmpty();
+        assertThat(actual.getRemovedDefendantIds()).isNull();
+    }
+}
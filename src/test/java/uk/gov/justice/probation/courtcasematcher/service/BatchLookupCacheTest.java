@@ -0,0 +1,56 @@
+package uk.gov.justice.probation.courtcasematcher.service;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BatchLookupCacheTest {
+
+    private final AtomicInteger calls = new AtomicInteger();
+
+    @Test
+    void givenABatchContext_whenTheSameKeyIsLookedUpTwice_thenCallDownstreamOnce() {
+        final var cache = new BatchLookupCache();
+
+        final var result = BatchLookupCache.lookup("crn:X123", this::downstream)
+                .then(BatchLookupCache.lookup("crn:X123", this::downstream))
+                .contextWrite(BatchLookupCache.context(cache))
+                .block();
+
+        assertThat(result).isEqualTo("result-1");
+        assertThat(calls.get()).isEqualTo(1);
+        assertThat(cache.size()).isEqualTo(1);
+    }
+
+    @Test
+    void givenALookupFails_whenTheSameKeyIsLookedUpAgain_thenCallDownstreamAgain() {
+        final var cache = new BatchLookupCache();
+
+        final var result = BatchLookupCache.lookup("crn:X123", () -> Mono.<String>error(new RuntimeException("bang")))
+                .onErrorResume(e -> Mono.empty())
+                .then(BatchLookupCache.lookup("crn:X123", this::downstream))
+                .contextWrite(BatchLookupCache.context(cache))
+                .block();
+
+        assertThat(result).isEqualTo("result-1");
+        assertThat(calls.get()).isEqualTo(1);
+        assertThat(cache.size()).isEqualTo(1);
+    }
+
+    @Test
+    void givenNoBatchContext_whenTheSameKeyIsLookedUpTwice_thenCallDownstreamEachTime() {
+        final var result = BatchLookupCache.lookup("crn:X123", this::downstream)
+                .then(BatchLookupCache.lookup("crn:X123", this::downstream))
+                .block();
+
+        assertThat(result).isEqualTo("result-2");
+        assertThat(calls.get()).isEqualTo(2);
+    }
+
+    private Mono<String> downstream() {
+        return Mono.fromSupplier(() -> "result-" + calls.incrementAndGet());
+    }
+}
@@ -6,6 +6,7 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
 import uk.gov.justice.probation.courtcasematcher.model.domain.Address;
 import uk.gov.justice.probation.courtcasematcher.model.domain.Defendant;
 import uk.gov.justice.probation.courtcasematcher.model.domain.ProbationStatusDetail;
@@ -21,10 +22,15 @@ import uk.gov.justice.probation.courtcasematcher.restclient.model.offendersearch
 import uk.gov.justice.probation.courtcasematcher.restclient.model.offendersearch.SearchResponse;
 import uk.gov.justice.probation.courtcasematcher.restclient.model.offendersearch.SearchResponses;
 
+import java.time.Duration;
+import java.time.LocalDate;
 import java.util.List;
+import java.util.Map;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -42,7 +48,7 @@ public class CprServiceTest {
 
     @BeforeEach
     public void setup() {
-        cprService = new CprService(cprServiceClient, offenderSearchRestClient);
+        cprService = new CprService(cprServiceClient, offenderSearchRestClient, 4, 4, false);
     }
 
     @Test
@@ -156,6 +162,59 @@ public class CprServiceTest {
             .getMatches().getLast().getMatchIdentifiers().getPnc()).isEqualTo("66666");
     }
 
+    @Test
+    public void shouldEnrichDefendantsConcurrently() {
+        final var first = Defendant.builder().defendantId("1").build();
+        final var second = Defendant.builder().defendantId("2").build();
+        final var firstRecord = Sinks.<CprDefendant>one();
+        when(cprServiceClient.getCprCanonicalRecordByCommonPlatformId("1")).thenReturn(firstRecord.asMono());
+        when(cprServiceClient.getCprCanonicalRecordByCommonPlatformId("2")).thenAnswer(invocation -> {
+            firstRecord.tryEmitValue(getCprDefendant("1995-02-02"));
+            return Mono.just(getCprDefendant("1996-03-03"));
+        });
+        when(offenderSearchRestClient.search(anyString())).thenReturn(Mono.just(SearchResponses.builder().build()));
+
+        cprService.updateDefendantsAsync(List.of(first, second)).block(Duration.ofSeconds(5));
+
+        assertThat(first.getDateOfBirth()).isEqualTo(LocalDate.of(1995, 2, 2));
+        assertThat(second.getDateOfBirth()).isEqualTo(LocalDate.of(1996, 3, 3));
+    }
+
+    @Test
+    public void shouldKeepOrderOfCrns_whenSearchesCompleteOutOfOrder() {
+        when(offenderSearchRestClient.search("1234567")).thenReturn(Mono.just(SearchResponses.builder().build())
+            .delayElement(Duration.ofMillis(100)));
+        when(offenderSearchRestClient.search("98765423")).thenReturn(Mono.just(SearchResponses.builder().build()));
+
+        final var matches = cprService.buildGroupedOffenderMatch(getCprDefendant("1995-02-02")).block();
+
+        assertThat(matches.getMatches())
+            .extracting(match -> match.getMatchIdentifiers().getCrn())
+            .containsExactly("1234567", "98765423");
+    }
+
+    @Test
+    public void givenBatchSearch_shouldSearchAllDefendantsCrnsTogether() {
+        final var batchCprService = new CprService(cprServiceClient, offenderSearchRestClient, 4, 4, true);
+        final var first = Defendant.builder().defendantId("1").build();
+        final var second = Defendant.builder().defendantId("2").build();
+        when(cprServiceClient.getCprCanonicalRecordByCommonPlatformId("1")).thenReturn(Mono.just(getCprDefendant("1995-02-02")));
+        when(cprServiceClient.getCprCanonicalRecordByCommonPlatformId("2")).thenReturn(Mono.just(getCprExactDefendant()));
+        when(offenderSearchRestClient.search(List.of("1234567", "98765423", "1234567"))).thenReturn(Mono.just(Map.of(
+            "1234567", SearchResponses.builder().searchResponses(List.of(SearchResponse.builder()
+                .otherIds(OtherIds.builder().crn("1234567").pncNumber("66666").build())
+                .build())).build())));
+
+        batchCprService.updateDefendantsAsync(List.of(first, second)).block();
+
+        verify(offenderSearchRestClient, never()).search(anyString());
+        assertThat(first.getGroupedOffenderMatches().getMatches())
+            .extracting(match -> match.getMatchIdentifiers().getCrn(), match -> match.getMatchIdentifiers().getPnc())
+            .containsExactly(tuple("1234567", "66666"), tuple("98765423", null));
+        assertThat(second.getCrn()).isEqualTo("1234567");
+        assertThat(second.getGroupedOffenderMatches().getMatches()).hasSize(1);
+    }
+
     @Test
     public void shouldBuildGroupedOffenderMatchWhenAliasHasNullMiddleNames() {
         Defendant defendantFromInitialPayload = Defendant.builder()
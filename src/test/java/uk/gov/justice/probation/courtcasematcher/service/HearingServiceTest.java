@@ -1,34 +1,42 @@
 package uk.gov.justice.probation.courtcasematcher.service;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.assertj.core.api.AssertionsForClassTypes;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
 import uk.gov.justice.probation.courtcasematcher.model.domain.DataSource;
 import uk.gov.justice.probation.courtcasematcher.model.domain.Defendant;
 import uk.gov.justice.probation.courtcasematcher.model.domain.Hearing;
 import uk.gov.justice.probation.courtcasematcher.model.domain.HearingDay;
+import uk.gov.justice.probation.courtcasematcher.model.domain.HearingDelta;
 import uk.gov.justice.probation.courtcasematcher.model.domain.ProbationStatusDetail;
 import uk.gov.justice.probation.courtcasematcher.restclient.CourtCaseServiceClient;
 import uk.gov.justice.probation.courtcasematcher.restclient.OffenderSearchRestClient;
 import uk.gov.justice.probation.courtcasematcher.restclient.model.offendersearch.SearchResponse;
 import uk.gov.justice.probation.courtcasematcher.restclient.model.offendersearch.SearchResponses;
 
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.Month;
 import java.util.Collections;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
 import static org.mockito.ArgumentMatchers.notNull;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
@@ -59,8 +67,14 @@ class HearingServiceTest {
     private ArgumentCaptor<Hearing> courtCaseCaptor;
     @Mock
     private CourtCaseServiceClient courtCaseServiceClient;
-    @InjectMocks
+    @Spy
+    private HearingWriteQueue hearingWriteQueue = new HearingWriteQueue(false, 1, 0, 0, new SimpleMeterRegistry());
     private CourtCaseService courtCaseService;
+
+    @BeforeEach
+    void setUp() {
+        courtCaseService = new CourtCaseService(courtCaseServiceClient, offenderSearchRestClient, telemetryService, hearingWriteQueue, 1, 0);
+    }
     @DisplayName("Save court case. This must be existing because it has a case no and a case id.")
     @Test
     void whenSaveCourtCase() {
@@ -82,6 +96,50 @@ class HearingServiceTest {
         verify(courtCaseServiceClient).postOffenderMatches(CASE_ID, defendants);
     }
 
+    @DisplayName("Save court case asynchronously. Offender matches are only posted once the hearing PUT completes.")
+    @Test
+    void whenSaveCourtCaseAsync_thenPutThenPostMatches() {
+        final var courtCase = Hearing.builder()
+                .hearingDays(Collections.singletonList(HearingDay.builder()
+                        .courtCode(COURT_CODE)
+                        .build()))
+                .caseNo(CASE_NO)
+                .caseId(CASE_ID)
+                .defendants(defendants)
+                .source(DataSource.LIBRA)
+                .build();
+        when(courtCaseServiceClient.putHearing(courtCase)).thenReturn(Mono.error(new RuntimeException("bang!")));
+
+        StepVerifier.create(courtCaseService.saveHearingAsync(courtCase))
+                .verifyErrorMessage("bang!");
+
+        verify(courtCaseServiceClient).putHearing(courtCase);
+        verifyNoMoreInteractions(courtCaseServiceClient);
+    }
+
+    @DisplayName("Save an update to an existing court case. Sent as a delta, then offender matches are posted.")
+    @Test
+    void whenSaveCourtCaseDelta_thenPatchThenPostMatches() {
+        final var courtCase = Hearing.builder()
+                .hearingDays(Collections.singletonList(HearingDay.builder()
+                        .courtCode(COURT_CODE)
+                        .build()))
+                .caseNo(CASE_NO)
+                .caseId(CASE_ID)
+                .defendants(defendants)
+                .source(DataSource.COMMON_PLATFORM)
+                .build();
+        final var delta = HearingDelta.between(courtCase, courtCase.withDefendants(List.of(DEFENDANT)));
+        when(courtCaseServiceClient.patchHearing(delta)).thenReturn(Mono.empty());
+        when(courtCaseServiceClient.postOffenderMatches(CASE_ID, defendants)).thenReturn(Mono.empty());
+
+        courtCaseService.saveHearing(delta);
+
+        verify(courtCaseServiceClient).patchHearing(delta);
+        verify(courtCaseServiceClient).postOffenderMatches(CASE_ID, defendants);
+        verifyNoMoreInteractions(courtCaseServiceClient);
+    }
+
     @DisplayName("Save court case with no caseNo but with a caseId. Indicates a new CP case.")
     @Test
     void givenNoCaseNoOrId_whenSaveCourtCaseWithCaseId() {
@@ -345,6 +403,72 @@ class HearingServiceTest {
         verify(offenderSearchRestClient).search(CRN);
     }
 
+    @Test
+    void givenConcurrency_whenUpdateProbationStatus_thenSearchDefendantsTogetherAndKeepOrder() {
+        final var concurrentService = new CourtCaseService(courtCaseServiceClient, offenderSearchRestClient, telemetryService, hearingWriteQueue, 2, 0);
+        final var courtCase = Hearing.builder()
+                .defendants(List.of(
+                        Defendant.builder().crn(CRN).defendantId(DEFENDANT_UUID_1).build(),
+                        Defendant.builder().crn(CRN_2).defendantId(DEFENDANT_UUID_2).build()))
+                .build();
+        final var firstSearch = Sinks.<SearchResponses>one();
+        final var secondSearch = Sinks.<SearchResponses>one();
+        final var searches = new AtomicInteger();
+        when(offenderSearchRestClient.search(CRN)).thenReturn(firstSearch.asMono().doOnSubscribe(ignored -> searches.incrementAndGet()));
+        when(offenderSearchRestClient.search(CRN_2)).thenReturn(secondSearch.asMono().doOnSubscribe(ignored -> searches.incrementAndGet()));
+
+        final var result = concurrentService.updateProbationStatusDetail(courtCase).toFuture();
+
+        assertThat(searches).hasValue(2);
+        secondSearch.tryEmitValue(searchResponses("PREVIOUSLY_KNOWN"));
+        firstSearch.tryEmitValue(searchResponses("CURRENT"));
+        assertThat(result.join().getDefendants())
+                .extracting(Defendant::getProbationStatus)
+                .containsExactly("CURRENT", "PREVIOUSLY_KNOWN");
+    }
+
+    @Test
+    void givenDeadlinePasses_whenUpdateProbationStatus_thenMergeTheStatusesRefreshedInTime() {
+        final var deadlineService = new CourtCaseService(courtCaseServiceClient, offenderSearchRestClient, telemetryService, hearingWriteQueue, 2, 100);
+        final var slowDefendant = Defendant.builder().crn(CRN_2).defendantId(DEFENDANT_UUID_2).probationStatus("NOT_SENTENCED").build();
+        final var courtCase = Hearing.builder()
+                .defendants(List.of(Defendant.builder().crn(CRN).defendantId(DEFENDANT_UUID_1).build(), slowDefendant))
+                .build();
+        when(offenderSearchRestClient.search(CRN)).thenReturn(Mono.just(searchResponses("CURRENT")));
+        when(offenderSearchRestClient.search(CRN_2)).thenReturn(Mono.never());
+
+        final var result = deadlineService.updateProbationStatusDetail(courtCase).block(Duration.ofSeconds(5));
+
+        assertThat(result.getDefendants())
+                .extracting(Defendant::getProbationStatus)
+                .containsExactly("CURRENT", "NOT_SENTENCED");
+        verify(telemetryService).trackDefendantProbationStatusNotUpdatedEvent(slowDefendant);
+    }
+
+    @Test
+    void givenDeadlinePasses_whenDefendantsNotYetStarted_thenKeepTheirStatusWithoutSearching() {
+        final var deadlineService = new CourtCaseService(courtCaseServiceClient, offenderSearchRestClient, telemetryService, hearingWriteQueue, 1, 100);
+        final var slowDefendant = Defendant.builder().crn(CRN).defendantId(DEFENDANT_UUID_1).probationStatus("CURRENT").build();
+        final var unstartedDefendant = Defendant.builder().crn(CRN_2).defendantId(DEFENDANT_UUID_2).probationStatus("NOT_SENTENCED").build();
+        final var courtCase = Hearing.builder()
+                .defendants(List.of(slowDefendant, unstartedDefendant))
+                .build();
+        when(offenderSearchRestClient.search(CRN)).thenReturn(Mono.never());
+
+        final var result = deadlineService.updateProbationStatusDetail(courtCase).block(Duration.ofSeconds(5));
+
+        assertThat(result.getDefendants()).containsExactly(slowDefendant, unstartedDefendant);
+        verify(offenderSearchRestClient, never()).search(CRN_2);
+        verify(telemetryService).trackDefendantProbationStatusNotUpdatedEvent(slowDefendant);
+        verify(telemetryService).trackDefendantProbationStatusNotUpdatedEvent(unstartedDefendant);
+    }
+
+    private static SearchResponses searchResponses(String probationStatus) {
+        return new SearchResponses(List.of(SearchResponse.builder()
+                .probationStatusDetail(ProbationStatusDetail.builder().status(probationStatus).build())
+                .build()));
+    }
+
     private Hearing buildCaseNoMatches() {
 
         final var defendant2 = Defendant.builder().defendantId(DEFENDANT_UUID_2).build();
@@ -0,0 +1,125 @@
+package uk.gov.justice.probation.courtcasematcher.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class HearingWriteCoalescerTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final HearingWriteCoalescer coalescer = new HearingWriteCoalescer(true, meterRegistry);
+    private final List<String> written = new CopyOnWriteArrayList<>();
+    private final Sinks.Empty<Void> inFlight = Sinks.empty();
+
+    @Test
+    void givenDisabled_whenWrite_thenWriteStraightAway() {
+        final var disabled = new HearingWriteCoalescer(false, meterRegistry);
+
+        assertThat(disabled.write("hearing", disabled.nextSequence(), write("confirmed")).block()).isTrue();
+        assertThat(written).containsExactly("confirmed");
+    }
+
+    @Test
+    void givenNoWriteInFlight_whenWrite_thenWriteStraightAway() {
+        assertThat(coalescer.write("hearing", coalescer.nextSequence(), write("confirmed")).block(TIMEOUT)).isTrue();
+        assertThat(coalescer.write("hearing", coalescer.nextSequence(), write("updated")).block(TIMEOUT)).isTrue();
+
+        assertThat(written).containsExactly("confirmed", "updated");
+        assertThat(meterRegistry.get(HearingWriteCoalescer.WRITES_METRIC).counter().count()).isEqualTo(2.0d);
+        assertThat(meterRegistry.get(HearingWriteCoalescer.COALESCED_METRIC).counter().count()).isZero();
+    }
+
+    @Test
+    void givenSavesDuringWrite_whenWriteCompletes_thenOnlyWriteLatest() {
+        final var confirmed = coalescer.write("hearing", coalescer.nextSequence(), writeInFlight("confirmed")).toFuture();
+        final var updated = coalescer.write("hearing", coalescer.nextSequence(), write("updated")).toFuture();
+        final var relisted = coalescer.write("hearing", coalescer.nextSequence(), write("relisted")).toFuture();
+        assertThat(updated).isNotDone();
+
+        inFlight.tryEmitEmpty();
+
+        assertThat(await(confirmed)).isTrue();
+        assertThat(await(relisted)).isTrue();
+        assertThat(updated).isCompletedWithValue(false);
+        assertThat(written).containsExactly("confirmed", "relisted in full");
+        assertThat(meterRegistry.get(HearingWriteCoalescer.COALESCED_METRIC).counter().count()).isEqualTo(1.0d);
+        assertThat(meterRegistry.get(HearingWriteCoalescer.WRITES_METRIC).counter().count()).isEqualTo(2.0d);
+    }
+
+    @Test
+    void givenEarlierSaveDuringWriteOfLater_whenWriteCompletes_thenDoNotWriteEarlier() {
+        final var earlier = coalescer.nextSequence();
+        final var later = coalescer.nextSequence();
+
+        final var laterResult = coalescer.write("hearing", later, writeInFlight("later")).toFuture();
+        final var earlierResult = coalescer.write("hearing", earlier, write("earlier")).toFuture();
+        inFlight.tryEmitEmpty();
+
+        assertThat(await(laterResult)).isTrue();
+        assertThat(await(earlierResult)).isFalse();
+        assertThat(written).containsExactly("later");
+    }
+
+    @Test
+    void givenWriteInFlight_whenDifferentHearingSaved_thenWriteStraightAway() {
+        final var first = coalescer.write("hearing-1", coalescer.nextSequence(), writeInFlight("first")).toFuture();
+
+        assertThat(coalescer.write("hearing-2", coalescer.nextSequence(), write("second")).block(TIMEOUT)).isTrue();
+        assertThat(first).isNotDone();
+        assertThat(written).containsExactly("second");
+
+        inFlight.tryEmitEmpty();
+        assertThat(await(first)).isTrue();
+    }
+
+    @Test
+    void givenWriteInFlightFails_thenFailOnlyItsSaveAndWriteTheNext() {
+        final var failing = coalescer.write("hearing", coalescer.nextSequence(), heldBehind -> inFlight.asMono()).toFuture();
+        final var next = coalescer.write("hearing", coalescer.nextSequence(), write("next")).toFuture();
+
+        inFlight.tryEmitError(new RuntimeException("bang"));
+
+        assertThatThrownBy(() -> await(failing)).hasMessageContaining("bang");
+        assertThat(await(next)).isTrue();
+        assertThat(written).containsExactly("next in full");
+    }
+
+    @Test
+    void givenCoalescedWriteFails_thenFailEverySaveCoalescedIntoIt() {
+        final var first = coalescer.write("hearing", coalescer.nextSequence(), writeInFlight("first")).toFuture();
+        final var superseded = coalescer.write("hearing", coalescer.nextSequence(), write("superseded")).toFuture();
+        final var failing = coalescer.write("hearing", coalescer.nextSequence(), heldBehind -> Mono.error(new RuntimeException("bang"))).toFuture();
+
+        inFlight.tryEmitEmpty();
+
+        assertThat(await(first)).isTrue();
+        assertThatThrownBy(() -> await(failing)).hasMessageContaining("bang");
+        assertThatThrownBy(() -> await(superseded)).hasMessageContaining("bang");
+        assertThat(written).containsExactly("first");
+    }
+
+    private Function<Boolean, Mono<Void>> write(String state) {
+        return heldBehind -> Mono.fromRunnable(() -> written.add(heldBehind ? state + " in full" : state));
+    }
+
+    // Held in flight until inFlight completes
+    private Function<Boolean, Mono<Void>> writeInFlight(String state) {
+        return heldBehind -> inFlight.asMono().then(Mono.fromRunnable(() -> written.add(state)));
+    }
+
+    private static Boolean await(CompletableFuture<Boolean> result) {
+        return Mono.fromFuture(result).block(TIMEOUT);
+    }
+}
@@ -0,0 +1,99 @@
+package uk.gov.justice.probation.courtcasematcher.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HearingWriteQueueTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void givenDisabled_whenSubmit_thenWriteDirectly() {
+        final var writeQueue = new HearingWriteQueue(false, 1, 0, 0, meterRegistry);
+        final var writes = new AtomicInteger();
+
+        writeQueue.submit("case", () -> Mono.fromRunnable(writes::incrementAndGet)).block();
+
+        assertThat(writes).hasValue(1);
+        assertThat(meterRegistry.get(HearingWriteQueue.LATENCY_METRIC).tag("outcome", "success").timer().count()).isZero();
+    }
+
+    @Test
+    void givenConcurrencyOfOne_whenTwoSubmitted_thenSecondWaitsForFirst() {
+        final var writeQueue = new HearingWriteQueue(true, 1, 1, 0, meterRegistry);
+        final var firstWrite = Sinks.<Void>empty();
+        final var secondStarted = new AtomicInteger();
+
+        final var first = writeQueue.submit("first", firstWrite::asMono).toFuture();
+        final var second = writeQueue.submit("second", () -> Mono.fromRunnable(secondStarted::incrementAndGet)).toFuture();
+
+        assertThat(secondStarted).hasValue(0);
+        assertThat(first).isNotDone();
+        assertThat(second).isNotDone();
+        assertThat(meterRegistry.get(HearingWriteQueue.DEPTH_METRIC).gauge().value()).isEqualTo(1.0d);
+        assertThat(meterRegistry.get(HearingWriteQueue.IN_FLIGHT_METRIC).gauge().value()).isEqualTo(1.0d);
+
+        firstWrite.tryEmitEmpty();
+
+        assertThat(first).isCompleted();
+        assertThat(second).isCompleted();
+        assertThat(secondStarted).hasValue(1);
+        assertThat(meterRegistry.get(HearingWriteQueue.DEPTH_METRIC).gauge().value()).isZero();
+        assertThat(meterRegistry.get(HearingWriteQueue.LATENCY_METRIC).tag("outcome", "success").timer().count()).isEqualTo(2);
+    }
+
+    @Test
+    void givenQueueFull_whenSubmit_thenRejectAfterMaxWait() {
+        final var writeQueue = new HearingWriteQueue(true, 1, 0, 50, meterRegistry);
+        final var firstWrite = Sinks.<Void>empty();
+        writeQueue.submit("first", firstWrite::asMono).toFuture();
+
+        StepVerifier.create(writeQueue.submit("second", Mono::empty))
+                .expectError(HearingWriteQueue.WriteQueueFullException.class)
+                .verify();
+
+        assertThat(meterRegistry.get(HearingWriteQueue.REJECTED_METRIC).counter().count()).isEqualTo(1.0d);
+        firstWrite.tryEmitEmpty();
+        StepVerifier.create(writeQueue.submit("third", Mono::empty)).verifyComplete();
+    }
+
+    @Test
+    void givenQueueFull_whenSubmit_thenWaitForRoomWithoutHoldingAThread() {
+        final var writeQueue = new HearingWriteQueue(true, 1, 0, 60_000, meterRegistry);
+        final var firstWrite = Sinks.<Void>empty();
+        final var secondStarted = new AtomicInteger();
+        final var first = writeQueue.submit("first", firstWrite::asMono).toFuture();
+
+        final var second = writeQueue.submit("second", () -> Mono.fromRunnable(secondStarted::incrementAndGet)).toFuture();
+
+        assertThat(second).isNotDone();
+        assertThat(secondStarted).hasValue(0);
+
+        firstWrite.tryEmitEmpty();
+
+        assertThat(first).isCompleted();
+        assertThat(second).succeedsWithin(Duration.ofSeconds(5));
+        assertThat(secondStarted).hasValue(1);
+        assertThat(meterRegistry.get(HearingWriteQueue.REJECTED_METRIC).counter().count()).isZero();
+    }
+
+    @Test
+    void givenWriteFails_whenSubmit_thenErrorAndCarryOnWithNextWrite() {
+        final var writeQueue = new HearingWriteQueue(true, 1, 1, 0, meterRegistry);
+
+        StepVerifier.create(writeQueue.submit("first", () -> Mono.error(new RuntimeException("bang"))))
+                .expectErrorMessage("bang")
+                .verify();
+        StepVerifier.create(writeQueue.submit("second", Mono::empty)).verifyComplete();
+
+        assertThat(meterRegistry.get(HearingWriteQueue.LATENCY_METRIC).tag("outcome", "failure").timer().count()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,150 @@
+package uk.gov.justice.probation.courtcasematcher.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.core.ResponseBytes;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atMost;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class LargeHearingDownloaderTest {
+
+    private static final byte[] OBJECT = "0123456789".getBytes(StandardCharsets.UTF_8);
+
+    @Mock
+    private S3AsyncClient s3AsyncClient;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void givenObjectLargerThanPart_whenDownloaded_thenReadAllPartsInOrder() throws IOException {
+        givenObjectInS3();
+        final var downloader = downloader(4);
+
+        final var download = downloader.download("bucket", "key");
+
+        assertThat(download.readAllBytes()).isEqualTo(OBJECT);
+        verify(s3AsyncClient).getObject(eq(range("bytes=0-3")), any(AsyncResponseTransformer.class));
+        verify(s3AsyncClient).getObject(eq(range("bytes=4-7")), any(AsyncResponseTransformer.class));
+        verify(s3AsyncClient).getObject(eq(range("bytes=8-11")), any(AsyncResponseTransformer.class));
+        assertThat(meterRegistry.get(LargeHearingDownloader.BYTES_METRIC).counter().count()).isEqualTo(10.0d);
+        assertThat(meterRegistry.get(LargeHearingDownloader.DURATION_METRIC).timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.get(LargeHearingDownloader.IN_FLIGHT_METRIC).gauge().value()).isZero();
+    }
+
+    @Test
+    void givenObjectWithinOnePart_whenDownloaded_thenMakeOneRequest() throws IOException {
+        givenObjectInS3();
+        final var downloader = downloader(1024);
+
+        assertThat(downloader.download("bucket", "key").readAllBytes()).isEqualTo(OBJECT);
+        verify(s3AsyncClient, times(1)).getObject(any(GetObjectRequest.class), any(AsyncResponseTransformer.class));
+    }
+
+    @Test
+    void givenPartsNotYetRead_thenRequestNoMoreThanMaxPartsInFlightAhead() throws IOException {
+        givenObjectInS3();
+        final var downloader = downloader(1);
+
+        try (var download = downloader.download("bucket", "key")) {
+            verify(s3AsyncClient, atMost(3)).getObject(any(GetObjectRequest.class), any(AsyncResponseTransformer.class));
+
+            assertThat(download.readAllBytes()).isEqualTo(OBJECT);
+        }
+        verify(s3AsyncClient, times(OBJECT.length)).getObject(any(GetObjectRequest.class), any(AsyncResponseTransformer.class));
+    }
+
+    @Test
+    void givenDownloadClosedBeforeRead_thenRequestNoMoreParts() {
+        givenObjectInS3();
+        final var downloader = downloader(1);
+
+        downloader.download("bucket", "key").close();
+
+        verify(s3AsyncClient, atMost(3)).getObject(any(GetObjectRequest.class), any(AsyncResponseTransformer.class));
+        assertThat(meterRegistry.get(LargeHearingDownloader.IN_FLIGHT_METRIC).gauge().value()).isZero();
+    }
+
+    @Test
+    void givenPrefetched_whenDownloaded_thenClaimThePrefetch() throws IOException {
+        givenObjectInS3();
+        final var downloader = downloader(1024);
+
+        downloader.prefetch("bucket", "key");
+        downloader.prefetch("bucket", "key");
+
+        assertThat(downloader.download("bucket", "key").readAllBytes()).isEqualTo(OBJECT);
+        verify(s3AsyncClient, times(1)).getObject(any(GetObjectRequest.class), any(AsyncResponseTransformer.class));
+    }
+
+    @Test
+    void givenPrefetchNotClaimedWithinTtl_whenDownloaded_thenDownloadAgain() throws IOException {
+        givenObjectInS3();
+        final var downloader = new LargeHearingDownloader(s3AsyncClient, true, 1024, 2, 10, 0, meterRegistry);
+
+        downloader.prefetch("bucket", "key");
+        await().atMost(5, TimeUnit.SECONDS)
+                .until(() -> downloader.prefetchedCount() == 0);
+
+        assertThat(downloader.download("bucket", "key").readAllBytes()).isEqualTo(OBJECT);
+        verify(s3AsyncClient, times(2)).getObject(any(GetObjectRequest.class), any(AsyncResponseTransformer.class));
+    }
+
+    @Test
+    void givenS3Fails_whenRead_thenFail() {
+        when(s3AsyncClient.getObject(any(GetObjectRequest.class), any(AsyncResponseTransformer.class)))
+                .thenReturn(CompletableFuture.failedFuture(new RuntimeException("bang")));
+        final var downloader = downloader(4);
+        final var download = downloader.download("bucket", "key");
+
+        assertThatExceptionOfType(IOException.class)
+                .isThrownBy(download::readAllBytes)
+                .withStackTraceContaining("bang");
+        assertThat(meterRegistry.get(LargeHearingDownloader.IN_FLIGHT_METRIC).gauge().value()).isZero();
+    }
+
+    private LargeHearingDownloader downloader(long partSizeBytes) {
+        return new LargeHearingDownloader(s3AsyncClient, true, partSizeBytes, 2, 10, 60000, meterRegistry);
+    }
+
+    // Serves the requested range of OBJECT, as S3 would
+    private void givenObjectInS3() {
+        when(s3AsyncClient.getObject(any(GetObjectRequest.class), any(AsyncResponseTransformer.class)))
+                .thenAnswer(invocation -> {
+                    final GetObjectRequest request = invocation.getArgument(0);
+                    final var range = request.range().substring("bytes=".length()).split("-");
+                    final var first = Integer.parseInt(range[0]);
+                    final var last = Math.min(Integer.parseInt(range[1]), OBJECT.length - 1);
+                    final var response = GetObjectResponse.builder()
+                            .contentRange("bytes " + first + "-" + last + "/" + OBJECT.length)
+                            .build();
+                    return CompletableFuture.completedFuture(
+                            ResponseBytes.fromByteArray(response, Arrays.copyOfRange(OBJECT, first, last + 1)));
+                });
+    }
+
+    private static GetObjectRequest range(String range) {
+        return GetObjectRequest.builder().bucket("bucket").key("key").range(range).build();
+    }
+}
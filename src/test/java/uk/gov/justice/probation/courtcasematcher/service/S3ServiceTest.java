@@ -5,16 +5,24 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
-import software.amazon.awssdk.core.ResponseBytes;
+import org.springframework.test.util.ReflectionTestUtils;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.http.AbortableInputStream;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.GetObjectRequest;
 import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
 
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -23,13 +31,16 @@ public class S3ServiceTest {
     @Mock
     S3Client s3Client;
 
+    @Mock
+    LargeHearingDownloader largeHearingDownloader;
+
     @InjectMocks
     S3Service s3Service;
 
     @Test
-    void givenLargeMessageExistsInS3_thenGetTheMessageFromS3(){
-        when(s3Client.getObjectAsBytes(any(GetObjectRequest.class)))
-            .thenReturn(ResponseBytes.fromInputStream(
+    void givenLargeMessageExistsInS3_thenGetTheMessageFromS3() throws IOException {
+        when(s3Client.getObject(any(GetObjectRequest.class)))
+            .thenReturn(new ResponseInputStream<>(
                 GetObjectResponse.builder()
                     .acceptRanges("bytes")
                     .lastModified(null)
@@ -38,17 +49,56 @@ public class S3ServiceTest {
                     .contentType("text/plain")
                     .serverSideEncryption("AES256")
                     .build(),
-                new ByteArrayInputStream("Hello World".getBytes()
+                AbortableInputStream.create(new ByteArrayInputStream("Hello World".getBytes())
             )));
 
-        assertThat(s3Service.getObject("")).isEqualTo("Hello World");
+        try (var s3Object = s3Service.getObjectStream("", "")) {
+            assertThat(new String(s3Object.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo("Hello World");
+        }
     }
 
     @Test
     void givenLargeMessageDoesNotExistsInS3_thenGetTheMessageFromS3(){
-        when(s3Client.getObjectAsBytes(any(GetObjectRequest.class)))
+        when(s3Client.getObject(any(GetObjectRequest.class)))
             .thenThrow(new RuntimeException("Failed to get file from S3"));
 
-        assertThrows(RuntimeException.class, () -> s3Service.getObject(""));
+        assertThrows(RuntimeException.class, () -> s3Service.getObjectStream("", ""));
+    }
+
+    @Test
+    void givenPointerNamesBucket_thenGetTheMessageFromThatBucket() throws IOException {
+        ReflectionTestUtils.setField(s3Service, "bucketName", "configured-bucket");
+        when(s3Client.getObject(any(GetObjectRequest.class)))
+            .thenReturn(new ResponseInputStream<>(GetObjectResponse.builder().build(),
+                AbortableInputStream.create(new ByteArrayInputStream(new byte[0]))));
+
+        s3Service.getObjectStream("pointer-bucket", "key").close();
+        s3Service.getObjectStream(null, "key").close();
+
+        verify(s3Client).getObject(GetObjectRequest.builder().bucket("pointer-bucket").key("key").build());
+        verify(s3Client).getObject(GetObjectRequest.builder().bucket("configured-bucket").key("key").build());
+    }
+
+    @Test
+    void givenObjectExists_thenReadItsSizeFromItsMetadata() {
+        ReflectionTestUtils.setField(s3Service, "bucketName", "configured-bucket");
+        when(s3Client.headObject(HeadObjectRequest.builder().bucket("configured-bucket").key("key").build()))
+            .thenReturn(HeadObjectResponse.builder().contentLength(268444L).build());
+
+        assertThat(s3Service.getObjectSize(null, "key")).isEqualTo(268444L);
+        verifyNoInteractions(largeHearingDownloader);
+    }
+
+    @Test
+    void givenLargeHearingDownloaderEnabled_thenGetTheMessageFromTheDownloader() throws IOException {
+        ReflectionTestUtils.setField(s3Service, "bucketName", "configured-bucket");
+        when(largeHearingDownloader.isEnabled()).thenReturn(true);
+        when(largeHearingDownloader.download("configured-bucket", "key"))
+            .thenReturn(new ByteArrayInputStream("Hello World".getBytes()));
+
+        try (var s3Object = s3Service.getObjectStream(null, "key")) {
+            assertThat(new String(s3Object.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo("Hello World");
+        }
+        verifyNoInteractions(s3Client);
     }
 }